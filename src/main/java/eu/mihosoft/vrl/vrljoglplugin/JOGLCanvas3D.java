@@ -9,6 +9,7 @@ import com.jogamp.opengl.GLCapabilities;
 import com.jogamp.opengl.GLEventListener;
 import com.jogamp.opengl.GLException;
 import eu.mihosoft.vrl.reflection.TypeRepresentationBase;
+import eu.mihosoft.vrl.vrljoglplugin.glview.GLMeshRegistry;
 import eu.mihosoft.vrl.visual.*;
 import java.awt.*;
 import java.awt.event.*;
@@ -81,6 +82,9 @@ public class JOGLCanvas3D extends GLJPanel implements
 
         super(capabilities);
 
+        // share GPU buffers with other canvases (meshes are uploaded only once)
+        GLMeshRegistry.shareContext(this);
+
         setTypeRepresentation(typeRepresentation);
 
 //        VBoxLayout layout = new VBoxLayout(this, VBoxLayout.X_AXIS);
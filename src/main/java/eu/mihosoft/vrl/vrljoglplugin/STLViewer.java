@@ -4,11 +4,21 @@ import eu.mihosoft.vrl.annotation.ComponentInfo;
 import eu.mihosoft.vrl.annotation.ParamInfo;
 import eu.mihosoft.vrl.vrljoglplugin.glview.GLMeshCanvas;
 import eu.mihosoft.vrl.vrljoglplugin.glview.Mesh;
+import eu.mihosoft.vrl.vrljoglplugin.glview.MeshCache;
+import eu.mihosoft.vrl.vrljoglplugin.glview.MeshLoadListener;
+import eu.mihosoft.vrl.vrljoglplugin.glview.MeshOctree;
+import eu.mihosoft.vrl.vrljoglplugin.glview.MeshSimplifier;
+import eu.mihosoft.vrl.vrljoglplugin.glview.MeshStatistics;
+import eu.mihosoft.vrl.vrljoglplugin.glview.Meshlets;
+import eu.mihosoft.vrl.vrljoglplugin.glview.PreviewMeshBuilder;
+import eu.mihosoft.vrl.vrljoglplugin.glview.ProgressiveMesh;
 import eu.mihosoft.vrl.vrljoglplugin.glview.STLLoader;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 @ComponentInfo(name = "STL Viewer", category = "JOGL")
 public class STLViewer implements Serializable {
@@ -18,10 +28,321 @@ public class STLViewer implements Serializable {
             style="load-dialog",
             options="endings=[\".stl\"]; description=\"*.stl - Files\"") File stlFile) throws IOException {
 
-        Mesh mesh = new STLLoader().loadMesh(stlFile);
+        STLLoader loader = new STLLoader();
+
+        // unchanged files are only parsed once
+        loader.setMeshCache(MeshCache.getDefault());
+
+        Mesh mesh = loader.loadMesh(stlFile);
 
         Visualization visualization =  new GLMeshCanvas(mesh);
 
         return visualization;
     }
+
+    /**
+     * Returns a visualization immediately and loads the mesh in the background. The
+     * triangles are shown while they are parsed (see
+     * {@link #viewProgressive(File, int)}), the final mesh replaces them as soon as
+     * loading is finished. If loading fails, the error is shown in the visualization.
+     * Loading is cancelled if the visualization is disposed before (e.g. if the method
+     * is invoked again).
+     *
+     * @param stlFile STL file to load
+     * @return visualization that shows the mesh once it is loaded
+     */
+    public Visualization viewAsync(@ParamInfo(
+            style="load-dialog",
+            options="endings=[\".stl\"]; description=\"*.stl - Files\"") File stlFile) {
+
+        STLLoader loader = new STLLoader();
+
+        // unchanged files are only parsed once
+        loader.setMeshCache(MeshCache.getDefault());
+
+        loader.setLoadListener(new ProgressPrinter());
+
+        // shown while loading (larger files are subsampled)
+        ProgressiveMesh progressive = loader.newProgressiveMesh(stlFile, 2_000_000);
+
+        GLMeshCanvas canvas = new GLMeshCanvas(progressive);
+
+        // replaces the progressive mesh once loading is complete
+        canvas.setMesh(loader.loadMeshAsync(stlFile, progressive));
+
+        return canvas;
+    }
+
+    /**
+     * Shows a decimated preview of the specified STL file. The file is streamed, i.e.,
+     * this also works for files that are too large to be loaded completely.
+     *
+     * @param stlFile STL file to preview
+     * @param maxVertices maximum number of vertices of the preview
+     * @return visualization that shows the preview
+     * @throws IOException if an i/o error occurs
+     */
+    public Visualization viewPreview(@ParamInfo(
+            style="load-dialog",
+            options="endings=[\".stl\"]; description=\"*.stl - Files\"") File stlFile,
+            @ParamInfo(name="max. vertices", options="value=100000") int maxVertices) throws IOException {
+
+        STLLoader loader = new STLLoader();
+
+        loader.setLoadListener(new ProgressPrinter());
+
+        MeshStatistics statistics = new MeshStatistics();
+        PreviewMeshBuilder preview = new PreviewMeshBuilder(maxVertices);
+
+        loader.streamTriangles(stlFile, (positions, normals, attributes, count) -> {
+            statistics.accept(positions, normals, attributes, count);
+            preview.accept(positions, normals, attributes, count);
+        });
+
+        System.out.println("-> statistics: " + statistics);
+
+        return new GLMeshCanvas(preview.getMesh());
+    }
+
+    /**
+     * Shows a simplified version of the specified STL file. In contrast to
+     * {@link #viewPreview(File, int)} the mesh is loaded completely and simplified via
+     * quadric error edge collapses, i.e., the shape is preserved much better.
+     *
+     * @param stlFile STL file to load
+     * @param maxTriangles maximum number of triangles of the simplified mesh
+     * @return visualization that shows the simplified mesh
+     * @throws IOException if an i/o error occurs
+     */
+    public Visualization viewSimplified(@ParamInfo(
+            style="load-dialog",
+            options="endings=[\".stl\"]; description=\"*.stl - Files\"") File stlFile,
+            @ParamInfo(name="max. triangles", options="value=100000") int maxTriangles) throws IOException {
+
+        STLLoader loader = new STLLoader();
+
+        // unchanged files are only parsed once
+        loader.setMeshCache(MeshCache.getDefault());
+
+        loader.setLoadListener(new ProgressPrinter());
+
+        Mesh mesh = new MeshSimplifier().simplify(loader.loadMesh(stlFile), maxTriangles);
+
+        return new GLMeshCanvas(mesh);
+    }
+
+    /**
+     * Shows the specified STL file with levels of detail. The mesh is shown as soon
+     * as it is loaded, the levels of detail are computed in the background afterwards.
+     * Small views (e.g. node previews) then draw coarse levels, large views (e.g. full
+     * screen) draw fine levels.
+     *
+     * @param stlFile STL file to load
+     * @param minTriangles number of triangles of the coarsest level
+     * @return visualization that shows the mesh once it is loaded
+     */
+    public Visualization viewLOD(@ParamInfo(
+            style="load-dialog",
+            options="endings=[\".stl\"]; description=\"*.stl - Files\"") File stlFile,
+            @ParamInfo(name="min. triangles", options="value=10000") int minTriangles) {
+
+        STLLoader loader = new STLLoader();
+
+        // unchanged files are only parsed once
+        loader.setMeshCache(MeshCache.getDefault());
+
+        loader.setLoadListener(new ProgressPrinter());
+
+        CompletableFuture<Mesh> mesh = loader.loadMeshAsync(stlFile);
+
+        GLMeshCanvas canvas = new GLMeshCanvas(mesh);
+
+        // each level has a quarter of the triangles of the previous level
+        mesh.thenCompose(m -> new MeshSimplifier().buildChainAsync(m,
+                MeshSimplifier.geometricBudgets(m.numIndices() / 3, minTriangles, 0.25)))
+                .thenAccept(canvas::setLODChain)
+                .exceptionally(ex -> {
+                    showStageFailure(canvas, mesh, "cannot build levels of detail", ex);
+                    return null;
+                });
+
+        return canvas;
+    }
+
+    /**
+     * Shows the specified STL file while it is loaded. A coarse approximation is shown
+     * after a few milliseconds and refined while the file is parsed. Once loading is
+     * complete, the final mesh replaces the approximation (the view is kept).
+     *
+     * @param stlFile STL file to load
+     * @param maxTriangles maximum number of triangles shown while loading (larger files
+     *                     are subsampled)
+     * @return visualization that shows the mesh while it is loaded
+     */
+    public Visualization viewProgressive(@ParamInfo(
+            style="load-dialog",
+            options="endings=[\".stl\"]; description=\"*.stl - Files\"") File stlFile,
+            @ParamInfo(name="max. triangles", options="value=2000000") int maxTriangles) {
+
+        STLLoader loader = new STLLoader();
+
+        // unchanged files are only parsed once (cached meshes are shown immediately)
+        loader.setMeshCache(MeshCache.getDefault());
+
+        loader.setLoadListener(new ProgressPrinter());
+
+        // at most the number of triangles of the file (small files use small buffers)
+        ProgressiveMesh progressive = loader.newProgressiveMesh(stlFile, maxTriangles);
+
+        GLMeshCanvas canvas = new GLMeshCanvas(progressive);
+
+        // replaces the progressive mesh once loading is complete
+        canvas.setMesh(loader.loadMeshAsync(stlFile, progressive));
+
+        return canvas;
+    }
+
+    /**
+     * Shows the specified STL file with view frustum culling. The mesh is shown as
+     * soon as it is loaded. Afterwards it is split into meshlets in the background and
+     * only the meshlets that intersect the view are drawn (e.g. if the view is zoomed
+     * into a large mesh). Back faces are culled if requested (closed meshes only).
+     *
+     * @param stlFile STL file to load
+     * @param backfaceCulling defines whether to cull back faces
+     * @return visualization that shows the mesh once it is loaded
+     */
+    public Visualization viewCulled(@ParamInfo(
+            style="load-dialog",
+            options="endings=[\".stl\"]; description=\"*.stl - Files\"") File stlFile,
+            @ParamInfo(name="cull back faces", options="value=false") boolean backfaceCulling) {
+
+        STLLoader loader = new STLLoader();
+
+        // unchanged files are only parsed once
+        loader.setMeshCache(MeshCache.getDefault());
+
+        loader.setLoadListener(new ProgressPrinter());
+
+        CompletableFuture<Mesh> mesh = loader.loadMeshAsync(stlFile);
+
+        GLMeshCanvas canvas = new GLMeshCanvas(mesh);
+        canvas.setBackfaceCulling(backfaceCulling);
+
+        // replaces the mesh by the clustered mesh (the view is kept)
+        mesh.thenCompose(Meshlets::buildAsync).thenAccept(canvas::setMeshlets)
+                .exceptionally(ex -> {
+                    showStageFailure(canvas, mesh, "cannot build meshlets", ex);
+                    return null;
+                });
+
+        return canvas;
+    }
+
+    /**
+     * Shows the specified STL file with an octree. If the view is zoomed into the mesh
+     * only the octree nodes that intersect the view are drawn. The octree is stored in
+     * the mesh cache, i.e., it is only built once per file.
+     *
+     * @param stlFile STL file to load
+     * @return visualization that shows the mesh once it is loaded
+     */
+    public Visualization viewIndexed(@ParamInfo(
+            style="load-dialog",
+            options="endings=[\".stl\"]; description=\"*.stl - Files\"") File stlFile) {
+
+        STLLoader loader = new STLLoader();
+
+        // unchanged files are only parsed and indexed once
+        loader.setMeshCache(MeshCache.getDefault());
+
+        loader.setLoadListener(new ProgressPrinter());
+
+        CompletableFuture<MeshOctree> octree = loader.loadOctreeAsync(stlFile);
+
+        GLMeshCanvas canvas = new GLMeshCanvas(octree.thenApply(MeshOctree::getMesh));
+        canvas.setZoomToInner(true);
+
+        // the octree is built while loading, i.e., the canvas shows build failures
+        octree.thenAccept(canvas::setOctree)
+                .exceptionally(ex -> {
+                    showStageFailure(canvas, octree, "cannot display octree", ex);
+                    return null;
+                });
+
+        return canvas;
+    }
+
+    /**
+     * Computes the statistics (number of triangles, area, bounds) of the triangles of
+     * the specified STL file whose centroids are inside of the given box.
+     *
+     * @param stlFile STL file to load
+     * @param minX lower x coordinate of the box
+     * @param minY lower y coordinate of the box
+     * @param minZ lower z coordinate of the box
+     * @param maxX upper x coordinate of the box
+     * @param maxY upper y coordinate of the box
+     * @param maxZ upper z coordinate of the box
+     * @return the statistics of the triangles inside of the box
+     * @throws IOException if an i/o error occurs
+     */
+    public String regionStatistics(@ParamInfo(
+            style="load-dialog",
+            options="endings=[\".stl\"]; description=\"*.stl - Files\"") File stlFile,
+            @ParamInfo(name="min. x") float minX,
+            @ParamInfo(name="min. y") float minY,
+            @ParamInfo(name="min. z") float minZ,
+            @ParamInfo(name="max. x") float maxX,
+            @ParamInfo(name="max. y") float maxY,
+            @ParamInfo(name="max. z") float maxZ) throws IOException {
+
+        STLLoader loader = new STLLoader();
+
+        // unchanged files are only parsed and indexed once
+        loader.setMeshCache(MeshCache.getDefault());
+
+        MeshOctree octree = loader.loadOctree(stlFile);
+
+        MeshStatistics statistics = new MeshStatistics();
+        octree.queryBox(minX, minY, minZ, maxX, maxY, maxZ, statistics);
+
+        System.out.println("-> region statistics: " + statistics);
+
+        return statistics.toString();
+    }
+
+    /**
+     * Shows the failure of a background stage in the specified canvas. Failures of
+     * loading the mesh are not reported again (the canvas shows them already).
+     *
+     * @param canvas canvas that shows the failure
+     * @param mesh future that provides the mesh of the canvas
+     * @param message error message
+     * @param ex cause of the failure
+     */
+    private static void showStageFailure(GLMeshCanvas canvas, CompletableFuture<?> mesh,
+                                         String message, Throwable ex) {
+        if (!mesh.isCompletedExceptionally()) {
+            canvas.showError(message, ex);
+        }
+    }
+
+    /**
+     * Prints the loading progress in steps of 10%.
+     */
+    private static final class ProgressPrinter implements MeshLoadListener {
+        private Phase phase;
+        private int percent;
+
+        @Override
+        public synchronized void progressChanged(Phase phase, double progress) {
+            int p = (int) (progress * 10) * 10;
+            if (phase != this.phase || p > percent) {
+                this.phase = phase;
+                this.percent = p;
+                System.out.println("-> loading: " + phase.name().toLowerCase(Locale.ROOT) + " " + p + "%");
+            }
+        }
+    }
 }
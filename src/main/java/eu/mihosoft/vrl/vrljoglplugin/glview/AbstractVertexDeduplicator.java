@@ -0,0 +1,155 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Base class for vertex deduplicators that work on primitive arrays.
+ *
+ * Implementations compute a representative for each vertex, i.e., the index of the
+ * first vertex it is merged with. The final mesh is then created by
+ * {@link #createMesh(float[], int[])}.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+abstract class AbstractVertexDeduplicator implements VertexDeduplicator {
+
+    // number of keys processed by a single task
+    static final int KEYS_PER_TASK = 1 << 16;
+
+    // number of bits sorted per radix sort pass (3 passes sort the 32 bit hash)
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX_BUCKETS = 1 << RADIX_BITS;
+
+    /**
+     * Creates the deduplicated mesh. Unique vertices are stored in the order of their
+     * first occurrence.
+     *
+     * @param triangleVertices vertex coordinates ({@code x,y,z} per vertex)
+     * @param representatives  representative of each vertex (a representative {@code r}
+     *                         of vertex {@code i} must satisfy {@code r <= i} and
+     *                         {@code representatives[r] == r}); this array is reused
+     *                         as index array of the returned mesh
+     * @return deduplicated mesh
+     */
+    static Mesh createMesh(float[] triangleVertices, int[] representatives) {
+
+        int numVerts = representatives.length;
+
+        // count unique vertices to allocate the exact vertex array
+        int numUnique = (int) IntStream.range(0, numVerts).parallel().
+                filter(i -> representatives[i] == i).count();
+
+        float[] vertices = new float[numUnique * 3];
+
+        // representatives always precede the vertices they represent, thus, their
+        // final index is known when we reach a duplicate
+        int[] indices = representatives;
+        int counter = 0;
+        for (int i = 0; i < numVerts; i++) {
+            int r = indices[i];
+            if (r == i) {
+                vertices[counter * 3 + 0] = triangleVertices[i * 3 + 0];
+                vertices[counter * 3 + 1] = triangleVertices[i * 3 + 1];
+                vertices[counter * 3 + 2] = triangleVertices[i * 3 + 2];
+                indices[i] = counter++;
+            } else {
+                indices[i] = indices[r];
+            }
+        }
+
+        return Mesh.newInstance(vertices, indices);
+    }
+
+    /**
+     * Indicates whether the specified vertices are equal. We don't check for numerical
+     * equality because in STL files duplicate vertices are exact clones.
+     */
+    static boolean equal(float[] v, int i, int j) {
+        return v[i * 3 + 0] == v[j * 3 + 0]
+                && v[i * 3 + 1] == v[j * 3 + 1]
+                && v[i * 3 + 2] == v[j * 3 + 2];
+    }
+
+    /**
+     * Computes the hash of the specified vertex. Vertices that are equal according
+     * to {@link #equal(float[], int, int)} have equal hashes.
+     */
+    static int hash(float[] v, int i) {
+        // adding 0.0f maps -0.0f to 0.0f (both are equal)
+        int h = Float.floatToIntBits(v[i * 3 + 0] + 0.0f);
+        h = h * 0x9E3779B1 ^ Float.floatToIntBits(v[i * 3 + 1] + 0.0f);
+        h = h * 0x9E3779B1 ^ Float.floatToIntBits(v[i * 3 + 2] + 0.0f);
+        // final avalanche (murmur3 finalizer)
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Sorts the specified keys by their upper 32 bits (unsigned). The sort is stable,
+     * i.e., keys with equal hash stay sorted by vertex index.
+     *
+     * @param keys keys to sort
+     */
+    static void radixSortByHash(long[] keys) {
+
+        int n = keys.length;
+        int numBlocks = Math.max(1, Math.min(
+                ForkJoinPool.commonPool().getParallelism() * 4, n / KEYS_PER_TASK));
+        int blockSize = (n + numBlocks - 1) / numBlocks;
+
+        long[] src = keys;
+        long[] dst = new long[n];
+
+        int[][] offsets = new int[numBlocks][RADIX_BUCKETS];
+
+        for (int shift = 32; shift < 64; shift += RADIX_BITS) {
+            final long[] from = src;
+            final long[] to = dst;
+            final int s = shift;
+
+            // count bucket sizes per block
+            IntStream.range(0, numBlocks).parallel().forEach(b -> {
+                int[] count = offsets[b];
+                Arrays.fill(count, 0);
+                int end = Math.min(n, (b + 1) * blockSize);
+                for (int i = b * blockSize; i < end; i++) {
+                    count[(int) (from[i] >>> s) & (RADIX_BUCKETS - 1)]++;
+                }
+            });
+
+            // compute the start offset of each bucket in each block
+            int sum = 0;
+            for (int bucket = 0; bucket < RADIX_BUCKETS; bucket++) {
+                for (int b = 0; b < numBlocks; b++) {
+                    int count = offsets[b][bucket];
+                    offsets[b][bucket] = sum;
+                    sum += count;
+                }
+            }
+
+            // scatter (each block writes to its own ranges)
+            IntStream.range(0, numBlocks).parallel().forEach(b -> {
+                int[] offset = offsets[b];
+                int end = Math.min(n, (b + 1) * blockSize);
+                for (int i = b * blockSize; i < end; i++) {
+                    long key = from[i];
+                    to[offset[(int) (key >>> s) & (RADIX_BUCKETS - 1)]++] = key;
+                }
+            });
+
+            src = to;
+            dst = from;
+        }
+
+        // odd number of passes: result is stored in the temporary array
+        if (src != keys) {
+            System.arraycopy(src, 0, keys, 0, n);
+        }
+    }
+}
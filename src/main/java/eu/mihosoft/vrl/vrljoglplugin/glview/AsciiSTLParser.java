@@ -0,0 +1,239 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Byte-level scanner for ASCII STL files.
+ *
+ * The scanner works directly on (memory mapped) byte buffers. Keywords are recognized
+ * without creating strings and numbers are parsed in place via {@link FloatParser}.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+final class AsciiSTLParser {
+
+    private static final byte[] VERTEX = {'v', 'e', 'r', 't', 'e', 'x'};
+    private static final byte[] FACET = {'f', 'a', 'c', 'e', 't'};
+    private static final byte[] NORMAL = {'n', 'o', 'r', 'm', 'a', 'l'};
+
+    // block size used for searching facet boundaries
+    private static final int SEARCH_BLOCK_SIZE = 64 * 1024;
+
+    private AsciiSTLParser() {
+        throw new AssertionError("Don't instantiate me!");
+    }
+
+    /**
+     * Parses all vertices in the specified range of the given buffer. The range must
+     * not split a facet, i.e., it should start and end at facet boundaries (see
+     * {@link #findFacetBoundary(FileChannel, long, long)}).
+     *
+     * @param buffer   buffer that contains the ASCII STL data
+     * @param start    first byte of the range to parse
+     * @param end      index after the last byte of the range to parse
+     * @param vertices coordinate list to add the vertex coordinates to
+     * @throws IOException if the range contains an incomplete vertex
+     */
+    static void parse(ByteBuffer buffer, int start, int end, Coordinates vertices) throws IOException {
+        parse(buffer, start, end, vertices, null);
+    }
+
+    /**
+     * Parses all vertices and facet normals in the specified range of the given buffer.
+     * The range must not split a facet, i.e., it should start and end at facet boundaries
+     * (see {@link #findFacetBoundary(FileChannel, long, long)}).
+     *
+     * @param buffer   buffer that contains the ASCII STL data
+     * @param start    first byte of the range to parse
+     * @param end      index after the last byte of the range to parse
+     * @param vertices coordinate list to add the vertex coordinates to
+     * @param normals  coordinate list to add the facet normals to (one normal per facet,
+     *                 {@code (0,0,0)} if a facet has no normal; {@code null} if normals
+     *                 shall be ignored)
+     * @throws IOException if the range contains an incomplete vertex or normal
+     */
+    static void parse(ByteBuffer buffer, int start, int end,
+                      Coordinates vertices, Coordinates normals) throws IOException {
+
+        int i = start;
+
+        while (true) {
+            i = skipWhitespace(buffer, i, end);
+            if (i >= end) break;
+
+            int tokenEnd = skipToken(buffer, i, end);
+
+            // 'outer loop' etc. are ignored
+            if (isKeyword(buffer, i, tokenEnd, VERTEX)) {
+                tokenEnd = parseCoordinates(buffer, tokenEnd, end, vertices);
+            } else if (normals != null && isKeyword(buffer, i, tokenEnd, FACET)) {
+                int keywordStart = skipWhitespace(buffer, tokenEnd, end);
+                int keywordEnd = skipToken(buffer, keywordStart, end);
+                if (isKeyword(buffer, keywordStart, keywordEnd, NORMAL)) {
+                    tokenEnd = parseCoordinates(buffer, keywordEnd, end, normals);
+                } else {
+                    normals.add(0);
+                    normals.add(0);
+                    normals.add(0);
+                }
+            }
+
+            i = tokenEnd;
+        }
+    }
+
+    /**
+     * Parses three coordinates that follow the specified position.
+     *
+     * @return position after the last coordinate
+     */
+    private static int parseCoordinates(ByteBuffer buffer, int i, int end,
+                                        Coordinates coordinates) throws IOException {
+        for (int c = 0; c < 3; c++) {
+            int numberStart = skipWhitespace(buffer, i, end);
+            if (numberStart >= end) {
+                throw new IOException("Incomplete coordinates at end of input");
+            }
+            i = skipToken(buffer, numberStart, end);
+            coordinates.add(FloatParser.parseFloat(buffer, numberStart, i));
+        }
+        return i;
+    }
+
+    /**
+     * Returns the position of the first {@code facet} keyword at or after the specified
+     * position. Parsing ranges that start at such a position never splits a vertex.
+     *
+     * @param channel  channel of the ASCII STL file
+     * @param position position to start the search from
+     * @param size     size of the file
+     * @return position of the next {@code facet} keyword or {@code size} if no further
+     * facet exists
+     * @throws IOException if an i/o error occurs
+     */
+    static long findFacetBoundary(FileChannel channel, long position, long size) throws IOException {
+
+        // blocks overlap by the keyword length (+ preceding and trailing whitespace) to
+        // detect keywords that cross block boundaries
+        int overlap = FACET.length + 1;
+
+        ByteBuffer block = ByteBuffer.allocate(SEARCH_BLOCK_SIZE);
+
+        // we need the preceding byte to distinguish 'facet' from 'endfacet'
+        long blockStart = Math.max(0, position - 1);
+
+        while (blockStart < size) {
+            block.clear();
+            while (block.hasRemaining()) {
+                int read = channel.read(block, blockStart + block.position());
+                if (read < 0) break;
+            }
+
+            int length = block.position();
+
+            for (int i = 0; i + FACET.length <= length; i++) {
+                long pos = blockStart + i;
+                if (pos < position) continue;
+
+                boolean precededByWhitespace = pos == 0 || isWhitespace(
+                        i == 0 ? readByte(channel, pos - 1) : block.get(i - 1));
+                if (!precededByWhitespace) continue;
+
+                int tokenEnd = i + FACET.length;
+                if (tokenEnd < length && !isWhitespace(block.get(tokenEnd))) continue;
+                if (tokenEnd == length && blockStart + length < size) continue;
+
+                if (isKeyword(block, i, tokenEnd, FACET)) {
+                    return pos;
+                }
+            }
+
+            if (blockStart + length >= size) break;
+
+            blockStart += Math.max(1, length - overlap);
+        }
+
+        return size;
+    }
+
+    private static byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        channel.read(b, position);
+        return b.get(0);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int i, int end) {
+        while (i < end && isWhitespace(buffer.get(i))) i++;
+        return i;
+    }
+
+    private static int skipToken(ByteBuffer buffer, int i, int end) {
+        while (i < end && !isWhitespace(buffer.get(i))) i++;
+        return i;
+    }
+
+    /**
+     * Indicates whether the specified token is equal to the given keyword (ignoring case).
+     */
+    private static boolean isKeyword(ByteBuffer buffer, int start, int end, byte[] keyword) {
+        if (end - start != keyword.length) return false;
+        for (int i = 0; i < keyword.length; i++) {
+            if ((buffer.get(start + i) | 0x20) != keyword[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Growable list of vertex coordinates.
+     */
+    static final class Coordinates {
+        private float[] data;
+        private int size;
+
+        Coordinates() {
+            this(3 * 1024);
+        }
+
+        Coordinates(int initialCapacity) {
+            this.data = new float[Math.max(3, initialCapacity)];
+        }
+
+        void add(float v) {
+            if (size == data.length) {
+                int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, data.length * 2L);
+                if (newCapacity == size) {
+                    throw new OutOfMemoryError("Too many vertex coordinates");
+                }
+                data = Arrays.copyOf(data, newCapacity);
+            }
+            data[size++] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void copyTo(float[] dest, int offset) {
+            System.arraycopy(data, 0, dest, offset, size);
+        }
+
+        void copyTo(int from, float[] dest, int offset, int length) {
+            System.arraycopy(data, from, dest, offset, length);
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        float[] toArray() {
+            return data.length == size ? data : Arrays.copyOf(data, size);
+        }
+    }
+}
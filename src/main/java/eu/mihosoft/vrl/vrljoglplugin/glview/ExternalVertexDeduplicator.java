@@ -0,0 +1,399 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Out-of-core vertex deduplicator for meshes whose triangle corners do not fit into the
+ * heap. The result is written to a {@link MeshFile}.
+ *
+ * Triangle corners are collected in bounded runs. Each run is sorted by its vertex
+ * coordinates and spilled to a temporary file. After the last triangle the runs are
+ * merged (k-way merge). Equal vertices are adjacent in the merged sequence, i.e., each
+ * unique vertex is assigned its index when it is encountered for the first time. The
+ * vertices are appended to the output file and the indices are written to the memory
+ * mapped index section (which is stored before the vertex section since its size is
+ * known in advance). Thus, the heap consumption only depends on the run size and the
+ * number of runs.
+ *
+ * In contrast to the in-memory deduplicators, unique vertices are stored in the order
+ * of their coordinates and not in the order of their first occurrence. Like
+ * {@link SortVertexDeduplicator} only exact duplicates are merged ({@code -0.0} and
+ * {@code 0.0} are considered equal).
+ *
+ * Sample:
+ * <pre>
+ * try (ExternalVertexDeduplicator dedup = new ExternalVertexDeduplicator(meshFile)) {
+ *     new STLLoader().streamTriangles(stlFile, dedup);
+ * }
+ * Mesh mesh = MeshFile.read(meshFile);
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class ExternalVertexDeduplicator implements TriangleConsumer, Closeable {
+
+    /**
+     * Default number of triangle corners per sorted run (a run needs 28 bytes of heap
+     * per corner).
+     */
+    public static final int DEFAULT_CORNERS_PER_RUN = 1 << 23;
+
+    // size of a corner record in a run file (coordinate bits and corner index)
+    private static final int RECORD_SIZE = 16;
+    // size of the i/o buffers (per run during merging)
+    private static final int IO_BUFFER_SIZE = 256 * 1024;
+    // maximum number of bytes mapped at once (multiple of the index size)
+    private static final int MAX_BYTES_PER_MAPPING = 1 << 30;
+    // maximum number of corners (indices are stored as int)
+    private static final long MAX_CORNERS = Integer.MAX_VALUE - 8;
+
+    private final File outputFile;
+    private final File tempDirectory;
+
+    // coordinate bits of the corners of the current run
+    private final int[] runX;
+    private final int[] runY;
+    private final int[] runZ;
+    private int runSize;
+
+    private long numCorners;
+    private int numVertices;
+
+    private final List<File> runFiles = new ArrayList<>();
+
+    /**
+     * Creates a new deduplicator that uses the default temporary directory and run size.
+     *
+     * @param outputFile mesh file to write the result to
+     */
+    public ExternalVertexDeduplicator(File outputFile) {
+        this(outputFile, null, DEFAULT_CORNERS_PER_RUN);
+    }
+
+    /**
+     * Creates a new deduplicator.
+     *
+     * @param outputFile    mesh file to write the result to
+     * @param tempDirectory directory for the run files ({@code null} for the default
+     *                      temporary directory)
+     * @param cornersPerRun number of triangle corners per sorted run
+     */
+    public ExternalVertexDeduplicator(File outputFile, File tempDirectory, int cornersPerRun) {
+        if (cornersPerRun < 1) {
+            throw new IllegalArgumentException("Run size must be positive: " + cornersPerRun);
+        }
+        this.outputFile = outputFile;
+        this.tempDirectory = tempDirectory;
+        this.runX = new int[cornersPerRun];
+        this.runY = new int[cornersPerRun];
+        this.runZ = new int[cornersPerRun];
+    }
+
+    @Override
+    public void accept(float[] positions, float[] normals, short[] attributes, int count) throws IOException {
+        if (numCorners + count * 3L > MAX_CORNERS) {
+            throw new IOException("Too many triangles for a single mesh: " + (numCorners / 3 + count));
+        }
+
+        for (int i = 0; i < count * 3; i++) {
+            // adding 0.0f maps -0.0f to 0.0f (both are equal)
+            runX[runSize] = Float.floatToIntBits(positions[i * 3 + 0] + 0.0f);
+            runY[runSize] = Float.floatToIntBits(positions[i * 3 + 1] + 0.0f);
+            runZ[runSize] = Float.floatToIntBits(positions[i * 3 + 2] + 0.0f);
+            runSize++;
+            numCorners++;
+
+            if (runSize == runX.length) {
+                spillRun();
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (runSize > 0) {
+            spillRun();
+        }
+
+        try {
+            merge();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Returns the number of unique vertices (available after {@link #finish()}).
+     *
+     * @return the number of unique vertices
+     */
+    public int getNumberOfVertices() {
+        return numVertices;
+    }
+
+    /**
+     * Returns the number of indices, i.e., the number of triangle corners.
+     *
+     * @return the number of indices
+     */
+    public long getNumberOfIndices() {
+        return numCorners;
+    }
+
+    /**
+     * Deletes all temporary run files. This is done automatically by {@link #finish()}
+     * but should be called if streaming fails.
+     */
+    @Override
+    public void close() {
+        for (File f : runFiles) {
+            f.delete();
+        }
+        runFiles.clear();
+    }
+
+    /**
+     * Sorts the current run by vertex coordinates and writes it to a temporary file.
+     */
+    private void spillRun() throws IOException {
+
+        int n = runSize;
+        long firstCorner = numCorners - n;
+
+        // three stable radix sorts (z, y, x) sort the run by (x, y, z)
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) runZ[i] << 32) | i;
+        }
+        AbstractVertexDeduplicator.radixSortByHash(keys);
+        for (int k = 0; k < n; k++) {
+            int i = (int) keys[k];
+            keys[k] = ((long) runY[i] << 32) | i;
+        }
+        AbstractVertexDeduplicator.radixSortByHash(keys);
+        for (int k = 0; k < n; k++) {
+            int i = (int) keys[k];
+            keys[k] = ((long) runX[i] << 32) | i;
+        }
+        AbstractVertexDeduplicator.radixSortByHash(keys);
+
+        File runFile = File.createTempFile("vrl-jogl-dedup-run", ".tmp", tempDirectory);
+        runFiles.add(runFile);
+
+        try (FileChannel channel = FileChannel.open(runFile.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int k = 0; k < n; k++) {
+                int i = (int) keys[k];
+                if (buffer.remaining() < RECORD_SIZE) {
+                    writeFully(channel, buffer);
+                }
+                buffer.putInt(runX[i]).putInt(runY[i]).putInt(runZ[i]).putInt((int) (firstCorner + i));
+            }
+            writeFully(channel, buffer);
+        }
+
+        System.out.println("-> external dedup: spilled run " + runFiles.size() + " (" + n + " corners)");
+
+        runSize = 0;
+    }
+
+    /**
+     * Merges the sorted runs and writes the output file.
+     */
+    private void merge() throws IOException {
+
+        System.out.println("-> external dedup: merging " + runFiles.size() + " runs");
+
+        int numIndices = (int) numCorners;
+
+        long indexOffset = MeshFile.HEADER_SIZE;
+        long indexLength = numIndices * 4L;
+        long vertexOffset = indexOffset + indexLength;
+
+        float[] bounds = {
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+
+        File tmpFile = File.createTempFile(outputFile.getName(), ".tmp",
+                outputFile.getAbsoluteFile().getParentFile());
+
+        List<RunReader> readers = new ArrayList<>(runFiles.size());
+
+        try {
+            try (FileChannel out = FileChannel.open(tmpFile.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                // the index section is written randomly via mapped windows
+                MappedByteBuffer[] indexWindows =
+                        new MappedByteBuffer[(int) ((indexLength + MAX_BYTES_PER_MAPPING - 1) / MAX_BYTES_PER_MAPPING)];
+                for (int w = 0; w < indexWindows.length; w++) {
+                    long start = (long) w * MAX_BYTES_PER_MAPPING;
+                    indexWindows[w] = out.map(FileChannel.MapMode.READ_WRITE, indexOffset + start,
+                            Math.min(MAX_BYTES_PER_MAPPING, indexLength - start));
+                    indexWindows[w].order(ByteOrder.LITTLE_ENDIAN);
+                }
+
+                // vertices are appended sequentially
+                ByteBuffer vertexBuffer = ByteBuffer.allocate(IO_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                long vertexPosition = vertexOffset;
+
+                PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runFiles.size()),
+                        Comparator.comparing((RunReader r) -> r.x, Integer::compareUnsigned)
+                                .thenComparing(r -> r.y, Integer::compareUnsigned)
+                                .thenComparing(r -> r.z, Integer::compareUnsigned));
+
+                for (File runFile : runFiles) {
+                    RunReader reader = new RunReader(runFile);
+                    readers.add(reader);
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+
+                int vertex = -1;
+                int x = 0, y = 0, z = 0;
+
+                while (!queue.isEmpty()) {
+                    RunReader r = queue.poll();
+
+                    if (vertex < 0 || r.x != x || r.y != y || r.z != z) {
+                        // new unique vertex
+                        vertex++;
+                        x = r.x;
+                        y = r.y;
+                        z = r.z;
+
+                        if (vertexBuffer.remaining() < 12) {
+                            vertexPosition += writeFully(out, vertexPosition, vertexBuffer);
+                        }
+
+                        float[] v = {Float.intBitsToFloat(x), Float.intBitsToFloat(y), Float.intBitsToFloat(z)};
+                        for (int c = 0; c < 3; c++) {
+                            vertexBuffer.putFloat(v[c]);
+                            bounds[c] = Math.min(bounds[c], v[c]);
+                            bounds[c + 3] = Math.max(bounds[c + 3], v[c]);
+                        }
+                    }
+
+                    long indexPosition = r.corner * 4L;
+                    indexWindows[(int) (indexPosition / MAX_BYTES_PER_MAPPING)].putInt(
+                            (int) (indexPosition % MAX_BYTES_PER_MAPPING), vertex);
+
+                    if (r.next()) {
+                        queue.add(r);
+                    }
+                }
+
+                writeFully(out, vertexPosition, vertexBuffer);
+
+                numVertices = vertex + 1;
+
+                if (numVertices == 0) {
+                    Arrays.fill(bounds, 0);
+                }
+
+                ByteBuffer header = MeshFile.createHeader(0, numVertices, numIndices, bounds,
+                        vertexOffset, numVertices * 12L, indexOffset, indexLength, 0, 0);
+                while (header.hasRemaining()) {
+                    out.write(header, header.position());
+                }
+
+                out.force(false);
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.close();
+                }
+            }
+
+            Files.move(tmpFile.toPath(), outputFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+
+        System.out.println("-> external dedup finished");
+        System.out.println("   #removed-verts:   " + (numCorners - numVertices));
+        System.out.println("   #remaining-verts: " + numVertices);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        buffer.clear();
+        return length;
+    }
+
+    /**
+     * Sequential reader for the records of a sorted run.
+     */
+    private static final class RunReader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        // current record
+        int x;
+        int y;
+        int z;
+        int corner;
+
+        RunReader(File f) throws IOException {
+            this.channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+            buffer.flip();
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return {@code true} if a record has been read; {@code false} if the end of the
+         * run has been reached
+         */
+        boolean next() throws IOException {
+            if (buffer.remaining() < RECORD_SIZE) {
+                buffer.compact();
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    //
+                }
+                buffer.flip();
+                if (buffer.remaining() < RECORD_SIZE) {
+                    return false;
+                }
+            }
+            x = buffer.getInt();
+            y = buffer.getInt();
+            z = buffer.getInt();
+            corner = buffer.getInt();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation-free float parser for ASCII encoded decimal numbers.
+ *
+ * The parser reads the number directly from a byte buffer and produces results that are
+ * bit-identical to {@link Float#parseFloat(String)}. Common numbers (up to 18 significant
+ * digits and a decimal exponent in {@code [-22,22]}) are computed with a single correctly
+ * rounded double operation. Everything else (special values, very long mantissas, extreme
+ * exponents, subnormals, values that would be affected by double rounding) is delegated to
+ * {@link Float#parseFloat(String)}.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+final class FloatParser {
+
+    // exactly representable powers of ten
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // doubles with more than 53 bits of mantissa cannot be represented exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    // number of double mantissa bits below the float precision
+    private static final long FLOAT_ROUNDING_BITS = (1L << 29) - 1;
+    // bit pattern of a double that is exactly halfway between two floats
+    private static final long FLOAT_HALFWAY_BITS = 1L << 28;
+
+    private FloatParser() {
+        throw new AssertionError("Don't instantiate me!");
+    }
+
+    /**
+     * Parses the float stored in the specified range of the given buffer.
+     *
+     * @param buffer buffer that contains the ASCII encoded number
+     * @param start  index of the first character of the number
+     * @param end    index after the last character of the number
+     * @return the parsed float
+     * @throws NumberFormatException if the specified range does not contain a valid number
+     */
+    static float parseFloat(ByteBuffer buffer, int start, int end) {
+
+        int i = start;
+
+        boolean negative = false;
+        if (i < end) {
+            byte b = buffer.get(i);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                i++;
+            }
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean digitsFound = false;
+
+        // integer part
+        for (; i < end; i++) {
+            int d = buffer.get(i) - '0';
+            if (d < 0 || d > 9) break;
+            digitsFound = true;
+            if (mantissa != 0 || d != 0) {
+                mantissa = mantissa * 10 + d;
+                significantDigits++;
+            }
+        }
+
+        // fraction part
+        if (i < end && buffer.get(i) == '.') {
+            i++;
+            for (; i < end; i++) {
+                int d = buffer.get(i) - '0';
+                if (d < 0 || d > 9) break;
+                digitsFound = true;
+                if (mantissa != 0 || d != 0) {
+                    mantissa = mantissa * 10 + d;
+                    significantDigits++;
+                }
+                exponent--;
+            }
+        }
+
+        // too many significant digits, i.e., the mantissa cannot be stored exactly
+        // in a long (might have overflown already)
+        if (!digitsFound || significantDigits > 18) {
+            return parseFallback(buffer, start, end);
+        }
+
+        // exponent part
+        if (i < end && (buffer.get(i) | 0x20) == 'e') {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end) {
+                byte b = buffer.get(i);
+                if (b == '-' || b == '+') {
+                    negativeExponent = b == '-';
+                    i++;
+                }
+            }
+            int exponentValue = 0;
+            boolean exponentDigitsFound = false;
+            for (; i < end; i++) {
+                int d = buffer.get(i) - '0';
+                if (d < 0 || d > 9) break;
+                exponentDigitsFound = true;
+                // large exponents are handled by the fallback
+                if (exponentValue < 10000) {
+                    exponentValue = exponentValue * 10 + d;
+                }
+            }
+            if (!exponentDigitsFound) {
+                return parseFallback(buffer, start, end);
+            }
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+        }
+
+        // unexpected trailing characters (e.g. 'f' or 'd' suffixes)
+        if (i != end) {
+            return parseFallback(buffer, start, end);
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0f : 0.0f;
+        }
+
+        if (mantissa >= MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return parseFallback(buffer, start, end);
+        }
+
+        // mantissa and power of ten are exact, thus, the result of this
+        // operation is the correctly rounded double value
+        double value = exponent < 0
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+
+        // subnormal floats and overflow are handled by the fallback
+        if (value < Float.MIN_NORMAL || value >= Float.MAX_VALUE) {
+            return parseFallback(buffer, start, end);
+        }
+
+        // converting the double to float only gives the correctly rounded float if
+        // the double is not exactly halfway between two floats (double rounding)
+        long bits = Double.doubleToRawLongBits(value);
+        if ((bits & FLOAT_ROUNDING_BITS) == FLOAT_HALFWAY_BITS) {
+            return parseFallback(buffer, start, end);
+        }
+
+        float result = (float) value;
+
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses the specified range via {@link Float#parseFloat(String)}.
+     *
+     * @param buffer buffer that contains the ASCII encoded number
+     * @param start  index of the first character of the number
+     * @param end    index after the last character of the number
+     * @return the parsed float
+     */
+    private static float parseFallback(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return Float.parseFloat(new String(bytes, StandardCharsets.US_ASCII));
+    }
+}
@@ -5,24 +5,67 @@ import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.util.GLBuffers;
 
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static com.jogamp.opengl.GL.GL_UNSIGNED_INT;
+import static com.jogamp.opengl.GL.GL_UNSIGNED_SHORT;
 
 /**
  * A simple wrapper around the GL element index buffer API.
  *
+ * Indices can either be stored as 32 bit integers or as 16 bit integers (see
+ * {@link #allocateCompact(IntBuffer)}). 16 bit indices are stored in chunks that
+ * reference at most {@link #MAX_VERTICES_PER_CHUNK} consecutive vertices starting at
+ * the base vertex of the chunk.
+ *
  * @author Michael Hoffer <info@michaelhoffer.de>
  */
 public class GLIndexBuffer implements GLObject {
+
+    /**
+     * Maximum number of vertices that can be referenced by a chunk of 16 bit indices.
+     */
+    public static final int MAX_VERTICES_PER_CHUNK = 1 << 16;
+
+    // minimum average number of triangles per chunk (otherwise, the draw call
+    // overhead outweighs the memory savings of 16 bit indices)
+    private static final int MIN_TRIANGLES_PER_CHUNK = 4096;
+
     private final GL3 gl;
     private int size;
 
+    // GL_UNSIGNED_INT or GL_UNSIGNED_SHORT
+    private int type = GL_UNSIGNED_INT;
+    // (first index, number of indices, base vertex) per chunk
+    private int[] chunks = new int[0];
+
     private int[] bufferObj = new int[1];
 
     public GLIndexBuffer(GL3 gl) {
         this.gl = gl;
     }
 
+    /**
+     * Creates a buffer that refers to the specified buffer of another GL context of
+     * the same share group.
+     *
+     * @param gl     gl object (of the current context)
+     * @param shared shared buffer
+     */
+    GLIndexBuffer(GL3 gl, GLIndexBuffer shared) {
+        this.gl = gl;
+        this.bufferObj[0] = shared.bufferObj[0];
+        this.size = shared.size;
+        this.type = shared.type;
+        this.chunks = shared.chunks;
+    }
+
     public void create() {
         gl.glGenBuffers(1, bufferObj, 0);
+        GLResources.created(gl, GLResources.Kind.BUFFER, getGLHandle(), this);
     }
 
     @Override
@@ -34,6 +77,20 @@ public class GLIndexBuffer implements GLObject {
         gl.glBindBuffer(gl.GL_ELEMENT_ARRAY_BUFFER, getGLHandle());
     }
 
+    /**
+     * Deletes this buffer (releases the GPU memory).
+     */
+    @Override
+    public void delete() {
+        if (getGLHandle() != 0) {
+            gl.glDeleteBuffers(1, bufferObj, 0);
+            GLResources.deleted(gl, GLResources.Kind.BUFFER, getGLHandle());
+            bufferObj[0] = 0;
+            size = 0;
+            chunks = new int[0];
+        }
+    }
+
     public void release() {
         // unbind the VBO and VAO
         gl.glBindBuffer(gl.GL_ELEMENT_ARRAY_BUFFER, 0);
@@ -41,10 +98,232 @@ public class GLIndexBuffer implements GLObject {
 
     public void allocate(int[] data) {
         this.size = data.length;
+        this.type = GL_UNSIGNED_INT;
+        this.chunks = new int[]{0, data.length, 0};
         Buffer buffer = Buffers.newDirectIntBuffer(data);
         int bufferByteSize = buffer.capacity() * Buffers.SIZEOF_INT;
         gl.glBufferData(gl.GL_ELEMENT_ARRAY_BUFFER, bufferByteSize, buffer, gl.GL_STATIC_DRAW);
+        GLResources.allocated(gl, GLResources.Kind.BUFFER, getGLHandle(),
+                (long) size * bytesPerIndex());
+
+    }
+
+    /**
+     * Allocates this buffer and uploads the specified data. Direct and heap buffers
+     * are passed to GL without creating an intermediate copy.
+     *
+     * @param data data to upload (from index 0 to the limit of the buffer)
+     */
+    public void allocate(IntBuffer data) {
+        IntBuffer buffer = data.duplicate();
+        buffer.position(0);
+        this.size = buffer.limit();
+        this.type = GL_UNSIGNED_INT;
+        this.chunks = new int[]{0, size, 0};
+        long bufferByteSize = (long) buffer.limit() * Buffers.SIZEOF_INT;
+        gl.glBufferData(gl.GL_ELEMENT_ARRAY_BUFFER, bufferByteSize, buffer, gl.GL_STATIC_DRAW);
+        GLResources.allocated(gl, GLResources.Kind.BUFFER, getGLHandle(),
+                (long) size * bytesPerIndex());
+    }
+
+    /**
+     * Allocates this buffer for 32 bit indices without uploading data. The data is
+     * uploaded incrementally via {@link #update(int, IntBuffer)}.
+     *
+     * @param numIndices number of indices
+     */
+    public void reserve(int numIndices) {
+        this.size = numIndices;
+        this.type = GL_UNSIGNED_INT;
+        this.chunks = new int[]{0, numIndices, 0};
+        gl.glBufferData(gl.GL_ELEMENT_ARRAY_BUFFER, (long) numIndices * Buffers.SIZEOF_INT,
+                null, gl.GL_DYNAMIC_DRAW);
+        GLResources.allocated(gl, GLResources.Kind.BUFFER, getGLHandle(),
+                (long) size * bytesPerIndex());
+    }
+
+    /**
+     * Uploads the specified indices to the specified range of this buffer (the buffer
+     * must be bound, large enough and store 32 bit indices).
+     *
+     * @param firstIndex first index of the range to update
+     * @param data       indices to upload (from the position to the limit of the buffer)
+     */
+    public void update(int firstIndex, IntBuffer data) {
+        if (type != GL_UNSIGNED_INT) {
+            throw new IllegalStateException("Only 32 bit indices can be updated");
+        }
+        if (firstIndex < 0 || firstIndex + data.remaining() > size) {
+            throw new IndexOutOfBoundsException("Range [" + firstIndex + ", "
+                    + (firstIndex + data.remaining()) + ") exceeds buffer size " + size);
+        }
+        gl.glBufferSubData(gl.GL_ELEMENT_ARRAY_BUFFER, (long) firstIndex * Buffers.SIZEOF_INT,
+                (long) data.remaining() * Buffers.SIZEOF_INT, data);
+    }
+
+    /**
+     * Allocates this buffer and uploads the specified triangle indices as 16 bit
+     * integers if possible. Meshes with more than {@link #MAX_VERTICES_PER_CHUNK}
+     * vertices are split into chunks that are drawn with a base vertex offset. If the
+     * indices are too scattered (too many small chunks), 32 bit indices are used.
+     *
+     * @param data triangle indices to upload (from index 0 to the limit of the buffer)
+     */
+    public void allocateCompact(IntBuffer data) {
+        int[] compactChunks = computeChunks(data, MAX_VERTICES_PER_CHUNK);
+
+        int numTriangles = data.limit() / 3;
+        if (compactChunks == null
+                || compactChunks.length / 3 > Math.max(1, numTriangles / MIN_TRIANGLES_PER_CHUNK)) {
+            allocate(data);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.limit() * Buffers.SIZEOF_SHORT)
+                .order(ByteOrder.nativeOrder());
+
+        for (int c = 0; c < compactChunks.length; c += 3) {
+            int first = compactChunks[c];
+            int count = compactChunks[c + 1];
+            int baseVertex = compactChunks[c + 2];
+            for (int i = first; i < first + count; i++) {
+                buffer.putShort(i * Buffers.SIZEOF_SHORT, (short) (data.get(i) - baseVertex));
+            }
+        }
+
+        this.size = data.limit();
+        this.type = GL_UNSIGNED_SHORT;
+        this.chunks = compactChunks;
 
+        gl.glBufferData(gl.GL_ELEMENT_ARRAY_BUFFER, buffer.capacity(), buffer, gl.GL_STATIC_DRAW);
+
+        GLResources.allocated(gl, GLResources.Kind.BUFFER, getGLHandle(),
+                (long) size * bytesPerIndex());
+    }
+
+    /**
+     * Splits the specified triangle indices into chunks of consecutive triangles that
+     * reference at most {@code maxVertices} consecutive vertices.
+     *
+     * @param indices     triangle indices
+     * @param maxVertices maximum number of vertices per chunk
+     * @return {@code (first index, number of indices, base vertex)} per chunk or
+     * {@code null} if the number of indices is not a multiple of 3
+     */
+    static int[] computeChunks(IntBuffer indices, int maxVertices) {
+        int n = indices.limit();
+
+        if (n % 3 != 0) {
+            return null;
+        }
+
+        int[] result = new int[3 * 4];
+        int numChunks = 0;
+
+        int first = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+
+        for (int t = 0; t < n; t += 3) {
+            int a = indices.get(t), b = indices.get(t + 1), c = indices.get(t + 2);
+            int triMin = Math.min(a, Math.min(b, c));
+            int triMax = Math.max(a, Math.max(b, c));
+
+            int newMin = Math.min(min, triMin);
+            int newMax = Math.max(max, triMax);
+
+            if ((long) newMax - newMin >= maxVertices && t > first) {
+                // triangle does not fit into the current chunk
+                if (result.length < (numChunks + 1) * 3) {
+                    result = Arrays.copyOf(result, result.length * 2);
+                }
+                result[numChunks * 3] = first;
+                result[numChunks * 3 + 1] = t - first;
+                result[numChunks * 3 + 2] = min;
+                numChunks++;
+
+                first = t;
+                newMin = triMin;
+                newMax = triMax;
+            }
+
+            if ((long) newMax - newMin >= maxVertices) {
+                // a single triangle spans too many vertices
+                return null;
+            }
+
+            min = newMin;
+            max = newMax;
+        }
+
+        if (n > first) {
+            if (result.length < (numChunks + 1) * 3) {
+                result = Arrays.copyOf(result, result.length * 2);
+            }
+            result[numChunks * 3] = first;
+            result[numChunks * 3 + 1] = n - first;
+            result[numChunks * 3 + 2] = min;
+            numChunks++;
+        }
+
+        return Arrays.copyOf(result, numChunks * 3);
+    }
+
+    /**
+     * Returns the GL type of the indices ({@code GL_UNSIGNED_INT} or
+     * {@code GL_UNSIGNED_SHORT}).
+     *
+     * @return the GL type of the indices
+     */
+    public int getIndexType() {
+        return type;
+    }
+
+    /**
+     * Returns the number of chunks.
+     *
+     * @return the number of chunks
+     */
+    public int numChunks() {
+        return chunks.length / 3;
+    }
+
+    /**
+     * Returns the first index of the specified chunk.
+     *
+     * @param chunk chunk
+     * @return the first index of the specified chunk
+     */
+    public int chunkFirstIndex(int chunk) {
+        return chunks[chunk * 3];
+    }
+
+    /**
+     * Returns the number of indices of the specified chunk.
+     *
+     * @param chunk chunk
+     * @return the number of indices of the specified chunk
+     */
+    public int chunkNumIndices(int chunk) {
+        return chunks[chunk * 3 + 1];
+    }
+
+    /**
+     * Returns the base vertex of the specified chunk (added to all indices of the chunk).
+     *
+     * @param chunk chunk
+     * @return the base vertex of the specified chunk
+     */
+    public int chunkBaseVertex(int chunk) {
+        return chunks[chunk * 3 + 2];
+    }
+
+    /**
+     * Returns the number of bytes per index.
+     * @return the number of bytes per index
+     */
+    public int bytesPerIndex() {
+        return type == GL_UNSIGNED_SHORT ? GLBuffers.SIZEOF_SHORT : GLBuffers.SIZEOF_INT;
     }
 
     /**
@@ -52,12 +331,12 @@ public class GLIndexBuffer implements GLObject {
      * @return the buffer size in bytes
      */
     public int size() {
-        return this.size*GLBuffers.SIZEOF_INT;
+        return this.size*bytesPerIndex();
     }
 
     /**
-     * Returns the number of ints in this buffer.
-     * @return the number of ints in this buffer
+     * Returns the number of indices in this buffer.
+     * @return the number of indices in this buffer
      */
     public int numElements() {
         return this.size;
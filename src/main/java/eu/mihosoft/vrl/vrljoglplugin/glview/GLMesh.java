@@ -1,7 +1,11 @@
 package eu.mihosoft.vrl.vrljoglplugin.glview;
 
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.common.nio.PointerBuffer;
 import com.jogamp.opengl.GL3;
-import com.jogamp.opengl.util.GLBuffers;
+import org.joml.Matrix4f;
+
+import java.nio.IntBuffer;
 
 import static com.jogamp.opengl.GL.*;
 
@@ -15,89 +19,155 @@ public class GLMesh {
     private GL3 gl;
 
     private GLVertexBuffer vertices;
+    private GLVertexBuffer colors;
     private GLIndexBuffer indices;
 
     private Mesh mesh;
 
+    private final VertexLayout layout;
+
+    // transforms stored positions to mesh coordinates
+    private final Matrix4f positionTransform = new Matrix4f();
+
+    // (number of indices, byte offset, base vertex) per draw of a multi draw call
+    // (grown on demand)
+    private IntBuffer drawCounts;
+    private PointerBuffer drawOffsets;
+    private IntBuffer drawBaseVertices;
 
     /**
-     * Constructor. Creates a GLMesh object.
+     * Constructor. Creates a GLMesh object with the most compact vertex layout for
+     * the specified mesh (see {@link VertexLayout#select(Mesh)}).
      *
      * @param gl   gl object
      * @param mesh triangle glMesh to render
      */
     GLMesh(GL3 gl, Mesh mesh) {
+        this(gl, mesh, VertexLayout.select(mesh));
+    }
+
+    /**
+     * Constructor. Creates a GLMesh object.
+     *
+     * Positions and colors are uploaded as separate buffers. Data that is stored in
+     * the format of the mesh is uploaded directly from the mesh buffers, i.e., without
+     * creating a copy.
+     *
+     * @param gl     gl object
+     * @param mesh   triangle glMesh to render
+     * @param layout vertex layout
+     */
+    GLMesh(GL3 gl, Mesh mesh, VertexLayout layout) {
         this.gl = gl;
         this.mesh = mesh;
+        this.layout = layout;
 
         vertices = new GLVertexBuffer(gl);
         indices = new GLIndexBuffer(gl);
 
         vertices.create();
         vertices.bind();
-
-        if (mesh.colors != null && mesh.colors.length > 0) {
-
-            float[] posAndColor = new float[mesh.vertices.length + mesh.colors.length];
-
-            for (int i = 0; i < mesh.vertices.length/3; i++) {
-
-                int idx = i * 7;
-
-                // vertex position
-                posAndColor[idx + 0] = mesh.vertices[i * 3 + 0];
-                posAndColor[idx + 1] = mesh.vertices[i * 3 + 1];
-                posAndColor[idx + 2] = mesh.vertices[i * 3 + 2];
-
-                // vertex color
-                posAndColor[idx + 3] = mesh.colors[i*4 + 0];
-                posAndColor[idx + 4] = mesh.colors[i*4 + 1];
-                posAndColor[idx + 5] = mesh.colors[i*4 + 2];
-                posAndColor[idx + 6] = mesh.colors[i*4 + 3];
+        if (layout.isPositionNormalized()) {
+            Mesh.Bounds bounds = mesh.getBounds();
+            float[] center = new float[3];
+            float[] extent = new float[3];
+            for (int c = 0; c < 3; c++) {
+                double min = bounds.getMin().get(c);
+                double max = bounds.getMax().get(c);
+                center[c] = (float) ((min + max) * 0.5);
+                // flat meshes
+                extent[c] = max > min ? (float) ((max - min) * 0.5) : 1f;
             }
-
-            //System.arraycopy(mesh.vertices, 0, posAndColor,0, mesh.vertices.length);
-            //System.arraycopy(mesh.colors, 0, posAndColor,mesh.vertices.length, mesh.colors.length);
-
-
-            vertices.allocate(posAndColor);
-
+            vertices.allocate(layout.encodePositions(mesh.vertices, center, extent));
+            positionTransform.translation(center[0], center[1], center[2])
+                    .scale(extent[0], extent[1], extent[2]);
         } else {
+            vertices.allocate(mesh.vertices);
+        }
+        vertices.release();
 
-            float[] posAndColor = new float[mesh.vertices.length + mesh.vertices.length/3*4];
-
-            int counter = 0;
-
-            for (int i = 0; i < mesh.vertices.length / 3; i++) {
+        if (layout.getColorFormat() != VertexLayout.ColorFormat.NONE && mesh.hasColors()) {
+            colors = new GLVertexBuffer(gl);
+            colors.create();
+            colors.bind();
+            if (layout.getColorFormat() == VertexLayout.ColorFormat.RGBA8) {
+                colors.allocate(VertexLayout.encodeColors(mesh.colors));
+            } else {
+                colors.allocate(mesh.colors);
+            }
+            colors.release();
+        }
 
-                int idx = counter + i * 3;
+        indices.create();
+        indices.bind();
+        indices.allocateCompact(mesh.indices);
+        indices.release();
+    }
 
-                // vertex position
-                posAndColor[idx + 0] = mesh.vertices[i * 3 + 0];
-                posAndColor[idx + 1] = mesh.vertices[i * 3 + 1];
-                posAndColor[idx + 2] = mesh.vertices[i * 3 + 2];
+    /**
+     * Constructor. Creates a glMesh that draws the GPU buffers of the specified glMesh
+     * with the given gl object. Both gl objects must belong to the same share group.
+     *
+     * @param gl     gl object (of the current context)
+     * @param shared glMesh that owns the GPU buffers
+     */
+    GLMesh(GL3 gl, GLMesh shared) {
+        this.gl = gl;
+        this.mesh = shared.mesh;
+        this.layout = shared.layout;
+        this.positionTransform.set(shared.positionTransform);
 
-                // vertex color
-                posAndColor[idx + 3] = mesh.globalColor[0];
-                posAndColor[idx + 4] = mesh.globalColor[1];
-                posAndColor[idx + 5] = mesh.globalColor[2];
-                posAndColor[idx + 6] = mesh.globalColor[3];
+        setShared(shared);
+    }
 
-                counter += 4; // r,g,b,a
-            }
+    /**
+     * Lets this glMesh draw the GPU buffers of the specified glMesh (e.g. after the
+     * buffers have been uploaded again).
+     *
+     * @param shared glMesh that owns the GPU buffers
+     */
+    void setShared(GLMesh shared) {
+        this.vertices = new GLVertexBuffer(gl, shared.vertices);
+        this.colors = shared.colors == null ? null : new GLVertexBuffer(gl, shared.colors);
+        this.indices = new GLIndexBuffer(gl, shared.indices);
+    }
 
-            //System.arraycopy(mesh.vertices, 0, posAndColor,0, mesh.vertices.length);
-            //System.arraycopy(mesh.colors, 0, posAndColor,mesh.vertices.length, mesh.colors.length);
+    /**
+     * Returns the mesh drawn by this glMesh.
+     *
+     * @return the mesh drawn by this glMesh
+     */
+    Mesh getMesh() {
+        return mesh;
+    }
 
-            vertices.allocate(posAndColor);
-        }
+    /**
+     * Returns the GPU memory used by this glMesh.
+     *
+     * @return the GPU memory used by this glMesh in bytes
+     */
+    public long getGPUMemorySize() {
+        return (long) vertices.size() + (colors == null ? 0 : colors.size()) + indices.size();
+    }
 
-        vertices.release();
+    /**
+     * Returns the vertex layout of this glMesh.
+     *
+     * @return the vertex layout of this glMesh
+     */
+    public VertexLayout getLayout() {
+        return layout;
+    }
 
-        indices.create();
-        indices.bind();
-        indices.allocate(mesh.indices);
-        indices.release();
+    /**
+     * Returns the transformation from stored positions to mesh coordinates. This
+     * transformation has to be applied before the model transformation (identity for
+     * {@link VertexLayout.PositionFormat#FLOAT}).
+     *
+     * @return the transformation from stored positions to mesh coordinates
+     */
+    public Matrix4f getPositionTransform() {
+        return new Matrix4f(positionTransform);
     }
 
     /**
@@ -109,11 +179,9 @@ public class GLMesh {
         vertices.bind();
         indices.bind();
 
-        gl.glVertexAttribPointer(vertexPosition, 3, GL_FLOAT, false,
-                3 * GLBuffers.SIZEOF_FLOAT, 0);
+        setPositionPointer(vertexPosition);
 
-        gl.glDrawElements(GL_TRIANGLES, indices.numElements(),
-                GL_UNSIGNED_INT, 0);
+        drawElements();
 
         vertices.release();
         indices.release();
@@ -123,29 +191,147 @@ public class GLMesh {
      * Draws this glMesh.
      *
      * @param vertexPosition vertex position handle
+     * @param colorPosition vertex color handle
      */
     void draw(int vertexPosition, int colorPosition) {
-        vertices.bind();
-        indices.bind();
+        draw(vertexPosition, colorPosition, null, 0);
+    }
 
+    /**
+     * Draws the specified index ranges of this glMesh with a single multi draw call
+     * (e.g. the visible ranges determined by {@link Meshlets#cull}).
+     *
+     * @param vertexPosition vertex position handle
+     * @param colorPosition vertex color handle
+     * @param ranges {@code (first index, number of indices)} per range (sorted and
+     *               non-overlapping) or {@code null} to draw all indices
+     * @param numRanges number of ranges
+     */
+    void draw(int vertexPosition, int colorPosition, int[] ranges, int numRanges) {
 
-        // first we store the vertex coordinates
-        gl.glVertexAttribPointer(vertexPosition, 3/*(x,y,z)*/, GL_FLOAT, false,
-                7 * GLBuffers.SIZEOF_FLOAT, 0);
+        // vertex coordinates
+        vertices.bind();
+        setPositionPointer(vertexPosition);
 
-        // colors are added after the vertex coordinates
-        gl.glVertexAttribPointer(colorPosition, 4/*(r,g,b,a)*/, GL_FLOAT, false,
-                7 * GLBuffers.SIZEOF_FLOAT, 3 * GLBuffers.SIZEOF_FLOAT);
+        if (colors != null) {
+            // per-vertex colors (8 bit colors are normalized to [0,1])
+            colors.bind();
+            gl.glVertexAttribPointer(colorPosition, 4/*(r,g,b,a)*/, layout.colorType(),
+                    layout.colorType() != GL_FLOAT, layout.colorStride(), 0);
+        } else {
+            // constant color (no buffer needed)
+            gl.glDisableVertexAttribArray(colorPosition);
+            gl.glVertexAttrib4f(colorPosition, mesh.globalColor[0], mesh.globalColor[1],
+                    mesh.globalColor[2], mesh.globalColor[3]);
+        }
 
+        indices.bind();
 
-        gl.glDrawElements(GL_TRIANGLES, indices.numElements(),
-                GL_UNSIGNED_INT, 0);
+        if (ranges == null) {
+            drawElements();
+        } else {
+            drawElements(ranges, numRanges);
+        }
 
         vertices.release();
         indices.release();
     }
 
+    /**
+     * Draws all index chunks (16 bit index chunks are drawn relative to their base
+     * vertex).
+     */
+    private void drawElements() {
+        int type = indices.getIndexType();
+        int bytesPerIndex = indices.bytesPerIndex();
+
+        for (int c = 0; c < indices.numChunks(); c++) {
+            long offset = (long) indices.chunkFirstIndex(c) * bytesPerIndex;
+            int baseVertex = indices.chunkBaseVertex(c);
+            if (baseVertex == 0) {
+                gl.glDrawElements(GL_TRIANGLES, indices.chunkNumIndices(c), type, offset);
+            } else {
+                gl.glDrawElementsBaseVertex(GL_TRIANGLES, indices.chunkNumIndices(c), type,
+                        offset, baseVertex);
+            }
+        }
+    }
+
+    /**
+     * Draws the specified index ranges. Ranges are split at chunk boundaries (16 bit
+     * index chunks are drawn relative to their base vertex).
+     *
+     * @param ranges {@code (first index, number of indices)} per range (sorted and
+     *               non-overlapping)
+     * @param numRanges number of ranges
+     */
+    private void drawElements(int[] ranges, int numRanges) {
+        int type = indices.getIndexType();
+        int bytesPerIndex = indices.bytesPerIndex();
+
+        // each chunk boundary splits at most one range
+        int maxDraws = numRanges + indices.numChunks();
+        if (drawCounts == null || drawCounts.capacity() < maxDraws) {
+            int capacity = Math.max(maxDraws, drawCounts == null ? 64 : drawCounts.capacity() * 2);
+            drawCounts = Buffers.newDirectIntBuffer(capacity);
+            drawOffsets = PointerBuffer.allocateDirect(capacity);
+            drawBaseVertices = Buffers.newDirectIntBuffer(capacity);
+        }
+
+        int numDraws = 0;
+        boolean baseVertices = false;
+        int c = 0;
+
+        for (int r = 0; r < numRanges; r++) {
+            int first = ranges[r * 2];
+            int end = first + ranges[r * 2 + 1];
+
+            while (first < end) {
+                while (indices.chunkFirstIndex(c) + indices.chunkNumIndices(c) <= first) {
+                    c++;
+                }
+                int last = Math.min(end, indices.chunkFirstIndex(c) + indices.chunkNumIndices(c));
+
+                drawCounts.put(numDraws, last - first);
+                drawOffsets.put(numDraws, (long) first * bytesPerIndex);
+                drawBaseVertices.put(numDraws, indices.chunkBaseVertex(c));
+                baseVertices |= indices.chunkBaseVertex(c) != 0;
+                numDraws++;
+
+                first = last;
+            }
+        }
+
+        if (numDraws == 0) {
+            return;
+        }
+
+        if (baseVertices) {
+            gl.glMultiDrawElementsBaseVertex(GL_TRIANGLES, drawCounts, type, drawOffsets,
+                    numDraws, drawBaseVertices);
+        } else {
+            gl.glMultiDrawElements(GL_TRIANGLES, drawCounts, type, drawOffsets, numDraws);
+        }
+    }
+
+    private void setPositionPointer(int vertexPosition) {
+        // snorm positions are normalized to [-1,1]
+        gl.glVertexAttribPointer(vertexPosition, 3/*(x,y,z)*/, layout.positionType(),
+                layout.positionType() == GL_SHORT, layout.positionStride(), 0);
+    }
+
+    /**
+     * Deletes the GPU buffers of this glMesh. This glMesh must not be drawn afterwards.
+     */
+    void delete() {
+        vertices.delete();
+        if (colors != null) {
+            colors.delete();
+        }
+        indices.delete();
+    }
+
     public boolean isColorDataPresent() {
-        return mesh.colors != null && mesh.colors.length > 0;
+        return colors != null;
     }
 }
\ No newline at end of file
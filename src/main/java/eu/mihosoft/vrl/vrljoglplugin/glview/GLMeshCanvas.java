@@ -11,6 +11,7 @@ import eu.mihosoft.vrl.vrljoglplugin.JOGLCanvas3D;
 import eu.mihosoft.vrl.vrljoglplugin.Visualization;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.joml.Vector4f;
 
 import javax.swing.*;
 import java.awt.*;
@@ -18,6 +19,10 @@ import java.awt.event.*;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A simple GL canvas.
@@ -26,6 +31,9 @@ import java.util.List;
  */
 public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotionListener, MouseWheelListener, Visualization {
 
+    // color of progressive meshes (same as the default mesh color)
+    private static final float[] PROGRESSIVE_MESH_COLOR = {1.f, 1.f, 1.f, 1.f};
+
     // jogl drawable
     private GLAutoDrawable drawable;
     // jogl gl object (access to gl API)
@@ -40,6 +48,72 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
     // mesh
     private Mesh mesh;
 
+    // mesh that has been set from another thread and that is swapped in on the GL thread
+    private final AtomicReference<Mesh> pendingMesh = new AtomicReference<>();
+
+    // levels of detail that have been set from another thread
+    private final AtomicReference<LODChain> pendingLODChain = new AtomicReference<>();
+
+    // selects the level of detail to draw (null if the mesh has no levels of detail)
+    private LODSelector lodSelector;
+
+    // gl meshes of the levels of detail (acquired on first use, level 0 is glMesh)
+    private GLMesh[] lodMeshes;
+
+    // maximum error of the drawn level of detail (in window pixels)
+    private float maxPixelError = 0.5f;
+
+    // progressive mesh that has been set from another thread
+    private final AtomicReference<ProgressiveMesh> pendingProgressiveMesh = new AtomicReference<>();
+
+    // progressive mesh that is displayed until the final mesh is available
+    private ProgressiveMesh progressiveMesh;
+
+    // gl mesh of the progressive mesh (new data is uploaded before drawing)
+    private GLProgressiveMesh glProgressiveMesh;
+
+    // redraws the canvas when new data has been appended to the progressive mesh
+    private final Runnable progressiveListener = this::updateDisplay;
+
+    // mesh that is currently loaded (cancelled on dispose)
+    private CompletableFuture<Mesh> meshFuture;
+
+    // loading state of the mesh future (null if there is nothing to show)
+    private volatile String status;
+
+    // indicates whether the status is an error
+    private volatile boolean statusError;
+
+    // canvas this visualization has been added to (null if not initialized)
+    private JOGLCanvas3D canvas;
+
+    // shows the status on top of the canvas (null if no status is shown)
+    private JLabel statusLabel;
+
+    // ray casting hierarchy of the displayed mesh (built on the first pick)
+    private CompletableFuture<MeshBVH> bvhFuture;
+
+    // listeners that are notified about picked points
+    private final List<PickListener> pickListeners = new CopyOnWriteArrayList<>();
+
+    // meshlets that have been set from another thread
+    private final AtomicReference<Meshlets> pendingMeshlets = new AtomicReference<>();
+
+    // meshlets of the displayed mesh (null if the mesh is drawn without culling)
+    private Meshlets meshlets;
+
+    // octree that has been set from another thread
+    private final AtomicReference<MeshOctree> pendingOctree = new AtomicReference<>();
+
+    // octree of the displayed mesh (used for culling if zooming to inner is allowed)
+    private MeshOctree octree;
+
+    // visible index ranges of the current frame
+    private int[] visibleRanges;
+
+    // culls back-facing meshlets and triangles (closed meshes only)
+    private boolean backfaceCulling;
+
     // scalable surface (for HiDPI aware mouse control/rendering)
     private ScalableSurface scalableSurface;
 
@@ -48,6 +122,12 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
 
     private Vector3f center = new Vector3f();
 
+    // center of the mesh bounds (moved to the origin)
+    private Vector3f meshCenter = new Vector3f();
+
+    // scale that fits the mesh into the unit cube
+    private float meshScale = 1.0f;
+
     // object scale (to fit it in unit cube)
     private float scale;
 
@@ -108,6 +188,271 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
         setAnimationEnabled(true);
     }
 
+    /**
+     * Creates a canvas that displays the specified levels of detail. The level to draw
+     * is selected per frame from the projected size of the mesh.
+     *
+     * @param lods levels of detail to display
+     * @see #setMaxPixelError(float)
+     */
+    public GLMeshCanvas(LODChain lods) {
+        this(lods.getOriginal());
+        pendingLODChain.set(lods);
+    }
+
+    /**
+     * Creates a canvas that displays the specified mesh while it is loaded. New data is
+     * drawn as soon as it is appended. Use {@link #setMesh(Mesh)} to replace the
+     * progressive mesh by the final mesh (the view is kept).
+     *
+     * @param mesh progressive mesh to display
+     * @see STLLoader#loadMeshAsync(java.io.File, ProgressiveMesh)
+     */
+    public GLMeshCanvas(ProgressiveMesh mesh) {
+        setAnimationEnabled(true);
+        setProgressiveMesh(mesh);
+    }
+
+    /**
+     * Creates a canvas that displays the specified mesh as soon as it is available.
+     * Until then a loading message is shown (see {@link #setMesh(Mesh)} and
+     * {@link #setProgressiveMesh(ProgressiveMesh)} for showing a preview). If loading
+     * fails, the error is shown instead. If this visualization is disposed before the
+     * mesh is available, the future is cancelled.
+     *
+     * @param mesh future that provides the mesh to display
+     */
+    public GLMeshCanvas(CompletableFuture<Mesh> mesh) {
+        setAnimationEnabled(true);
+        setMesh(mesh);
+    }
+
+    /**
+     * Defines the mesh to display. This method can be called from any thread. The mesh
+     * is swapped in on the GL thread during the next frame.
+     *
+     * @param mesh mesh to display
+     */
+    public void setMesh(Mesh mesh) {
+        pendingMesh.set(mesh);
+        updateDisplay();
+    }
+
+    /**
+     * Displays the specified mesh as soon as it is available. A loading message is
+     * shown until then and an error message if loading fails. The previously specified
+     * future is cancelled if it is not done yet.
+     *
+     * @param mesh future that provides the mesh to display
+     */
+    public void setMesh(CompletableFuture<Mesh> mesh) {
+        cancelMeshFuture();
+
+        meshFuture = mesh;
+
+        if (!mesh.isDone()) {
+            setStatus("loading mesh...", false);
+        }
+
+        mesh.whenComplete((m, ex) -> {
+            if (ex == null) {
+                setMesh(m);
+                setStatus(null, false);
+            } else if (!mesh.isCancelled()) {
+                showError("cannot load mesh", ex);
+            }
+        });
+    }
+
+    /**
+     * Shows the specified error on top of the canvas, e.g., if a background stage
+     * (levels of detail, meshlets) fails. The displayed mesh is kept. This method can
+     * be called from any thread.
+     *
+     * @param message error message (e.g. {@code "cannot build meshlets"})
+     * @param ex cause of the error
+     */
+    public void showError(String message, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null
+                ? ex.getCause() : ex;
+        System.err.println("-> [VRL-JOGL]: " + message + ": " + cause.getMessage());
+        setStatus(message + ": " + cause.getMessage(), true);
+    }
+
+    /**
+     * Defines the status to show on top of the canvas. This method can be called from
+     * any thread.
+     *
+     * @param status status to show ({@code null} to hide the status)
+     * @param error defines whether the status is an error
+     */
+    private void setStatus(String status, boolean error) {
+        this.status = status;
+        this.statusError = error;
+        SwingUtilities.invokeLater(this::updateStatusLabel);
+    }
+
+    /**
+     * Shows the current status on top of the canvas (must be called from the event
+     * dispatch thread).
+     */
+    private void updateStatusLabel() {
+        if (canvas == null) {
+            // shown as soon as the canvas is initialized
+            return;
+        }
+
+        String s = status;
+
+        if (s == null) {
+            if (statusLabel != null) {
+                canvas.remove(statusLabel);
+                statusLabel = null;
+                canvas.revalidate();
+                canvas.repaint();
+            }
+            return;
+        }
+
+        if (statusLabel == null) {
+            // the label does not consume mouse events, i.e., the view can be controlled
+            statusLabel = new JLabel();
+            statusLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            statusLabel.setVerticalAlignment(SwingConstants.BOTTOM);
+            canvas.add(statusLabel, BorderLayout.CENTER);
+            canvas.revalidate();
+        }
+
+        statusLabel.setText(s);
+        statusLabel.setForeground(statusError ? Color.RED : UIManager.getColor("Label.foreground"));
+        canvas.repaint();
+    }
+
+    /**
+     * Defines the progressive mesh to display. This method can be called from any
+     * thread. The canvas is redrawn whenever new data has been appended. The
+     * progressive mesh is replaced by the next mesh that is defined via
+     * {@link #setMesh(Mesh)} (the view is kept).
+     *
+     * @param mesh progressive mesh to display
+     */
+    public void setProgressiveMesh(ProgressiveMesh mesh) {
+        pendingProgressiveMesh.set(mesh);
+        mesh.addListener(progressiveListener);
+        updateDisplay();
+    }
+
+    /**
+     * Defines the levels of detail to display. This method can be called from any
+     * thread. If the original mesh of the levels is already displayed, the view is
+     * kept (e.g. if the levels have been computed in the background).
+     *
+     * @param lods levels of detail to display
+     */
+    public void setLODChain(LODChain lods) {
+        pendingLODChain.set(lods);
+        updateDisplay();
+    }
+
+    /**
+     * Defines the maximum error of the drawn level of detail in window pixels
+     * (default: {@code 0.5}). Larger values result in coarser levels.
+     *
+     * @param maxPixelError maximum error in pixels (must be positive)
+     */
+    public void setMaxPixelError(float maxPixelError) {
+        if (!(maxPixelError > 0)) {
+            throw new IllegalArgumentException("Max. pixel error must be positive: " + maxPixelError);
+        }
+        this.maxPixelError = maxPixelError;
+        updateDisplay();
+    }
+
+    /**
+     * Returns the maximum error of the drawn level of detail in window pixels.
+     *
+     * @return the maximum error in pixels
+     */
+    public float getMaxPixelError() {
+        return maxPixelError;
+    }
+
+    /**
+     * Defines the meshlets to display. This method can be called from any thread.
+     * Only meshlets that intersect the view frustum are drawn, e.g., if the view is
+     * zoomed into the mesh. If the original mesh of the meshlets is already displayed,
+     * the view is kept (e.g. if the meshlets have been built in the background).
+     *
+     * @param meshlets meshlets to display
+     */
+    public void setMeshlets(Meshlets meshlets) {
+        pendingMeshlets.set(meshlets);
+        updateDisplay();
+    }
+
+    /**
+     * Defines the octree to display. This method can be called from any thread. If
+     * zooming to inner is allowed (see {@link #setZoomToInner(boolean)}), only octree
+     * nodes that intersect the view frustum are drawn. If the original mesh of the
+     * octree is already displayed, the view is kept (e.g. if the octree has been built
+     * in the background).
+     *
+     * @param octree octree to display
+     */
+    public void setOctree(MeshOctree octree) {
+        pendingOctree.set(octree);
+        updateDisplay();
+    }
+
+    /**
+     * Defines whether to cull back-facing triangles and meshlets (default:
+     * {@code false}). Only enable this for closed meshes with consistent orientation
+     * (counter-clockwise triangles seen from outside), otherwise the inside of the
+     * mesh is invisible.
+     *
+     * @param backfaceCulling {@code true} to cull back faces
+     */
+    public void setBackfaceCulling(boolean backfaceCulling) {
+        this.backfaceCulling = backfaceCulling;
+        updateDisplay();
+    }
+
+    /**
+     * Indicates whether back-facing triangles and meshlets are culled.
+     *
+     * @return {@code true} if back faces are culled; {@code false} otherwise
+     */
+    public boolean isBackfaceCulling() {
+        return backfaceCulling;
+    }
+
+    /**
+     * Adds a listener that is notified when a point of the mesh is picked (left
+     * double-click). The picked point is centered.
+     *
+     * @param listener listener to add
+     */
+    public void addPickListener(PickListener listener) {
+        pickListeners.add(listener);
+    }
+
+    /**
+     * Removes the specified listener.
+     *
+     * @param listener listener to remove
+     */
+    public void removePickListener(PickListener listener) {
+        pickListeners.remove(listener);
+    }
+
+    private void cancelMeshFuture() {
+        if (meshFuture != null && !meshFuture.isDone()) {
+            System.out.println("-> [VRL-JOGL]: cancelling mesh loading");
+            meshFuture.cancel(true);
+        }
+        meshFuture = null;
+    }
+
     /**
      * Defines whether to skip initial scale animation (might need too many resources if many
      * visualizations are used at the same time).
@@ -225,34 +570,228 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
      */
     public void setZoomToInner(boolean zoomToInner) {
         this.zoomToInner = zoomToInner;
+        updateDisplay();
     }
 
     private void displayMesh(Mesh m) {
+        displayMesh(m, true);
+    }
+
+    /**
+     * Displays the specified mesh.
+     *
+     * @param m mesh to display
+     * @param resetView defines whether to reset the view (zoom, rotation, center)
+     */
+    private void displayMesh(Mesh m, boolean resetView) {
 
         this.mesh = m;
 
-        Vector3f lower = new Vector3f(m.xmin(), m.ymin(), m.zmin());
-        Vector3f upper = new Vector3f(m.xmax(), m.ymax(), m.zmax());
+        normalize(new Vector3f(m.xmin(), m.ymin(), m.zmin()),
+                new Vector3f(m.xmax(), m.ymax(), m.zmax()));
 
-        center = new Vector3f(lower).add(upper).mul(0.5f);
+        if (resetView) {
+            resetView();
+        }
 
-        scale = 2.f / (new Vector3f(upper).sub(lower).length());
+        // create the gl glMesh for rendering (shared with other canvases that display
+        // the same mesh)
+        glMesh = GLMeshRegistry.getDefault().acquire(gl, m);
 
-        // reset other camera/transform/rotate parameters
-        zoom = 1f;
-        arcBall.reset();
+        System.out.println("-> vertex layout: " + glMesh.getLayout());
+    }
 
-        // rescale glMesh vertices and center them at (0,0,0)
-        for (int i = 0; i < m.vertices.length; i++) {
-            m.vertices[i] = (m.vertices[i] - center.get(i % 3)) * scale;
+    /**
+     * Centers the mesh with the specified bounds at (0,0,0) and scales it to the unit
+     * cube via the transform matrix (the mesh data is not modified, i.e., it can be
+     * shared).
+     *
+     * @param lower lower corner of the mesh bounds
+     * @param upper upper corner of the mesh bounds
+     */
+    private void normalize(Vector3f lower, Vector3f upper) {
+        meshCenter = new Vector3f(lower).add(upper).mul(0.5f);
+        meshScale = 2.f / (new Vector3f(upper).sub(lower).length());
+        if (!Float.isFinite(meshScale)) {
+            // single vertex
+            meshScale = 1.0f;
         }
+    }
 
-        // since we rescaled and centered them, scale will be 1.0 and center is the origin (0,0,0)
+    /**
+     * Resets camera/transform/rotate parameters.
+     */
+    private void resetView() {
+        zoom = 1f;
+        arcBall.reset();
+
+        // the view is relative to the normalized mesh, i.e., scale is 1.0 and center
+        // is the origin (0,0,0)
         center = new Vector3f();
         scale = 1.0f;
+    }
+
+    /**
+     * Displays the specified progressive mesh (the previous meshes are released).
+     *
+     * @param m progressive mesh to display
+     */
+    private void swapProgressiveMesh(ProgressiveMesh m) {
+        releaseMeshes();
+        releaseProgressiveMesh();
+
+        progressiveMesh = m;
+        glProgressiveMesh = new GLProgressiveMesh(gl, m);
+        mesh = null;
+    }
+
+    /**
+     * Releases the progressive mesh (if any).
+     */
+    private void releaseProgressiveMesh() {
+        if (progressiveMesh != null) {
+            progressiveMesh.removeListener(progressiveListener);
+            progressiveMesh = null;
+        }
+        if (glProgressiveMesh != null) {
+            glProgressiveMesh.delete();
+            glProgressiveMesh = null;
+        }
+    }
+
+    /**
+     * Uploads new data of the progressive mesh. The view is normalized to the bounds of
+     * the first data, i.e., the view does not jump while the mesh is refined.
+     *
+     * @return {@code true} if the progressive mesh is drawn; {@code false} otherwise
+     */
+    private boolean syncProgressiveMesh() {
+        if (glProgressiveMesh == null || glMesh != null) {
+            return false;
+        }
+
+        boolean firstData = glProgressiveMesh.numTriangles() == 0;
+
+        if (glProgressiveMesh.sync() && firstData) {
+            float[] bounds = progressiveMesh.bounds();
+            if (bounds != null) {
+                normalize(new Vector3f(bounds[0], bounds[1], bounds[2]),
+                        new Vector3f(bounds[3], bounds[4], bounds[5]));
+                resetView();
+                if (!isSkipInitAnimation()) {
+                    scaleAnim(0.01f, 1.0f);
+                }
+            }
+        }
+
+        return glProgressiveMesh.numTriangles() > 0;
+    }
+
+    /**
+     * Releases the gl meshes of the displayed mesh and its levels of detail.
+     */
+    private void releaseMeshes() {
+        releaseLODMeshes();
+        meshlets = null;
+        octree = null;
+        visibleRanges = null;
+        if (glMesh != null) {
+            GLMeshRegistry.getDefault().release(glMesh);
+            glMesh = null;
+        }
+    }
+
+    /**
+     * Releases the gl meshes of the levels of detail (except the displayed mesh).
+     */
+    private void releaseLODMeshes() {
+        if (lodMeshes != null) {
+            // level 0 is glMesh
+            for (int i = 1; i < lodMeshes.length; i++) {
+                if (lodMeshes[i] != null) {
+                    GLMeshRegistry.getDefault().release(lodMeshes[i]);
+                }
+            }
+            lodMeshes = null;
+            lodSelector = null;
+        }
+    }
+
+    /**
+     * Displays the specified mesh (the previous mesh is released).
+     *
+     * @param m mesh to display
+     */
+    private void swapMesh(Mesh m) {
+        swapMesh(m, false);
+    }
+
+    /**
+     * Displays the specified mesh (the previous mesh is released).
+     *
+     * @param m mesh to display
+     * @param keepView defines whether to keep the view (same geometry as before)
+     */
+    private void swapMesh(Mesh m, boolean keepView) {
+        // the final mesh of a progressive mesh keeps the view
+        boolean refined = keepView
+                || glProgressiveMesh != null && glProgressiveMesh.numTriangles() > 0;
+        boolean firstMesh = glMesh == null && !refined;
+        releaseMeshes();
+        releaseProgressiveMesh();
+        displayMesh(m, !refined);
+        if (firstMesh && !isSkipInitAnimation()) {
+            scaleAnim(0.01f, 1.0f);
+        }
+    }
+
+    /**
+     * Returns the gl mesh of the level of detail to draw in the current frame.
+     */
+    private GLMesh selectLevelMesh() {
+        if (lodSelector == null || glMesh == null) {
+            return glMesh;
+        }
+
+        int previous = lodSelector.getLevel();
+
+        // error tolerance in device pixels (the surface size includes the render scale)
+        float renderScale = Math.max(renderScaleX, renderScaleY);
+        int level = lodSelector.select(pixelsPerUnit(), coveredPixels(), maxPixelError * renderScale);
 
-        // create the gl glMesh for rendering
-        glMesh = new GLMesh(gl, m);
+        if (lodMeshes[level] == null) {
+            lodMeshes[level] = GLMeshRegistry.getDefault().acquire(gl,
+                    lodSelector.getChain().getLevel(level).getMesh());
+        }
+
+        if (level != previous) {
+            System.out.println("-> [VRL-JOGL]: level of detail " + level + ": "
+                    + lodSelector.getChain().getLevel(level));
+        }
+
+        return lodMeshes[level];
+    }
+
+    /**
+     * Returns the number of device pixels covered by one model unit (at the nearest
+     * point of the mesh).
+     */
+    private double pixelsPerUnit() {
+        float zoomCompensation = isZoomToInner() ? zoom : Math.min(2.0f, zoom);
+        // the nearest points are magnified by the perspective division
+        // (see viewMatrix())
+        float magnification = 1.f / Math.max(0.1f, 1.f - perspective * zoomCompensation * scale);
+        // the normalized mesh fits into the unit sphere, the shorter side of the
+        // viewport covers [-1,1]
+        return scale * meshScale * zoom * Math.min(getWidth(), getHeight()) / 2.0 * magnification;
+    }
+
+    /**
+     * Returns the number of device pixels covered by the mesh (estimate).
+     */
+    private double coveredPixels() {
+        double radius = pixelsPerUnit() / meshScale;
+        return Math.min(Math.PI * radius * radius, (double) getWidth() * getHeight());
     }
 
     @Override
@@ -275,7 +814,9 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
         program.link();
         program.deleteShaders();
 
-        displayMesh(mesh);
+        if (mesh != null) {
+            displayMesh(mesh);
+        }
 
         arcBall.setBounds(drawable.getSurfaceWidth(), drawable.getSurfaceHeight());
 
@@ -296,6 +837,13 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
         System.out.println("-> [VRL-JOGL]: gl dispose");
 
         program.delete();
+
+        releaseMeshes();
+        releaseProgressiveMesh();
+
+        // reports buffers that have been collected without being deleted (debug mode)
+        GLResources.checkLeaks();
+
         scalableSurface = null;
 
         try {
@@ -307,6 +855,50 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
 
     @Override
     public void display(GLAutoDrawable drawable) {
+        // meshes that have been set from other threads are swapped in on the GL thread
+        ProgressiveMesh newProgressiveMesh = pendingProgressiveMesh.getAndSet(null);
+        if (newProgressiveMesh != null) {
+            swapProgressiveMesh(newProgressiveMesh);
+        }
+
+        Mesh newMesh = pendingMesh.getAndSet(null);
+        if (newMesh != null) {
+            swapMesh(newMesh);
+        }
+
+        LODChain newLODChain = pendingLODChain.getAndSet(null);
+        if (newLODChain != null) {
+            if (newLODChain.getOriginal() != mesh || glMesh == null) {
+                swapMesh(newLODChain.getOriginal());
+            } else {
+                // replace the previous levels (the view is kept)
+                releaseLODMeshes();
+            }
+            lodSelector = new LODSelector(newLODChain);
+            lodMeshes = new GLMesh[newLODChain.numLevels()];
+            lodMeshes[0] = glMesh;
+        }
+
+        Meshlets newMeshlets = pendingMeshlets.getAndSet(null);
+        if (newMeshlets != null) {
+            if (newMeshlets.getMesh() != mesh || glMesh == null) {
+                // the clustered mesh has the geometry of the original mesh
+                swapMesh(newMeshlets.getMesh(), newMeshlets.getOriginal() == mesh && glMesh != null);
+            }
+            meshlets = newMeshlets;
+            visibleRanges = new int[newMeshlets.numMeshlets() * 2];
+        }
+
+        MeshOctree newOctree = pendingOctree.getAndSet(null);
+        if (newOctree != null) {
+            if (newOctree.getMesh() != mesh || glMesh == null) {
+                // the mesh of the octree has the geometry of the original mesh
+                swapMesh(newOctree.getMesh(), newOctree.getOriginal() == mesh && glMesh != null);
+            }
+            octree = newOctree;
+            visibleRanges = new int[newOctree.numNodes() * 2];
+        }
+
         //gl.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
         gl.glClear(gl.GL_COLOR_BUFFER_BIT | gl.GL_DEPTH_BUFFER_BIT);
         gl.glEnable(gl.GL_DEPTH_TEST);
@@ -374,8 +966,35 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
     void drawMesh(GL3 gl) {
         program.startUsing();
 
-        // write matrices to buffer
-        transformMatrix().get(transformMatrixBuffer);
+        // level of detail that matches the projected size of the mesh
+        GLMesh levelMesh = selectLevelMesh();
+
+        // new data of the progressive mesh (drawn until the final mesh is available)
+        boolean drawProgressive = levelMesh == null && syncProgressiveMesh();
+
+        // uploads the mesh again if it has been evicted (memory budget)
+        if (levelMesh != null) {
+            GLMeshRegistry.getDefault().use(gl, levelMesh);
+        }
+
+        // write matrices to buffer (compact positions are decoded via the transform matrix)
+        Matrix4f transform = transformMatrix();
+
+        // visible meshlets or octree nodes (bounds are stored in mesh coordinates)
+        int[] ranges = null;
+        int numRanges = 0;
+        if (meshlets != null && levelMesh == glMesh && levelMesh != null) {
+            numRanges = meshlets.cull(viewMatrix().mul(transform), backfaceCulling, visibleRanges);
+            ranges = visibleRanges;
+        } else if (octree != null && isZoomToInner() && levelMesh == glMesh && levelMesh != null) {
+            numRanges = octree.cull(viewMatrix().mul(transform), visibleRanges);
+            ranges = visibleRanges;
+        }
+
+        if (levelMesh != null) {
+            transform.mul(levelMesh.getPositionTransform());
+        }
+        transform.get(transformMatrixBuffer);
         viewMatrix().get(viewMatrixBuffer);
 
         // Load the transform and view matrices into the shader
@@ -394,26 +1013,42 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
         int vertexPosition = program.getAttributeLocation("vertex_position");
         gl.glEnableVertexAttribArray(vertexPosition);
 
-        if(glMesh!=null && glMesh.isColorDataPresent()) {
+        // back faces are culled on the GPU as well, i.e., partially back-facing
+        // meshlets look like culled ones
+        boolean cullFaces = backfaceCulling && levelMesh != null;
+        if (cullFaces) {
+            gl.glEnable(gl.GL_CULL_FACE);
+        }
+
+        if(levelMesh!=null && levelMesh.isColorDataPresent()) {
             // Find and enable the attribute location for vertex position
             int vertexColor = program.getAttributeLocation("vertex_color");
             gl.glEnableVertexAttribArray(vertexColor);
 
-            glMesh.draw(vertexPosition, vertexColor);
+            levelMesh.draw(vertexPosition, vertexColor, ranges, numRanges);
 
             gl.glDisableVertexAttribArray(vertexColor);
             gl.glDisableVertexAttribArray(vertexPosition);
-        } else if(glMesh!=null) {
-            // Find and enable the attribute location for vertex position
+        } else if(levelMesh!=null) {
+            // no color array, the mesh uses a constant color attribute
             int vertexColor = program.getAttributeLocation("vertex_color");
-            gl.glEnableVertexAttribArray(vertexColor);
 
-            glMesh.draw(vertexPosition, vertexColor);
+            levelMesh.draw(vertexPosition, vertexColor, ranges, numRanges);
+
+            gl.glDisableVertexAttribArray(vertexPosition);
+        } else if (drawProgressive) {
+            // progressive meshes use the default constant color
+            int vertexColor = program.getAttributeLocation("vertex_color");
+
+            glProgressiveMesh.draw(vertexPosition, vertexColor, PROGRESSIVE_MESH_COLOR);
 
-            gl.glDisableVertexAttribArray(vertexColor);
             gl.glDisableVertexAttribArray(vertexPosition);
         }
 
+        if (cullFaces) {
+            gl.glDisable(gl.GL_CULL_FACE);
+        }
+
         program.stopUsing();
     }
 
@@ -429,6 +1064,10 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
         // scale
         mat.scale(-scale, scale, -scale);
 
+        // normalize mesh (center at (0,0,0) and fit into unit cube)
+        mat.scale(meshScale);
+        mat.translate(new Vector3f(meshCenter).negate());
+
         return mat;
     }
 
@@ -448,7 +1087,9 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
         // restricting to 2.0f prevents near clipping (zooming inside is then not possible)
         float zoomCompensation = isZoomToInner()?zoom: Math.min(2.0f, zoom);
 
-        m._m23(perspective * zoomCompensation);
+        // m23() (unlike _m23()) marks the matrix as non-affine, i.e., products and
+        // inverses computed on the CPU (culling, picking) include the perspective
+        m.m23(perspective * zoomCompensation);
 
         return m;
     }
@@ -460,7 +1101,70 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
             arcBall.reset();
             arcBall.setBounds(getWidth(), getHeight());
             resetZoomOnCenterAnim = true;
+        } else if (SwingUtilities.isLeftMouseButton(e) && e.getClickCount() == 2) {
+            pick(e.getX() * renderScaleX, e.getY() * renderScaleY);
+        }
+    }
+
+    /**
+     * Picks the mesh at the specified window position (in device pixels), notifies the
+     * pick listeners and centers the picked point. The ray casting hierarchy is built
+     * in the background on the first pick.
+     *
+     * @param x x coordinate of the window position
+     * @param y y coordinate of the window position
+     */
+    private void pick(float x, float y) {
+        Mesh m = mesh;
+        if (m == null || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+
+        // ray from the near to the far clipping plane (mesh coordinates)
+        Matrix4f transform = transformMatrix();
+        Vector3f clickCenter = new Vector3f(center);
+        Matrix4f inverse = viewMatrix().mul(transform).invert();
+        float ndcX = 2 * x / getWidth() - 1;
+        float ndcY = 1 - 2 * y / getHeight();
+        Vector4f near = inverse.transform(new Vector4f(ndcX, ndcY, -1, 1));
+        Vector4f far = inverse.transform(new Vector4f(ndcX, ndcY, 1, 1));
+        near.div(near.w);
+        far.div(far.w);
+        Vector3f origin = new Vector3f(near.x, near.y, near.z);
+        Vector3f direction = new Vector3f(far.x, far.y, far.z).sub(origin);
+
+        if (bvhFuture == null || bvhFuture.isCompletedExceptionally()
+                || bvhFuture.isDone() && bvhFuture.join().getMesh() != m) {
+            System.out.println("-> [VRL-JOGL]: building picking index");
+            bvhFuture = MeshBVH.buildAsync(m);
         }
+
+        bvhFuture.thenAcceptAsync(bvh -> {
+            if (bvh.getMesh() != mesh) {
+                // the mesh has been replaced in the meantime
+                return;
+            }
+
+            MeshBVH.Hit hit = new MeshBVH.Hit();
+            if (!bvh.intersect(origin.x, origin.y, origin.z,
+                    direction.x, direction.y, direction.z, 1.f, hit)) {
+                return;
+            }
+
+            System.out.println("-> [VRL-JOGL]: picked " + hit);
+
+            for (PickListener l : pickListeners) {
+                l.picked(bvh.getMesh(), hit);
+            }
+
+            // the transformation without the center translation moves the picked
+            // point to the new center
+            Vector3f target = transform.transformPosition(
+                    new Vector3f(hit.getX(), hit.getY(), hit.getZ())).add(clickCenter);
+            resetZoomOnCenterAnim = false;
+            centerAnim(center, target);
+            updateDisplay();
+        }, SwingUtilities::invokeLater);
     }
 
     @Override
@@ -528,6 +1232,10 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
     }
 
     public void updateDisplay() {
+        if (drawable == null) {
+            // not initialized yet, the first frame will show the current state
+            return;
+        }
         if(drawable instanceof JComponent) {
             VSwingUtil.repaintRequest((JComponent) drawable);
         } else {
@@ -624,6 +1332,10 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
         canvas.addMouseWheelListener(this);
 
         setScalableSurface(canvas);
+
+        // shows the loading state of the mesh (if any)
+        this.canvas = canvas;
+        updateStatusLabel();
     }
 
     @Override
@@ -636,6 +1348,15 @@ public class GLMeshCanvas implements GLEventListener, MouseListener, MouseMotion
 
         setScalableSurface(null);
 
+        if (statusLabel != null) {
+            canvas.remove(statusLabel);
+            statusLabel = null;
+        }
+        this.canvas = null;
+
+        // the mesh is not needed anymore
+        cancelMeshFuture();
+
         try {
             animator.remove(drawable);
         } catch (Exception ex) {
@@ -0,0 +1,517 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLContext;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLProfile;
+import com.jogamp.opengl.GLSharedContextSetter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reference counted GPU meshes that are shared between GL contexts.
+ *
+ * Canvases whose GL contexts belong to the same share group (see
+ * {@link #shareContext(GLSharedContextSetter)}) upload each mesh only once. Meshes are
+ * identified by identity first. Equal meshes that have been loaded separately (e.g.
+ * from the {@link MeshCache}) are shared as well if their content hash has been
+ * computed in advance (the {@link STLLoader} computes it off the GL thread). The content
+ * hash is never computed by the registry. The GPU buffers are deleted when the last
+ * canvas releases the mesh.
+ *
+ * <p>
+ * The GPU memory used by meshes can be limited via {@link #setMemoryBudget(long)}
+ * (system property {@code vrl.jogl.meshbudget} in megabytes). If the budget is
+ * exceeded, the buffers of the least recently drawn meshes (e.g. meshes of hidden
+ * canvases) are deleted. Meshes that have been drawn within the last few frames are
+ * never evicted, i.e., visible canvases do not evict each other's meshes every frame
+ * if the budget is smaller than the visible meshes (the budget is exceeded instead).
+ * Buffers that are not managed by the registry (e.g. of progressive meshes) are
+ * charged to the budget via {@link #charge(GL3, long)}. The CPU copy of the mesh is kept (for cached meshes it is
+ * memory mapped) and the buffers are uploaded again when the mesh is drawn next time
+ * (see {@link #use(GL3, GLMesh)}).
+ * </p>
+ *
+ * All methods must be called from GL threads with the context of the specified gl
+ * object being current.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class GLMeshRegistry {
+
+    private static GLMeshRegistry defaultRegistry;
+
+    // hidden drawables that own the share groups (per profile)
+    private static final Map<String, GLAutoDrawable> SHARED_DRAWABLES = new HashMap<>();
+
+    // resident meshes per share group (identified by the share master context)
+    private final Map<GLContext, Group> groups = new IdentityHashMap<>();
+
+    // glMesh views that have been handed out
+    private final Map<GLMesh, View> views = new IdentityHashMap<>();
+
+    private long memoryBudget = defaultMemoryBudget();
+
+    // meshes drawn within this interval are not evicted (a few frames at 60 fps)
+    private static final long RECENT_USE_NANOS = 100_000_000L;
+
+    // number of use() calls (used as lru clock)
+    private long clock;
+
+    // GPU memory of buffers that are not managed by the registry (see charge())
+    private long chargedBytes;
+
+    // metrics
+    private long residentBytes;
+    private long evictions;
+    private long evictedBytes;
+    private long reuploads;
+    private long reuploadedBytes;
+
+    /**
+     * Meshes of a share group.
+     */
+    private static final class Group {
+        // all entries
+        private final List<Entry> entries = new ArrayList<>();
+        // entries by mesh identity (including equal meshes that share an entry)
+        private final Map<Mesh, Entry> byIdentity = new IdentityHashMap<>();
+        // entries by content hash (only meshes with precomputed hash)
+        private final Map<Long, List<Entry>> byContent = new HashMap<>();
+    }
+
+    /**
+     * Mesh of a share group.
+     */
+    private static final class Entry {
+        private final GLContext group;
+        private final Mesh mesh;
+        // meshes that are drawn by this entry (the mesh and equal meshes)
+        private final List<Mesh> aliases = new ArrayList<>();
+        // content hash (0 if the entry is not registered by content)
+        private long contentHash;
+        // null if evicted
+        private GLMesh glMesh;
+        private int refCount;
+        private long lastUsed;
+        // time of the last use (System.nanoTime())
+        private long lastUsedNanos;
+        // indicates whether the mesh has been uploaded before
+        private boolean uploaded;
+
+        Entry(GLContext group, Mesh mesh, GLMesh glMesh) {
+            this.group = group;
+            this.mesh = mesh;
+            this.glMesh = glMesh;
+        }
+    }
+
+    /**
+     * GLMesh that has been handed out.
+     */
+    private static final class View {
+        private final Entry entry;
+        // buffers the view currently refers to
+        private GLMesh shared;
+
+        View(Entry entry, GLMesh shared) {
+            this.entry = entry;
+            this.shared = shared;
+        }
+    }
+
+    /**
+     * Returns the memory budget defined via the system property
+     * {@code vrl.jogl.meshbudget} (in megabytes, unlimited by default).
+     *
+     * @return the memory budget in bytes (saturated at {@code Long.MAX_VALUE})
+     */
+    private static long defaultMemoryBudget() {
+        long megabytes = Long.getLong("vrl.jogl.meshbudget", Long.MAX_VALUE);
+        if (megabytes < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative: " + megabytes + " MB");
+        }
+        if (megabytes > Long.MAX_VALUE / (1024 * 1024)) {
+            return Long.MAX_VALUE;
+        }
+        return megabytes * 1024 * 1024;
+    }
+
+    /**
+     * Returns the default registry.
+     *
+     * @return the default registry
+     */
+    public static synchronized GLMeshRegistry getDefault() {
+        if (defaultRegistry == null) {
+            defaultRegistry = new GLMeshRegistry();
+        }
+        return defaultRegistry;
+    }
+
+    /**
+     * Adds the specified drawable to the share group of its GL profile. Must be called
+     * before the drawable is realized. All drawables of a share group share their GPU
+     * buffers.
+     *
+     * @param drawable drawable to share resources with
+     */
+    public static void shareContext(GLSharedContextSetter drawable) {
+        drawable.setSharedAutoDrawable(getSharedDrawable(drawable.getGLProfile()));
+    }
+
+    /**
+     * Returns the hidden drawable that owns the share group of the specified profile.
+     *
+     * @param profile GL profile
+     * @return the hidden drawable that owns the share group of the specified profile
+     */
+    static synchronized GLAutoDrawable getSharedDrawable(GLProfile profile) {
+        GLAutoDrawable sharedDrawable = SHARED_DRAWABLES.get(profile.getName());
+        if (sharedDrawable == null) {
+            GLDrawableFactory factory = GLDrawableFactory.getFactory(profile);
+            sharedDrawable = factory.createDummyAutoDrawable(
+                    null, true, new GLCapabilities(profile), null);
+            // realizes the drawable and creates the context
+            sharedDrawable.display();
+            SHARED_DRAWABLES.put(profile.getName(), sharedDrawable);
+        }
+        return sharedDrawable;
+    }
+
+    /**
+     * Returns a glMesh for the specified mesh. The mesh is uploaded if it is not
+     * resident in the share group of the specified gl object yet. Returned glMeshes
+     * must be released via {@link #release(GLMesh)}.
+     *
+     * @param gl   gl object (of the current context)
+     * @param mesh mesh
+     * @return a glMesh that draws the specified mesh with the given gl object
+     */
+    public synchronized GLMesh acquire(GL3 gl, Mesh mesh) {
+        GLContext shareGroup = GLResources.getShareGroup(gl.getContext());
+        Group group = groups.computeIfAbsent(shareGroup, g -> new Group());
+
+        Entry entry = group.byIdentity.get(mesh);
+
+        // equal meshes are only found if the hash has been computed (not on the gl thread)
+        if (entry == null && mesh.hasContentHash()) {
+            List<Entry> candidates = group.byContent.get(mesh.contentHash());
+            if (candidates != null) {
+                for (Entry e : candidates) {
+                    if (e.mesh.contentEquals(mesh)) {
+                        entry = e;
+                        entry.aliases.add(mesh);
+                        group.byIdentity.put(mesh, entry);
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (entry == null) {
+            entry = new Entry(shareGroup, mesh, null);
+            entry.aliases.add(mesh);
+            group.entries.add(entry);
+            group.byIdentity.put(mesh, entry);
+            if (mesh.hasContentHash()) {
+                entry.contentHash = mesh.contentHash();
+                group.byContent.computeIfAbsent(entry.contentHash, h -> new ArrayList<>()).add(entry);
+            }
+        } else if (entry.glMesh != null) {
+            System.out.println("-> gl mesh registry: sharing resident mesh ("
+                    + entry.glMesh.getGPUMemorySize() + " bytes)");
+        }
+
+        entry.refCount++;
+
+        makeResident(gl, entry);
+        evict(gl, entry.group, entry);
+
+        GLMesh view = new GLMesh(gl, entry.glMesh);
+        views.put(view, new View(entry, entry.glMesh));
+
+        return view;
+    }
+
+    /**
+     * Marks the specified glMesh as used. Must be called before drawing the glMesh.
+     * If the GPU buffers have been evicted, they are uploaded again. If the memory
+     * budget is exceeded, the buffers of least recently used meshes of the same share
+     * group are evicted.
+     *
+     * @param gl     gl object (of the current context)
+     * @param glMesh glMesh (obtained via {@link #acquire(GL3, Mesh)})
+     */
+    public synchronized void use(GL3 gl, GLMesh glMesh) {
+        View view = views.get(glMesh);
+
+        if (view == null) {
+            throw new IllegalArgumentException("GLMesh has not been acquired from this registry");
+        }
+
+        Entry entry = view.entry;
+
+        makeResident(gl, entry);
+        evict(gl, entry.group, entry);
+
+        if (view.shared != entry.glMesh) {
+            glMesh.setShared(entry.glMesh);
+            view.shared = entry.glMesh;
+        }
+    }
+
+    /**
+     * Uploads the mesh of the specified entry (if necessary) and marks it as used.
+     */
+    private void makeResident(GL3 gl, Entry entry) {
+        entry.lastUsed = ++clock;
+        entry.lastUsedNanos = System.nanoTime();
+
+        if (entry.glMesh != null) {
+            return;
+        }
+
+        entry.glMesh = new GLMesh(gl, entry.mesh);
+        residentBytes += entry.glMesh.getGPUMemorySize();
+
+        if (entry.uploaded) {
+            reuploads++;
+            reuploadedBytes += entry.glMesh.getGPUMemorySize();
+            System.out.println("-> gl mesh registry: re-uploaded mesh ("
+                    + entry.glMesh.getGPUMemorySize() + " bytes)");
+        }
+        entry.uploaded = true;
+    }
+
+    /**
+     * Evicts least recently used meshes of the specified share group until the
+     * resident meshes fit into the memory budget. Meshes that have been drawn recently
+     * (e.g. by visible canvases) are not evicted.
+     *
+     * @param gl         gl object (of the current context)
+     * @param shareGroup share group of the current context
+     * @param current    entry that must not be evicted (might be {@code null})
+     */
+    private void evict(GL3 gl, GLContext shareGroup, Entry current) {
+        if (residentBytes + chargedBytes <= memoryBudget) {
+            return;
+        }
+
+        // buffers can only be deleted from contexts of their share group
+        Group group = groups.get(shareGroup);
+
+        if (group == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        List<Entry> resident = new ArrayList<>();
+        for (Entry e : group.entries) {
+            if (e != current && e.glMesh != null && now - e.lastUsedNanos > RECENT_USE_NANOS) {
+                resident.add(e);
+            }
+        }
+
+        resident.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+
+        for (Entry e : resident) {
+            if (residentBytes + chargedBytes <= memoryBudget) {
+                break;
+            }
+            deleteBuffers(gl, e);
+            evictions++;
+        }
+    }
+
+    /**
+     * Charges GPU memory that is not managed by this registry (e.g. the buffers of a
+     * progressive mesh) to the memory budget. Meshes of the share group of the
+     * specified gl object are evicted if the budget is exceeded. The memory must be
+     * returned via {@link #discharge(long)} when the buffers are deleted.
+     *
+     * @param gl    gl object (of the current context)
+     * @param bytes GPU memory in bytes
+     */
+    synchronized void charge(GL3 gl, long bytes) {
+        chargedBytes += bytes;
+        evict(gl, GLResources.getShareGroup(gl.getContext()), null);
+    }
+
+    /**
+     * Returns GPU memory that has been charged via {@link #charge(GL3, long)}.
+     *
+     * @param bytes GPU memory in bytes
+     */
+    synchronized void discharge(long bytes) {
+        chargedBytes -= bytes;
+    }
+
+    /**
+     * Deletes the GPU buffers of the specified entry.
+     */
+    private void deleteBuffers(GL3 gl, Entry entry) {
+        long bytes = entry.glMesh.getGPUMemorySize();
+        new GLMesh(gl, entry.glMesh).delete();
+        entry.glMesh = null;
+        residentBytes -= bytes;
+        if (entry.refCount > 0) {
+            evictedBytes += bytes;
+        }
+    }
+
+    /**
+     * Releases the specified glMesh. The GPU buffers are deleted if no other glMesh
+     * of the share group draws the same mesh.
+     *
+     * @param glMesh glMesh to release (obtained via {@link #acquire(GL3, Mesh)})
+     */
+    public synchronized void release(GLMesh glMesh) {
+        View view = views.remove(glMesh);
+
+        if (view == null) {
+            throw new IllegalArgumentException("GLMesh has not been acquired from this registry");
+        }
+
+        Entry entry = view.entry;
+
+        entry.refCount--;
+
+        if (entry.refCount == 0) {
+            if (entry.glMesh != null) {
+                // the released glMesh belongs to the current context of the share group
+                // (it might refer to buffers that have been evicted in the meantime)
+                glMesh.setShared(entry.glMesh);
+                residentBytes -= entry.glMesh.getGPUMemorySize();
+                glMesh.delete();
+                entry.glMesh = null;
+            }
+
+            Group group = groups.get(entry.group);
+            group.entries.remove(entry);
+            for (Mesh alias : entry.aliases) {
+                group.byIdentity.remove(alias);
+            }
+            if (entry.contentHash != 0) {
+                List<Entry> candidates = group.byContent.get(entry.contentHash);
+                candidates.remove(entry);
+                if (candidates.isEmpty()) {
+                    group.byContent.remove(entry.contentHash);
+                }
+            }
+            if (group.entries.isEmpty()) {
+                groups.remove(entry.group);
+            }
+        }
+    }
+
+    /**
+     * Defines the GPU memory budget for meshes (per registry, i.e., for all share
+     * groups). Meshes that exceed the budget are evicted the next time a mesh of their
+     * share group is uploaded.
+     *
+     * @param memoryBudget memory budget in bytes
+     */
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns the GPU memory budget for meshes.
+     *
+     * @return the GPU memory budget for meshes in bytes
+     */
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Returns the number of meshes that are resident on the GPU (all share groups).
+     *
+     * @return the number of resident meshes
+     */
+    public synchronized int numResidentMeshes() {
+        int n = 0;
+        for (Group group : groups.values()) {
+            for (Entry e : group.entries) {
+                if (e.glMesh != null) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the GPU memory used by resident meshes (all share groups).
+     *
+     * @return the GPU memory used by resident meshes in bytes
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Returns the GPU memory that is charged to the budget but not managed by this
+     * registry (e.g. buffers of progressive meshes).
+     *
+     * @return the charged GPU memory in bytes
+     */
+    public synchronized long getChargedBytes() {
+        return chargedBytes;
+    }
+
+    /**
+     * Returns the number of evictions (meshes whose buffers have been deleted to meet
+     * the memory budget).
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the total size of all evicted buffers.
+     *
+     * @return the total size of all evicted buffers in bytes
+     */
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * Returns the number of re-uploads (evicted meshes that have been drawn again).
+     *
+     * @return the number of re-uploads
+     */
+    public synchronized long getReuploads() {
+        return reuploads;
+    }
+
+    /**
+     * Returns the total size of all re-uploaded buffers.
+     *
+     * @return the total size of all re-uploaded buffers in bytes
+     */
+    public synchronized long getReuploadedBytes() {
+        return reuploadedBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[resident-meshes=" + numResidentMeshes() + ", resident-bytes=" + residentBytes
+                + ", charged-bytes=" + chargedBytes + ", budget=" + memoryBudget
+                + ", evictions=" + evictions + ", reuploads=" + reuploads + "]";
+    }
+}
@@ -12,4 +12,10 @@ public interface GLObject {
      */
     int getGLHandle();
 
+    /**
+     * Deletes this GL object (releases the GPU resources). Calling this method more
+     * than once has no effect.
+     */
+    void delete();
+
 }
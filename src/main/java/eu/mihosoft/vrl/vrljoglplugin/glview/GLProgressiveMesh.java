@@ -0,0 +1,143 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import com.jogamp.opengl.GL3;
+
+import static com.jogamp.opengl.GL.*;
+
+/**
+ * Draws a {@link ProgressiveMesh}. The GPU buffers are allocated once (with the
+ * capacity of the progressive mesh), newly appended ranges are uploaded via
+ * {@code glBufferSubData}, i.e., existing data is never uploaded again. The buffers
+ * are charged to the memory budget of the {@link GLMeshRegistry}.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+final class GLProgressiveMesh {
+
+    private final GL3 gl;
+    private final ProgressiveMesh mesh;
+
+    private final GLVertexBuffer vertices;
+    private final GLIndexBuffer indices;
+
+    // number of uploaded vertices and indices
+    private int numVertices;
+    private int numIndices;
+
+    // GPU memory charged to the mesh registry (0 if deleted)
+    private long chargedBytes;
+
+    /**
+     * Constructor. Allocates the GPU buffers.
+     *
+     * @param gl   gl object
+     * @param mesh progressive mesh to draw
+     */
+    GLProgressiveMesh(GL3 gl, ProgressiveMesh mesh) {
+        this.gl = gl;
+        this.mesh = mesh;
+
+        vertices = new GLVertexBuffer(gl);
+        vertices.create();
+        vertices.bind();
+        vertices.reserve(mesh.maxVertices() * 3);
+        vertices.release();
+
+        indices = new GLIndexBuffer(gl);
+        indices.create();
+        indices.bind();
+        indices.reserve(mesh.maxIndices());
+        indices.release();
+
+        chargedBytes = (long) vertices.size() + indices.size();
+        GLMeshRegistry.getDefault().charge(gl, chargedBytes);
+    }
+
+    /**
+     * Returns the progressive mesh drawn by this glMesh.
+     *
+     * @return the progressive mesh drawn by this glMesh
+     */
+    ProgressiveMesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Uploads the ranges that have been appended since the last call.
+     *
+     * @return {@code true} if new data has been uploaded; {@code false} otherwise
+     */
+    boolean sync() {
+        // indices are published after the vertices they reference, i.e., reading the
+        // index count first guarantees that all referenced vertices are available
+        int availableIndices = mesh.numIndices();
+        int availableVertices = mesh.numVertices();
+
+        if (availableIndices == numIndices && availableVertices == numVertices) {
+            return false;
+        }
+
+        if (availableVertices > numVertices) {
+            vertices.bind();
+            vertices.update(numVertices * 3, mesh.vertexRange(numVertices, availableVertices));
+            vertices.release();
+            numVertices = availableVertices;
+        }
+
+        if (availableIndices > numIndices) {
+            indices.bind();
+            indices.update(numIndices, mesh.indexRange(numIndices, availableIndices));
+            indices.release();
+            numIndices = availableIndices;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of uploaded triangles.
+     *
+     * @return the number of uploaded triangles
+     */
+    int numTriangles() {
+        return numIndices / 3;
+    }
+
+    /**
+     * Draws the uploaded triangles.
+     *
+     * @param vertexPosition vertex position handle
+     * @param colorPosition  vertex color handle
+     * @param color          constant color (rgba)
+     */
+    void draw(int vertexPosition, int colorPosition, float[] color) {
+        if (numIndices == 0) {
+            return;
+        }
+
+        vertices.bind();
+        gl.glVertexAttribPointer(vertexPosition, 3/*(x,y,z)*/, GL_FLOAT, false, 0, 0);
+
+        gl.glDisableVertexAttribArray(colorPosition);
+        gl.glVertexAttrib4f(colorPosition, color[0], color[1], color[2], color[3]);
+
+        indices.bind();
+        gl.glDrawElements(GL_TRIANGLES, numIndices, GL_UNSIGNED_INT, 0);
+
+        vertices.release();
+        indices.release();
+    }
+
+    /**
+     * Deletes the GPU buffers. This glMesh must not be drawn afterwards.
+     */
+    void delete() {
+        vertices.delete();
+        indices.delete();
+
+        if (chargedBytes != 0) {
+            GLMeshRegistry.getDefault().discharge(chargedBytes);
+            chargedBytes = 0;
+        }
+    }
+}
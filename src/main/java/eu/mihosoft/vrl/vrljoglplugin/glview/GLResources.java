@@ -0,0 +1,359 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GLContext;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accounting of live GL objects (buffers, programs and shaders).
+ *
+ * GL objects register themselves on creation and unregister on
+ * {@link GLObject#delete()}. Objects are accounted per share group (contexts that
+ * share their objects, see {@link GLMeshRegistry#shareContext}), i.e., shared buffers
+ * can be deleted from any context of the group.
+ *
+ * <p>
+ * In debug mode (system property {@code vrl.jogl.debug.leaks=true} or
+ * {@link #setDebug(boolean)}) the allocation site of every object is recorded. Objects
+ * that become unreachable without being deleted are reported as leaks (checked on
+ * every allocation and via {@link #checkLeaks()}).
+ * </p>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class GLResources {
+
+    /**
+     * Kind of GL object (each kind has its own handle namespace).
+     */
+    public enum Kind {
+        BUFFER,
+        PROGRAM,
+        SHADER
+    }
+
+    private static volatile boolean debug = Boolean.getBoolean("vrl.jogl.debug.leaks");
+
+    // live objects per share group (key: kind and handle)
+    private static final Map<Object, Map<Long, Record>> GROUPS = new IdentityHashMap<>();
+
+    // objects that have been collected (debug mode)
+    private static final ReferenceQueue<GLObject> COLLECTED = new ReferenceQueue<>();
+
+    /**
+     * Live GL object.
+     */
+    private static final class Record {
+        private final Kind kind;
+        private final int handle;
+        private long bytes;
+        // allocation site (debug mode)
+        private final Throwable site;
+        // detects objects that are collected without being deleted (debug mode)
+        private final Reference<GLObject> owner;
+        private boolean leaked;
+
+        Record(Kind kind, int handle, Throwable site, Reference<GLObject> owner) {
+            this.kind = kind;
+            this.handle = handle;
+            this.site = site;
+            this.owner = owner;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + handle + " (" + bytes + " bytes)";
+        }
+    }
+
+    /**
+     * Reference to the owner of a GL object.
+     */
+    private static final class OwnerReference extends PhantomReference<GLObject> {
+        private final Object group;
+        private final long key;
+
+        OwnerReference(GLObject owner, Object group, long key) {
+            super(owner, COLLECTED);
+            this.group = group;
+            this.key = key;
+        }
+    }
+
+    private GLResources() {
+        throw new AssertionError("Don't instantiate me!");
+    }
+
+    /**
+     * Enables or disables debug mode (allocation sites and leak detection). Only
+     * objects created while debug mode is enabled are checked for leaks.
+     *
+     * @param debug debug mode state
+     */
+    public static void setDebug(boolean debug) {
+        GLResources.debug = debug;
+    }
+
+    /**
+     * Indicates whether debug mode is enabled.
+     *
+     * @return {@code true} if debug mode is enabled; {@code false} otherwise
+     */
+    public static boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * Registers the specified GL object.
+     *
+     * @param gl     gl object the GL object has been created with
+     * @param kind   kind of the GL object
+     * @param handle GL handle
+     * @param owner  the GL object
+     */
+    static void created(GL gl, Kind kind, int handle, GLObject owner) {
+        created(getShareGroup(gl), kind, handle, owner);
+    }
+
+    /**
+     * Registers the specified GL object in the specified share group.
+     *
+     * @param group  share group
+     * @param kind   kind of the GL object
+     * @param handle GL handle
+     * @param owner  the GL object
+     */
+    static void created(Object group, Kind kind, int handle, GLObject owner) {
+        if (handle == 0) {
+            return;
+        }
+
+        checkLeaks();
+
+        long key = key(kind, handle);
+
+        Record record = debug
+                ? new Record(kind, handle, new Throwable("allocation site"),
+                        new OwnerReference(owner, group, key))
+                : new Record(kind, handle, null, null);
+
+        synchronized (GROUPS) {
+            GROUPS.computeIfAbsent(group, g -> new HashMap<>()).put(key, record);
+        }
+    }
+
+    /**
+     * Defines the number of bytes allocated by the specified GL object.
+     *
+     * @param gl     gl object (of a context of the share group)
+     * @param kind   kind of the GL object
+     * @param handle GL handle
+     * @param bytes  number of bytes allocated by the GL object
+     */
+    static void allocated(GL gl, Kind kind, int handle, long bytes) {
+        allocated(getShareGroup(gl), kind, handle, bytes);
+    }
+
+    /**
+     * Defines the number of bytes allocated by the specified GL object of the
+     * specified share group.
+     *
+     * @param group  share group
+     * @param kind   kind of the GL object
+     * @param handle GL handle
+     * @param bytes  number of bytes allocated by the GL object
+     */
+    static void allocated(Object group, Kind kind, int handle, long bytes) {
+        synchronized (GROUPS) {
+            Map<Long, Record> records = GROUPS.get(group);
+            Record record = records == null ? null : records.get(key(kind, handle));
+            if (record != null) {
+                record.bytes = bytes;
+            }
+        }
+    }
+
+    /**
+     * Unregisters the specified GL object.
+     *
+     * @param gl     gl object (of a context of the share group)
+     * @param kind   kind of the GL object
+     * @param handle GL handle
+     */
+    static void deleted(GL gl, Kind kind, int handle) {
+        deleted(getShareGroup(gl), kind, handle);
+    }
+
+    /**
+     * Unregisters the specified GL object of the specified share group.
+     *
+     * @param group  share group
+     * @param kind   kind of the GL object
+     * @param handle GL handle
+     */
+    static void deleted(Object group, Kind kind, int handle) {
+        synchronized (GROUPS) {
+            Map<Long, Record> records = GROUPS.get(group);
+            if (records == null) {
+                return;
+            }
+            Record record = records.remove(key(kind, handle));
+            if (record != null && record.owner != null) {
+                record.owner.clear();
+            }
+            if (records.isEmpty()) {
+                GROUPS.remove(group);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by live GL objects of the share group of
+     * the specified context.
+     *
+     * @param context GL context
+     * @return the number of bytes allocated by live GL objects
+     */
+    public static long getLiveBytes(GLContext context) {
+        return getLiveBytes(getShareGroup(context));
+    }
+
+    /**
+     * Returns the number of bytes allocated by live GL objects of the specified share
+     * group.
+     *
+     * @param group share group
+     * @return the number of bytes allocated by live GL objects
+     */
+    static long getLiveBytes(Object group) {
+        synchronized (GROUPS) {
+            Map<Long, Record> records = GROUPS.get(group);
+            long bytes = 0;
+            if (records != null) {
+                for (Record r : records.values()) {
+                    bytes += r.bytes;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Returns the number of live GL objects of the share group of the specified
+     * context.
+     *
+     * @param context GL context
+     * @return the number of live GL objects
+     */
+    public static int getLiveObjects(GLContext context) {
+        return getLiveObjects(getShareGroup(context));
+    }
+
+    /**
+     * Returns the number of live GL objects of the specified share group.
+     *
+     * @param group share group
+     * @return the number of live GL objects
+     */
+    static int getLiveObjects(Object group) {
+        synchronized (GROUPS) {
+            Map<Long, Record> records = GROUPS.get(group);
+            return records == null ? 0 : records.size();
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by all live GL objects.
+     *
+     * @return the number of bytes allocated by all live GL objects
+     */
+    public static long getTotalLiveBytes() {
+        synchronized (GROUPS) {
+            long bytes = 0;
+            for (Map<Long, Record> records : GROUPS.values()) {
+                for (Record r : records.values()) {
+                    bytes += r.bytes;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Reports GL objects that have been garbage collected without being deleted
+     * (debug mode).
+     *
+     * @return the number of newly detected leaks
+     */
+    public static int checkLeaks() {
+        int leaks = 0;
+        Reference<? extends GLObject> ref;
+        while ((ref = COLLECTED.poll()) != null) {
+            OwnerReference owner = (OwnerReference) ref;
+            Record record;
+            synchronized (GROUPS) {
+                Map<Long, Record> records = GROUPS.get(owner.group);
+                record = records == null ? null : records.get(owner.key);
+                if (record == null || record.owner != owner || record.leaked) {
+                    continue;
+                }
+                record.leaked = true;
+            }
+            leaks++;
+            System.err.println("-> [VRL-JOGL]: GL object leaked (collected without delete()): " + record);
+            record.site.printStackTrace(System.err);
+        }
+        return leaks;
+    }
+
+    /**
+     * Prints all live GL objects (including their allocation sites in debug mode).
+     *
+     * @return the number of live GL objects
+     */
+    public static int reportLiveObjects() {
+        List<Record> live = new ArrayList<>();
+        synchronized (GROUPS) {
+            for (Map<Long, Record> records : GROUPS.values()) {
+                live.addAll(records.values());
+            }
+        }
+        for (Record r : live) {
+            System.err.println("-> [VRL-JOGL]: live GL object: " + r);
+            if (r.site != null) {
+                r.site.printStackTrace(System.err);
+            }
+        }
+        return live.size();
+    }
+
+    private static long key(Kind kind, int handle) {
+        return ((long) kind.ordinal() << 32) | (handle & 0xFFFFFFFFL);
+    }
+
+    static Object getShareGroup(GL gl) {
+        GLContext context = gl.getContext();
+        // gl objects without context (e.g. stubs) form a single group
+        return context == null ? GLResources.class : getShareGroup(context);
+    }
+
+    /**
+     * Returns the context that identifies the share group of the specified context.
+     * Contexts that don't share objects form their own group.
+     *
+     * @param context GL context
+     * @return the context that identifies the share group
+     */
+    static GLContext getShareGroup(GLContext context) {
+        GLContext master = context.getSharedMaster();
+        return master != null ? master : context;
+    }
+}
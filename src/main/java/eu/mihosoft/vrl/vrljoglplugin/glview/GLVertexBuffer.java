@@ -5,6 +5,8 @@ import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.util.GLBuffers;
 
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 
 
 /**
@@ -22,8 +24,22 @@ public class GLVertexBuffer implements GLObject {
         this.gl = gl;
     }
 
+    /**
+     * Creates a buffer that refers to the specified buffer of another GL context of
+     * the same share group.
+     *
+     * @param gl     gl object (of the current context)
+     * @param shared shared buffer
+     */
+    GLVertexBuffer(GL3 gl, GLVertexBuffer shared) {
+        this.gl = gl;
+        this.bufferObj[0] = shared.bufferObj[0];
+        this.size = shared.size;
+    }
+
     public void create() {
         gl.glGenBuffers(1, bufferObj, 0);
+        GLResources.created(gl, GLResources.Kind.BUFFER, getGLHandle(), this);
     }
 
     public int getGLHandle() {
@@ -34,6 +50,19 @@ public class GLVertexBuffer implements GLObject {
         gl.glBindBuffer(gl.GL_ARRAY_BUFFER, getGLHandle());
     }
 
+    /**
+     * Deletes this buffer (releases the GPU memory).
+     */
+    @Override
+    public void delete() {
+        if (getGLHandle() != 0) {
+            gl.glDeleteBuffers(1, bufferObj, 0);
+            GLResources.deleted(gl, GLResources.Kind.BUFFER, getGLHandle());
+            bufferObj[0] = 0;
+            size = 0;
+        }
+    }
+
     public void release() {
         // unbind the VBO and VAO
         gl.glBindBuffer(gl.GL_ARRAY_BUFFER, 0);
@@ -45,6 +74,69 @@ public class GLVertexBuffer implements GLObject {
         Buffer buffer = Buffers.newDirectFloatBuffer(data);
         int bufferByteSize = buffer.capacity() * Buffers.SIZEOF_FLOAT;
         gl.glBufferData(gl.GL_ARRAY_BUFFER, bufferByteSize, buffer, gl.GL_STATIC_DRAW);
+        GLResources.allocated(gl, GLResources.Kind.BUFFER, getGLHandle(),
+                (long) size * Buffers.SIZEOF_FLOAT);
+    }
+
+    /**
+     * Allocates this buffer and uploads the specified data. Direct and heap buffers
+     * are passed to GL without creating an intermediate copy.
+     *
+     * @param data data to upload (from index 0 to the limit of the buffer)
+     */
+    public void allocate(FloatBuffer data) {
+        FloatBuffer buffer = data.duplicate();
+        buffer.position(0);
+        this.size = buffer.limit();
+        long bufferByteSize = (long) buffer.limit() * Buffers.SIZEOF_FLOAT;
+        gl.glBufferData(gl.GL_ARRAY_BUFFER, bufferByteSize, buffer, gl.GL_STATIC_DRAW);
+        GLResources.allocated(gl, GLResources.Kind.BUFFER, getGLHandle(),
+                (long) size * Buffers.SIZEOF_FLOAT);
+    }
+
+    /**
+     * Allocates this buffer and uploads the specified (packed) vertex data.
+     *
+     * @param data data to upload (from index 0 to the limit of the buffer, the size must
+     *             be a multiple of 4 bytes)
+     */
+    public void allocate(ByteBuffer data) {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(0);
+        this.size = buffer.limit() / Buffers.SIZEOF_FLOAT;
+        gl.glBufferData(gl.GL_ARRAY_BUFFER, buffer.limit(), buffer, gl.GL_STATIC_DRAW);
+        GLResources.allocated(gl, GLResources.Kind.BUFFER, getGLHandle(),
+                (long) size * Buffers.SIZEOF_FLOAT);
+    }
+
+    /**
+     * Allocates this buffer without uploading data. The data is uploaded
+     * incrementally via {@link #update(int, FloatBuffer)}.
+     *
+     * @param numElements number of floats (32 bit words)
+     */
+    public void reserve(int numElements) {
+        this.size = numElements;
+        gl.glBufferData(gl.GL_ARRAY_BUFFER, (long) numElements * Buffers.SIZEOF_FLOAT,
+                null, gl.GL_DYNAMIC_DRAW);
+        GLResources.allocated(gl, GLResources.Kind.BUFFER, getGLHandle(),
+                (long) size * Buffers.SIZEOF_FLOAT);
+    }
+
+    /**
+     * Uploads the specified data to the specified range of this buffer (the buffer
+     * must be bound and large enough).
+     *
+     * @param firstElement first float (32 bit word) of the range to update
+     * @param data         data to upload (from the position to the limit of the buffer)
+     */
+    public void update(int firstElement, FloatBuffer data) {
+        if (firstElement < 0 || firstElement + data.remaining() > size) {
+            throw new IndexOutOfBoundsException("Range [" + firstElement + ", "
+                    + (firstElement + data.remaining()) + ") exceeds buffer size " + size);
+        }
+        gl.glBufferSubData(gl.GL_ARRAY_BUFFER, (long) firstElement * Buffers.SIZEOF_FLOAT,
+                (long) data.remaining() * Buffers.SIZEOF_FLOAT, data);
     }
 
     /**
@@ -56,8 +148,8 @@ public class GLVertexBuffer implements GLObject {
     }
 
     /**
-     * Returns the number of floats in this buffer.
-     * @return the number of floats in this buffer
+     * Returns the number of floats (32 bit words) in this buffer.
+     * @return the number of floats (32 bit words) in this buffer
      */
     public int numElements() {
         return this.size;
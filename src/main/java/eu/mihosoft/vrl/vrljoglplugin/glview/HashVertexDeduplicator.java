@@ -0,0 +1,51 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.util.Arrays;
+
+/**
+ * Sequential vertex deduplicator based on an open-addressing hash table that only
+ * stores vertex indices.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class HashVertexDeduplicator extends AbstractVertexDeduplicator {
+
+    @Override
+    public Mesh deduplicate(float[] triangleVertices) {
+
+        int numVerts = triangleVertices.length / 3;
+
+        // power of two capacity with load factor <= 0.5 (<= 0.67 for huge meshes)
+        int capacity = (int) Math.min(1 << 30, Long.highestOneBit(2L * Math.max(1, numVerts) - 1) << 1);
+        int mask = capacity - 1;
+
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+
+        int[] representatives = new int[numVerts];
+
+        for (int i = 0; i < numVerts; i++) {
+            int slot = hash(triangleVertices, i) & mask;
+            int representative = i;
+            while (true) {
+                int candidate = table[slot];
+                if (candidate < 0) {
+                    table[slot] = i;
+                    break;
+                } else if (equal(triangleVertices, candidate, i)) {
+                    representative = candidate;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            representatives[i] = representative;
+        }
+
+        return createMesh(triangleVertices, representatives);
+    }
+
+    @Override
+    public String toString() {
+        return "HashVertexDeduplicator";
+    }
+}
@@ -0,0 +1,142 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chain of levels of detail of a mesh (see {@link MeshSimplifier}).
+ *
+ * Level {@code 0} is the original mesh, each following level has fewer triangles
+ * than its predecessor. Every level knows its approximation error, i.e., an estimate
+ * of the distance between its surface and the surface of the original mesh.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class LODChain {
+
+    /**
+     * Level of detail.
+     */
+    public static final class Level {
+        private final Mesh mesh;
+        private final double error;
+        private final double relativeError;
+
+        Level(Mesh mesh, double error, double relativeError) {
+            this.mesh = mesh;
+            this.error = error;
+            this.relativeError = relativeError;
+        }
+
+        /**
+         * Returns the mesh of this level.
+         *
+         * @return the mesh of this level
+         */
+        public Mesh getMesh() {
+            return mesh;
+        }
+
+        /**
+         * Returns the number of triangles of this level.
+         *
+         * @return the number of triangles of this level
+         */
+        public int numTriangles() {
+            return mesh.numIndices() / 3;
+        }
+
+        /**
+         * Returns the approximation error of this level (in model units).
+         *
+         * @return the approximation error of this level
+         */
+        public double getError() {
+            return error;
+        }
+
+        /**
+         * Returns the approximation error of this level relative to the largest extent
+         * of the original mesh.
+         *
+         * @return the relative approximation error of this level
+         */
+        public double getRelativeError() {
+            return relativeError;
+        }
+
+        @Override
+        public String toString() {
+            return "[triangles=" + numTriangles() + ", error=" + (float) error
+                    + ", relative-error=" + (float) relativeError + "]";
+        }
+    }
+
+    private final List<Level> levels;
+
+    LODChain(List<Level> levels) {
+        if (levels.isEmpty()) {
+            throw new IllegalArgumentException("At least one level required");
+        }
+        this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+    }
+
+    /**
+     * Returns the number of levels (including the original mesh).
+     *
+     * @return the number of levels
+     */
+    public int numLevels() {
+        return levels.size();
+    }
+
+    /**
+     * Returns the specified level.
+     *
+     * @param level level index ({@code 0} is the original mesh)
+     * @return the specified level
+     */
+    public Level getLevel(int level) {
+        return levels.get(level);
+    }
+
+    /**
+     * Returns all levels (finest level first).
+     *
+     * @return all levels (unmodifiable)
+     */
+    public List<Level> getLevels() {
+        return levels;
+    }
+
+    /**
+     * Returns the original mesh.
+     *
+     * @return the original mesh
+     */
+    public Mesh getOriginal() {
+        return levels.get(0).getMesh();
+    }
+
+    /**
+     * Returns the finest level that has at most the specified number of triangles.
+     *
+     * @param maxTriangles maximum number of triangles
+     * @return index of the finest level with at most the specified number of triangles
+     * (the coarsest level if all levels have more triangles)
+     */
+    public int selectLevel(int maxTriangles) {
+        for (int i = 0; i < levels.size(); i++) {
+            if (levels.get(i).numTriangles() <= maxTriangles) {
+                return i;
+            }
+        }
+        return levels.size() - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "[levels=" + levels + "]";
+    }
+}
@@ -0,0 +1,104 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+/**
+ * Selects the level of detail to draw from the projected size of a mesh.
+ *
+ * The coarsest level whose error covers at most {@code maxPixelError} pixels is
+ * selected. Levels with considerably more triangles than pixels they cover are
+ * skipped (the additional triangles are not visible). To prevent popping, a finer
+ * level is only replaced by a coarser one if the coarser level would also be
+ * acceptable at twice the projected size ({@link #HYSTERESIS}), i.e., small zoom
+ * changes don't switch back and forth.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+final class LODSelector {
+
+    /**
+     * Coarser levels are only selected if they would still be acceptable at
+     * {@code 1 / HYSTERESIS} times the projected size.
+     */
+    static final double HYSTERESIS = 0.5;
+
+    // number of triangles per covered pixel that are still considered to be visible
+    private static final double MAX_TRIANGLES_PER_PIXEL = 2.0;
+
+    private final LODChain chain;
+    private int level;
+
+    /**
+     * Creates a selector that starts with the finest level.
+     *
+     * @param chain levels of detail
+     */
+    LODSelector(LODChain chain) {
+        this.chain = chain;
+    }
+
+    /**
+     * Returns the levels of detail.
+     *
+     * @return the levels of detail
+     */
+    LODChain getChain() {
+        return chain;
+    }
+
+    /**
+     * Returns the currently selected level.
+     *
+     * @return the currently selected level
+     */
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * Selects the level to draw.
+     *
+     * @param pixelsPerUnit number of pixels covered by one model unit
+     * @param coveredPixels number of pixels covered by the mesh
+     * @param maxPixelError maximum error in pixels
+     * @return the selected level
+     */
+    int select(double pixelsPerUnit, double coveredPixels, double maxPixelError) {
+        int finer = target(pixelsPerUnit, coveredPixels, maxPixelError);
+        if (finer < level) {
+            // not precise enough: switch immediately
+            level = finer;
+        } else {
+            // coarser level: only if it would still be acceptable if the mesh was
+            // displayed larger (1 / HYSTERESIS times)
+            int coarser = target(pixelsPerUnit / HYSTERESIS,
+                    coveredPixels / (HYSTERESIS * HYSTERESIS), maxPixelError);
+            if (coarser > level) {
+                level = coarser;
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Returns the coarsest level whose error is within the limit. Finer levels with
+     * more triangles than visible pixels are skipped.
+     */
+    private int target(double pixelsPerUnit, double coveredPixels, double maxPixelError) {
+        int precise = 0;
+        for (int i = chain.numLevels() - 1; i > 0; i--) {
+            if (chain.getLevel(i).getError() * pixelsPerUnit <= maxPixelError) {
+                precise = i;
+                break;
+            }
+        }
+
+        int visible = chain.numLevels() - 1;
+        for (int i = 0; i < chain.numLevels(); i++) {
+            if (chain.getLevel(i).numTriangles() <= coveredPixels * MAX_TRIANGLES_PER_PIXEL) {
+                visible = i;
+                break;
+            }
+        }
+
+        return Math.max(precise, visible);
+    }
+}
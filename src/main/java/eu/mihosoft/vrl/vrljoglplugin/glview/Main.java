@@ -7,6 +7,7 @@ import com.jogamp.opengl.awt.GLJPanel;
 import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 
 public class Main {
     public static void main(String[] args) {
@@ -33,14 +34,14 @@ public class Main {
             mesh = new STLLoader().loadMesh(
                     new File("/Users/miho/tmp/jogltest.stl")
             );
-            mesh.colors = new float[]{
+            mesh = Mesh.newInstance(mesh.getVertices(), mesh.getIndices(), FloatBuffer.wrap(new float[]{
                     1,0,0,1,
                     0,1,0,1,
                     0,0,1,1,
                     1,1,1,1,
                     0,1,1,1,
 
-            };
+            }));
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
@@ -2,96 +2,378 @@ package eu.mihosoft.vrl.vrljoglplugin.glview;
 
 import eu.mihosoft.vvecmath.Vector3d;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 /**
  * A simple Mesh class.
  *
+ * The mesh data is stored in float/int buffers. These can either wrap heap arrays or
+ * use native memory (direct or memory mapped buffers), e.g., to keep large meshes out
+ * of the garbage collected heap and to upload them to the GPU without copying. The
+ * buffers always start at position {@code 0} and their limit equals the number of
+ * elements.
+ *
+ * Meshes are immutable, i.e., they can be shared between multiple canvases and
+ * threads. Transformations (e.g. centering and scaling for display) are applied via
+ * transformation matrices instead of modifying the vertex data.
+ *
  * @author Michael Hoffer <info@michaelhoffer.de>
  */
 public final class Mesh {
 
-    float[] vertices;
-    int[] indices;
-    float[] colors;
-    float[] globalColor = {1.f,1.f,1.f,1.f};
+    final FloatBuffer vertices;
+    final IntBuffer indices;
+    final FloatBuffer colors;
+    final float[] globalColor = {1.f,1.f,1.f,1.f};
 
-    private Mesh(float[] vertices, int[] indices) {
-        this.vertices = vertices;
-        this.indices = indices;
-    }
+    // cached bounds (xmin,ymin,zmin,xmax,ymax,zmax)
+    private volatile float[] bounds;
+    // cached content hash (0 if not computed yet)
+    private volatile long contentHash;
 
-    private Mesh(float[] vertices, int[] indices, float[] colors) {
-        this.vertices = vertices;
-        this.indices = indices;
-        this.colors = colors;
+    private Mesh(FloatBuffer vertices, IntBuffer indices, FloatBuffer colors) {
+        this.vertices = rewind(vertices);
+        this.indices = rewind(indices);
+        this.colors = colors == null ? null : rewind(colors);
     }
 
     public static Mesh newInstance(float[] vertices, int[] indices) {
-        return new Mesh(vertices,indices);
+        return new Mesh(FloatBuffer.wrap(vertices), IntBuffer.wrap(indices), null);
     }
     public static Mesh newInstance(float[] vertices, int[] indices, float[] colors) {
-        return new Mesh(vertices,indices, colors);
+        return new Mesh(FloatBuffer.wrap(vertices), IntBuffer.wrap(indices),
+                colors == null ? null : FloatBuffer.wrap(colors));
+    }
+
+    /**
+     * Creates a mesh that is backed by the specified buffers (no data is copied). The
+     * buffer contents between position and limit are used.
+     *
+     * @param vertices vertex coordinates ({@code x,y,z} per vertex)
+     * @param indices  triangle indices (three per triangle)
+     * @return new mesh
+     */
+    public static Mesh newInstance(FloatBuffer vertices, IntBuffer indices) {
+        return new Mesh(vertices, indices, null);
+    }
+
+    /**
+     * Creates a mesh that is backed by the specified buffers (no data is copied). The
+     * buffer contents between position and limit are used.
+     *
+     * @param vertices vertex coordinates ({@code x,y,z} per vertex)
+     * @param indices  triangle indices (three per triangle)
+     * @param colors   vertex colors ({@code r,g,b,a} per vertex, might be {@code null})
+     * @return new mesh
+     */
+    public static Mesh newInstance(FloatBuffer vertices, IntBuffer indices, FloatBuffer colors) {
+        return new Mesh(vertices, indices, colors);
+    }
+
+    private static FloatBuffer rewind(FloatBuffer buffer) {
+        return buffer.position() == 0 ? buffer : buffer.slice();
     }
 
+    private static IntBuffer rewind(IntBuffer buffer) {
+        return buffer.position() == 0 ? buffer : buffer.slice();
+    }
+
+    /**
+     * Returns the vertex coordinates ({@code x,y,z} per vertex).
+     *
+     * @return the vertex coordinates (read-only view)
+     */
+    public FloatBuffer getVertices() {
+        return vertices.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the triangle indices (three per triangle).
+     *
+     * @return the triangle indices (read-only view)
+     */
+    public IntBuffer getIndices() {
+        return indices.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the vertex colors ({@code r,g,b,a} per vertex).
+     *
+     * @return the vertex colors (read-only view) or {@code null} if this mesh has no
+     * vertex colors
+     */
+    public FloatBuffer getColors() {
+        return colors == null ? null : colors.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the number of vertices.
+     *
+     * @return the number of vertices
+     */
+    public int numVertices() {
+        return vertices.limit() / 3;
+    }
+
+    /**
+     * Returns the number of indices (three per triangle).
+     *
+     * @return the number of indices
+     */
+    public int numIndices() {
+        return indices.limit();
+    }
+
+    /**
+     * Indicates whether this mesh has vertex colors.
+     *
+     * @return {@code true} if this mesh has vertex colors; {@code false} otherwise
+     */
+    public boolean hasColors() {
+        return colors != null && colors.limit() > 0;
+    }
+
+    /**
+     * Indicates whether the data of this mesh is stored in native memory (direct or
+     * memory mapped buffers).
+     *
+     * @return {@code true} if the mesh data is stored in native memory; {@code false}
+     * if it is stored on the heap
+     */
+    public boolean isDirect() {
+        return vertices.isDirect() && indices.isDirect() && (colors == null || colors.isDirect());
+    }
 
     float xmin() {
-        return min(0);
+        return bounds()[0];
     }
 
     float ymin() {
-        return min(1);
+        return bounds()[1];
     }
 
     float zmin() {
-        return min(2);
+        return bounds()[2];
     }
 
     float xmax() {
-        return max(0);
+        return bounds()[3];
     }
 
     float ymax() {
-        return max(1);
+        return bounds()[4];
     }
 
     float zmax() {
-        return max(2);
+        return bounds()[5];
     }
 
-    float min(int start) {
-        if (start >= vertices.length) {
-            return -1;
+    boolean isEmpty() {
+        return vertices.limit() == 0;
+    }
+
+    /**
+     * Returns the bounds of this mesh. The bounds are computed (in parallel) on first
+     * access and cached afterwards, i.e., loaders should call this method to avoid
+     * computing the bounds on the render thread.
+     *
+     * @return the bounds of this mesh ({@code [-1,1]} per axis if this mesh is empty)
+     */
+    public Bounds getBounds() {
+        float[] b = bounds();
+        return new Bounds(Vector3d.xyz(b[0], b[1], b[2]), Vector3d.xyz(b[3], b[4], b[5]));
+    }
+
+    /**
+     * Returns a hash of the mesh data. The hash is computed (in parallel) on first
+     * access and cached afterwards, i.e., loaders should call this method to avoid
+     * computing the hash on the render thread (see {@link GLMeshRegistry}).
+     *
+     * @return a hash of the mesh data
+     */
+    long contentHash() {
+        long h = contentHash;
+        if (h == 0) {
+            // polynomial hash of all elements, sections are hashed in parallel
+            h = 1;
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            long[] v = pool.invoke(new HashTask(vertices, null, 0, vertices.limit()));
+            h = h * v[1] + v[0];
+            long[] i = pool.invoke(new HashTask(null, indices, 0, indices.limit()));
+            h = h * i[1] + i[0];
+            if (colors != null) {
+                long[] c = pool.invoke(new HashTask(colors, null, 0, colors.limit()));
+                h = h * c[1] + c[0];
+            }
+            for (float c : globalColor) {
+                h = 31 * h + Float.floatToIntBits(c);
+            }
+            // 0 indicates that the hash has not been computed yet
+            h = h == 0 ? 1 : h;
+            contentHash = h;
         }
-        float v = vertices[start];
-        for (int i = start; i < vertices.length; i += 3) {
-            v = Math.min(v, vertices[i]);
+        return h;
+    }
+
+    /**
+     * Indicates whether the content hash of this mesh has been computed already.
+     *
+     * @return {@code true} if the content hash has been computed; {@code false} otherwise
+     */
+    boolean hasContentHash() {
+        return contentHash != 0;
+    }
+
+    /**
+     * Indicates whether the specified mesh contains the same data as this mesh.
+     *
+     * @param other mesh to compare
+     * @return {@code true} if both meshes contain the same data; {@code false} otherwise
+     */
+    boolean contentEquals(Mesh other) {
+        if (other == this) {
+            return true;
         }
-        return v;
+        return contentHash() == other.contentHash()
+                && vertices.equals(other.vertices)
+                && indices.equals(other.indices)
+                && (hasColors() ? other.hasColors() && colors.equals(other.colors) : !other.hasColors())
+                && Arrays.equals(globalColor, other.globalColor);
     }
 
-    float max(int start) {
-        if (start >= vertices.length) {
-            return 1;
+    /**
+     * Initializes the cached bounds (e.g. with bounds stored in a mesh file).
+     *
+     * @param bounds bounds ({@code xmin,ymin,zmin,xmax,ymax,zmax})
+     */
+    void initBounds(float[] bounds) {
+        if (!isEmpty()) {
+            this.bounds = bounds.clone();
         }
-        float v = vertices[start];
-        for (int i = start; i < vertices.length; i += 3) {
-            v = Math.max(v, vertices[i]);
+    }
+
+    /**
+     * Returns the cached bounds ({@code xmin,ymin,zmin,xmax,ymax,zmax}).
+     */
+    private float[] bounds() {
+        float[] b = bounds;
+        if (b == null) {
+            if (isEmpty()) {
+                b = new float[]{-1, -1, -1, 1, 1, 1};
+            } else {
+                b = ForkJoinPool.commonPool().invoke(new BoundsTask(vertices, 0, numVertices()));
+            }
+            // benign race: concurrent callers compute the same bounds
+            bounds = b;
         }
-        return v;
+        return b;
     }
 
-    boolean isEmpty() {
-        return vertices.length == 0;
+    /**
+     * Computes the bounds of a vertex range.
+     */
+    private static final class BoundsTask extends RecursiveTask<float[]> {
+
+        // ranges with fewer vertices are processed sequentially
+        private static final int MIN_VERTICES_PER_TASK = 1 << 16;
+
+        private final FloatBuffer vertices;
+        private final int from;
+        private final int to;
+
+        BoundsTask(FloatBuffer vertices, int from, int to) {
+            this.vertices = vertices;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected float[] compute() {
+            if (to - from <= MIN_VERTICES_PER_TASK) {
+                float[] b = {
+                        Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY
+                };
+                for (int i = from * 3; i < to * 3; i += 3) {
+                    for (int c = 0; c < 3; c++) {
+                        float v = vertices.get(i + c);
+                        b[c] = Math.min(b[c], v);
+                        b[c + 3] = Math.max(b[c + 3], v);
+                    }
+                }
+                return b;
+            }
+
+            int mid = (from + to) >>> 1;
+            BoundsTask left = new BoundsTask(vertices, from, mid);
+            BoundsTask right = new BoundsTask(vertices, mid, to);
+            left.fork();
+            float[] b = right.compute();
+            float[] l = left.join();
+            for (int c = 0; c < 3; c++) {
+                b[c] = Math.min(b[c], l[c]);
+                b[c + 3] = Math.max(b[c + 3], l[c + 3]);
+            }
+            return b;
+        }
     }
 
-    public Bounds getBounds() {
-        return new Bounds(Vector3d.xyz(xmin(),ymin(),zmin()),Vector3d.xyz(xmax(),ymax(),zmax()));
+    /**
+     * Computes the polynomial hash ({@code h = 31 * h + element}) of a range of a float
+     * or an int buffer. The hash of a concatenation is {@code h1 * 31^n2 + h2}, i.e.,
+     * the result equals the sequential hash.
+     */
+    private static final class HashTask extends RecursiveTask<long[]> {
+
+        // ranges with fewer elements are processed sequentially
+        private static final int MIN_ELEMENTS_PER_TASK = 1 << 18;
+
+        private final FloatBuffer floats;
+        private final IntBuffer ints;
+        private final int from;
+        private final int to;
+
+        HashTask(FloatBuffer floats, IntBuffer ints, int from, int to) {
+            this.floats = floats;
+            this.ints = ints;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Returns the hash and {@code 31^n} of the range.
+         */
+        @Override
+        protected long[] compute() {
+            if (to - from <= MIN_ELEMENTS_PER_TASK) {
+                long h = 0;
+                long p = 1;
+                for (int i = from; i < to; i++) {
+                    h = 31 * h + (floats != null ? Float.floatToIntBits(floats.get(i)) : ints.get(i));
+                    p *= 31;
+                }
+                return new long[]{h, p};
+            }
+
+            int mid = (from + to) >>> 1;
+            HashTask left = new HashTask(floats, ints, from, mid);
+            HashTask right = new HashTask(floats, ints, mid, to);
+            left.fork();
+            long[] r = right.compute();
+            long[] l = left.join();
+            return new long[]{l[0] * r[1] + r[0], l[1] * r[1]};
+        }
     }
 
     public static final class Bounds {
         private final Vector3d min;
         private final Vector3d max;
 
-        private Bounds(Vector3d min, Vector3d max) {
+        Bounds(Vector3d min, Vector3d max) {
             this.min = min;
             this.max = max;
         }
@@ -104,4 +386,4 @@ public final class Mesh {
             return max;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,833 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static eu.mihosoft.vrl.vrljoglplugin.glview.ParallelBuild.setEmpty;
+import static eu.mihosoft.vrl.vrljoglplugin.glview.ParallelBuild.union;
+
+/**
+ * Bounding volume hierarchy over the triangles of a mesh (for ray casting, e.g.,
+ * mouse picking).
+ *
+ * The hierarchy is built top-down with binned surface area heuristic (SAH) splits.
+ * Subtrees are built in parallel. Nodes are stored in flat arrays (bounds and
+ * child/triangle references), i.e., the hierarchy consists of a handful of objects
+ * regardless of the mesh size. Ray queries don't allocate memory (see {@link Hit}).
+ *
+ * Sample:
+ * <pre>
+ * MeshBVH bvh = MeshBVH.build(mesh);
+ * MeshBVH.Hit hit = new MeshBVH.Hit();
+ * if (bvh.intersect(0, 0, -10, 0, 0, 1, Float.POSITIVE_INFINITY, hit)) {
+ *     System.out.println("triangle: " + hit.getTriangle());
+ * }
+ * </pre>
+ *
+ * Memory: about 24 bytes per triangle in addition to the mesh data (12 more bytes per
+ * triangle while building).
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class MeshBVH {
+
+    // number of bins per split
+    private static final int NUM_BINS = 16;
+
+    // nodes with at most this many triangles always become leaves
+    private static final int MIN_LEAF_TRIANGLES = 4;
+
+    // nodes with at most this many triangles become leaves if a split is not cheaper
+    private static final int MAX_LEAF_TRIANGLES = 8;
+
+    // nodes with at most this many triangles become leaves if no split is possible
+    // (e.g. identical centroids)
+    private static final int MAX_FORCED_LEAF_TRIANGLES = 16;
+
+    // cost of traversing a node relative to intersecting a triangle
+    private static final float TRAVERSAL_COST = 1.0f;
+
+    // subtrees with at most this many triangles are built by a single task
+    private static final int MAX_TRIANGLES_PER_TASK = 1 << 16;
+
+    /**
+     * Result of a ray query. Hits can be reused for any number of queries (the
+     * traversal stack is stored in the hit, i.e., queries don't allocate memory once
+     * the stack is large enough).
+     */
+    public static final class Hit {
+        private int triangle = -1;
+        private int vertex = -1;
+        private float distance;
+        private float u;
+        private float v;
+        private float x;
+        private float y;
+        private float z;
+
+        // traversal stack
+        private int[] stack = new int[64];
+
+        /**
+         * Returns the index of the triangle that has been hit.
+         *
+         * @return the index of the triangle that has been hit ({@code -1} if nothing has
+         * been hit)
+         */
+        public int getTriangle() {
+            return triangle;
+        }
+
+        /**
+         * Returns the index of the vertex of the hit triangle that is closest to the
+         * hit position.
+         *
+         * @return the index of the closest vertex ({@code -1} if nothing has been hit)
+         */
+        public int getVertex() {
+            return vertex;
+        }
+
+        /**
+         * Returns the ray parameter of the hit, i.e., the hit position is
+         * {@code origin + distance * direction}.
+         *
+         * @return the ray parameter of the hit
+         */
+        public float getDistance() {
+            return distance;
+        }
+
+        /**
+         * Returns the first barycentric coordinate of the hit (weight of the second
+         * triangle vertex).
+         *
+         * @return the first barycentric coordinate
+         */
+        public float getU() {
+            return u;
+        }
+
+        /**
+         * Returns the second barycentric coordinate of the hit (weight of the third
+         * triangle vertex).
+         *
+         * @return the second barycentric coordinate
+         */
+        public float getV() {
+            return v;
+        }
+
+        /**
+         * Returns the x coordinate of the hit position.
+         *
+         * @return the x coordinate of the hit position
+         */
+        public float getX() {
+            return x;
+        }
+
+        /**
+         * Returns the y coordinate of the hit position.
+         *
+         * @return the y coordinate of the hit position
+         */
+        public float getY() {
+            return y;
+        }
+
+        /**
+         * Returns the z coordinate of the hit position.
+         *
+         * @return the z coordinate of the hit position
+         */
+        public float getZ() {
+            return z;
+        }
+
+        @Override
+        public String toString() {
+            return "[triangle=" + triangle + ", vertex=" + vertex + ", position=("
+                    + x + ", " + y + ", " + z + ")]";
+        }
+    }
+
+    private final Mesh mesh;
+    private final FloatBuffer vertices;
+    private final IntBuffer indices;
+
+    // node bounds (xmin,ymin,zmin,xmax,ymax,zmax per node)
+    private final float[] nodeBounds;
+    // (first child or first triangle, number of triangles) per node: inner nodes have
+    // zero triangles and two consecutive children
+    private final int[] nodes;
+    private final int numNodes;
+    // triangles referenced by the leaves (leaves reference consecutive ranges)
+    private final int[] triangles;
+    // maximum depth (root has depth 0)
+    private final int depth;
+
+    private MeshBVH(Mesh mesh, float[] nodeBounds, int[] nodes, int numNodes,
+                    int[] triangles, int depth) {
+        this.mesh = mesh;
+        this.vertices = mesh.vertices.duplicate();
+        this.indices = mesh.indices.duplicate();
+        this.nodeBounds = nodeBounds;
+        this.nodes = nodes;
+        this.numNodes = numNodes;
+        this.triangles = triangles;
+        this.depth = depth;
+    }
+
+    /**
+     * Builds the hierarchy of the specified mesh (in parallel with all available
+     * processors).
+     *
+     * @param mesh mesh
+     * @return the hierarchy of the specified mesh
+     */
+    public static MeshBVH build(Mesh mesh) {
+        return build(mesh, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Builds the hierarchy of the specified mesh.
+     *
+     * @param mesh mesh
+     * @param parallelism number of threads ({@code 1} disables parallel building)
+     * @return the hierarchy of the specified mesh
+     */
+    public static MeshBVH build(Mesh mesh, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        return new Builder(mesh).build(parallelism);
+    }
+
+    /**
+     * Builds the hierarchy of the specified mesh in the background.
+     *
+     * @param mesh mesh
+     * @return future that is completed with the hierarchy
+     */
+    public static CompletableFuture<MeshBVH> buildAsync(Mesh mesh) {
+        return CompletableFuture.supplyAsync(() -> build(mesh), ParallelBuild.EXECUTOR);
+    }
+
+    /**
+     * Returns the mesh of this hierarchy.
+     *
+     * @return the mesh of this hierarchy
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Returns the number of nodes.
+     *
+     * @return the number of nodes
+     */
+    public int numNodes() {
+        return numNodes;
+    }
+
+    /**
+     * Returns the maximum depth of the hierarchy (the root has depth {@code 0}).
+     *
+     * @return the maximum depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Computes the closest intersection of the specified ray with the triangles of the
+     * mesh (triangles are two-sided). This method is thread-safe if each thread uses
+     * its own hit object.
+     *
+     * @param ox x coordinate of the ray origin
+     * @param oy y coordinate of the ray origin
+     * @param oz z coordinate of the ray origin
+     * @param dx x coordinate of the ray direction
+     * @param dy y coordinate of the ray direction
+     * @param dz z coordinate of the ray direction
+     * @param maxDistance maximum ray parameter of hits
+     * @param hit hit object that receives the closest intersection (unchanged if
+     *            nothing has been hit)
+     * @return {@code true} if the ray hits a triangle; {@code false} otherwise
+     */
+    public boolean intersect(float ox, float oy, float oz, float dx, float dy, float dz,
+                             float maxDistance, Hit hit) {
+        if (numNodes == 0) {
+            return false;
+        }
+
+        if (hit.stack.length < depth + 1) {
+            hit.stack = new int[depth + 1];
+        }
+        int[] stack = hit.stack;
+
+        float idx = 1.f / dx;
+        float idy = 1.f / dy;
+        float idz = 1.f / dz;
+
+        float closest = maxDistance;
+        int closestTriangle = -1;
+        float closestU = 0;
+        float closestV = 0;
+
+        int sp = 0;
+        int node = 0;
+
+        if (entryDistance(node, ox, oy, oz, idx, idy, idz, closest) == Float.POSITIVE_INFINITY) {
+            return false;
+        }
+
+        while (true) {
+            int count = nodes[node * 2 + 1];
+            if (count > 0) {
+                int first = nodes[node * 2];
+                for (int i = first; i < first + count; i++) {
+                    int t = triangles[i];
+                    int a = indices.get(t * 3) * 3;
+                    int b = indices.get(t * 3 + 1) * 3;
+                    int c = indices.get(t * 3 + 2) * 3;
+
+                    // Moeller-Trumbore
+                    float ax = vertices.get(a), ay = vertices.get(a + 1), az = vertices.get(a + 2);
+                    float e1x = vertices.get(b) - ax, e1y = vertices.get(b + 1) - ay, e1z = vertices.get(b + 2) - az;
+                    float e2x = vertices.get(c) - ax, e2y = vertices.get(c + 1) - ay, e2z = vertices.get(c + 2) - az;
+
+                    float px = dy * e2z - dz * e2y;
+                    float py = dz * e2x - dx * e2z;
+                    float pz = dx * e2y - dy * e2x;
+                    float det = e1x * px + e1y * py + e1z * pz;
+                    if (det == 0) {
+                        continue;
+                    }
+                    float invDet = 1.f / det;
+
+                    float sx = ox - ax, sy = oy - ay, sz = oz - az;
+                    float u = (sx * px + sy * py + sz * pz) * invDet;
+                    if (u < 0 || u > 1) {
+                        continue;
+                    }
+
+                    float qx = sy * e1z - sz * e1y;
+                    float qy = sz * e1x - sx * e1z;
+                    float qz = sx * e1y - sy * e1x;
+                    float v = (dx * qx + dy * qy + dz * qz) * invDet;
+                    if (v < 0 || u + v > 1) {
+                        continue;
+                    }
+
+                    float d = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+                    if (d >= 0 && d < closest) {
+                        closest = d;
+                        closestTriangle = t;
+                        closestU = u;
+                        closestV = v;
+                    }
+                }
+            } else {
+                // visit the closer child first
+                int left = nodes[node * 2];
+                int right = left + 1;
+                float dl = entryDistance(left, ox, oy, oz, idx, idy, idz, closest);
+                float dr = entryDistance(right, ox, oy, oz, idx, idy, idz, closest);
+
+                if (dl != Float.POSITIVE_INFINITY && dr != Float.POSITIVE_INFINITY) {
+                    if (dl <= dr) {
+                        stack[sp++] = right;
+                        node = left;
+                    } else {
+                        stack[sp++] = left;
+                        node = right;
+                    }
+                    continue;
+                } else if (dl != Float.POSITIVE_INFINITY) {
+                    node = left;
+                    continue;
+                } else if (dr != Float.POSITIVE_INFINITY) {
+                    node = right;
+                    continue;
+                }
+            }
+
+            // next node on the stack that might contain a closer hit
+            node = -1;
+            while (sp > 0) {
+                int candidate = stack[--sp];
+                if (entryDistance(candidate, ox, oy, oz, idx, idy, idz, closest) != Float.POSITIVE_INFINITY) {
+                    node = candidate;
+                    break;
+                }
+            }
+            if (node < 0) {
+                break;
+            }
+        }
+
+        if (closestTriangle < 0) {
+            return false;
+        }
+
+        hit.triangle = closestTriangle;
+        hit.distance = closest;
+        hit.u = closestU;
+        hit.v = closestV;
+        hit.x = ox + closest * dx;
+        hit.y = oy + closest * dy;
+        hit.z = oz + closest * dz;
+
+        // the vertex with the largest barycentric weight is the closest vertex
+        float w = 1 - closestU - closestV;
+        int corner = w >= closestU && w >= closestV ? 0 : (closestU >= closestV ? 1 : 2);
+        hit.vertex = indices.get(closestTriangle * 3 + corner);
+
+        return true;
+    }
+
+    /**
+     * Returns the ray parameter at which the ray enters the bounds of the specified node.
+     *
+     * @return the entry ray parameter or {@code Float.POSITIVE_INFINITY} if the ray
+     * misses the bounds (or enters them after {@code maxDistance})
+     */
+    private float entryDistance(int node, float ox, float oy, float oz,
+                                float idx, float idy, float idz, float maxDistance) {
+        int b = node * 6;
+
+        float t0 = (nodeBounds[b] - ox) * idx;
+        float t1 = (nodeBounds[b + 3] - ox) * idx;
+        float tmin = Math.min(t0, t1);
+        float tmax = Math.max(t0, t1);
+
+        t0 = (nodeBounds[b + 1] - oy) * idy;
+        t1 = (nodeBounds[b + 4] - oy) * idy;
+        tmin = Math.max(tmin, Math.min(t0, t1));
+        tmax = Math.min(tmax, Math.max(t0, t1));
+
+        t0 = (nodeBounds[b + 2] - oz) * idz;
+        t1 = (nodeBounds[b + 5] - oz) * idz;
+        tmin = Math.max(tmin, Math.min(t0, t1));
+        tmax = Math.min(tmax, Math.max(t0, t1));
+
+        // NaN (origin on a slab of a zero direction) counts as hit
+        if (tmax < Math.max(tmin, 0) || tmin > maxDistance) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        return Math.max(tmin, 0);
+    }
+
+    /**
+     * Growable node arrays.
+     */
+    private static final class NodeBuffer {
+        float[] bounds = new float[6 * 64];
+        int[] nodes = new int[2 * 64];
+        int size;
+        int depth;
+
+        /**
+         * Allocates the specified number of consecutive nodes.
+         *
+         * @return the index of the first allocated node
+         */
+        int allocate(int n) {
+            if ((size + n) * 2 > nodes.length) {
+                int capacity = Math.max(size + n, size * 2);
+                bounds = Arrays.copyOf(bounds, capacity * 6);
+                nodes = Arrays.copyOf(nodes, capacity * 2);
+            }
+            int first = size;
+            size += n;
+            return first;
+        }
+    }
+
+    /**
+     * Builds the hierarchy. Top-level nodes are split by parallel tasks and stored in a
+     * shared (synchronized) buffer, subtrees with at most
+     * {@link #MAX_TRIANGLES_PER_TASK} triangles are built by a single task into their
+     * own buffer. The buffers are concatenated afterwards.
+     */
+    private static final class Builder {
+        private final Mesh mesh;
+        private final FloatBuffer vertices;
+        private final IntBuffer indices;
+        private final int numTriangles;
+
+        // triangle centroids (x,y,z per triangle, in the same order as the triangles,
+        // i.e., ranges are scanned sequentially)
+        private final float[] centroids;
+        // triangle order (each node references a range)
+        private final int[] order;
+
+        // top-level nodes
+        private final NodeBuffer top = new NodeBuffer();
+        // (top-level node, subtree) pairs
+        private final List<Object[]> subtrees = new ArrayList<>();
+
+        Builder(Mesh mesh) {
+            this.mesh = mesh;
+            this.vertices = mesh.vertices.duplicate();
+            this.indices = mesh.indices.duplicate();
+            this.numTriangles = mesh.numIndices() / 3;
+            this.centroids = new float[numTriangles * 3];
+            this.order = new int[numTriangles];
+        }
+
+        MeshBVH build(int parallelism) {
+            if (numTriangles == 0) {
+                return new MeshBVH(mesh, new float[0], new int[0], 0, new int[0], 0);
+            }
+
+            ForkJoinPool pool = parallelism > 1 && numTriangles > MAX_TRIANGLES_PER_TASK
+                    ? new ForkJoinPool(parallelism) : null;
+
+            try {
+                ParallelBuild.forRange(pool, numTriangles, MAX_TRIANGLES_PER_TASK, this::initCentroids);
+
+                int root = top.allocate(1);
+                if (pool == null) {
+                    buildSubtree(top, root, 0, numTriangles, 0);
+                } else {
+                    pool.invoke(new BuildTask(this, root, 0, numTriangles, 0));
+                }
+            } finally {
+                if (pool != null) {
+                    pool.shutdown();
+                }
+            }
+
+            return concatenate();
+        }
+
+        private void initCentroids(int from, int to) {
+            for (int t = from; t < to; t++) {
+                order[t] = t;
+                int a = indices.get(t * 3) * 3;
+                int b = indices.get(t * 3 + 1) * 3;
+                int c = indices.get(t * 3 + 2) * 3;
+                for (int k = 0; k < 3; k++) {
+                    centroids[t * 3 + k] = (vertices.get(a + k) + vertices.get(b + k)
+                            + vertices.get(c + k)) / 3.f;
+                }
+            }
+        }
+
+        /**
+         * Concatenates the top-level nodes and the subtrees (subtree roots replace
+         * their top-level placeholders).
+         */
+        private MeshBVH concatenate() {
+            int numNodes = top.size;
+            int depth = top.depth;
+            for (Object[] s : subtrees) {
+                NodeBuffer subtree = (NodeBuffer) s[1];
+                numNodes += subtree.size - 1;
+                depth = Math.max(depth, (Integer) s[2] + subtree.depth);
+            }
+
+            float[] bounds = Arrays.copyOf(top.bounds, numNodes * 6);
+            int[] nodes = Arrays.copyOf(top.nodes, numNodes * 2);
+
+            int offset = top.size;
+            for (Object[] s : subtrees) {
+                int placeholder = (Integer) s[0];
+                NodeBuffer subtree = (NodeBuffer) s[1];
+
+                // local node k > 0 is stored at offset + k - 1
+                int shift = offset - 1;
+                for (int k = 0; k < subtree.size; k++) {
+                    int dst = k == 0 ? placeholder : shift + k;
+                    System.arraycopy(subtree.bounds, k * 6, bounds, dst * 6, 6);
+                    int count = subtree.nodes[k * 2 + 1];
+                    nodes[dst * 2] = count > 0 ? subtree.nodes[k * 2] : subtree.nodes[k * 2] + shift;
+                    nodes[dst * 2 + 1] = count;
+                }
+                offset += subtree.size - 1;
+            }
+
+            return new MeshBVH(mesh, bounds, nodes, numNodes, order, depth);
+        }
+
+        /**
+         * Splits the range of the specified node.
+         *
+         * @param buffer buffer of the node
+         * @param node node
+         * @param from first triangle (in {@link #order})
+         * @param to triangle after the last triangle
+         * @param bins bin storage (reused)
+         * @return split position (the range is partitioned at this position) or
+         * {@code -1} if the node is a leaf
+         */
+        int split(NodeBuffer buffer, int node, int from, int to, float[] bins, int[] binCounts) {
+            int count = to - from;
+
+            // centroid bounds
+            float[] cmin = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+            float[] cmax = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+            for (int i = from; i < to; i++) {
+                for (int k = 0; k < 3; k++) {
+                    float c = centroids[i * 3 + k];
+                    if (c < cmin[k]) cmin[k] = c;
+                    if (c > cmax[k]) cmax[k] = c;
+                }
+            }
+
+            int axis = 0;
+            for (int k = 1; k < 3; k++) {
+                if (cmax[k] - cmin[k] > cmax[axis] - cmin[axis]) {
+                    axis = k;
+                }
+            }
+            float extent = cmax[axis] - cmin[axis];
+            float scale = extent > 0 ? NUM_BINS * (1 - 1e-6f) / extent : 0;
+
+            // bin the triangle bounds (the union of the bins is the node bounds)
+            Arrays.fill(binCounts, 0);
+            for (int b = 0; b < NUM_BINS; b++) {
+                setEmpty(bins, b * 6);
+            }
+            for (int i = from; i < to; i++) {
+                int t = order[i];
+                int b = binIndex(i, axis, cmin[axis], scale);
+                binCounts[b]++;
+                int o = b * 6;
+                for (int corner = 0; corner < 3; corner++) {
+                    int v = indices.get(t * 3 + corner) * 3;
+                    for (int k = 0; k < 3; k++) {
+                        float p = vertices.get(v + k);
+                        if (p < bins[o + k]) bins[o + k] = p;
+                        if (p > bins[o + 3 + k]) bins[o + 3 + k] = p;
+                    }
+                }
+            }
+
+            float[] nodeBounds = buffer.bounds;
+            int nb = node * 6;
+            setEmpty(nodeBounds, nb);
+            for (int b = 0; b < NUM_BINS; b++) {
+                if (binCounts[b] > 0) {
+                    union(nodeBounds, nb, bins, b * 6);
+                }
+            }
+
+            if (count <= MIN_LEAF_TRIANGLES || extent == 0) {
+                if (count <= MAX_FORCED_LEAF_TRIANGLES) {
+                    return -1;
+                }
+                // identical centroids: split in the middle
+                return from + count / 2;
+            }
+
+            // sweep from the right: areas and counts of the right sides
+            float[] rightArea = new float[NUM_BINS];
+            float[] box = new float[6];
+            setEmpty(box, 0);
+            int rightCount = 0;
+            for (int b = NUM_BINS - 1; b > 0; b--) {
+                if (binCounts[b] > 0) {
+                    union(box, 0, bins, b * 6);
+                }
+                rightCount += binCounts[b];
+                rightArea[b] = rightCount > 0 ? area(box, 0) * rightCount : 0;
+            }
+
+            // sweep from the left: best split between bin b-1 and b
+            setEmpty(box, 0);
+            int leftCount = 0;
+            int bestBin = -1;
+            float bestCost = Float.POSITIVE_INFINITY;
+            for (int b = 1; b < NUM_BINS; b++) {
+                if (binCounts[b - 1] > 0) {
+                    union(box, 0, bins, (b - 1) * 6);
+                }
+                leftCount += binCounts[b - 1];
+                if (leftCount == 0 || leftCount == count) {
+                    continue;
+                }
+                float cost = area(box, 0) * leftCount + rightArea[b];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestBin = b;
+                }
+            }
+
+            float nodeArea = area(nodeBounds, nb);
+            float leafCost = count * nodeArea;
+            float splitCost = TRAVERSAL_COST * nodeArea + bestCost;
+
+            if (bestBin < 0) {
+                // all centroids in a single bin (rounding)
+                return count <= MAX_FORCED_LEAF_TRIANGLES ? -1 : from + count / 2;
+            }
+
+            if (count <= MAX_LEAF_TRIANGLES && leafCost <= splitCost) {
+                return -1;
+            }
+
+            return partition(from, to, axis, cmin[axis], scale, bestBin);
+        }
+
+        private int binIndex(int i, int axis, float min, float scale) {
+            int b = (int) ((centroids[i * 3 + axis] - min) * scale);
+            return Math.max(0, Math.min(NUM_BINS - 1, b));
+        }
+
+        /**
+         * Moves the triangles of bins smaller than {@code bin} to the front of the range.
+         *
+         * @return the split position
+         */
+        private int partition(int from, int to, int axis, float min, float scale, int bin) {
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                if (binIndex(i, axis, min, scale) < bin) {
+                    i++;
+                } else {
+                    swap(i, j);
+                    j--;
+                }
+            }
+            return i;
+        }
+
+        private void swap(int i, int j) {
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+            for (int k = 0; k < 3; k++) {
+                float c = centroids[i * 3 + k];
+                centroids[i * 3 + k] = centroids[j * 3 + k];
+                centroids[j * 3 + k] = c;
+            }
+        }
+
+        /**
+         * Builds the subtree of the specified node into the specified buffer.
+         */
+        void buildSubtree(NodeBuffer buffer, int node, int from, int to, int depth) {
+            float[] bins = new float[NUM_BINS * 6];
+            int[] binCounts = new int[NUM_BINS];
+
+            // explicit stack of (node, from, to, depth)
+            int[] stack = new int[4 * 64];
+            int sp = 0;
+
+            while (true) {
+                buffer.depth = Math.max(buffer.depth, depth);
+
+                int middle = split(buffer, node, from, to, bins, binCounts);
+                if (middle < 0) {
+                    buffer.nodes[node * 2] = from;
+                    buffer.nodes[node * 2 + 1] = to - from;
+                } else {
+                    int left = buffer.allocate(2);
+                    buffer.nodes[node * 2] = left;
+                    buffer.nodes[node * 2 + 1] = 0;
+
+                    if (sp + 4 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[sp++] = left + 1;
+                    stack[sp++] = middle;
+                    stack[sp++] = to;
+                    stack[sp++] = depth + 1;
+
+                    node = left;
+                    to = middle;
+                    depth++;
+                    continue;
+                }
+
+                if (sp == 0) {
+                    break;
+                }
+                depth = stack[--sp];
+                to = stack[--sp];
+                from = stack[--sp];
+                node = stack[--sp];
+            }
+        }
+
+        synchronized void addSubtree(int placeholder, NodeBuffer subtree, int depth) {
+            subtrees.add(new Object[]{placeholder, subtree, depth});
+        }
+    }
+
+    /**
+     * Fork/join task that splits a top-level node. Ranges with at most
+     * {@link #MAX_TRIANGLES_PER_TASK} triangles are built as separate subtrees.
+     */
+    private static final class BuildTask extends RecursiveAction {
+        private final Builder builder;
+        private final int node;
+        private final int from;
+        private final int to;
+        private final int depth;
+
+        BuildTask(Builder builder, int node, int from, int to, int depth) {
+            this.builder = builder;
+            this.node = node;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MAX_TRIANGLES_PER_TASK) {
+                NodeBuffer subtree = new NodeBuffer();
+                subtree.allocate(1);
+                builder.buildSubtree(subtree, 0, from, to, 0);
+                builder.addSubtree(node, subtree, depth);
+                return;
+            }
+
+            // the split is computed in a private buffer (the shared buffer might grow)
+            NodeBuffer local = new NodeBuffer();
+            local.allocate(1);
+            int middle = builder.split(local, 0, from, to,
+                    new float[NUM_BINS * 6], new int[NUM_BINS]);
+
+            int left;
+            synchronized (builder.top) {
+                NodeBuffer top = builder.top;
+                System.arraycopy(local.bounds, 0, top.bounds, node * 6, 6);
+                top.depth = Math.max(top.depth, depth);
+                if (middle < 0) {
+                    // unsplittable range (e.g. identical triangles)
+                    top.nodes[node * 2] = from;
+                    top.nodes[node * 2 + 1] = to - from;
+                    return;
+                }
+                left = top.allocate(2);
+                top.nodes[node * 2] = left;
+                top.nodes[node * 2 + 1] = 0;
+            }
+
+            invokeAll(new BuildTask(builder, left, from, middle, depth + 1),
+                    new BuildTask(builder, left + 1, middle, to, depth + 1));
+        }
+    }
+
+    private static float area(float[] bounds, int offset) {
+        float x = bounds[offset + 3] - bounds[offset];
+        float y = bounds[offset + 4] - bounds[offset + 1];
+        float z = bounds[offset + 5] - bounds[offset + 2];
+        return x * y + y * z + z * x;
+    }
+}
@@ -0,0 +1,379 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * Disk cache for deduplicated meshes and their octrees (stored in the
+ * {@link MeshFile} format).
+ *
+ * Entries are keyed by the canonical path, size, modification time and a content
+ * fingerprint of the source file as well as a variant string that describes how the
+ * mesh was created (e.g. the deduplication strategy). Entries that have not been used
+ * for longer than the maximum age are evicted. If the cache exceeds its maximum size
+ * the least recently used entries are evicted.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class MeshCache {
+
+    /**
+     * File ending of cache entries.
+     */
+    public static final String ENTRY_ENDING = ".vmesh";
+
+    // files up to this size are fingerprinted completely
+    private static final long FULL_FINGERPRINT_SIZE = 8 * 1024 * 1024;
+    // number and size of the blocks sampled for the fingerprint of larger files
+    private static final int FINGERPRINT_BLOCKS = 64;
+    private static final int FINGERPRINT_BLOCK_SIZE = 64 * 1024;
+
+    private static MeshCache defaultCache;
+
+    private final File directory;
+
+    private volatile long maxSize = 2L * 1024 * 1024 * 1024;
+    private volatile long maxAge = 30L * 24 * 60 * 60 * 1000;
+
+    private volatile MeshFile.Encoding encoding = MeshFile.Encoding.COMPACT_INDICES;
+
+    /**
+     * Creates a mesh cache that stores its entries in the specified directory.
+     *
+     * @param directory cache directory (created if it does not exist)
+     */
+    public MeshCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the default mesh cache. Its location can be specified via the
+     * {@code vrl.jogl.meshcache} system property (default:
+     * {@code ~/.vrl/jogl-mesh-cache}).
+     *
+     * @return the default mesh cache
+     */
+    public static synchronized MeshCache getDefault() {
+        if (defaultCache == null) {
+            String dir = System.getProperty("vrl.jogl.meshcache",
+                    System.getProperty("user.home") + "/.vrl/jogl-mesh-cache");
+            defaultCache = new MeshCache(new File(dir));
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Returns the cache directory.
+     *
+     * @return the cache directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Defines the maximum total size of all cache entries.
+     *
+     * @param maxSize maximum size in bytes
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the maximum total size of all cache entries.
+     *
+     * @return the maximum size in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Defines the maximum age of cache entries, i.e., the time since they were
+     * used last.
+     *
+     * @param maxAge maximum age in milliseconds
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Returns the maximum age of cache entries.
+     *
+     * @return the maximum age in milliseconds
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Defines the encoding of new cache entries. Lossy encodings
+     * ({@link MeshFile.Encoding#COMPACT}) reduce disk usage and i/o time but
+     * change vertex positions and colors slightly.
+     *
+     * @param encoding encoding to use
+     */
+    public void setEncoding(MeshFile.Encoding encoding) {
+        this.encoding = Objects.requireNonNull(encoding);
+    }
+
+    /**
+     * Returns the encoding of new cache entries.
+     *
+     * @return the encoding of new cache entries
+     */
+    public MeshFile.Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Returns the cached mesh for the specified source file.
+     *
+     * @param source  source file
+     * @param variant variant of the mesh (describes how the mesh was created)
+     * @return the cached mesh or {@code null} if no valid entry exists
+     * @throws IOException if an i/o error occurs while reading the source file
+     */
+    public Mesh get(File source, String variant) throws IOException {
+        File entry = getEntryFile(source, variant);
+
+        if (!entry.isFile()) {
+            return null;
+        }
+
+        try {
+            Mesh mesh = MeshFile.map(entry);
+
+            // mark as recently used
+            entry.setLastModified(System.currentTimeMillis());
+
+            System.out.println("-> mesh cache hit: " + entry.getName());
+
+            return mesh;
+        } catch (IOException | RuntimeException ex) {
+            // corrupt or outdated entry (corrupt entries might also cause runtime
+            // exceptions while mapping)
+            System.err.println("-> mesh cache: removing invalid entry " + entry + ": " + ex.getMessage());
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the specified mesh for the given source file and evicts old entries if
+     * necessary.
+     *
+     * @param source  source file
+     * @param variant variant of the mesh (describes how the mesh was created)
+     * @param mesh    mesh to store
+     * @throws IOException if an i/o error occurs
+     */
+    public void put(File source, String variant, Mesh mesh) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory: " + directory.getAbsolutePath());
+        }
+
+        File entry = getEntryFile(source, variant);
+
+        MeshFile.write(mesh, entry, encoding);
+
+        System.out.println("-> mesh cache: stored " + entry.getName());
+
+        evict();
+    }
+
+    /**
+     * Returns the cached octree for the specified source file (see
+     * {@link #putOctree(File, String, MeshOctree)}).
+     *
+     * @param source  source file
+     * @param variant variant of the octree (describes how the mesh was created)
+     * @return the cached octree or {@code null} if no valid entry exists
+     * @throws IOException if an i/o error occurs while reading the source file
+     */
+    public MeshOctree getOctree(File source, String variant) throws IOException {
+        File entry = getEntryFile(source, variant);
+
+        if (!entry.isFile()) {
+            return null;
+        }
+
+        try {
+            MeshOctree octree = MeshFile.mapOctree(entry);
+
+            // mark as recently used
+            entry.setLastModified(System.currentTimeMillis());
+
+            System.out.println("-> mesh cache hit: " + entry.getName());
+
+            return octree;
+        } catch (IOException | RuntimeException ex) {
+            // corrupt or outdated entry (corrupt entries might also cause runtime
+            // exceptions while mapping)
+            System.err.println("-> mesh cache: removing invalid entry " + entry + ": " + ex.getMessage());
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the specified octree and its mesh for the given source file and evicts
+     * old entries if necessary. Octrees should be stored with a variant that differs
+     * from the variant of the plain mesh.
+     *
+     * @param source  source file
+     * @param variant variant of the octree (describes how the mesh was created)
+     * @param octree  octree to store
+     * @throws IOException if an i/o error occurs
+     */
+    public void putOctree(File source, String variant, MeshOctree octree) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory: " + directory.getAbsolutePath());
+        }
+
+        File entry = getEntryFile(source, variant);
+
+        MeshFile.write(octree, entry, encoding);
+
+        System.out.println("-> mesh cache: stored " + entry.getName());
+
+        evict();
+    }
+
+    /**
+     * Removes entries that are older than the maximum age and, if necessary, least
+     * recently used entries until the cache size does not exceed the maximum size.
+     */
+    public synchronized void evict() {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(ENTRY_ENDING));
+
+        if (entries == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        // last modification is updated on every access
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+
+        long totalSize = 0;
+        for (File f : entries) {
+            totalSize += f.length();
+        }
+
+        for (File f : entries) {
+            boolean tooOld = now - f.lastModified() > maxAge;
+            if (tooOld || totalSize > maxSize) {
+                long length = f.length();
+                if (f.delete()) {
+                    totalSize -= length;
+                    System.out.println("-> mesh cache: evicted " + f.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from this cache.
+     */
+    public synchronized void clear() {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(ENTRY_ENDING));
+
+        if (entries == null) {
+            return;
+        }
+
+        for (File f : entries) {
+            f.delete();
+        }
+    }
+
+    /**
+     * Returns the entry file of the specified source file.
+     *
+     * @param source  source file
+     * @param variant variant of the mesh
+     * @return entry file (might not exist)
+     * @throws IOException if an i/o error occurs
+     */
+    File getEntryFile(File source, String variant) throws IOException {
+        MessageDigest digest = newDigest();
+
+        digest.update(source.getCanonicalPath().getBytes(StandardCharsets.UTF_8));
+        digest.update(ByteBuffer.allocate(16).putLong(source.length()).putLong(source.lastModified()).array());
+        digest.update(fingerprint(source));
+        digest.update(variant.getBytes(StandardCharsets.UTF_8));
+        // lossy entries must not be returned if lossless entries are requested
+        digest.update(encoding.name().getBytes(StandardCharsets.UTF_8));
+        digest.update(ByteBuffer.allocate(4).putInt(MeshFile.VERSION).array());
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+
+        return new File(directory, sb + ENTRY_ENDING);
+    }
+
+    /**
+     * Computes the content fingerprint of the specified file. Small files are hashed
+     * completely. For large files the first and the last block as well as evenly spaced
+     * blocks in between are hashed, i.e., computing the fingerprint is much cheaper than
+     * parsing the file.
+     *
+     * @param f file
+     * @return fingerprint
+     * @throws IOException if an i/o error occurs
+     */
+    static byte[] fingerprint(File f) throws IOException {
+        MessageDigest digest = newDigest();
+
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            ByteBuffer block = ByteBuffer.allocate(FINGERPRINT_BLOCK_SIZE);
+
+            if (size <= FULL_FINGERPRINT_SIZE) {
+                for (long pos = 0; pos < size; pos += FINGERPRINT_BLOCK_SIZE) {
+                    readBlock(channel, pos, block);
+                    digest.update(block);
+                }
+            } else {
+                long step = (size - FINGERPRINT_BLOCK_SIZE) / (FINGERPRINT_BLOCKS - 1);
+                for (int i = 0; i < FINGERPRINT_BLOCKS; i++) {
+                    readBlock(channel, i * step, block);
+                    digest.update(block);
+                }
+            }
+        }
+
+        return digest.digest();
+    }
+
+    private static void readBlock(FileChannel channel, long pos, ByteBuffer block) throws IOException {
+        block.clear();
+        while (block.hasRemaining()) {
+            if (channel.read(block, pos + block.position()) < 0) break;
+        }
+        block.flip();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
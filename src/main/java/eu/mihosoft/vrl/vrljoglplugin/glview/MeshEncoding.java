@@ -0,0 +1,216 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Compact encodings for mesh data.
+ *
+ * <ul>
+ * <li>positions: 16 bit unsigned integers relative to the mesh bounds (lossy)</li>
+ * <li>indices: zigzag encoded differences of consecutive indices stored as
+ *     variable-length integers (lossless)</li>
+ * <li>colors: 8 bit per channel (lossy)</li>
+ * </ul>
+ *
+ * Decoders write directly to float/int buffers, i.e., they can expand the encoded data
+ * into direct buffers that are ready for GPU upload.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+final class MeshEncoding {
+
+    // largest quantized coordinate value
+    static final int QUANTIZATION_LEVELS = 0xFFFF;
+
+    private MeshEncoding() {
+        throw new AssertionError("Don't instantiate me!");
+    }
+
+    /**
+     * Returns the number of bytes needed for the quantized positions.
+     *
+     * @param numCoordinates number of coordinates (3 per vertex)
+     * @return the number of bytes needed for the quantized positions
+     */
+    static long quantizedPositionsLength(int numCoordinates) {
+        return numCoordinates * 2L;
+    }
+
+    /**
+     * Encodes the specified positions as 16 bit integers relative to the given bounds.
+     *
+     * @param vertices positions to encode ({@code x,y,z} per vertex)
+     * @param bounds   bounds ({@code xmin,ymin,zmin,xmax,ymax,zmax})
+     * @param dest     destination buffer (little endian)
+     */
+    static void encodePositions(FloatBuffer vertices, float[] bounds, ByteBuffer dest) {
+        float[] scale = new float[3];
+        for (int c = 0; c < 3; c++) {
+            float extent = bounds[c + 3] - bounds[c];
+            scale[c] = extent > 0 ? QUANTIZATION_LEVELS / extent : 0;
+        }
+
+        int n = vertices.limit();
+        int pos = dest.position();
+        for (int i = 0; i < n; i++) {
+            int c = i % 3;
+            int q = Math.round((vertices.get(i) - bounds[c]) * scale[c]);
+            q = Math.max(0, Math.min(QUANTIZATION_LEVELS, q));
+            dest.putShort(pos + i * 2, (short) q);
+        }
+        dest.position(pos + n * 2);
+    }
+
+    /**
+     * Decodes quantized positions.
+     *
+     * @param src            source buffer (little endian)
+     * @param numCoordinates number of coordinates (3 per vertex)
+     * @param bounds         bounds ({@code xmin,ymin,zmin,xmax,ymax,zmax})
+     * @param dest           destination buffer
+     */
+    static void decodePositions(ByteBuffer src, int numCoordinates, float[] bounds, FloatBuffer dest) {
+        float[] scale = new float[3];
+        for (int c = 0; c < 3; c++) {
+            scale[c] = (bounds[c + 3] - bounds[c]) / QUANTIZATION_LEVELS;
+        }
+
+        int srcPos = src.position();
+        int destPos = dest.position();
+        for (int i = 0; i < numCoordinates; i += 3) {
+            for (int c = 0; c < 3; c++) {
+                int q = src.getShort(srcPos + (i + c) * 2) & 0xFFFF;
+                dest.put(destPos + i + c, bounds[c] + q * scale[c]);
+            }
+        }
+        src.position(srcPos + numCoordinates * 2);
+        dest.position(destPos + numCoordinates);
+    }
+
+    /**
+     * Returns the number of bytes needed for the variable-length index encoding.
+     *
+     * @param indices indices to encode
+     * @return the number of bytes needed for the variable-length index encoding
+     */
+    static long varintIndicesLength(IntBuffer indices) {
+        long length = 0;
+        int previous = 0;
+        for (int i = 0; i < indices.limit(); i++) {
+            int index = indices.get(i);
+            length += varintLength(zigzag(index - previous));
+            previous = index;
+        }
+        return length;
+    }
+
+    /**
+     * Encodes the specified indices as zigzag encoded differences stored as
+     * variable-length integers.
+     *
+     * @param indices indices to encode
+     * @param dest    destination buffer
+     */
+    static void encodeIndices(IntBuffer indices, ByteBuffer dest) {
+        int pos = dest.position();
+        int previous = 0;
+        for (int i = 0; i < indices.limit(); i++) {
+            int index = indices.get(i);
+            int v = zigzag(index - previous);
+            previous = index;
+            while ((v & ~0x7F) != 0) {
+                dest.put(pos++, (byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            dest.put(pos++, (byte) v);
+        }
+        dest.position(pos);
+    }
+
+    /**
+     * Decodes variable-length encoded indices.
+     *
+     * @param src         source buffer
+     * @param numIndices  number of indices to decode
+     * @param numVertices number of vertices (decoded indices must be smaller)
+     * @param dest        destination buffer
+     * @throws IOException if the source buffer does not contain valid indices
+     */
+    static void decodeIndices(ByteBuffer src, int numIndices, int numVertices, IntBuffer dest)
+            throws IOException {
+        int pos = src.position();
+        int limit = src.limit();
+        int destPos = dest.position();
+        int previous = 0;
+        for (int i = 0; i < numIndices; i++) {
+            int v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                // truncated section or more than 5 bytes per value
+                if (pos == limit || shift > 28) {
+                    throw new IOException("Corrupt index section at index " + i);
+                }
+                b = src.get(pos++);
+                v |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += (v >>> 1) ^ -(v & 1);
+            if (previous < 0 || previous >= numVertices) {
+                throw new IOException("Index out of range at index " + i + ": " + previous);
+            }
+            dest.put(destPos + i, previous);
+        }
+        src.position(pos);
+        dest.position(destPos + numIndices);
+    }
+
+    /**
+     * Encodes the specified colors with 8 bit per channel.
+     *
+     * @param colors colors to encode ({@code r,g,b,a} per vertex, range {@code [0,1]})
+     * @param dest   destination buffer
+     */
+    static void encodeColors(FloatBuffer colors, ByteBuffer dest) {
+        int n = colors.limit();
+        int pos = dest.position();
+        for (int i = 0; i < n; i++) {
+            int v = Math.round(Math.max(0f, Math.min(1f, colors.get(i))) * 255f);
+            dest.put(pos + i, (byte) v);
+        }
+        dest.position(pos + n);
+    }
+
+    /**
+     * Decodes 8 bit colors.
+     *
+     * @param src       source buffer
+     * @param numValues number of color values (4 per vertex)
+     * @param dest      destination buffer
+     */
+    static void decodeColors(ByteBuffer src, int numValues, FloatBuffer dest) {
+        int pos = src.position();
+        int destPos = dest.position();
+        for (int i = 0; i < numValues; i++) {
+            dest.put(destPos + i, (src.get(pos + i) & 0xFF) / 255f);
+        }
+        src.position(pos + numValues);
+        dest.position(destPos + numValues);
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int varintLength(int v) {
+        int length = 1;
+        while ((v & ~0x7F) != 0) {
+            v >>>= 7;
+            length++;
+        }
+        return length;
+    }
+}
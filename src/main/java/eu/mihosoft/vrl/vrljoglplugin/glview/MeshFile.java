@@ -0,0 +1,584 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format for deduplicated meshes.
+ *
+ * The format is designed for loading without any parsing: all sections are stored as
+ * little-endian arrays that are memory mapped and copied in bulk.
+ *
+ * <pre>
+ * offset  content
+ *      0  magic "VRLMESH\0"
+ *      8  int   version
+ *     12  int   flags
+ *     16  int   number of vertices
+ *     20  int   number of indices
+ *     24  float bounds (xmin, ymin, zmin, xmax, ymax, zmax)
+ *     48  long  vertex section offset, long vertex section length
+ *     64  long  index section offset,  long index section length
+ *     80  long  color section offset,  long color section length (0 if no colors)
+ *     96  long  octree section offset, long octree section length (0 if no octree)
+ *    112  reserved (zero)
+ *    128  sections (vertices: 3 floats per vertex, indices: 1 int per index,
+ *         colors: 4 floats per vertex, octree: see {@link MeshOctree})
+ * </pre>
+ *
+ * Since version 2 sections can optionally be stored in a compact encoding (see
+ * {@link Encoding}). Which sections are encoded is indicated by the flags. Since
+ * version 3 the octree of the mesh can be stored as well (see
+ * {@link #write(MeshOctree, File, Encoding)}).
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class MeshFile {
+
+    /**
+     * Current version of the file format.
+     */
+    public static final int VERSION = 3;
+
+    /**
+     * Size of the file header.
+     */
+    static final int HEADER_SIZE = 128;
+
+    // flag that indicates whether color data is present
+    static final int FLAG_COLORS = 1;
+    // flag that indicates whether positions are quantized to 16 bit
+    static final int FLAG_QUANTIZED_POSITIONS = 2;
+    // flag that indicates whether indices are delta/varint encoded
+    static final int FLAG_VARINT_INDICES = 4;
+    // flag that indicates whether colors are stored with 8 bit per channel
+    static final int FLAG_PACKED_COLORS = 8;
+    // flag that indicates whether an octree is present
+    static final int FLAG_OCTREE = 16;
+
+    /**
+     * Encoding of the mesh data.
+     */
+    public enum Encoding {
+        /**
+         * Raw 32 bit floats and ints.
+         */
+        RAW,
+        /**
+         * Delta/varint encoded indices (lossless), raw positions and colors.
+         */
+        COMPACT_INDICES,
+        /**
+         * Delta/varint encoded indices, 16 bit quantized positions and 8 bit colors
+         * (lossy). The quantization error is about {@code extent / 131070} per axis.
+         */
+        COMPACT
+    }
+
+    private static final byte[] MAGIC = {'V', 'R', 'L', 'M', 'E', 'S', 'H', 0};
+
+    // maximum number of bytes mapped at once
+    private static final int MAX_BYTES_PER_MAPPING = 1 << 30;
+
+    private MeshFile() {
+        throw new AssertionError("Don't instantiate me!");
+    }
+
+    /**
+     * Writes the specified mesh to the given file (raw encoding).
+     *
+     * @param mesh mesh to write
+     * @param file destination file
+     * @throws IOException if an i/o error occurs
+     */
+    public static void write(Mesh mesh, File file) throws IOException {
+        write(mesh, file, Encoding.RAW);
+    }
+
+    /**
+     * Writes the specified mesh to the given file. The file is written to a temporary
+     * file first which is then moved to the specified location, i.e., readers never
+     * see partially written files.
+     *
+     * @param mesh mesh to write
+     * @param file destination file
+     * @param encoding encoding of the mesh data
+     * @throws IOException if an i/o error occurs
+     */
+    public static void write(Mesh mesh, File file, Encoding encoding) throws IOException {
+        write(mesh, null, file, encoding);
+    }
+
+    /**
+     * Writes the specified octree and its mesh (see {@link MeshOctree#getMesh()}) to
+     * the given file. The file is written to a temporary file first which is then
+     * moved to the specified location, i.e., readers never see partially written files.
+     *
+     * @param octree octree to write
+     * @param file destination file
+     * @param encoding encoding of the mesh data
+     * @throws IOException if an i/o error occurs
+     */
+    public static void write(MeshOctree octree, File file, Encoding encoding) throws IOException {
+        write(octree.getMesh(), octree, file, encoding);
+    }
+
+    private static void write(Mesh mesh, MeshOctree octree, File file, Encoding encoding) throws IOException {
+
+        boolean hasColors = mesh.hasColors();
+        int numCoordinates = mesh.numVertices() * 3;
+
+        Mesh.Bounds bounds = mesh.getBounds();
+        float[] boundsArray = {
+                (float) bounds.getMin().x(), (float) bounds.getMin().y(), (float) bounds.getMin().z(),
+                (float) bounds.getMax().x(), (float) bounds.getMax().y(), (float) bounds.getMax().z()
+        };
+
+        // compact sections are written via a single mapping, thus, they must not
+        // exceed the maximum mapping size (raw encoding is used otherwise)
+        boolean quantizedPositions = encoding == Encoding.COMPACT
+                && MeshEncoding.quantizedPositionsLength(numCoordinates) <= Integer.MAX_VALUE;
+        long varintLength = encoding != Encoding.RAW
+                ? MeshEncoding.varintIndicesLength(mesh.indices) : Long.MAX_VALUE;
+        boolean varintIndices = varintLength <= Integer.MAX_VALUE;
+        boolean packedColors = hasColors && encoding == Encoding.COMPACT;
+
+        int flags = (hasColors ? FLAG_COLORS : 0)
+                | (quantizedPositions ? FLAG_QUANTIZED_POSITIONS : 0)
+                | (varintIndices ? FLAG_VARINT_INDICES : 0)
+                | (packedColors ? FLAG_PACKED_COLORS : 0)
+                | (octree != null ? FLAG_OCTREE : 0);
+
+        long vertexLength = quantizedPositions
+                ? MeshEncoding.quantizedPositionsLength(numCoordinates)
+                : (long) numCoordinates * Float.BYTES;
+        long indexLength = varintIndices ? varintLength : (long) mesh.numIndices() * Integer.BYTES;
+        long colorLength = !hasColors ? 0 : packedColors
+                ? mesh.numVertices() * 4L : mesh.numVertices() * 4L * Float.BYTES;
+
+        long vertexOffset = HEADER_SIZE;
+        long indexOffset = vertexOffset + vertexLength;
+        long colorOffset = hasColors ? indexOffset + indexLength : 0;
+        long octreeLength = octree != null ? octree.serializedLength() : 0;
+        long octreeOffset = octree == null ? 0 : hasColors
+                ? colorOffset + colorLength : indexOffset + indexLength;
+
+        ByteBuffer header = createHeader(flags, mesh.numVertices(), mesh.numIndices(), boundsArray,
+                vertexOffset, vertexLength, indexOffset, indexLength, colorOffset, colorLength,
+                octreeOffset, octreeLength);
+
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFile.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+
+                if (quantizedPositions) {
+                    MeshEncoding.encodePositions(mesh.vertices, boundsArray,
+                            mapSection(channel, vertexOffset, vertexLength));
+                } else {
+                    writeFloats(channel, vertexOffset, mesh.vertices);
+                }
+
+                if (varintIndices) {
+                    MeshEncoding.encodeIndices(mesh.indices, mapSection(channel, indexOffset, indexLength));
+                } else {
+                    writeInts(channel, indexOffset, mesh.indices);
+                }
+
+                if (packedColors) {
+                    MeshEncoding.encodeColors(mesh.colors, mapSection(channel, colorOffset, colorLength));
+                } else if (hasColors) {
+                    writeFloats(channel, colorOffset, mesh.colors);
+                }
+
+                if (octree != null) {
+                    // node bounds must contain the decoded positions
+                    float[] padding = new float[3];
+                    if (quantizedPositions) {
+                        for (int c = 0; c < 3; c++) {
+                            padding[c] = (boundsArray[c + 3] - boundsArray[c]) / MeshEncoding.QUANTIZATION_LEVELS;
+                        }
+                    }
+                    octree.writeTo(mapSection(channel, octreeOffset, octreeLength), padding);
+                }
+
+                channel.force(false);
+            }
+
+            Files.move(tmpFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    /**
+     * Creates a file header. Sections can be stored in any order (e.g., writers that
+     * know the number of indices in advance can store the index section first).
+     *
+     * @param flags flags
+     * @param numVertices number of vertices
+     * @param numIndices number of indices
+     * @param bounds bounds ({@code xmin,ymin,zmin,xmax,ymax,zmax})
+     * @param vertexOffset offset of the vertex section
+     * @param vertexLength length of the vertex section in bytes
+     * @param indexOffset offset of the index section
+     * @param indexLength length of the index section in bytes
+     * @param colorOffset offset of the color section ({@code 0} if no colors)
+     * @param colorLength length of the color section in bytes ({@code 0} if no colors)
+     * @return the header (ready for writing)
+     */
+    static ByteBuffer createHeader(int flags, int numVertices, int numIndices, float[] bounds,
+                                   long vertexOffset, long vertexLength,
+                                   long indexOffset, long indexLength,
+                                   long colorOffset, long colorLength) {
+        return createHeader(flags, numVertices, numIndices, bounds, vertexOffset, vertexLength,
+                indexOffset, indexLength, colorOffset, colorLength, 0, 0);
+    }
+
+    /**
+     * Creates a file header with an octree section.
+     *
+     * @param flags flags
+     * @param numVertices number of vertices
+     * @param numIndices number of indices
+     * @param bounds bounds ({@code xmin,ymin,zmin,xmax,ymax,zmax})
+     * @param vertexOffset offset of the vertex section
+     * @param vertexLength length of the vertex section in bytes
+     * @param indexOffset offset of the index section
+     * @param indexLength length of the index section in bytes
+     * @param colorOffset offset of the color section ({@code 0} if no colors)
+     * @param colorLength length of the color section in bytes ({@code 0} if no colors)
+     * @param octreeOffset offset of the octree section ({@code 0} if no octree)
+     * @param octreeLength length of the octree section in bytes ({@code 0} if no octree)
+     * @return the header (ready for writing)
+     */
+    static ByteBuffer createHeader(int flags, int numVertices, int numIndices, float[] bounds,
+                                   long vertexOffset, long vertexLength,
+                                   long indexOffset, long indexLength,
+                                   long colorOffset, long colorLength,
+                                   long octreeOffset, long octreeLength) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(flags);
+        header.putInt(numVertices);
+        header.putInt(numIndices);
+        for (float b : bounds) {
+            header.putFloat(b);
+        }
+        header.putLong(vertexOffset).putLong(vertexLength);
+        header.putLong(indexOffset).putLong(indexLength);
+        header.putLong(colorOffset).putLong(colorLength);
+        header.putLong(octreeOffset).putLong(octreeLength);
+        header.clear();
+        return header;
+    }
+
+    private static MappedByteBuffer mapSection(FileChannel channel, long offset, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Reads a mesh from the specified file. The mesh data is copied to heap arrays.
+     *
+     * @param file file to read
+     * @return the mesh stored in the specified file
+     * @throws IOException if an i/o error occurs or if the file is not a valid mesh file
+     */
+    public static Mesh read(File file) throws IOException {
+        return read(file, false);
+    }
+
+    /**
+     * Maps a mesh from the specified file. Raw sections are memory mapped (read only),
+     * i.e., they are neither copied nor stored on the java heap and the operating
+     * system loads them on demand. Encoded sections are decoded to direct buffers.
+     * Sections that cannot be mapped (larger than 2 GB or non-little-endian platform)
+     * are read to heap arrays.
+     *
+     * @param file file to map
+     * @return the mesh stored in the specified file
+     * @throws IOException if an i/o error occurs or if the file is not a valid mesh file
+     */
+    public static Mesh map(File file) throws IOException {
+        return read(file, true);
+    }
+
+    /**
+     * Reads an octree and its mesh from the specified file (see
+     * {@link #write(MeshOctree, File, Encoding)}). The mesh data is copied to heap
+     * arrays.
+     *
+     * @param file file to read
+     * @return the octree stored in the specified file
+     * @throws IOException if an i/o error occurs or if the file does not contain a
+     *                     valid octree
+     */
+    public static MeshOctree readOctree(File file) throws IOException {
+        return readOctree(file, false);
+    }
+
+    /**
+     * Maps an octree and its mesh from the specified file (see {@link #map(File)}).
+     *
+     * @param file file to map
+     * @return the octree stored in the specified file
+     * @throws IOException if an i/o error occurs or if the file does not contain a
+     *                     valid octree
+     */
+    public static MeshOctree mapOctree(File file) throws IOException {
+        return readOctree(file, true);
+    }
+
+    private static MeshOctree readOctree(File file, boolean map) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Mesh mesh = read(channel, file, map);
+
+            MappedByteBuffer header = readSection(channel, 0, HEADER_SIZE);
+
+            if ((header.getInt(12) & FLAG_OCTREE) == 0) {
+                throw new IOException("No octree in mesh file: " + file.getAbsolutePath());
+            }
+
+            long octreeOffset = header.getLong(96);
+            long octreeLength = header.getLong(104);
+
+            if (octreeOffset < HEADER_SIZE || octreeLength < 8 || octreeLength > Integer.MAX_VALUE
+                    || octreeOffset + octreeLength > channel.size()) {
+                throw new IOException("Corrupt mesh file: " + file.getAbsolutePath());
+            }
+
+            // the octree is small compared to the mesh, i.e., it is always copied
+            return MeshOctree.readFrom(mesh, readSection(channel, octreeOffset, octreeLength));
+        }
+    }
+
+    private static Mesh read(File file, boolean map) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel, file, map);
+        }
+    }
+
+    private static Mesh read(FileChannel channel, File file, boolean map) throws IOException {
+        long size = channel.size();
+
+        if (size < HEADER_SIZE) {
+            throw new IOException("Not a mesh file: " + file.getAbsolutePath());
+        }
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                throw new IOException("Not a mesh file: " + file.getAbsolutePath());
+            }
+        }
+
+        // older versions are a subset of the current version (no encoding flags,
+        // no octree)
+        int version = header.getInt(8);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported mesh file version " + version
+                    + " (expected " + VERSION + "): " + file.getAbsolutePath());
+        }
+
+        int flags = header.getInt(12);
+        int numVertices = header.getInt(16);
+        int numIndices = header.getInt(20);
+
+        long vertexOffset = header.getLong(48);
+        long vertexLength = header.getLong(56);
+        long indexOffset = header.getLong(64);
+        long indexLength = header.getLong(72);
+        long colorOffset = header.getLong(80);
+        long colorLength = header.getLong(88);
+
+        boolean hasColors = (flags & FLAG_COLORS) != 0;
+        boolean quantizedPositions = (flags & FLAG_QUANTIZED_POSITIONS) != 0;
+        boolean varintIndices = (flags & FLAG_VARINT_INDICES) != 0;
+        boolean packedColors = (flags & FLAG_PACKED_COLORS) != 0;
+
+        long expectedVertexLength = quantizedPositions
+                ? MeshEncoding.quantizedPositionsLength(numVertices * 3)
+                : (long) numVertices * 3 * Float.BYTES;
+        long expectedColorLength = packedColors
+                ? (long) numVertices * 4 : (long) numVertices * 4 * Float.BYTES;
+
+        // sections must not overlap the header (negative offsets cannot be mapped),
+        // vertices and colors must fit into a single buffer
+        if (numVertices < 0 || numIndices < 0 || numVertices > Integer.MAX_VALUE / 4
+                || vertexOffset < HEADER_SIZE || indexOffset < HEADER_SIZE
+                || (hasColors && colorOffset < HEADER_SIZE)
+                || vertexLength != expectedVertexLength
+                || (varintIndices ? indexLength > (long) numIndices * 5 || indexLength > Integer.MAX_VALUE
+                                  : indexLength != (long) numIndices * Integer.BYTES)
+                || (hasColors && colorLength != expectedColorLength)
+                || vertexOffset + vertexLength > size
+                || indexOffset + indexLength > size
+                || (hasColors && colorOffset + colorLength > size)) {
+            throw new IOException("Corrupt mesh file: " + file.getAbsolutePath());
+        }
+
+        float[] bounds = new float[6];
+        for (int i = 0; i < 6; i++) {
+            bounds[i] = header.getFloat(24 + i * 4);
+        }
+
+        FloatBuffer vertices;
+        if (quantizedPositions) {
+            vertices = allocateFloats(numVertices * 3, map);
+            MeshEncoding.decodePositions(readSection(channel, vertexOffset, vertexLength),
+                    vertices.limit(), bounds, vertices);
+            vertices.clear();
+        } else if (map && canMap(vertexLength)) {
+            vertices = readSection(channel, vertexOffset, vertexLength).asFloatBuffer();
+        } else {
+            vertices = FloatBuffer.wrap(readFloats(channel, vertexOffset, numVertices * 3));
+        }
+
+        IntBuffer indices;
+        if (varintIndices) {
+            indices = allocateInts(numIndices, map);
+            MeshEncoding.decodeIndices(readSection(channel, indexOffset, indexLength),
+                    numIndices, numVertices, indices);
+            indices.clear();
+        } else {
+            if (map && canMap(indexLength)) {
+                indices = readSection(channel, indexOffset, indexLength).asIntBuffer();
+            } else {
+                indices = IntBuffer.wrap(readInts(channel, indexOffset, numIndices));
+            }
+            // invalid indices would be passed to the gpu and to spatial indices
+            checkIndices(indices, numVertices, file);
+        }
+
+        FloatBuffer colors;
+        if (hasColors) {
+            if (packedColors) {
+                colors = allocateFloats(numVertices * 4, map);
+                MeshEncoding.decodeColors(readSection(channel, colorOffset, colorLength),
+                        colors.limit(), colors);
+                colors.clear();
+            } else if (map && canMap(colorLength)) {
+                colors = readSection(channel, colorOffset, colorLength).asFloatBuffer();
+            } else {
+                colors = FloatBuffer.wrap(readFloats(channel, colorOffset, numVertices * 4));
+            }
+        } else {
+            colors = null;
+        }
+
+        // the stored bounds are used, i.e., they don't have to be computed again
+        Mesh mesh = Mesh.newInstance(vertices, indices, colors);
+        mesh.initBounds(bounds);
+        return mesh;
+    }
+
+    private static void checkIndices(IntBuffer indices, int numVertices, File file) throws IOException {
+        for (int i = 0; i < indices.limit(); i++) {
+            int index = indices.get(i);
+            if (index < 0 || index >= numVertices) {
+                throw new IOException("Index out of range at index " + i + ": " + index
+                        + " (" + numVertices + " vertices): " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    private static MappedByteBuffer readSection(FileChannel channel, long offset, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Indicates whether a section of the specified length can be mapped directly, i.e.,
+     * whether it fits into a single buffer and whether the native byte order matches
+     * the byte order of the file (required for GPU upload without conversion).
+     */
+    private static boolean canMap(long length) {
+        return length <= Integer.MAX_VALUE && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    }
+
+    private static FloatBuffer allocateFloats(int length, boolean direct) {
+        if (direct && (long) length * Float.BYTES <= Integer.MAX_VALUE) {
+            return ByteBuffer.allocateDirect(length * Float.BYTES)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        return FloatBuffer.allocate(length);
+    }
+
+    private static IntBuffer allocateInts(int length, boolean direct) {
+        if (direct && (long) length * Integer.BYTES <= Integer.MAX_VALUE) {
+            return ByteBuffer.allocateDirect(length * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return IntBuffer.allocate(length);
+    }
+
+    private static void writeFloats(FileChannel channel, long offset, FloatBuffer data) throws IOException {
+        int maxPerMapping = MAX_BYTES_PER_MAPPING / Float.BYTES;
+        for (int i = 0; i < data.limit(); i += maxPerMapping) {
+            int count = Math.min(maxPerMapping, data.limit() - i);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                    offset + (long) i * Float.BYTES, (long) count * Float.BYTES);
+            FloatBuffer src = data.duplicate();
+            src.limit(i + count).position(i);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(src);
+        }
+    }
+
+    private static void writeInts(FileChannel channel, long offset, IntBuffer data) throws IOException {
+        int maxPerMapping = MAX_BYTES_PER_MAPPING / Integer.BYTES;
+        for (int i = 0; i < data.limit(); i += maxPerMapping) {
+            int count = Math.min(maxPerMapping, data.limit() - i);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                    offset + (long) i * Integer.BYTES, (long) count * Integer.BYTES);
+            IntBuffer src = data.duplicate();
+            src.limit(i + count).position(i);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(src);
+        }
+    }
+
+    private static float[] readFloats(FileChannel channel, long offset, int length) throws IOException {
+        float[] data = new float[length];
+        int maxPerMapping = MAX_BYTES_PER_MAPPING / Float.BYTES;
+        for (int i = 0; i < length; i += maxPerMapping) {
+            int count = Math.min(maxPerMapping, length - i);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    offset + (long) i * Float.BYTES, (long) count * Float.BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(data, i, count);
+        }
+        return data;
+    }
+
+    private static int[] readInts(FileChannel channel, long offset, int length) throws IOException {
+        int[] data = new int[length];
+        int maxPerMapping = MAX_BYTES_PER_MAPPING / Integer.BYTES;
+        for (int i = 0; i < length; i += maxPerMapping) {
+            int count = Math.min(maxPerMapping, length - i);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    offset + (long) i * Integer.BYTES, (long) count * Integer.BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(data, i, count);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,55 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+/**
+ * Listener that is notified about the progress of mesh loading.
+ *
+ * Note that listeners are called from the loading threads, i.e., they must be
+ * thread-safe and should return quickly.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+@FunctionalInterface
+public interface MeshLoadListener {
+
+    /**
+     * Phases of mesh loading.
+     */
+    enum Phase {
+        /**
+         * Lookup of the mesh in the mesh cache.
+         */
+        CACHE_LOOKUP,
+        /**
+         * Parsing of the mesh file.
+         */
+        PARSING,
+        /**
+         * Deduplication of the triangle vertices.
+         */
+        DEDUPLICATION,
+        /**
+         * Reordering of the triangles and vertices (optional, see
+         * {@link STLLoader#setVertexCacheOptimizer(VertexCacheOptimizer)}).
+         */
+        OPTIMIZATION,
+        /**
+         * Building the spatial index of the mesh (only if an octree is loaded, see
+         * {@link STLLoader#loadOctree(java.io.File)}).
+         */
+        INDEXING,
+        /**
+         * Storing the mesh (and its octree) in the mesh cache.
+         */
+        CACHING
+    }
+
+    /**
+     * Called whenever the progress of the current phase changes. Each phase starts with
+     * progress {@code 0} and ends with progress {@code 1}. Phases that cannot report
+     * intermediate progress only report start and end.
+     *
+     * @param phase current phase
+     * @param progress progress of the current phase (between {@code 0} and {@code 1})
+     */
+    void progressChanged(Phase phase, double progress);
+}
@@ -0,0 +1,780 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4fc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static eu.mihosoft.vrl.vrljoglplugin.glview.ParallelBuild.setEmpty;
+import static eu.mihosoft.vrl.vrljoglplugin.glview.ParallelBuild.union;
+
+/**
+ * Octree over the triangles of a mesh for region queries (box, sphere, view frustum)
+ * and view frustum culling.
+ *
+ * Triangles are assigned to the octree cells that contain their centroids. The
+ * triangles are stored in octree order (see {@link #getMesh()}), i.e., each node
+ * references a consecutive range of triangles (the triangles of its subtree). Within
+ * a leaf the input order is kept (e.g. the order of a {@link VertexCacheOptimizer}).
+ * Node bounds are the tight bounds of the triangles of the node, i.e., a node can be
+ * skipped if its bounds don't intersect the query region. Nodes are stored in flat
+ * arrays and the octree can be stored in the mesh cache together with the mesh (see
+ * {@link MeshCache#putOctree(java.io.File, String, MeshOctree)}).
+ *
+ * The octree is built from the Morton codes of the triangle centroids (10 bits per
+ * axis), which are computed and sorted in parallel.
+ *
+ * Sample:
+ * <pre>
+ * MeshOctree octree = MeshOctree.build(mesh);
+ * MeshStatistics stats = new MeshStatistics();
+ * octree.queryBox(0, 0, 0, 10, 10, 10, stats);
+ * System.out.println(stats);
+ * </pre>
+ *
+ * Memory: less than one byte per triangle in addition to the mesh data (8 more bytes
+ * per triangle while building).
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class MeshOctree {
+
+    /**
+     * Maximum depth of the octree (the root has depth {@code 0}).
+     */
+    public static final int MAX_DEPTH = 10;
+
+    // nodes with more triangles are split (unless the maximum depth is reached)
+    private static final int MAX_LEAF_TRIANGLES = 256;
+
+    // ranges with at most this many triangles are processed by a single task
+    private static final int MAX_TRIANGLES_PER_TASK = 1 << 16;
+
+    // number of triangles per batch passed to triangle consumers
+    private static final int BATCH_SIZE = 4096;
+
+    // relation of node bounds and query regions
+    private static final int OUTSIDE = 0;
+    private static final int INTERSECT = 1;
+    private static final int INSIDE = 2;
+
+    private final Mesh original;
+    private final Mesh mesh;
+
+    private final int numNodes;
+    // (first child or -1, number of children, first triangle, number of triangles) per
+    // node, children are stored consecutively
+    private final int[] nodes;
+    // bounds of the triangles of a node (xmin,ymin,zmin,xmax,ymax,zmax per node)
+    private final float[] nodeBounds;
+    // maximum depth (root has depth 0)
+    private final int depth;
+
+    private MeshOctree(Mesh original, Mesh mesh, int numNodes, int[] nodes, float[] nodeBounds,
+                       int depth) {
+        this.original = original;
+        this.mesh = mesh;
+        this.numNodes = numNodes;
+        this.nodes = nodes;
+        this.nodeBounds = nodeBounds;
+        this.depth = depth;
+    }
+
+    /**
+     * Builds the octree of the specified mesh (in parallel with all available
+     * processors).
+     *
+     * @param mesh mesh
+     * @return the octree of the specified mesh
+     */
+    public static MeshOctree build(Mesh mesh) {
+        return build(mesh, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Builds the octree of the specified mesh. The result does not depend on the
+     * number of threads.
+     *
+     * @param mesh mesh
+     * @param parallelism number of threads ({@code 1} disables parallel building)
+     * @return the octree of the specified mesh
+     */
+    public static MeshOctree build(Mesh mesh, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+
+        int numIndices = mesh.numIndices();
+        if (numIndices % 3 != 0) {
+            throw new IllegalArgumentException("Number of indices must be a multiple of 3: " + numIndices);
+        }
+
+        ForkJoinPool pool = parallelism > 1 && numIndices / 3 > MAX_TRIANGLES_PER_TASK
+                ? new ForkJoinPool(parallelism) : null;
+
+        try {
+            return new Builder(mesh, pool).build();
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Builds the octree of the specified mesh in the background.
+     *
+     * @param mesh mesh
+     * @return future that is completed with the octree
+     */
+    public static CompletableFuture<MeshOctree> buildAsync(Mesh mesh) {
+        return CompletableFuture.supplyAsync(() -> build(mesh), ParallelBuild.EXECUTOR);
+    }
+
+    /**
+     * Returns the mesh the octree has been built from (the mesh of this octree if the
+     * octree has been read from a file).
+     *
+     * @return the mesh the octree has been built from
+     */
+    public Mesh getOriginal() {
+        return original;
+    }
+
+    /**
+     * Returns the mesh of this octree, i.e., the original mesh with triangles in
+     * octree order (vertices and colors are shared with the original mesh).
+     *
+     * @return the mesh of this octree
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Returns the number of nodes.
+     *
+     * @return the number of nodes
+     */
+    public int numNodes() {
+        return numNodes;
+    }
+
+    /**
+     * Returns the maximum depth of the octree (the root has depth {@code 0}).
+     *
+     * @return the maximum depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Determines the index ranges of the mesh that intersect the view frustum of the
+     * specified transformation (conservative, i.e., based on node bounds). Ranges of
+     * consecutive nodes are merged. This method is thread-safe.
+     *
+     * @param meshToClip transformation from mesh coordinates to clip coordinates
+     * @param ranges array for the visible ranges {@code (first index, number of indices)}
+     *               (at least two entries per node)
+     * @return the number of visible ranges
+     */
+    public int cull(Matrix4fc meshToClip, int[] ranges) {
+        if (ranges.length < numNodes * 2) {
+            throw new IllegalArgumentException("Range array too small: " + ranges.length
+                    + " < " + numNodes * 2);
+        }
+
+        FrustumRegion frustum = new FrustumRegion(meshToClip);
+
+        int numRanges = 0;
+
+        int[] stack = new int[depth * 8 + 1];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+
+            int relation = frustum.classify(nodeBounds, node * 6);
+            if (relation == OUTSIDE) {
+                continue;
+            }
+
+            int n = node * 4;
+            if (relation == INTERSECT && nodes[n] >= 0) {
+                // children in reverse order, i.e., ranges are emitted in ascending order
+                for (int c = nodes[n] + nodes[n + 1] - 1; c >= nodes[n]; c--) {
+                    stack[stackSize++] = c;
+                }
+                continue;
+            }
+
+            int first = nodes[n + 2] * 3;
+            int count = nodes[n + 3] * 3;
+
+            if (numRanges > 0 && ranges[numRanges * 2 - 2] + ranges[numRanges * 2 - 1] == first) {
+                ranges[numRanges * 2 - 1] += count;
+            } else {
+                ranges[numRanges * 2] = first;
+                ranges[numRanges * 2 + 1] = count;
+                numRanges++;
+            }
+        }
+
+        return numRanges;
+    }
+
+    /**
+     * Passes the triangles whose centroids are inside of the specified box to the
+     * given consumer (e.g. {@link MeshStatistics}).
+     *
+     * @param minX lower x coordinate of the box
+     * @param minY lower y coordinate of the box
+     * @param minZ lower z coordinate of the box
+     * @param maxX upper x coordinate of the box
+     * @param maxY upper y coordinate of the box
+     * @param maxZ upper z coordinate of the box
+     * @param consumer consumer that receives the triangles (facet normals are computed
+     *                 from the vertices, attributes are zero)
+     * @return the number of triangles passed to the consumer
+     * @throws IOException if the consumer fails
+     */
+    public long queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                         TriangleConsumer consumer) throws IOException {
+        return query(new BoxRegion(minX, minY, minZ, maxX, maxY, maxZ), consumer);
+    }
+
+    /**
+     * Passes the triangles whose centroids are inside of the specified sphere to the
+     * given consumer (e.g. {@link MeshStatistics}).
+     *
+     * @param x x coordinate of the center
+     * @param y y coordinate of the center
+     * @param z z coordinate of the center
+     * @param radius radius of the sphere
+     * @param consumer consumer that receives the triangles (facet normals are computed
+     *                 from the vertices, attributes are zero)
+     * @return the number of triangles passed to the consumer
+     * @throws IOException if the consumer fails
+     */
+    public long querySphere(float x, float y, float z, float radius,
+                            TriangleConsumer consumer) throws IOException {
+        return query(new SphereRegion(x, y, z, radius), consumer);
+    }
+
+    /**
+     * Passes the triangles whose centroids are inside of the view frustum of the
+     * specified transformation to the given consumer (e.g. {@link MeshStatistics}).
+     *
+     * @param meshToClip transformation from mesh coordinates to clip coordinates
+     * @param consumer consumer that receives the triangles (facet normals are computed
+     *                 from the vertices, attributes are zero)
+     * @return the number of triangles passed to the consumer
+     * @throws IOException if the consumer fails
+     */
+    public long queryFrustum(Matrix4fc meshToClip, TriangleConsumer consumer) throws IOException {
+        return query(new FrustumRegion(meshToClip), consumer);
+    }
+
+    /**
+     * Passes the triangles whose centroids are inside of the specified region to the
+     * given consumer.
+     */
+    private long query(Region region, TriangleConsumer consumer) throws IOException {
+        FloatBuffer vertices = mesh.vertices.duplicate();
+        IntBuffer indices = mesh.indices.duplicate();
+
+        float[] positions = new float[BATCH_SIZE * 9];
+        float[] normals = new float[BATCH_SIZE * 3];
+        short[] attributes = new short[BATCH_SIZE];
+        int count = 0;
+        long numTriangles = 0;
+
+        consumer.start(-1);
+
+        int[] stack = new int[depth * 8 + 1];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+
+            int relation = region.classify(nodeBounds, node * 6);
+            if (relation == OUTSIDE) {
+                continue;
+            }
+
+            int n = node * 4;
+            if (relation == INTERSECT && nodes[n] >= 0) {
+                for (int c = nodes[n] + nodes[n + 1] - 1; c >= nodes[n]; c--) {
+                    stack[stackSize++] = c;
+                }
+                continue;
+            }
+
+            // triangles of nodes that are completely inside are not tested
+            for (int t = nodes[n + 2]; t < nodes[n + 2] + nodes[n + 3]; t++) {
+                int p = count * 9;
+                for (int v = 0; v < 3; v++) {
+                    int vertex = indices.get(t * 3 + v) * 3;
+                    positions[p + v * 3] = vertices.get(vertex);
+                    positions[p + v * 3 + 1] = vertices.get(vertex + 1);
+                    positions[p + v * 3 + 2] = vertices.get(vertex + 2);
+                }
+
+                if (relation == INTERSECT && !region.contains(
+                        (positions[p] + positions[p + 3] + positions[p + 6]) / 3.f,
+                        (positions[p + 1] + positions[p + 4] + positions[p + 7]) / 3.f,
+                        (positions[p + 2] + positions[p + 5] + positions[p + 8]) / 3.f)) {
+                    continue;
+                }
+
+                computeNormal(positions, p, normals, count * 3);
+
+                if (++count == BATCH_SIZE) {
+                    consumer.accept(positions, normals, attributes, count);
+                    numTriangles += count;
+                    count = 0;
+                }
+            }
+        }
+
+        if (count > 0) {
+            consumer.accept(positions, normals, attributes, count);
+            numTriangles += count;
+        }
+
+        consumer.finish();
+
+        return numTriangles;
+    }
+
+    private static void computeNormal(float[] positions, int p, float[] normals, int n) {
+        float ux = positions[p + 3] - positions[p], uy = positions[p + 4] - positions[p + 1];
+        float uz = positions[p + 5] - positions[p + 2];
+        float vx = positions[p + 6] - positions[p], vy = positions[p + 7] - positions[p + 1];
+        float vz = positions[p + 8] - positions[p + 2];
+        float nx = uy * vz - uz * vy;
+        float ny = uz * vx - ux * vz;
+        float nz = ux * vy - uy * vx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0) {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+        }
+        normals[n] = nx;
+        normals[n + 1] = ny;
+        normals[n + 2] = nz;
+    }
+
+    /**
+     * Returns the number of bytes of the serialized octree.
+     *
+     * @return the number of bytes of the serialized octree
+     */
+    long serializedLength() {
+        return 8 + (long) numNodes * (4 + 6) * 4;
+    }
+
+    /**
+     * Writes this octree to the specified buffer (the mesh is not written).
+     *
+     * @param dest destination buffer (little endian)
+     * @param padding values that are added to the node bounds per axis (e.g. if the
+     *                mesh is stored with quantized positions)
+     */
+    void writeTo(ByteBuffer dest, float[] padding) {
+        dest.putInt(numNodes);
+        dest.putInt(depth);
+        for (int i = 0; i < numNodes * 4; i++) {
+            dest.putInt(nodes[i]);
+        }
+        for (int i = 0; i < numNodes * 6; i++) {
+            int c = i % 6;
+            dest.putFloat(c < 3 ? nodeBounds[i] - padding[c] : nodeBounds[i] + padding[c - 3]);
+        }
+    }
+
+    /**
+     * Reads an octree of the specified mesh from the given buffer.
+     *
+     * @param mesh mesh of the octree (triangles in octree order)
+     * @param src source buffer (little endian)
+     * @return the octree
+     * @throws IOException if the buffer does not contain a valid octree of the mesh
+     */
+    static MeshOctree readFrom(Mesh mesh, ByteBuffer src) throws IOException {
+        int numNodes = src.getInt();
+        int depth = src.getInt();
+
+        int numTriangles = mesh.numIndices() / 3;
+
+        if (numNodes < 1 || depth < 0 || depth > MAX_DEPTH
+                || src.remaining() < (long) numNodes * (4 + 6) * 4) {
+            throw new IOException("Corrupt octree: " + numNodes + " nodes, depth " + depth);
+        }
+
+        int[] nodes = new int[numNodes * 4];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = src.getInt();
+        }
+        float[] nodeBounds = new float[numNodes * 6];
+        for (int i = 0; i < nodeBounds.length; i++) {
+            nodeBounds[i] = src.getFloat();
+        }
+
+        // references must be valid, otherwise queries would fail (the traversal stack
+        // is sized according to the depth)
+        int[] depths = new int[numNodes];
+        for (int node = 0; node < numNodes; node++) {
+            int n = node * 4;
+            boolean validChildren = nodes[n] < 0
+                    || nodes[n] > node && nodes[n + 1] > 0 && nodes[n + 1] <= 8
+                    && nodes[n] + nodes[n + 1] <= numNodes;
+            boolean validTriangles = nodes[n + 2] >= 0 && nodes[n + 3] >= 0
+                    && (long) nodes[n + 2] + nodes[n + 3] <= numTriangles;
+            if (!validChildren || !validTriangles) {
+                throw new IOException("Corrupt octree: invalid node " + node);
+            }
+            if (depths[node] > depth) {
+                throw new IOException("Corrupt octree: node " + node + " exceeds depth " + depth);
+            }
+            for (int c = nodes[n]; c >= 0 && c < nodes[n] + nodes[n + 1]; c++) {
+                depths[c] = Math.max(depths[c], depths[node] + 1);
+            }
+        }
+        if (nodes[2] != 0 || nodes[3] != numTriangles) {
+            throw new IOException("Corrupt octree: root covers " + nodes[3]
+                    + " of " + numTriangles + " triangles");
+        }
+
+        return new MeshOctree(mesh, mesh, numNodes, nodes, nodeBounds, depth);
+    }
+
+    @Override
+    public String toString() {
+        return "[nodes: " + numNodes + ", depth: " + depth
+                + ", triangles: " + mesh.numIndices() / 3 + "]";
+    }
+
+    /**
+     * Region of a query.
+     */
+    private interface Region {
+        /**
+         * Returns the relation of the specified bounds and this region.
+         *
+         * @return {@code OUTSIDE}, {@code INTERSECT} or {@code INSIDE}
+         */
+        int classify(float[] bounds, int offset);
+
+        /**
+         * Indicates whether the specified point is inside of this region.
+         */
+        boolean contains(float x, float y, float z);
+    }
+
+    private static final class BoxRegion implements Region {
+        private final float minX, minY, minZ, maxX, maxY, maxZ;
+
+        BoxRegion(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+        }
+
+        @Override
+        public int classify(float[] b, int o) {
+            if (b[o] > maxX || b[o + 1] > maxY || b[o + 2] > maxZ
+                    || b[o + 3] < minX || b[o + 4] < minY || b[o + 5] < minZ) {
+                return OUTSIDE;
+            }
+            if (b[o] >= minX && b[o + 1] >= minY && b[o + 2] >= minZ
+                    && b[o + 3] <= maxX && b[o + 4] <= maxY && b[o + 5] <= maxZ) {
+                return INSIDE;
+            }
+            return INTERSECT;
+        }
+
+        @Override
+        public boolean contains(float x, float y, float z) {
+            return x >= minX && y >= minY && z >= minZ && x <= maxX && y <= maxY && z <= maxZ;
+        }
+    }
+
+    private static final class SphereRegion implements Region {
+        private final float x, y, z, radiusSquared;
+
+        SphereRegion(float x, float y, float z, float radius) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.radiusSquared = radius * radius;
+        }
+
+        @Override
+        public int classify(float[] b, int o) {
+            // nearest and farthest point of the box
+            float near = 0;
+            float far = 0;
+            float[] center = {x, y, z};
+            for (int c = 0; c < 3; c++) {
+                float min = b[o + c] - center[c];
+                float max = b[o + 3 + c] - center[c];
+                float d = min > 0 ? min : max < 0 ? -max : 0;
+                near += d * d;
+                float e = Math.max(-min, max);
+                far += e * e;
+            }
+            if (near > radiusSquared) {
+                return OUTSIDE;
+            }
+            return far <= radiusSquared ? INSIDE : INTERSECT;
+        }
+
+        @Override
+        public boolean contains(float px, float py, float pz) {
+            float dx = px - x, dy = py - y, dz = pz - z;
+            return dx * dx + dy * dy + dz * dz <= radiusSquared;
+        }
+    }
+
+    private static final class FrustumRegion implements Region {
+        private final FrustumIntersection frustum;
+
+        FrustumRegion(Matrix4fc meshToClip) {
+            this.frustum = new FrustumIntersection(meshToClip, false);
+        }
+
+        @Override
+        public int classify(float[] b, int o) {
+            int result = frustum.intersectAab(b[o], b[o + 1], b[o + 2], b[o + 3], b[o + 4], b[o + 5]);
+            if (result == FrustumIntersection.INSIDE) {
+                return INSIDE;
+            }
+            return result == FrustumIntersection.INTERSECT ? INTERSECT : OUTSIDE;
+        }
+
+        @Override
+        public boolean contains(float x, float y, float z) {
+            return frustum.testPoint(x, y, z);
+        }
+    }
+
+    /**
+     * Builds the octree of a mesh.
+     */
+    private static final class Builder {
+        private final Mesh mesh;
+        private final FloatBuffer vertices;
+        private final IntBuffer indices;
+        private final int numTriangles;
+        private final ForkJoinPool pool;
+
+        // (morton code, triangle) per triangle in octree order
+        private long[] keys;
+
+        // nodes and depth per node (grown on demand)
+        private int[] nodes = new int[64 * 4];
+        private int[] depths = new int[64];
+        private int numNodes;
+
+        // leaves (node indices)
+        private int[] leaves = new int[64];
+        private int numLeaves;
+
+        private int[] result;
+        private float[] nodeBounds;
+
+        Builder(Mesh mesh, ForkJoinPool pool) {
+            this.mesh = mesh;
+            this.vertices = mesh.vertices.duplicate();
+            this.indices = mesh.indices.duplicate();
+            this.numTriangles = mesh.numIndices() / 3;
+            this.pool = pool;
+        }
+
+        MeshOctree build() {
+            keys = new long[numTriangles];
+            ParallelBuild.forRange(pool, numTriangles, MAX_TRIANGLES_PER_TASK, this::initKeys);
+
+            if (pool == null) {
+                Arrays.sort(keys);
+            } else {
+                // sorts with the threads of the pool
+                pool.invoke(ForkJoinTask.adapt(() -> Arrays.parallelSort(keys)));
+            }
+
+            buildNodes();
+
+            result = new int[numTriangles * 3];
+            nodeBounds = new float[numNodes * 6];
+            ParallelBuild.forRange(pool, numLeaves,
+                    Math.max(1, MAX_TRIANGLES_PER_TASK / MAX_LEAF_TRIANGLES), this::initLeaves);
+
+            // children are stored after their parents
+            int maxDepth = 0;
+            for (int node = numNodes - 1; node >= 0; node--) {
+                int n = node * 4;
+                if (nodes[n] >= 0) {
+                    setEmpty(nodeBounds, node * 6);
+                    for (int c = nodes[n]; c < nodes[n] + nodes[n + 1]; c++) {
+                        union(nodeBounds, node * 6, nodeBounds, c * 6);
+                    }
+                }
+                maxDepth = Math.max(maxDepth, depths[node]);
+            }
+
+            Mesh octreeMesh = Mesh.newInstance(mesh.vertices, IntBuffer.wrap(result),
+                    mesh.hasColors() ? mesh.colors : null);
+            System.arraycopy(mesh.globalColor, 0, octreeMesh.globalColor, 0, mesh.globalColor.length);
+
+            MeshOctree octree = new MeshOctree(mesh, octreeMesh, numNodes,
+                    Arrays.copyOf(nodes, numNodes * 4), nodeBounds, maxDepth);
+
+            System.out.println("-> octree: " + octree);
+
+            return octree;
+        }
+
+        /**
+         * Computes the Morton codes of the triangle centroids (the same scale for all
+         * axes, i.e., cells are cubes).
+         */
+        private void initKeys(int from, int to) {
+            float[] min = {mesh.xmin(), mesh.ymin(), mesh.zmin()};
+            float extent = Math.max(mesh.xmax() - min[0],
+                    Math.max(mesh.ymax() - min[1], mesh.zmax() - min[2]));
+            int cells = 1 << MAX_DEPTH;
+            float scale = extent > 0 ? cells / extent : 0.f;
+
+            for (int t = from; t < to; t++) {
+                long code = 0;
+                for (int c = 0; c < 3; c++) {
+                    float centroid = (vertices.get(indices.get(t * 3) * 3 + c)
+                            + vertices.get(indices.get(t * 3 + 1) * 3 + c)
+                            + vertices.get(indices.get(t * 3 + 2) * 3 + c)) / 3.f;
+                    int q = Math.max(0, Math.min(cells - 1, (int) ((centroid - min[c]) * scale)));
+                    code |= VertexCacheOptimizer.spreadBits(q) << c;
+                }
+                keys[t] = code << 32 | t;
+            }
+        }
+
+        /**
+         * Creates the nodes breadth-first. The triangles of a node share the Morton code
+         * prefix of the node, i.e., the triangles of the children are consecutive.
+         */
+        private void buildNodes() {
+            addNode(0, numTriangles, 0);
+
+            for (int node = 0; node < numNodes; node++) {
+                int first = nodes[node * 4 + 2];
+                int count = nodes[node * 4 + 3];
+                int level = depths[node];
+
+                if (count <= MAX_LEAF_TRIANGLES || level == MAX_DEPTH) {
+                    addLeaf(node);
+                    continue;
+                }
+
+                // octant bits of the children
+                int shift = 32 + 3 * (MAX_DEPTH - 1 - level);
+                int firstChild = numNodes;
+                int end = first + count;
+                int childFirst = first;
+                while (childFirst < end) {
+                    long octant = keys[childFirst] >>> shift;
+                    int childEnd = upperBound(childFirst, end, octant, shift);
+                    addNode(childFirst, childEnd - childFirst, level + 1);
+                    childFirst = childEnd;
+                }
+
+                nodes[node * 4] = firstChild;
+                nodes[node * 4 + 1] = numNodes - firstChild;
+            }
+        }
+
+        /**
+         * Returns the first position in the specified range whose key has a larger
+         * prefix than the specified one.
+         */
+        private int upperBound(int from, int to, long prefix, int shift) {
+            while (from < to) {
+                int middle = (from + to) >>> 1;
+                if (keys[middle] >>> shift <= prefix) {
+                    from = middle + 1;
+                } else {
+                    to = middle;
+                }
+            }
+            return from;
+        }
+
+        private void addNode(int firstTriangle, int count, int level) {
+            if (numNodes == depths.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            nodes[numNodes * 4] = -1;
+            nodes[numNodes * 4 + 1] = 0;
+            nodes[numNodes * 4 + 2] = firstTriangle;
+            nodes[numNodes * 4 + 3] = count;
+            depths[numNodes] = level;
+            numNodes++;
+        }
+
+        private void addLeaf(int node) {
+            if (numLeaves == leaves.length) {
+                leaves = Arrays.copyOf(leaves, leaves.length * 2);
+            }
+            leaves[numLeaves++] = node;
+        }
+
+        /**
+         * Writes the triangles of the specified leaves (in input order) and computes
+         * the leaf bounds.
+         */
+        private void initLeaves(int from, int to) {
+            for (int l = from; l < to; l++) {
+                int node = leaves[l];
+                int first = nodes[node * 4 + 2];
+                int end = first + nodes[node * 4 + 3];
+
+                // the lower bits of the keys are the input positions
+                int[] order = new int[end - first];
+                for (int i = first; i < end; i++) {
+                    order[i - first] = (int) keys[i];
+                }
+                Arrays.sort(order);
+
+                int b = node * 6;
+                setEmpty(nodeBounds, b);
+                for (int i = first; i < end; i++) {
+                    int t = order[i - first];
+                    for (int v = 0; v < 3; v++) {
+                        int vertex = indices.get(t * 3 + v);
+                        result[i * 3 + v] = vertex;
+                        for (int c = 0; c < 3; c++) {
+                            float value = vertices.get(vertex * 3 + c);
+                            nodeBounds[b + c] = Math.min(nodeBounds[b + c], value);
+                            nodeBounds[b + 3 + c] = Math.max(nodeBounds[b + 3 + c], value);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
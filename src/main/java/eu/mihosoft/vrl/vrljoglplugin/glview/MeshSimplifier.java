@@ -0,0 +1,813 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Simplifies meshes via quadric error edge collapses (Garland and Heckbert).
+ *
+ * Every vertex accumulates the planes of its triangles (weighted by area) in an
+ * error quadric. Boundary edges add planes perpendicular to their triangle, i.e.,
+ * open boundaries are preserved. Vertices are collapsed into one of their neighbors
+ * (no new vertices are created, i.e., vertex colors are preserved). Collapses that
+ * would flip a triangle are rejected, vertices of non-manifold edges are never moved.
+ *
+ * The simplification runs in passes: the cheapest collapse of every vertex is
+ * computed in parallel, the candidates are sorted by their error and applied greedily
+ * (every vertex takes part in at most one collapse per pass). Passes are repeated
+ * until the triangle budget is reached or no collapse is possible.
+ *
+ * Sample:
+ * <pre>
+ * MeshSimplifier simplifier = new MeshSimplifier();
+ * LODChain lods = simplifier.buildChain(mesh, 1_000_000, 100_000, 10_000);
+ * Mesh coarse = lods.getLevel(lods.numLevels() - 1).getMesh();
+ * </pre>
+ *
+ * Memory: the simplification needs about 130 bytes per vertex in addition to the
+ * mesh data.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class MeshSimplifier {
+
+    // vertex kinds
+    private static final byte INTERIOR = 0;
+    private static final byte BORDER = 1;
+    private static final byte LOCKED = 2;
+
+    // number of values per quadric (a00,a11,a22,a01,a02,a12,b0,b1,b2,c,weight)
+    private static final int QUADRIC_SIZE = 11;
+
+    // weight of boundary planes relative to triangle planes
+    private static final float BORDER_WEIGHT = 10f;
+
+    // a pass collapses candidates with up to this factor of the error of the
+    // candidate that would reach the triangle budget
+    private static final float PASS_ERROR_FACTOR = 1.5f;
+
+    // collapses must not rotate a remaining triangle by more than 60 degrees
+    private static final double MIN_NORMAL_COS = 0.5;
+
+    // minimum number of elements processed by a single fork/join task
+    private static final int MIN_ELEMENTS_PER_TASK = 1 << 14;
+
+    // marks vertices without collapse candidate (sorted to the end)
+    private static final long NO_CANDIDATE = Long.MAX_VALUE;
+
+    // number of threads used for simplification (1 means sequential simplification)
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // maximum relative error of collapses
+    private double maxError = Double.POSITIVE_INFINITY;
+
+    /**
+     * Defines the number of threads used for simplification. A value of {@code 1}
+     * disables parallel simplification.
+     *
+     * @param parallelism number of threads to use (must be positive)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads used for simplification.
+     *
+     * @return the number of threads used for simplification
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Defines the maximum error of the simplified meshes relative to the largest
+     * extent of the mesh (e.g. {@code 0.01} for 1%). Levels whose triangle budget
+     * cannot be reached within this error keep more triangles. The default is
+     * unlimited.
+     *
+     * @param maxError maximum relative error (must not be negative)
+     */
+    public void setMaxError(double maxError) {
+        if (!(maxError >= 0)) {
+            throw new IllegalArgumentException("Max. error must not be negative: " + maxError);
+        }
+        this.maxError = maxError;
+    }
+
+    /**
+     * Returns the maximum error of the simplified meshes relative to the largest
+     * extent of the mesh.
+     *
+     * @return the maximum relative error
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Simplifies the specified mesh.
+     *
+     * @param mesh mesh to simplify
+     * @param maxTriangles triangle budget
+     * @return the simplified mesh (the specified mesh if it is within the budget)
+     */
+    public Mesh simplify(Mesh mesh, int maxTriangles) {
+        LODChain chain = buildChain(mesh, maxTriangles);
+        return chain.getLevel(chain.numLevels() - 1).getMesh();
+    }
+
+    /**
+     * Computes levels of detail of the specified mesh. Each budget results in one
+     * level (budgets that are not smaller than the previous level are skipped). The
+     * levels are computed successively, i.e., coarse levels are not more expensive
+     * than the finest one.
+     *
+     * @param mesh mesh to simplify
+     * @param triangleBudgets triangle budgets (any order)
+     * @return the levels of detail (level {@code 0} is the specified mesh)
+     */
+    public LODChain buildChain(Mesh mesh, int... triangleBudgets) {
+        int[] budgets = triangleBudgets.clone();
+        Arrays.sort(budgets);
+
+        List<LODChain.Level> levels = new ArrayList<>();
+        levels.add(new LODChain.Level(mesh, 0, 0));
+
+        if (mesh.numIndices() == 0 || budgets.length == 0) {
+            return new LODChain(levels);
+        }
+
+        long start = System.nanoTime();
+
+        ForkJoinPool pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+        try {
+            Simplification s = new Simplification(mesh, pool);
+
+            // largest budget first
+            for (int i = budgets.length - 1; i >= 0; i--) {
+                int budget = Math.max(0, budgets[i]);
+                int previous = levels.get(levels.size() - 1).numTriangles();
+                if (budget >= previous) {
+                    continue;
+                }
+                s.simplify(budget, maxError);
+                if (s.numTriangles >= previous) {
+                    // no further collapse possible (within the max. error)
+                    break;
+                }
+                double relativeError = Math.sqrt(s.error);
+                levels.add(new LODChain.Level(s.toMesh(), relativeError * s.scale, relativeError));
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        LODChain chain = new LODChain(levels);
+
+        System.out.println("-> simplified mesh in " + (System.nanoTime() - start) / 1_000_000
+                + " ms: " + chain);
+
+        return chain;
+    }
+
+    /**
+     * Computes levels of detail of the specified mesh in the background.
+     *
+     * @param mesh mesh to simplify
+     * @param triangleBudgets triangle budgets (any order)
+     * @return future that is completed with the levels of detail
+     * @see #buildChain(Mesh, int...)
+     */
+    public CompletableFuture<LODChain> buildChainAsync(Mesh mesh, int... triangleBudgets) {
+        return buildChainAsync(mesh, ParallelBuild.EXECUTOR, triangleBudgets);
+    }
+
+    /**
+     * Computes levels of detail of the specified mesh via the specified executor.
+     *
+     * @param mesh mesh to simplify
+     * @param executor executor that performs the simplification
+     * @param triangleBudgets triangle budgets (any order)
+     * @return future that is completed with the levels of detail
+     * @see #buildChain(Mesh, int...)
+     */
+    public CompletableFuture<LODChain> buildChainAsync(Mesh mesh, Executor executor, int... triangleBudgets) {
+        int[] budgets = triangleBudgets.clone();
+        return CompletableFuture.supplyAsync(() -> buildChain(mesh, budgets), executor);
+    }
+
+    /**
+     * Returns geometrically decreasing triangle budgets, e.g., {@code 500000, 250000,
+     * ..., minTriangles} for a mesh with one million triangles and a ratio of
+     * {@code 0.5}.
+     *
+     * @param numTriangles number of triangles of the original mesh
+     * @param minTriangles budget of the coarsest level
+     * @param ratio ratio between the budgets of consecutive levels ({@code (0,1)})
+     * @return triangle budgets (largest budget first)
+     */
+    public static int[] geometricBudgets(int numTriangles, int minTriangles, double ratio) {
+        if (!(ratio > 0 && ratio < 1)) {
+            throw new IllegalArgumentException("Ratio must be in (0,1): " + ratio);
+        }
+        List<Integer> budgets = new ArrayList<>();
+        double budget = numTriangles * ratio;
+        while (budget > minTriangles) {
+            budgets.add((int) budget);
+            budget *= ratio;
+        }
+        if (minTriangles < numTriangles) {
+            budgets.add(Math.max(0, minTriangles));
+        }
+        return budgets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * State of the simplification of a single mesh. Unreferenced vertices are
+     * removed from the state once they make up the majority of the vertices, i.e., the
+     * costs of a pass are proportional to the remaining triangles.
+     */
+    private static final class Simplification {
+
+        private final Mesh mesh;
+        private final ForkJoinPool pool;
+        private int numVertices;
+
+        // vertex of the original mesh
+        private int[] vertexIds;
+        // positions relative to the bounds and scaled to the unit cube (the errors
+        // are relative to the largest extent)
+        private float[] positions;
+        // largest extent of the mesh
+        private final float scale;
+
+        private final int[] indices;
+        private int numTriangles;
+
+        private float[] quadrics;
+        private byte[] kinds;
+        private boolean classified;
+
+        // triangles adjacent to a vertex (compressed rows)
+        private int[] adjacencyOffsets;
+        private final int[] adjacency;
+
+        // collapse candidates (error bits and vertex index, sorted by error)
+        private long[] candidates;
+        // target of the cheapest collapse per vertex
+        private int[] targets;
+
+        // vertex remapping of the current pass
+        private int[] remap;
+        private boolean[] locked;
+
+        // largest (squared relative) error of all collapses
+        private float error;
+
+        Simplification(Mesh mesh, ForkJoinPool pool) {
+            this.mesh = mesh;
+            this.pool = pool;
+            this.numVertices = mesh.numVertices();
+
+            float[] b = {mesh.xmin(), mesh.ymin(), mesh.zmin(), mesh.xmax(), mesh.ymax(), mesh.zmax()};
+            float extent = Math.max(b[3] - b[0], Math.max(b[4] - b[1], b[5] - b[2]));
+            this.scale = extent > 0 ? extent : 1;
+
+            positions = new float[numVertices * 3];
+            parallel(numVertices, (from, to) -> {
+                for (int i = from * 3; i < to * 3; i++) {
+                    positions[i] = (mesh.vertices.get(i) - b[i % 3]) / scale;
+                }
+            });
+
+            numTriangles = mesh.numIndices() / 3;
+            indices = new int[numTriangles * 3];
+            mesh.indices.duplicate().get(indices);
+
+            vertexIds = new int[numVertices];
+            for (int i = 0; i < numVertices; i++) {
+                vertexIds[i] = i;
+            }
+            quadrics = new float[numVertices * QUADRIC_SIZE];
+            kinds = new byte[numVertices];
+            adjacency = new int[indices.length];
+            allocateVertexState();
+        }
+
+        /**
+         * Allocates the per-vertex state of a pass.
+         */
+        private void allocateVertexState() {
+            adjacencyOffsets = new int[numVertices + 1];
+            candidates = new long[numVertices];
+            targets = new int[numVertices];
+            remap = new int[numVertices];
+            locked = new boolean[numVertices];
+            for (int i = 0; i < numVertices; i++) {
+                remap[i] = i;
+            }
+        }
+
+        /**
+         * Removes unreferenced vertices (the remaining vertices are numbered in order
+         * of first use).
+         */
+        private void removeUnreferencedVertices() {
+            int[] newIndices = new int[numVertices];
+            Arrays.fill(newIndices, -1);
+
+            int n = 0;
+            for (int i = 0; i < numTriangles * 3; i++) {
+                int v = indices[i];
+                if (newIndices[v] < 0) {
+                    newIndices[v] = n++;
+                }
+                indices[i] = newIndices[v];
+            }
+
+            int[] newVertexIds = new int[n];
+            float[] newPositions = new float[n * 3];
+            float[] newQuadrics = new float[n * QUADRIC_SIZE];
+            byte[] newKinds = new byte[n];
+            for (int v = 0; v < numVertices; v++) {
+                int i = newIndices[v];
+                if (i < 0) {
+                    continue;
+                }
+                newVertexIds[i] = vertexIds[v];
+                System.arraycopy(positions, v * 3, newPositions, i * 3, 3);
+                System.arraycopy(quadrics, v * QUADRIC_SIZE, newQuadrics, i * QUADRIC_SIZE, QUADRIC_SIZE);
+                newKinds[i] = kinds[v];
+            }
+
+            numVertices = n;
+            vertexIds = newVertexIds;
+            positions = newPositions;
+            quadrics = newQuadrics;
+            kinds = newKinds;
+            allocateVertexState();
+        }
+
+        /**
+         * Applies the specified operation to the range {@code [0,n)} (in parallel if
+         * a pool is available).
+         */
+        private void parallel(int n, ParallelBuild.RangeOperation operation) {
+            ParallelBuild.forRange(pool, n, MIN_ELEMENTS_PER_TASK, operation);
+        }
+
+        /**
+         * Collapses edges until the specified triangle budget is reached.
+         *
+         * @param maxTriangles triangle budget
+         * @param maxError maximum relative error of collapses
+         */
+        void simplify(int maxTriangles, double maxError) {
+            float maxCost = (float) Math.min(Float.MAX_VALUE, maxError * maxError);
+
+            while (numTriangles > maxTriangles) {
+                // closed manifolds have about half as many vertices as triangles
+                if (classified && numVertices > numTriangles) {
+                    removeUnreferencedVertices();
+                }
+
+                buildAdjacency();
+
+                if (!classified) {
+                    parallel(numVertices, this::classifyVertices);
+                    classified = true;
+                }
+
+                parallel(numVertices, this::selectCollapses);
+
+                int numCandidates = 0;
+                for (int v = 0; v < numVertices; v++) {
+                    if (candidates[v] != NO_CANDIDATE) {
+                        candidates[numCandidates++] = candidates[v];
+                    }
+                }
+                int n = numCandidates;
+                if (pool == null) {
+                    Arrays.sort(candidates, 0, n);
+                } else {
+                    // sorts in the pool of this simplification (not in the common pool)
+                    pool.invoke(ForkJoinTask.adapt(() -> Arrays.parallelSort(candidates, 0, n)));
+                }
+
+                int collapses = collapse(numCandidates, maxTriangles, maxCost);
+                if (collapses == 0) {
+                    break;
+                }
+
+                removeDegenerateTriangles();
+            }
+        }
+
+        /**
+         * Computes the triangles adjacent to each vertex.
+         */
+        private void buildAdjacency() {
+            Arrays.fill(adjacencyOffsets, 0);
+            int n = numTriangles * 3;
+            for (int i = 0; i < n; i++) {
+                adjacencyOffsets[indices[i] + 1]++;
+            }
+            for (int v = 0; v < numVertices; v++) {
+                adjacencyOffsets[v + 1] += adjacencyOffsets[v];
+            }
+            // fill (offsets are shifted and restored afterwards)
+            for (int i = 0; i < n; i++) {
+                adjacency[adjacencyOffsets[indices[i]]++] = i / 3;
+            }
+            for (int v = numVertices; v > 0; v--) {
+                adjacencyOffsets[v] = adjacencyOffsets[v - 1];
+            }
+            adjacencyOffsets[0] = 0;
+        }
+
+        /**
+         * Classifies the specified vertices (interior, boundary, non-manifold) and
+         * computes their quadrics.
+         */
+        private void classifyVertices(int from, int to) {
+            double[] q = new double[QUADRIC_SIZE];
+            float[] n = new float[4];
+            for (int v = from; v < to; v++) {
+                Arrays.fill(q, 0);
+                byte kind = INTERIOR;
+
+                for (int a = adjacencyOffsets[v]; a < adjacencyOffsets[v + 1]; a++) {
+                    int t = adjacency[a];
+                    float area = triangleNormal(t, n);
+                    if (area > 0) {
+                        addPlane(q, n[0], n[1], n[2], n[3], area);
+                    }
+
+                    // edges (v,w) of the triangle
+                    for (int k = 0; k < 3; k++) {
+                        int w = indices[t * 3 + k];
+                        if (w == v) {
+                            continue;
+                        }
+                        int count = countTriangles(v, w);
+                        if (count > 2) {
+                            kind = LOCKED;
+                        } else if (count == 1) {
+                            if (kind == INTERIOR) {
+                                kind = BORDER;
+                            }
+                            if (area > 0) {
+                                addBorderPlane(q, v, w, n);
+                            }
+                        }
+                    }
+                }
+
+                kinds[v] = kind;
+                for (int i = 0; i < QUADRIC_SIZE; i++) {
+                    quadrics[v * QUADRIC_SIZE + i] = (float) q[i];
+                }
+            }
+        }
+
+        /**
+         * Computes the cheapest collapse of the specified vertices that does not flip
+         * a triangle.
+         */
+        private void selectCollapses(int from, int to) {
+            for (int v = from; v < to; v++) {
+                candidates[v] = NO_CANDIDATE;
+                targets[v] = -1;
+
+                byte kind = kinds[v];
+                if (kind == LOCKED) {
+                    continue;
+                }
+
+                float best = Float.POSITIVE_INFINITY;
+                for (int a = adjacencyOffsets[v]; a < adjacencyOffsets[v + 1]; a++) {
+                    int t = adjacency[a] * 3;
+                    int corner = indices[t] == v ? 0 : indices[t + 1] == v ? 1 : 2;
+                    // every neighbor of an interior vertex follows it in one triangle
+                    int numNeighbors = kind == INTERIOR ? 1 : 2;
+                    for (int k = 1; k <= numNeighbors; k++) {
+                        int w = indices[t + (corner + k) % 3];
+                        // boundary vertices only move along the boundary
+                        if (kind == BORDER && (kinds[w] == INTERIOR || countTriangles(v, w) != 1)) {
+                            continue;
+                        }
+                        float cost = (float) collapseError(v, w);
+                        if (cost < best && !hasTriangleFlip(v, w)) {
+                            best = cost;
+                            targets[v] = w;
+                        }
+                    }
+                }
+
+                if (targets[v] >= 0 && best <= Float.MAX_VALUE) {
+                    candidates[v] = ((long) Float.floatToIntBits(best) << 32) | v;
+                }
+            }
+        }
+
+        /**
+         * Applies the cheapest collapses of the current pass.
+         *
+         * @param numCandidates number of collapse candidates (sorted by error)
+         * @param maxTriangles triangle budget
+         * @param maxCost maximum squared relative error of collapses
+         * @return the number of collapses
+         */
+        private int collapse(int numCandidates, int maxTriangles, float maxCost) {
+            Arrays.fill(locked, false);
+
+            // each collapse removes about two triangles, candidates that are much more
+            // expensive than the one that would reach the budget are left for later
+            // passes (the error of their neighborhood changes), close to the budget at
+            // least the cheapest quarter is considered (limits the number of passes)
+            int goal = Math.max(numCandidates / 4, (numTriangles - maxTriangles) / 2);
+            float limit = maxCost;
+            if (goal < numCandidates) {
+                limit = Math.min(limit, PASS_ERROR_FACTOR * Float.intBitsToFloat((int) (candidates[goal] >>> 32)));
+            }
+
+            int remaining = numTriangles - maxTriangles;
+            int collapses = 0;
+
+            for (int i = 0; i < numCandidates && remaining > 0; i++) {
+                float cost = Float.intBitsToFloat((int) (candidates[i] >>> 32));
+                if (cost > limit) {
+                    break;
+                }
+                int v = (int) candidates[i];
+                int w = targets[v];
+                if (locked[v] || locked[w] || hasTriangleFlip(v, w)) {
+                    continue;
+                }
+
+                remaining -= countTriangles(v, w);
+                remap[v] = w;
+                locked[v] = true;
+                locked[w] = true;
+                for (int k = 0; k < QUADRIC_SIZE; k++) {
+                    quadrics[w * QUADRIC_SIZE + k] += quadrics[v * QUADRIC_SIZE + k];
+                }
+                error = Math.max(error, cost);
+                collapses++;
+            }
+
+            return collapses;
+        }
+
+        /**
+         * Applies the vertex remapping of the current pass and removes collapsed
+         * triangles.
+         */
+        private void removeDegenerateTriangles() {
+            parallel(numTriangles, (from, to) -> {
+                for (int i = from * 3; i < to * 3; i++) {
+                    indices[i] = remap[indices[i]];
+                }
+            });
+
+            int n = 0;
+            for (int t = 0; t < numTriangles; t++) {
+                int a = indices[t * 3];
+                int b = indices[t * 3 + 1];
+                int c = indices[t * 3 + 2];
+                if (a != b && b != c && a != c) {
+                    indices[n * 3] = a;
+                    indices[n * 3 + 1] = b;
+                    indices[n * 3 + 2] = c;
+                    n++;
+                }
+            }
+            numTriangles = n;
+
+            for (int i = 0; i < numVertices; i++) {
+                remap[i] = i;
+            }
+        }
+
+        /**
+         * Creates a mesh from the current triangles (unreferenced vertices are
+         * removed, vertices are numbered in order of first use).
+         */
+        Mesh toMesh() {
+            int numVertices = mesh.numVertices();
+            int[] newIndices = new int[numVertices];
+            Arrays.fill(newIndices, -1);
+
+            int[] meshIndices = new int[numTriangles * 3];
+            int n = 0;
+            for (int i = 0; i < meshIndices.length; i++) {
+                int v = vertexIds[indices[i]];
+                if (newIndices[v] < 0) {
+                    newIndices[v] = n++;
+                }
+                meshIndices[i] = newIndices[v];
+            }
+
+            float[] vertices = new float[n * 3];
+            float[] colors = mesh.hasColors() ? new float[n * 4] : null;
+            for (int v = 0; v < numVertices; v++) {
+                int i = newIndices[v];
+                if (i < 0) {
+                    continue;
+                }
+                for (int c = 0; c < 3; c++) {
+                    vertices[i * 3 + c] = mesh.vertices.get(v * 3 + c);
+                }
+                if (colors != null) {
+                    for (int c = 0; c < 4; c++) {
+                        colors[i * 4 + c] = mesh.colors.get(v * 4 + c);
+                    }
+                }
+            }
+
+            Mesh result = Mesh.newInstance(vertices, meshIndices, colors);
+            System.arraycopy(mesh.globalColor, 0, result.globalColor, 0, mesh.globalColor.length);
+            // bounds are cached, i.e., they are not computed on the render thread
+            result.getBounds();
+            return result;
+        }
+
+        /**
+         * Returns the number of current triangles adjacent to {@code v} that contain
+         * {@code w}.
+         */
+        private int countTriangles(int v, int w) {
+            int count = 0;
+            for (int a = adjacencyOffsets[v]; a < adjacencyOffsets[v + 1]; a++) {
+                int t = adjacency[a] * 3;
+                if (indices[t] == w || indices[t + 1] == w || indices[t + 2] == w) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Computes the unit normal and plane offset ({@code nx,ny,nz,d}) of the
+         * specified triangle.
+         *
+         * @return the area of the triangle
+         */
+        private float triangleNormal(int t, float[] n) {
+            int a = indices[t * 3] * 3;
+            int b = indices[t * 3 + 1] * 3;
+            int c = indices[t * 3 + 2] * 3;
+
+            float ux = positions[b] - positions[a];
+            float uy = positions[b + 1] - positions[a + 1];
+            float uz = positions[b + 2] - positions[a + 2];
+            float vx = positions[c] - positions[a];
+            float vy = positions[c + 1] - positions[a + 1];
+            float vz = positions[c + 2] - positions[a + 2];
+
+            float nx = uy * vz - uz * vy;
+            float ny = uz * vx - ux * vz;
+            float nz = ux * vy - uy * vx;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) {
+                return 0;
+            }
+
+            n[0] = nx / length;
+            n[1] = ny / length;
+            n[2] = nz / length;
+            n[3] = -(n[0] * positions[a] + n[1] * positions[a + 1] + n[2] * positions[a + 2]);
+
+            return length / 2;
+        }
+
+        /**
+         * Adds the plane through the boundary edge {@code (v,w)} that is perpendicular
+         * to the triangle with the specified normal.
+         */
+        private void addBorderPlane(double[] q, int v, int w, float[] n) {
+            float ex = positions[w * 3] - positions[v * 3];
+            float ey = positions[w * 3 + 1] - positions[v * 3 + 1];
+            float ez = positions[w * 3 + 2] - positions[v * 3 + 2];
+
+            float mx = ey * n[2] - ez * n[1];
+            float my = ez * n[0] - ex * n[2];
+            float mz = ex * n[1] - ey * n[0];
+            float length = (float) Math.sqrt(mx * mx + my * my + mz * mz);
+            if (length == 0) {
+                return;
+            }
+            mx /= length;
+            my /= length;
+            mz /= length;
+            float d = -(mx * positions[v * 3] + my * positions[v * 3 + 1] + mz * positions[v * 3 + 2]);
+
+            addPlane(q, mx, my, mz, d, (ex * ex + ey * ey + ez * ez) * BORDER_WEIGHT);
+        }
+
+        private static void addPlane(double[] q, double nx, double ny, double nz, double d, double weight) {
+            q[0] += weight * nx * nx;
+            q[1] += weight * ny * ny;
+            q[2] += weight * nz * nz;
+            q[3] += weight * nx * ny;
+            q[4] += weight * nx * nz;
+            q[5] += weight * ny * nz;
+            q[6] += weight * nx * d;
+            q[7] += weight * ny * d;
+            q[8] += weight * nz * d;
+            q[9] += weight * d * d;
+            q[10] += weight;
+        }
+
+        /**
+         * Returns the error of collapsing {@code v} into {@code w}, i.e., the squared
+         * distance of {@code w} to the planes of both vertices (weighted average).
+         */
+        private double collapseError(int v, int w) {
+            int qv = v * QUADRIC_SIZE;
+            int qw = w * QUADRIC_SIZE;
+            double x = positions[w * 3];
+            double y = positions[w * 3 + 1];
+            double z = positions[w * 3 + 2];
+
+            float[] q = quadrics;
+
+            double e = ((double) q[qv] + q[qw]) * x * x
+                    + ((double) q[qv + 1] + q[qw + 1]) * y * y
+                    + ((double) q[qv + 2] + q[qw + 2]) * z * z
+                    + 2 * (((double) q[qv + 3] + q[qw + 3]) * x * y
+                    + ((double) q[qv + 4] + q[qw + 4]) * x * z
+                    + ((double) q[qv + 5] + q[qw + 5]) * y * z)
+                    + 2 * (((double) q[qv + 6] + q[qw + 6]) * x
+                    + ((double) q[qv + 7] + q[qw + 7]) * y
+                    + ((double) q[qv + 8] + q[qw + 8]) * z)
+                    + q[qv + 9] + q[qw + 9];
+            double weight = (double) q[qv + 10] + q[qw + 10];
+
+            return weight > 0 ? Math.abs(e) / weight : 0;
+        }
+
+        /**
+         * Indicates whether collapsing {@code v} into {@code w} flips (or folds,
+         * degenerates) a triangle that remains after the collapse.
+         */
+        private boolean hasTriangleFlip(int v, int w) {
+            for (int a = adjacencyOffsets[v]; a < adjacencyOffsets[v + 1]; a++) {
+                int t = adjacency[a] * 3;
+                // corners as moved by the collapses of the current pass
+                int i0 = remap[indices[t]];
+                int i1 = remap[indices[t + 1]];
+                int i2 = remap[indices[t + 2]];
+                if (i0 == w || i1 == w || i2 == w || i0 == i1 || i1 == i2 || i0 == i2) {
+                    // removed by the collapse
+                    continue;
+                }
+
+                // rotate v to the first corner
+                int b = i0 == v ? i1 : i1 == v ? i2 : i0;
+                int c = i0 == v ? i2 : i1 == v ? i0 : i1;
+
+                if (isFlipped(v * 3, b * 3, c * 3, w * 3)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Indicates whether the normal of the triangle {@code (a,b,c)} rotates by more
+         * than 60 degrees if {@code a} is moved to {@code d} (coordinate offsets).
+         */
+        private boolean isFlipped(int a, int b, int c, int d) {
+            float[] p = positions;
+
+            double bx = p[b] - p[a], by = p[b + 1] - p[a + 1], bz = p[b + 2] - p[a + 2];
+            double cx = p[c] - p[a], cy = p[c + 1] - p[a + 1], cz = p[c + 2] - p[a + 2];
+            double n0x = by * cz - bz * cy, n0y = bz * cx - bx * cz, n0z = bx * cy - by * cx;
+
+            double ex = p[b] - p[d], ey = p[b + 1] - p[d + 1], ez = p[b + 2] - p[d + 2];
+            double fx = p[c] - p[d], fy = p[c + 1] - p[d + 1], fz = p[c + 2] - p[d + 2];
+            double n1x = ey * fz - ez * fy, n1y = ez * fx - ex * fz, n1z = ex * fy - ey * fx;
+
+            double l0 = Math.sqrt(n0x * n0x + n0y * n0y + n0z * n0z);
+            if (l0 == 0) {
+                // already degenerate
+                return false;
+            }
+            double l1 = Math.sqrt(n1x * n1x + n1y * n1y + n1z * n1z);
+
+            return n0x * n1x + n0y * n1y + n0z * n1z <= MIN_NORMAL_COS * l0 * l1;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import eu.mihosoft.vvecmath.Vector3d;
+
+/**
+ * Triangle consumer that computes statistics of a triangle stream (number of triangles,
+ * bounds, surface area and enclosed volume).
+ *
+ * Sample:
+ * <pre>
+ * MeshStatistics stats = new MeshStatistics();
+ * new STLLoader().streamTriangles(file, stats);
+ * System.out.println(stats);
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class MeshStatistics implements TriangleConsumer {
+
+    private long numTriangles;
+    private long numDegenerateTriangles;
+
+    private double surfaceArea;
+    private double signedVolume;
+
+    private final float[] min = {
+            Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+    private final float[] max = {
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+
+    @Override
+    public void accept(float[] positions, float[] normals, short[] attributes, int count) {
+        for (int t = 0; t < count; t++) {
+            int i = t * 9;
+
+            for (int v = 0; v < 9; v += 3) {
+                for (int c = 0; c < 3; c++) {
+                    float value = positions[i + v + c];
+                    min[c] = Math.min(min[c], value);
+                    max[c] = Math.max(max[c], value);
+                }
+            }
+
+            double ax = positions[i + 0], ay = positions[i + 1], az = positions[i + 2];
+            double bx = positions[i + 3], by = positions[i + 4], bz = positions[i + 5];
+            double cx = positions[i + 6], cy = positions[i + 7], cz = positions[i + 8];
+
+            // cross product of the edges (length is twice the triangle area)
+            double ux = bx - ax, uy = by - ay, uz = bz - az;
+            double vx = cx - ax, vy = cy - ay, vz = cz - az;
+            double nx = uy * vz - uz * vy;
+            double ny = uz * vx - ux * vz;
+            double nz = ux * vy - uy * vx;
+
+            double area = 0.5 * Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+            if (area == 0) {
+                numDegenerateTriangles++;
+            }
+
+            surfaceArea += area;
+
+            // signed volume of the tetrahedron (origin, a, b, c)
+            signedVolume += (ax * (by * cz - bz * cy)
+                    - ay * (bx * cz - bz * cx)
+                    + az * (bx * cy - by * cx)) / 6.0;
+        }
+
+        numTriangles += count;
+    }
+
+    /**
+     * Returns the number of triangles.
+     *
+     * @return the number of triangles
+     */
+    public long getNumberOfTriangles() {
+        return numTriangles;
+    }
+
+    /**
+     * Returns the number of triangles with zero area.
+     *
+     * @return the number of triangles with zero area
+     */
+    public long getNumberOfDegenerateTriangles() {
+        return numDegenerateTriangles;
+    }
+
+    /**
+     * Returns the total area of all triangles.
+     *
+     * @return the total area of all triangles
+     */
+    public double getSurfaceArea() {
+        return surfaceArea;
+    }
+
+    /**
+     * Returns the volume enclosed by the triangles. The result is only meaningful for
+     * closed and consistently oriented meshes.
+     *
+     * @return the volume enclosed by the triangles
+     */
+    public double getVolume() {
+        return Math.abs(signedVolume);
+    }
+
+    /**
+     * Returns the bounds of all triangles.
+     *
+     * @return the bounds of all triangles ({@code null} if no triangles were consumed)
+     */
+    public Mesh.Bounds getBounds() {
+        if (numTriangles == 0) {
+            return null;
+        }
+        return new Mesh.Bounds(Vector3d.xyz(min[0], min[1], min[2]), Vector3d.xyz(max[0], max[1], max[2]));
+    }
+
+    @Override
+    public String toString() {
+        return "[triangles: " + numTriangles
+                + ", degenerate: " + numDegenerateTriangles
+                + ", area: " + surfaceArea
+                + ", volume: " + getVolume()
+                + ", min: (" + min[0] + ", " + min[1] + ", " + min[2] + ")"
+                + ", max: (" + max[0] + ", " + max[1] + ", " + max[2] + ")]";
+    }
+}
@@ -0,0 +1,636 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector4f;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Partitions the triangles of a mesh into small clusters (meshlets) for per-frame
+ * culling on the CPU. Each meshlet is a consecutive index range of the clustered mesh
+ * (see {@link #getMesh()}) and has a bounding sphere and a normal cone. Meshlets that
+ * are outside of the view frustum or whose triangles are all back-facing are not
+ * drawn (see {@link #cull(Matrix4fc, boolean, int[])}).
+ *
+ * Triangles are sorted in Morton order and split into blocks that are clustered
+ * independently, i.e., in parallel. Meshlets are grown breadth-first over shared
+ * vertices. Triangles whose normal deviates too much from the average normal of the
+ * meshlet are left for the next meshlet, i.e., normal cones stay narrow. Meshlets
+ * have up to {@link #MAX_TRIANGLES} triangles (fewer at creases and borders).
+ *
+ * Sample:
+ * <pre>
+ * Meshlets meshlets = Meshlets.build(mesh);
+ * GLMeshCanvas canvas = new GLMeshCanvas(meshlets.getMesh());
+ * canvas.setMeshlets(meshlets);
+ * </pre>
+ *
+ * Memory: less than 0.5 bytes per triangle in addition to the clustered index buffer.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class Meshlets {
+
+    /**
+     * Maximum number of triangles per meshlet.
+     */
+    public static final int MAX_TRIANGLES = 128;
+
+    // triangles that deviate more than 60 degrees from the average normal of a meshlet
+    // are left for the next meshlet
+    private static final float MIN_NORMAL_DOT = 0.5f;
+
+    // number of triangles per block (blocks are clustered independently)
+    private static final int TRIANGLES_PER_BLOCK = 1 << 16;
+
+    private final Mesh original;
+    private final Mesh mesh;
+
+    private final int numMeshlets;
+    // first triangle per meshlet (the last entry is the number of triangles)
+    private final int[] offsets;
+    // bounding sphere (x,y,z,radius) per meshlet
+    private final float[] spheres;
+    // normal cone (axis x,y,z, cosine of the half angle) per meshlet, the cosine is
+    // -1 if the meshlet cannot be back-facing
+    private final float[] cones;
+
+    private Meshlets(Mesh original, Mesh mesh, int numMeshlets, int[] offsets,
+                     float[] spheres, float[] cones) {
+        this.original = original;
+        this.mesh = mesh;
+        this.numMeshlets = numMeshlets;
+        this.offsets = offsets;
+        this.spheres = spheres;
+        this.cones = cones;
+    }
+
+    /**
+     * Clusters the triangles of the specified mesh (in parallel with all available
+     * processors).
+     *
+     * @param mesh mesh
+     * @return the meshlets of the specified mesh
+     */
+    public static Meshlets build(Mesh mesh) {
+        return build(mesh, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Clusters the triangles of the specified mesh. The result does not depend on the
+     * number of threads.
+     *
+     * @param mesh mesh
+     * @param parallelism number of threads ({@code 1} disables parallel building)
+     * @return the meshlets of the specified mesh
+     */
+    public static Meshlets build(Mesh mesh, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+
+        int numIndices = mesh.numIndices();
+        if (numIndices % 3 != 0) {
+            throw new IllegalArgumentException("Number of indices must be a multiple of 3: " + numIndices);
+        }
+
+        int numTriangles = numIndices / 3;
+        int numBlocks = (numTriangles + TRIANGLES_PER_BLOCK - 1) / TRIANGLES_PER_BLOCK;
+
+        int[] indices = new int[numIndices];
+        mesh.indices.duplicate().get(indices);
+
+        ForkJoinPool pool = parallelism > 1 && numBlocks > 1 ? new ForkJoinPool(parallelism) : null;
+
+        try {
+            int[] sorted = numBlocks > 1
+                    ? VertexCacheOptimizer.sortSpatially(mesh, indices, numTriangles, pool)
+                    : indices;
+
+            FloatBuffer vertices = mesh.vertices.duplicate();
+
+            // each block writes its triangles to the range of the block, i.e., no
+            // synchronization is necessary
+            int[] result = new int[numIndices];
+            Block[] blocks = new Block[numBlocks];
+
+            if (pool == null) {
+                for (int b = 0; b < numBlocks; b++) {
+                    int first = b * TRIANGLES_PER_BLOCK;
+                    blocks[b] = cluster(vertices, sorted, first,
+                            Math.min(numTriangles, first + TRIANGLES_PER_BLOCK), result);
+                }
+            } else {
+                List<Callable<Block>> tasks = new ArrayList<>(numBlocks);
+                for (int b = 0; b < numBlocks; b++) {
+                    final int first = b * TRIANGLES_PER_BLOCK;
+                    final int end = Math.min(numTriangles, first + TRIANGLES_PER_BLOCK);
+                    // buffer positions are not shared between threads
+                    tasks.add(() -> cluster(mesh.vertices.duplicate(), sorted, first, end, result));
+                }
+
+                List<Future<Block>> futures = pool.invokeAll(tasks);
+                for (int b = 0; b < numBlocks; b++) {
+                    blocks[b] = futures.get(b).get();
+                }
+            }
+
+            return concatenate(mesh, result, blocks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Meshlet clustering interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Clusters the triangles of the specified mesh in the background.
+     *
+     * @param mesh mesh
+     * @return future that is completed with the meshlets
+     */
+    public static CompletableFuture<Meshlets> buildAsync(Mesh mesh) {
+        return CompletableFuture.supplyAsync(() -> build(mesh), ParallelBuild.EXECUTOR);
+    }
+
+    /**
+     * Returns the mesh the meshlets have been built from.
+     *
+     * @return the mesh the meshlets have been built from
+     */
+    public Mesh getOriginal() {
+        return original;
+    }
+
+    /**
+     * Returns the clustered mesh, i.e., the original mesh with triangles in meshlet
+     * order (vertices and colors are shared with the original mesh).
+     *
+     * @return the clustered mesh
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Returns the number of meshlets.
+     *
+     * @return the number of meshlets
+     */
+    public int numMeshlets() {
+        return numMeshlets;
+    }
+
+    /**
+     * Returns the first triangle of the specified meshlet (in the clustered mesh).
+     *
+     * @param meshlet meshlet
+     * @return the first triangle of the specified meshlet
+     */
+    public int getFirstTriangle(int meshlet) {
+        return offsets[meshlet];
+    }
+
+    /**
+     * Returns the number of triangles of the specified meshlet.
+     *
+     * @param meshlet meshlet
+     * @return the number of triangles of the specified meshlet
+     */
+    public int getNumTriangles(int meshlet) {
+        return offsets[meshlet + 1] - offsets[meshlet];
+    }
+
+    /**
+     * Returns the bounding sphere of the specified meshlet.
+     *
+     * @param meshlet meshlet
+     * @return center and radius {@code (x,y,z,radius)}
+     */
+    public float[] getBoundingSphere(int meshlet) {
+        return Arrays.copyOfRange(spheres, meshlet * 4, meshlet * 4 + 4);
+    }
+
+    /**
+     * Returns the normal cone of the specified meshlet, i.e., all triangle normals
+     * deviate at most by the half angle from the axis.
+     *
+     * @param meshlet meshlet
+     * @return axis and cosine of the half angle {@code (x,y,z,cos)} (the cosine is
+     * {@code -1} if the meshlet can never be back-facing)
+     */
+    public float[] getNormalCone(int meshlet) {
+        return Arrays.copyOfRange(cones, meshlet * 4, meshlet * 4 + 4);
+    }
+
+    /**
+     * Determines the index ranges of the clustered mesh that are visible with the
+     * specified transformation. Ranges of consecutive visible meshlets are merged.
+     * This method is thread-safe.
+     *
+     * Back-facing meshlets may only be culled if the mesh is closed and consistently
+     * oriented (counter-clockwise triangles seen from outside) and back faces are
+     * culled on the GPU as well.
+     *
+     * @param meshToClip transformation from mesh coordinates to clip coordinates
+     * @param backfaceCulling defines whether to cull meshlets that only contain
+     *                        back-facing triangles
+     * @param ranges array for the visible ranges {@code (first index, number of indices)}
+     *               (at least two entries per meshlet)
+     * @return the number of visible ranges
+     */
+    public int cull(Matrix4fc meshToClip, boolean backfaceCulling, int[] ranges) {
+        if (ranges.length < numMeshlets * 2) {
+            throw new IllegalArgumentException("Range array too small: " + ranges.length
+                    + " < " + numMeshlets * 2);
+        }
+
+        FrustumIntersection frustum = new FrustumIntersection(meshToClip);
+
+        // the eye is the point that is mapped to w = 0 with x = y = 0 (a direction for
+        // orthographic views)
+        Vector4f eye = new Vector4f(0, 0, 1, 0).mul(new Matrix4f(meshToClip).invert());
+        boolean directional = Math.abs(eye.w) <= 1e-6f * (Math.abs(eye.x) + Math.abs(eye.y) + Math.abs(eye.z));
+        if (!directional) {
+            eye.div(eye.w);
+        }
+        backfaceCulling &= Float.isFinite(eye.x) && Float.isFinite(eye.y) && Float.isFinite(eye.z);
+
+        int numRanges = 0;
+
+        for (int m = 0; m < numMeshlets; m++) {
+            int s = m * 4;
+            if (!frustum.testSphere(spheres[s], spheres[s + 1], spheres[s + 2], spheres[s + 3])) {
+                continue;
+            }
+
+            if (backfaceCulling) {
+                // vector from the eye to the center (view direction for orthographic views)
+                float vx = directional ? eye.x : spheres[s] - eye.x;
+                float vy = directional ? eye.y : spheres[s + 1] - eye.y;
+                float vz = directional ? eye.z : spheres[s + 2] - eye.z;
+                if (isBackFacing(spheres[s + 3], cones[s], cones[s + 1], cones[s + 2], cones[s + 3],
+                        vx, vy, vz, directional)) {
+                    continue;
+                }
+            }
+
+            int first = offsets[m] * 3;
+            int count = (offsets[m + 1] - offsets[m]) * 3;
+
+            if (numRanges > 0 && ranges[numRanges * 2 - 2] + ranges[numRanges * 2 - 1] == first) {
+                ranges[numRanges * 2 - 1] += count;
+            } else {
+                ranges[numRanges * 2] = first;
+                ranges[numRanges * 2 + 1] = count;
+                numRanges++;
+            }
+        }
+
+        return numRanges;
+    }
+
+    /**
+     * Determines whether all triangles of a meshlet are back-facing, i.e., whether
+     * {@code dot(normal, p - eye) >= 0} for all points {@code p} of the bounding sphere
+     * and all normals of the normal cone. The angle between a normal and the view
+     * vector is at most the angle between axis and view vector plus the half angle of
+     * the cone.
+     *
+     * @param radius radius of the bounding sphere
+     * @param ax x coordinate of the cone axis (normalized)
+     * @param ay y coordinate of the cone axis
+     * @param az z coordinate of the cone axis
+     * @param cosAngle cosine of the half angle of the cone
+     * @param vx x coordinate of the vector from the eye to the sphere center (view
+     *           direction if {@code directional})
+     * @param vy y coordinate of the view vector
+     * @param vz z coordinate of the view vector
+     * @param directional defines whether the eye is infinitely far away (orthographic)
+     * @return {@code true} if all triangles are back-facing; {@code false} otherwise
+     */
+    static boolean isBackFacing(float radius, float ax, float ay, float az, float cosAngle,
+                                float vx, float vy, float vz, boolean directional) {
+        if (cosAngle <= 0) {
+            // cones of 90 degrees or more always contain front-facing normals
+            return false;
+        }
+
+        float length = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+        if (length == 0 || !directional && length <= radius) {
+            // eye inside of the bounding sphere
+            return false;
+        }
+
+        float cosView = (ax * vx + ay * vy + az * vz) / length;
+        if (cosView <= 0) {
+            return false;
+        }
+
+        // cosine of (angle between axis and view vector + half angle of the cone)
+        float sinView = (float) Math.sqrt(Math.max(0, 1 - cosView * cosView));
+        float sinAngle = (float) Math.sqrt(Math.max(0, 1 - cosAngle * cosAngle));
+        float cosMax = cosView * cosAngle - sinView * sinAngle;
+
+        // the sphere subtends an angle of asin(radius/length) as seen from the eye
+        return directional ? cosMax > 0 : cosMax * length > radius;
+    }
+
+    /**
+     * Meshlets of a block.
+     */
+    private static final class Block {
+        int numMeshlets;
+        int[] sizes;
+        float[] spheres;
+        float[] cones;
+
+        Block(int capacity) {
+            sizes = new int[capacity];
+            spheres = new float[capacity * 4];
+            cones = new float[capacity * 4];
+        }
+
+        void add(int size) {
+            if (numMeshlets == sizes.length) {
+                sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                spheres = Arrays.copyOf(spheres, spheres.length * 2);
+                cones = Arrays.copyOf(cones, cones.length * 2);
+            }
+            sizes[numMeshlets++] = size;
+        }
+    }
+
+    /**
+     * Clusters the specified range of triangles.
+     *
+     * @param vertices vertex positions
+     * @param indices triangle indices
+     * @param firstTriangle first triangle of the range
+     * @param endTriangle triangle after the last triangle of the range
+     * @param result array to write the clustered triangles to (the range of the input
+     *               triangles)
+     * @return the meshlets of the range (in the order of the result)
+     */
+    private static Block cluster(FloatBuffer vertices, int[] indices, int firstTriangle,
+                                 int endTriangle, int[] result) {
+        int numTriangles = endTriangle - firstTriangle;
+        int numIndices = numTriangles * 3;
+        int offset = firstTriangle * 3;
+
+        Block block = new Block(numTriangles / MAX_TRIANGLES + 16);
+
+        if (numTriangles == 0) {
+            return block;
+        }
+
+        // local vertex ids (sorted global ids of the range)
+        int[] localVertices = Arrays.copyOfRange(indices, offset, offset + numIndices);
+        Arrays.sort(localVertices);
+        int numVertices = 0;
+        for (int i = 0; i < numIndices; i++) {
+            if (i == 0 || localVertices[i] != localVertices[i - 1]) {
+                localVertices[numVertices++] = localVertices[i];
+            }
+        }
+
+        int[] local = new int[numIndices];
+        for (int i = 0; i < numIndices; i++) {
+            local[i] = Arrays.binarySearch(localVertices, 0, numVertices, indices[offset + i]);
+        }
+
+        // vertex -> triangle adjacency (compressed rows)
+        int[] adjacencyOffsets = new int[numVertices + 1];
+        for (int v : local) {
+            adjacencyOffsets[v + 1]++;
+        }
+        for (int v = 0; v < numVertices; v++) {
+            adjacencyOffsets[v + 1] += adjacencyOffsets[v];
+        }
+        int[] adjacency = new int[numIndices];
+        int[] fill = Arrays.copyOf(adjacencyOffsets, numVertices);
+        for (int i = 0; i < numIndices; i++) {
+            adjacency[fill[local[i]]++] = i / 3;
+        }
+
+        // unit normals (zero for degenerate triangles)
+        float[] normals = new float[numIndices];
+        for (int t = 0; t < numTriangles; t++) {
+            int a = indices[offset + t * 3] * 3;
+            int b = indices[offset + t * 3 + 1] * 3;
+            int c = indices[offset + t * 3 + 2] * 3;
+            float e1x = vertices.get(b) - vertices.get(a);
+            float e1y = vertices.get(b + 1) - vertices.get(a + 1);
+            float e1z = vertices.get(b + 2) - vertices.get(a + 2);
+            float e2x = vertices.get(c) - vertices.get(a);
+            float e2y = vertices.get(c + 1) - vertices.get(a + 1);
+            float e2z = vertices.get(c + 2) - vertices.get(a + 2);
+            float nx = e1y * e2z - e1z * e2y;
+            float ny = e1z * e2x - e1x * e2z;
+            float nz = e1x * e2y - e1y * e2x;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                normals[t * 3] = nx / length;
+                normals[t * 3 + 1] = ny / length;
+                normals[t * 3 + 2] = nz / length;
+            }
+        }
+
+        boolean[] assigned = new boolean[numTriangles];
+        // meshlet that has visited a triangle last (1-based)
+        int[] visited = new int[numTriangles];
+        // breadth-first queue (each triangle is enqueued at most once per meshlet)
+        int[] queue = new int[numTriangles];
+        int[] members = new int[MAX_TRIANGLES];
+
+        int out = offset;
+        int cursor = 0;
+        int seed = 0;
+
+        while (true) {
+            // seeds are taken from the border of the previous meshlet (keeps meshlets
+            // compact) or in Morton order
+            if (seed >= 0 && assigned[seed]) {
+                seed = -1;
+            }
+            if (seed < 0) {
+                while (cursor < numTriangles && assigned[cursor]) {
+                    cursor++;
+                }
+                if (cursor == numTriangles) {
+                    break;
+                }
+                seed = cursor;
+            }
+
+            int meshlet = block.numMeshlets + 1;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = seed;
+            visited[seed] = meshlet;
+
+            float sumX = 0, sumY = 0, sumZ = 0;
+            int count = 0;
+
+            while (head < tail && count < MAX_TRIANGLES) {
+                int t = queue[head++];
+                float nx = normals[t * 3], ny = normals[t * 3 + 1], nz = normals[t * 3 + 2];
+
+                // degenerate triangles fit into every meshlet
+                boolean degenerate = nx == 0 && ny == 0 && nz == 0;
+                float sumLength = (float) Math.sqrt(sumX * sumX + sumY * sumY + sumZ * sumZ);
+                if (!degenerate && sumLength > 0
+                        && nx * sumX + ny * sumY + nz * sumZ < MIN_NORMAL_DOT * sumLength) {
+                    continue;
+                }
+
+                assigned[t] = true;
+                members[count++] = t;
+                sumX += nx;
+                sumY += ny;
+                sumZ += nz;
+
+                for (int i = t * 3; i < t * 3 + 3; i++) {
+                    int v = local[i];
+                    for (int a = adjacencyOffsets[v]; a < adjacencyOffsets[v + 1]; a++) {
+                        int neighbor = adjacency[a];
+                        if (!assigned[neighbor] && visited[neighbor] != meshlet) {
+                            visited[neighbor] = meshlet;
+                            queue[tail++] = neighbor;
+                        }
+                    }
+                }
+            }
+
+            // next seed: first unassigned triangle on the border
+            seed = -1;
+            for (int i = head; i < tail; i++) {
+                if (!assigned[queue[i]]) {
+                    seed = queue[i];
+                    break;
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                int src = offset + members[i] * 3;
+                result[out++] = indices[src];
+                result[out++] = indices[src + 1];
+                result[out++] = indices[src + 2];
+            }
+
+            block.add(count);
+            computeBounds(vertices, result, out - count * 3, out, normals, members, count,
+                    sumX, sumY, sumZ, block.spheres, block.cones, (block.numMeshlets - 1) * 4);
+        }
+
+        return block;
+    }
+
+    /**
+     * Computes bounding sphere and normal cone of a meshlet.
+     */
+    private static void computeBounds(FloatBuffer vertices, int[] indices, int first, int end,
+                                      float[] normals, int[] members, int count,
+                                      float sumX, float sumY, float sumZ,
+                                      float[] spheres, float[] cones, int target) {
+        // sphere around the center of the bounding box
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = first; i < end; i++) {
+            int v = indices[i] * 3;
+            float x = vertices.get(v), y = vertices.get(v + 1), z = vertices.get(v + 2);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+
+        float cx = (minX + maxX) * 0.5f, cy = (minY + maxY) * 0.5f, cz = (minZ + maxZ) * 0.5f;
+        float radiusSquared = 0;
+        for (int i = first; i < end; i++) {
+            int v = indices[i] * 3;
+            float dx = vertices.get(v) - cx, dy = vertices.get(v + 1) - cy, dz = vertices.get(v + 2) - cz;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+
+        spheres[target] = cx;
+        spheres[target + 1] = cy;
+        spheres[target + 2] = cz;
+        // compensates rounding errors of the float computations
+        spheres[target + 3] = (float) Math.sqrt(radiusSquared) * (1 + 1e-5f);
+
+        // axis: average normal, half angle: largest deviation from the axis
+        float length = (float) Math.sqrt(sumX * sumX + sumY * sumY + sumZ * sumZ);
+        float cosAngle = length > 0 ? 1 : -1;
+        if (length > 0) {
+            sumX /= length;
+            sumY /= length;
+            sumZ /= length;
+            for (int i = 0; i < count; i++) {
+                int n = members[i] * 3;
+                if (normals[n] != 0 || normals[n + 1] != 0 || normals[n + 2] != 0) {
+                    cosAngle = Math.min(cosAngle,
+                            normals[n] * sumX + normals[n + 1] * sumY + normals[n + 2] * sumZ);
+                }
+            }
+        }
+
+        cones[target] = sumX;
+        cones[target + 1] = sumY;
+        cones[target + 2] = sumZ;
+        // compensates rounding errors of the float computations
+        cones[target + 3] = cosAngle - 1e-4f;
+    }
+
+    /**
+     * Concatenates the meshlets of the blocks and creates the clustered mesh.
+     */
+    private static Meshlets concatenate(Mesh mesh, int[] indices, Block[] blocks) {
+        int numMeshlets = 0;
+        for (Block block : blocks) {
+            numMeshlets += block.numMeshlets;
+        }
+
+        int[] offsets = new int[numMeshlets + 1];
+        float[] spheres = new float[numMeshlets * 4];
+        float[] cones = new float[numMeshlets * 4];
+
+        int m = 0;
+        for (Block block : blocks) {
+            System.arraycopy(block.spheres, 0, spheres, m * 4, block.numMeshlets * 4);
+            System.arraycopy(block.cones, 0, cones, m * 4, block.numMeshlets * 4);
+            for (int i = 0; i < block.numMeshlets; i++) {
+                offsets[m + 1] = offsets[m] + block.sizes[i];
+                m++;
+            }
+        }
+
+        Mesh clustered = Mesh.newInstance(mesh.vertices, IntBuffer.wrap(indices),
+                mesh.hasColors() ? mesh.colors : null);
+        System.arraycopy(mesh.globalColor, 0, clustered.globalColor, 0, mesh.globalColor.length);
+
+        System.out.println("-> meshlets: " + numMeshlets + " (avg. "
+                + (numMeshlets == 0 ? 0 : indices.length / 3 / numMeshlets) + " triangles)");
+
+        return new Meshlets(mesh, clustered, numMeshlets, offsets, spheres, cones);
+    }
+}
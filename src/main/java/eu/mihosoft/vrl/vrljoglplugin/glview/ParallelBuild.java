@@ -0,0 +1,111 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Helpers for building acceleration structures and for processing meshes: the
+ * executor for asynchronous building, parallel processing of index ranges and axis
+ * aligned bounding boxes ({@code xmin,ymin,zmin,xmax,ymax,zmax}).
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+final class ParallelBuild {
+
+    // executor for asynchronous building (daemon threads, i.e., pending builds do not
+    // prevent the jvm from exiting)
+    static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "VRL-JOGL-Build");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ParallelBuild() {
+        throw new AssertionError("Don't instantiate me!");
+    }
+
+    /**
+     * Operation on a range of elements.
+     */
+    @FunctionalInterface
+    interface RangeOperation {
+        void apply(int from, int to);
+    }
+
+    /**
+     * Applies the specified operation to the range {@code [0,n)}. The range is split in
+     * halves until the subranges have at most {@code grain} elements, the subranges are
+     * processed in parallel.
+     *
+     * @param pool pool that processes the subranges ({@code null} for sequential
+     *             processing)
+     * @param n number of elements
+     * @param grain maximum number of elements processed by a single task
+     * @param operation operation to apply
+     */
+    static void forRange(ForkJoinPool pool, int n, int grain, RangeOperation operation) {
+        if (pool == null || n <= grain) {
+            operation.apply(0, n);
+        } else {
+            pool.invoke(new RangeTask(operation, 0, n, grain));
+        }
+    }
+
+    /**
+     * Fork/join task that applies an operation to a range of elements.
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private final RangeOperation operation;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        RangeTask(RangeOperation operation, int from, int to, int grain) {
+            this.operation = operation;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                operation.apply(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(operation, from, middle, grain),
+                        new RangeTask(operation, middle, to, grain));
+            }
+        }
+    }
+
+    /**
+     * Sets the specified bounding box to the empty box.
+     *
+     * @param bounds bounding boxes
+     * @param offset offset of the box
+     */
+    static void setEmpty(float[] bounds, int offset) {
+        for (int k = 0; k < 3; k++) {
+            bounds[offset + k] = Float.POSITIVE_INFINITY;
+            bounds[offset + 3 + k] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Extends the specified bounding box by another box.
+     *
+     * @param bounds bounding boxes
+     * @param offset offset of the box to extend
+     * @param other bounding boxes
+     * @param otherOffset offset of the box to add
+     */
+    static void union(float[] bounds, int offset, float[] other, int otherOffset) {
+        for (int k = 0; k < 3; k++) {
+            bounds[offset + k] = Math.min(bounds[offset + k], other[otherOffset + k]);
+            bounds[offset + 3 + k] = Math.max(bounds[offset + 3 + k], other[otherOffset + 3 + k]);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+/**
+ * Listener that is notified when a point of a mesh has been picked (see
+ * {@link GLMeshCanvas#addPickListener(PickListener)}).
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+@FunctionalInterface
+public interface PickListener {
+
+    /**
+     * Called when a point of the specified mesh has been picked (on the event
+     * dispatch thread).
+     *
+     * @param mesh mesh that has been picked
+     * @param hit picked triangle, vertex and position (mesh coordinates)
+     */
+    void picked(Mesh mesh, MeshBVH.Hit hit);
+}
@@ -0,0 +1,329 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.util.Arrays;
+
+/**
+ * Triangle consumer that creates a decimated preview of a triangle stream via vertex
+ * clustering.
+ *
+ * All triangle corners that fall into the same cell of a uniform grid are merged into a
+ * single vertex (the average of the corners). Triangles that collapse are removed and
+ * duplicate triangles are only stored once. The grid resolution is adapted during
+ * streaming: whenever the number of vertices exceeds the specified maximum, the cell
+ * size is doubled and the existing clusters are merged. Thus, the memory consumption
+ * only depends on the maximum number of vertices and not on the size of the stream.
+ *
+ * Sample:
+ * <pre>
+ * PreviewMeshBuilder preview = new PreviewMeshBuilder(100_000);
+ * new STLLoader().streamTriangles(file, preview);
+ * Mesh mesh = preview.getMesh();
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class PreviewMeshBuilder implements TriangleConsumer {
+
+    // number of grid cells along the largest extent of the first batch (the grid is
+    // coarsened as needed)
+    private static final int INITIAL_RESOLUTION = 1024;
+
+    private final int maxVertices;
+
+    // cell size of the clustering grid (NaN until the first batch has been consumed)
+    private double cellSize = Double.NaN;
+
+    // clusters: cell coordinates (3 per cluster), coordinate sums (3 per cluster)
+    // and number of merged corners
+    private final long[] clusterCells;
+    private final double[] clusterSums;
+    private final int[] clusterCounts;
+    private int numClusters;
+
+    // open-addressing hash table that maps cells to clusters (-1 means empty)
+    private final int[] clusterTable;
+
+    // triangles (3 cluster indices per triangle)
+    private int[] triangles = new int[3 * 1024];
+    private int numTriangles;
+
+    // open-addressing hash table that contains all triangles (-1 means empty)
+    private int[] triangleTable = newTable(1024);
+
+    /**
+     * Creates a new preview builder.
+     *
+     * @param maxVertices maximum number of vertices of the preview (at least 16)
+     */
+    public PreviewMeshBuilder(int maxVertices) {
+        if (maxVertices < 16) {
+            throw new IllegalArgumentException("At least 16 vertices required: " + maxVertices);
+        }
+        this.maxVertices = maxVertices;
+
+        // each triangle adds at most three clusters before the grid is coarsened
+        int capacity = maxVertices + 3;
+        clusterCells = new long[capacity * 3];
+        clusterSums = new double[capacity * 3];
+        clusterCounts = new int[capacity];
+        clusterTable = newTable(capacity);
+    }
+
+    @Override
+    public void accept(float[] positions, float[] normals, short[] attributes, int count) {
+        if (count == 0) {
+            return;
+        }
+
+        if (Double.isNaN(cellSize)) {
+            cellSize = initialCellSize(positions, count);
+        }
+
+        for (int t = 0; t < count; t++) {
+            int a = cluster(positions, t * 9);
+            int b = cluster(positions, t * 9 + 3);
+            int c = cluster(positions, t * 9 + 6);
+
+            addTriangle(a, b, c);
+
+            while (numClusters > maxVertices) {
+                coarsen();
+            }
+        }
+    }
+
+    /**
+     * Returns the current cell size of the clustering grid.
+     *
+     * @return the current cell size ({@code NaN} if no triangles were consumed)
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Returns the preview mesh (vertices that are not used by any triangle are removed).
+     *
+     * @return the preview mesh
+     */
+    public Mesh getMesh() {
+        int[] newIndices = new int[numClusters];
+        Arrays.fill(newIndices, -1);
+
+        int numVertices = 0;
+        for (int i = 0; i < numTriangles * 3; i++) {
+            if (newIndices[triangles[i]] < 0) {
+                newIndices[triangles[i]] = numVertices++;
+            }
+        }
+
+        float[] vertices = new float[numVertices * 3];
+        for (int k = 0; k < numClusters; k++) {
+            int v = newIndices[k];
+            if (v >= 0) {
+                for (int c = 0; c < 3; c++) {
+                    vertices[v * 3 + c] = (float) (clusterSums[k * 3 + c] / clusterCounts[k]);
+                }
+            }
+        }
+
+        int[] indices = new int[numTriangles * 3];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = newIndices[triangles[i]];
+        }
+
+        return Mesh.newInstance(vertices, indices);
+    }
+
+    /**
+     * Computes the initial cell size from the extent of the first batch.
+     */
+    private static double initialCellSize(float[] positions, int count) {
+        double extent = 0;
+        double maxAbs = 0;
+        for (int c = 0; c < 3; c++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = c; i < count * 9; i += 3) {
+                min = Math.min(min, positions[i]);
+                max = Math.max(max, positions[i]);
+            }
+            if (max - min < Float.POSITIVE_INFINITY) {
+                extent = Math.max(extent, max - min);
+                maxAbs = Math.max(maxAbs, Math.max(Math.abs(min), Math.abs(max)));
+            }
+        }
+
+        if (extent > 0) {
+            return extent / INITIAL_RESOLUTION;
+        }
+
+        // all vertices of the first batch are identical
+        return Math.max(Math.ulp(1f), maxAbs * 1e-6);
+    }
+
+    /**
+     * Returns the cluster of the specified vertex (creates the cluster if necessary).
+     */
+    private int cluster(float[] positions, int i) {
+        float x = positions[i];
+        float y = positions[i + 1];
+        float z = positions[i + 2];
+
+        long cx = (long) Math.floor(x / cellSize);
+        long cy = (long) Math.floor(y / cellSize);
+        long cz = (long) Math.floor(z / cellSize);
+
+        int k = findOrAddCluster(cx, cy, cz);
+
+        clusterSums[k * 3 + 0] += x;
+        clusterSums[k * 3 + 1] += y;
+        clusterSums[k * 3 + 2] += z;
+        clusterCounts[k]++;
+
+        return k;
+    }
+
+    private int findOrAddCluster(long cx, long cy, long cz) {
+        int mask = clusterTable.length - 1;
+        int slot = hash(cx, cy, cz) & mask;
+        while (true) {
+            int k = clusterTable[slot];
+            if (k < 0) {
+                k = numClusters++;
+                clusterCells[k * 3 + 0] = cx;
+                clusterCells[k * 3 + 1] = cy;
+                clusterCells[k * 3 + 2] = cz;
+                clusterSums[k * 3 + 0] = 0;
+                clusterSums[k * 3 + 1] = 0;
+                clusterSums[k * 3 + 2] = 0;
+                clusterCounts[k] = 0;
+                clusterTable[slot] = k;
+                return k;
+            } else if (clusterCells[k * 3] == cx
+                    && clusterCells[k * 3 + 1] == cy
+                    && clusterCells[k * 3 + 2] == cz) {
+                return k;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Adds the specified triangle if it is not degenerate and not already present.
+     */
+    private void addTriangle(int a, int b, int c) {
+        if (a == b || b == c || a == c) {
+            return;
+        }
+
+        // rotate the smallest index to the front (keeps the orientation)
+        if (b < a && b < c) {
+            int tmp = a;
+            a = b;
+            b = c;
+            c = tmp;
+        } else if (c < a && c < b) {
+            int tmp = c;
+            c = b;
+            b = a;
+            a = tmp;
+        }
+
+        int mask = triangleTable.length - 1;
+        int slot = hash(a, b, c) & mask;
+        while (true) {
+            int t = triangleTable[slot];
+            if (t < 0) {
+                break;
+            } else if (triangles[t * 3] == a && triangles[t * 3 + 1] == b && triangles[t * 3 + 2] == c) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (numTriangles * 3 == triangles.length) {
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
+        }
+
+        int t = numTriangles++;
+        triangles[t * 3 + 0] = a;
+        triangles[t * 3 + 1] = b;
+        triangles[t * 3 + 2] = c;
+        triangleTable[slot] = t;
+
+        if (numTriangles * 2 > triangleTable.length) {
+            triangleTable = newTable(triangleTable.length);
+            for (int i = 0; i < numTriangles; i++) {
+                insertTriangle(i);
+            }
+        }
+    }
+
+    private void insertTriangle(int t) {
+        int mask = triangleTable.length - 1;
+        int slot = hash(triangles[t * 3], triangles[t * 3 + 1], triangles[t * 3 + 2]) & mask;
+        while (triangleTable[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        triangleTable[slot] = t;
+    }
+
+    /**
+     * Doubles the cell size and merges the clusters and triangles accordingly. Clusters
+     * and triangles are compacted in place (new indices never exceed old indices).
+     */
+    private void coarsen() {
+        cellSize *= 2;
+
+        int oldNumClusters = numClusters;
+        int[] remap = new int[oldNumClusters];
+
+        Arrays.fill(clusterTable, -1);
+        numClusters = 0;
+
+        for (int i = 0; i < oldNumClusters; i++) {
+            // cell coordinates of the coarser grid (arithmetic shift rounds down)
+            long cx = clusterCells[i * 3 + 0] >> 1;
+            long cy = clusterCells[i * 3 + 1] >> 1;
+            long cz = clusterCells[i * 3 + 2] >> 1;
+
+            double sx = clusterSums[i * 3 + 0];
+            double sy = clusterSums[i * 3 + 1];
+            double sz = clusterSums[i * 3 + 2];
+            int count = clusterCounts[i];
+
+            int k = findOrAddCluster(cx, cy, cz);
+
+            clusterSums[k * 3 + 0] += sx;
+            clusterSums[k * 3 + 1] += sy;
+            clusterSums[k * 3 + 2] += sz;
+            clusterCounts[k] += count;
+
+            remap[i] = k;
+        }
+
+        int oldNumTriangles = numTriangles;
+
+        Arrays.fill(triangleTable, -1);
+        numTriangles = 0;
+
+        for (int t = 0; t < oldNumTriangles; t++) {
+            addTriangle(remap[triangles[t * 3]], remap[triangles[t * 3 + 1]], remap[triangles[t * 3 + 2]]);
+        }
+    }
+
+    private static int[] newTable(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(4, minCapacity) * 2 - 1) << 1;
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    private static int hash(long a, long b, long c) {
+        long h = a * 0x9E3779B97F4A7C15L;
+        h = (h ^ b) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ c) * 0x165667B19E3779F9L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -30,6 +30,8 @@ public class Program implements GLObject {
         if (this.programHandle == 0) {
             throw new RuntimeException("Cannot create GL program");
         }
+
+        GLResources.created(gl, GLResources.Kind.PROGRAM, programHandle, this);
     }
 
     /**
@@ -61,7 +63,7 @@ public class Program implements GLObject {
         for (Iterator<Shader> it = shaders.iterator(); it.hasNext();) {
             Shader s = it.next();
             gl.glDetachShader(this.programHandle, s.getGLHandle());
-            gl.glDeleteShader(s.getGLHandle());
+            s.delete();
             it.remove();
         }
     }
@@ -112,9 +114,12 @@ public class Program implements GLObject {
     /**
      * Deletes this program.
      */
+    @Override
     public void delete() {
         if (isValid()) {
             gl.glDeleteProgram(getGLHandle());
+            GLResources.deleted(gl, GLResources.Kind.PROGRAM, getGLHandle());
+            programHandle = 0;
         }
     }
 
@@ -0,0 +1,296 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import com.jogamp.common.nio.Buffers;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Mesh that grows while it is displayed (e.g. while a file is loaded).
+ *
+ * Producers append vertex and index ranges from any thread, a {@link GLMeshCanvas}
+ * uploads the new ranges and redraws whenever new data arrives. Producers should
+ * append a coarse approximation of the whole mesh first (e.g. a sample of its
+ * triangles) and refine it afterwards, i.e., a useful picture is available long
+ * before loading is complete.
+ *
+ * The capacity is fixed, i.e., GPU buffers are allocated once and new ranges are
+ * uploaded without copying the existing data. Appends that exceed the capacity are
+ * rejected.
+ *
+ * Sample:
+ * <pre>
+ * ProgressiveMesh progressive = loader.newProgressiveMesh(file, 2_000_000);
+ * GLMeshCanvas canvas = new GLMeshCanvas(progressive);
+ * loader.loadMeshAsync(file, progressive).thenAccept(canvas::setMesh);
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class ProgressiveMesh {
+
+    // listeners are notified at most this often (except for the first data and
+    // completion)
+    private static final long MIN_NOTIFICATION_INTERVAL_NANOS = 100_000_000L;
+
+    private final FloatBuffer vertices;
+    private final IntBuffer indices;
+
+    // published counts (vertices are published before indices, i.e., readers that
+    // read the index count first only see indices of available vertices)
+    private volatile int numVertices;
+    private volatile int numIndices;
+    private volatile boolean complete;
+
+    // bounds of the appended vertices (xmin,ymin,zmin,xmax,ymax,zmax)
+    private final float[] bounds = {
+            Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY
+    };
+
+    private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private long lastNotification;
+
+    /**
+     * Creates a progressive mesh for triangle soups (three vertices per triangle). The
+     * buffers are allocated immediately, i.e., the capacity should not exceed the
+     * number of triangles to load (see
+     * {@link STLLoader#newProgressiveMesh(java.io.File, int)}).
+     *
+     * @param maxTriangles maximum number of triangles
+     */
+    public ProgressiveMesh(int maxTriangles) {
+        this(soupVertices(maxTriangles), soupVertices(maxTriangles));
+    }
+
+    /**
+     * Returns the number of vertices (and indices) of a triangle soup.
+     *
+     * @param numTriangles number of triangles
+     * @return the number of vertices of the triangle soup
+     */
+    private static int soupVertices(int numTriangles) {
+        // three coordinates per vertex must be addressable
+        if (numTriangles < 0 || 9L * numTriangles > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid capacity: " + numTriangles + " triangles");
+        }
+        return 3 * numTriangles;
+    }
+
+    /**
+     * Creates a progressive mesh.
+     *
+     * @param maxVertices maximum number of vertices
+     * @param maxIndices  maximum number of indices
+     */
+    public ProgressiveMesh(int maxVertices, int maxIndices) {
+        if (maxVertices < 0 || maxIndices < 0 || (long) maxVertices * 3 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid capacity: " + maxVertices + " vertices, "
+                    + maxIndices + " indices");
+        }
+        // direct buffers, the data is uploaded to the GPU without copying
+        vertices = Buffers.newDirectFloatBuffer(maxVertices * 3);
+        indices = Buffers.newDirectIntBuffer(maxIndices);
+    }
+
+    /**
+     * Appends the specified vertices and triangles.
+     *
+     * @param vertexData   vertex coordinates ({@code x,y,z} per vertex)
+     * @param firstVertex  first vertex to append
+     * @param vertexCount  number of vertices to append
+     * @param indexData    triangle indices relative to {@code firstVertex}
+     * @param firstIndex   first index to append
+     * @param indexCount   number of indices to append (multiple of 3)
+     * @return {@code true} if the data has been appended; {@code false} if the
+     * capacity is exceeded
+     */
+    public boolean append(float[] vertexData, int firstVertex, int vertexCount,
+                          int[] indexData, int firstIndex, int indexCount) {
+        synchronized (this) {
+            int v = numVertices;
+            int i = numIndices;
+            if (complete || (v + vertexCount) * 3 > vertices.capacity() || i + indexCount > indices.capacity()) {
+                return false;
+            }
+
+            for (int k = 0; k < vertexCount * 3; k++) {
+                float value = vertexData[firstVertex * 3 + k];
+                vertices.put(v * 3 + k, value);
+                int c = k % 3;
+                bounds[c] = Math.min(bounds[c], value);
+                bounds[c + 3] = Math.max(bounds[c + 3], value);
+            }
+            for (int k = 0; k < indexCount; k++) {
+                indices.put(i + k, v + indexData[firstIndex + k]);
+            }
+
+            numVertices = v + vertexCount;
+            numIndices = i + indexCount;
+        }
+
+        notifyListeners(false);
+
+        return true;
+    }
+
+    /**
+     * Appends every {@code stride}-th triangle of the specified triangle soup. The
+     * triangles are selected by their index, i.e., ranges that are appended
+     * independently select the triangles of a single uniform sample.
+     *
+     * @param triangleVertices triangle vertex coordinates (9 per triangle)
+     * @param firstTriangle    first triangle of the range to append
+     * @param endTriangle      triangle after the last triangle of the range
+     * @param stride           every {@code stride}-th triangle is appended
+     * @return {@code true} if the triangles have been appended; {@code false} if the
+     * capacity is exceeded
+     */
+    public boolean appendTriangles(float[] triangleVertices, int firstTriangle, int endTriangle, int stride) {
+        if (stride < 1) {
+            throw new IllegalArgumentException("Stride must be positive: " + stride);
+        }
+
+        int first = (firstTriangle + stride - 1) / stride * stride;
+        int count = first < endTriangle ? (endTriangle - first + stride - 1) / stride : 0;
+        if (count == 0) {
+            return true;
+        }
+
+        float[] selected = new float[count * 9];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(triangleVertices, (first + i * stride) * 9, selected, i * 9, 9);
+        }
+        int[] soupIndices = new int[count * 3];
+        for (int i = 0; i < soupIndices.length; i++) {
+            soupIndices[i] = i;
+        }
+
+        return append(selected, 0, count * 3, soupIndices, 0, soupIndices.length);
+    }
+
+    /**
+     * Marks this mesh as complete (no further data is appended).
+     */
+    public void complete() {
+        synchronized (this) {
+            complete = true;
+        }
+        notifyListeners(true);
+    }
+
+    /**
+     * Indicates whether this mesh is complete.
+     *
+     * @return {@code true} if no further data is appended; {@code false} otherwise
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Adds a listener that is notified (on the appending thread) when new data is
+     * available or when this mesh is complete. Notifications are throttled, i.e., not
+     * every append results in a notification.
+     *
+     * @param listener listener to add
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes the specified listener.
+     *
+     * @param listener listener to remove
+     */
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(boolean force) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (!force && lastNotification != 0 && now - lastNotification < MIN_NOTIFICATION_INTERVAL_NANOS) {
+                return;
+            }
+            lastNotification = now;
+        }
+        for (Runnable l : listeners) {
+            l.run();
+        }
+    }
+
+    /**
+     * Returns the number of available vertices.
+     *
+     * @return the number of available vertices
+     */
+    public int numVertices() {
+        return numVertices;
+    }
+
+    /**
+     * Returns the number of available indices.
+     *
+     * @return the number of available indices
+     */
+    public int numIndices() {
+        return numIndices;
+    }
+
+    /**
+     * Returns the maximum number of vertices.
+     *
+     * @return the maximum number of vertices
+     */
+    public int maxVertices() {
+        return vertices.capacity() / 3;
+    }
+
+    /**
+     * Returns the maximum number of indices.
+     *
+     * @return the maximum number of indices
+     */
+    public int maxIndices() {
+        return indices.capacity();
+    }
+
+    /**
+     * Returns the bounds of the available vertices.
+     *
+     * @return the bounds ({@code xmin,ymin,zmin,xmax,ymax,zmax}) or {@code null} if no
+     * vertices are available
+     */
+    synchronized float[] bounds() {
+        return numVertices == 0 ? null : bounds.clone();
+    }
+
+    /**
+     * Returns the specified range of the vertex coordinates.
+     *
+     * @param first first vertex
+     * @param end   vertex after the last vertex (at most {@link #numVertices()})
+     * @return the vertex coordinates of the range (view, no copy)
+     */
+    FloatBuffer vertexRange(int first, int end) {
+        FloatBuffer b = vertices.duplicate();
+        b.limit(end * 3).position(first * 3);
+        return b.slice();
+    }
+
+    /**
+     * Returns the specified range of the indices.
+     *
+     * @param first first index
+     * @param end   index after the last index (at most {@link #numIndices()})
+     * @return the indices of the range (view, no copy)
+     */
+    IntBuffer indexRange(int first, int end) {
+        IntBuffer b = indices.duplicate();
+        b.limit(end).position(first);
+        return b.slice();
+    }
+}
@@ -0,0 +1,245 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Simple standalone benchmarks for the STL loading pipeline.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class STLBenchmark {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+
+        benchmarkFloatParsing(n);
+        benchmarkDeduplication(n);
+    }
+
+    /**
+     * Compares the vertex deduplication strategies with the previous object based
+     * implementation (wall time and peak heap usage).
+     *
+     * @param n number of triangles
+     */
+    static void benchmarkDeduplication(int n) {
+
+        System.out.println("-> benchmark: vertex deduplication (" + n + " triangles)");
+
+        float[] triangleVertices = createTriangleSoup(n);
+
+        benchmark("object sort (previous)", triangleVertices, STLBenchmark::deduplicateWithObjects);
+        benchmark(new HashVertexDeduplicator().toString(), triangleVertices,
+                new HashVertexDeduplicator()::deduplicate);
+        benchmark(new SortVertexDeduplicator().toString(), triangleVertices,
+                new SortVertexDeduplicator()::deduplicate);
+    }
+
+    private static void benchmark(String name, float[] triangleVertices, Function<float[], Mesh> dedup) {
+        for (int run = 0; run < 2; run++) {
+            System.gc();
+            long heapBefore = heapUsage(false);
+            resetPeakHeapUsage();
+
+            long t0 = System.nanoTime();
+            Mesh mesh = dedup.apply(triangleVertices);
+            long t1 = System.nanoTime();
+
+            long peak = heapUsage(true) - heapBefore;
+
+            System.out.println("   " + name + " (run " + run + "): "
+                    + (t1 - t0) / 1_000_000 + " ms, peak heap +" + peak / (1024 * 1024) + " MB, "
+                    + mesh.numVertices() + " vertices");
+        }
+    }
+
+    private static void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long heapUsage(boolean peak) {
+        long result = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                result += peak ? pool.getPeakUsage().getUsed() : pool.getUsage().getUsed();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a triangulated height field (every interior vertex is shared by six
+     * triangles, similar to typical STL files).
+     *
+     * @param n approximate number of triangles
+     * @return triangle vertex coordinates
+     */
+    static float[] createTriangleSoup(int n) {
+        int size = Math.max(1, (int) Math.sqrt(n / 2.0));
+        Random rnd = new Random(42);
+        float[] heights = new float[(size + 1) * (size + 1)];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = rnd.nextFloat();
+        }
+
+        float[] result = new float[size * size * 2 * 9];
+        int[] corners = {0, 1, 2, 0, 2, 3};
+        int[] dx = {0, 1, 1, 0};
+        int[] dy = {0, 0, 1, 1};
+        int k = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                for (int c : corners) {
+                    int vx = x + dx[c];
+                    int vy = y + dy[c];
+                    result[k++] = vx;
+                    result[k++] = vy;
+                    result[k++] = heights[vy * (size + 1) + vx];
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Deduplication as implemented by previous versions of the {@link STLLoader}
+     * (one object per vertex, sorted via comparator).
+     */
+    private static Mesh deduplicateWithObjects(float[] triangleVertices) {
+        int numVerts = triangleVertices.length / 3;
+
+        List<BoxedVertex> vertexList = new ArrayList<>(numVerts);
+        for (int i = 0; i < numVerts; i++) {
+            vertexList.add(new BoxedVertex(triangleVertices[i * 3],
+                    triangleVertices[i * 3 + 1], triangleVertices[i * 3 + 2], i));
+        }
+
+        BoxedVertex[] sortedVerts = vertexList.toArray(new BoxedVertex[numVerts]);
+        Arrays.parallelSort(sortedVerts, BoxedVertex::compare);
+
+        int[] indices = new int[numVerts];
+        List<BoxedVertex> newVerts = new ArrayList<>(numVerts);
+        for (BoxedVertex v : sortedVerts) {
+            if (newVerts.isEmpty() || BoxedVertex.compare(v, newVerts.get(newVerts.size() - 1)) != 0) {
+                newVerts.add(v);
+            }
+            indices[v.index] = newVerts.size() - 1;
+        }
+
+        float[] finalVertices = new float[newVerts.size() * 3];
+        for (int i = 0; i < newVerts.size(); i++) {
+            finalVertices[i * 3 + 0] = newVerts.get(i).x;
+            finalVertices[i * 3 + 1] = newVerts.get(i).y;
+            finalVertices[i * 3 + 2] = newVerts.get(i).z;
+        }
+
+        return Mesh.newInstance(finalVertices, indices);
+    }
+
+    private static final class BoxedVertex {
+        final float x, y, z;
+        final int index;
+
+        BoxedVertex(float x, float y, float z, int index) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.index = index;
+        }
+
+        static int compare(BoxedVertex v1, BoxedVertex v2) {
+            if (v1.x != v2.x) return Float.compare(v1.x, v2.x);
+            else if (v1.y != v2.y) return Float.compare(v1.y, v2.y);
+            else if (v1.z != v2.z) return Float.compare(v1.z, v2.z);
+            else return 0;
+        }
+    }
+
+    /**
+     * Compares {@link FloatParser} with {@link Float#parseFloat(String)} and verifies that
+     * both produce bit-identical results.
+     *
+     * @param n number of numbers to parse
+     */
+    static void benchmarkFloatParsing(int n) {
+
+        System.out.println("-> benchmark: float parsing (" + n + " numbers)");
+
+        // numbers formatted the way common STL exporters write them
+        Random rnd = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            float v = (rnd.nextFloat() - 0.5f) * (float) Math.pow(10, rnd.nextInt(10) - 4);
+            switch (i % 4) {
+                case 0:
+                    sb.append(v);
+                    break;
+                case 1:
+                    sb.append(String.format(Locale.ROOT, "%e", v));
+                    break;
+                case 2:
+                    sb.append(String.format(Locale.ROOT, "%.9E", v));
+                    break;
+                default:
+                    sb.append(String.format(Locale.ROOT, "%f", v));
+            }
+            sb.append(' ');
+        }
+
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+
+        for (int run = 0; run < 3; run++) {
+
+            // reference: string based parsing (as done by the previous loader)
+            long t0 = System.nanoTime();
+            String[] numbers = sb.toString().trim().split("\\s+");
+            float[] reference = new float[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                reference[i] = Float.parseFloat(numbers[i]);
+            }
+            long t1 = System.nanoTime();
+
+            // in place parsing
+            float[] result = new float[numbers.length];
+            int count = 0;
+            int i = 0;
+            while (i < bytes.length) {
+                while (i < bytes.length && buffer.get(i) == ' ') i++;
+                if (i >= bytes.length) break;
+                int start = i;
+                while (i < bytes.length && buffer.get(i) != ' ') i++;
+                result[count++] = FloatParser.parseFloat(buffer, start, i);
+            }
+            long t2 = System.nanoTime();
+
+            int mismatches = 0;
+            for (int k = 0; k < reference.length; k++) {
+                if (Float.floatToRawIntBits(reference[k]) != Float.floatToRawIntBits(result[k])) {
+                    mismatches++;
+                }
+            }
+
+            System.out.println("   run " + run + ":");
+            System.out.println("   Float.parseFloat: " + (t1 - t0) / 1_000_000 + " ms");
+            System.out.println("   FloatParser:      " + (t2 - t1) / 1_000_000 + " ms");
+            System.out.println("   mismatches:       " + mismatches);
+        }
+    }
+}
@@ -6,13 +6,192 @@
 package eu.mihosoft.vrl.vrljoglplugin.glview;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Very fast STL loader for binary and ASCII STL files.
  */
 public class STLLoader {
 
+    // size of the binary STL header (80 bytes comment + 4 bytes triangle count)
+    private static final int BINARY_HEADER_SIZE = 84;
+    // size of a binary STL triangle record (normal, 3 vertices, attribute word)
+    private static final int BINARY_TRIANGLE_SIZE = 50;
+    // a single mapping cannot exceed Integer.MAX_VALUE bytes, thus, large files
+    // are mapped in windows of complete triangle records
+    private static final int MAX_TRIANGLES_PER_MAPPING = Integer.MAX_VALUE / BINARY_TRIANGLE_SIZE;
+    // maximum number of bytes of an ASCII STL file mapped at once
+    private static final int MAX_ASCII_BYTES_PER_MAPPING = 1 << 30;
+    // minimum number of bytes of an ASCII STL file parsed by a single task
+    private static final int MIN_ASCII_BYTES_PER_TASK = 4 * 1024 * 1024;
+    // minimum number of triangles decoded by a single fork/join task
+    private static final int MIN_TRIANGLES_PER_TASK = 1 << 16;
+    // number of binary triangles decoded between progress updates/cancellation checks
+    private static final int TRIANGLES_PER_PROGRESS_UPDATE = 1 << 16;
+    // number of triangles passed to a triangle consumer at once
+    private static final int TRIANGLES_PER_BATCH = 1 << 14;
+    // ASCII files are split into at least this many ranges (if large enough) to report
+    // progress and to check for cancellation
+    private static final int ASCII_PROGRESS_STEPS = 64;
+    // maximum number of triangles that are sampled from a binary file before it is
+    // decoded (progressive loading)
+    private static final int COARSE_TRIANGLES = 1 << 14;
+    // lower bound of the number of bytes per ASCII facet (used to estimate the number
+    // of triangles for progressive loading)
+    private static final int MIN_ASCII_BYTES_PER_FACET = 200;
+    // number of bytes of the smallest possible ASCII facet (used to bound the capacity
+    // of progressive meshes)
+    private static final int MIN_ASCII_FACET_SIZE = 64;
+
+    // executor for asynchronous loading (daemon threads, i.e., pending loads do not
+    // prevent the jvm from exiting)
+    private static final ExecutorService LOAD_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "VRL-JOGL-STLLoader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // number of threads used for parsing (1 means sequential parsing)
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // strategy for merging duplicate vertices
+    private VertexDeduplicator deduplicator = new SortVertexDeduplicator();
+
+    // optional cache for deduplicated meshes
+    private MeshCache meshCache;
+
+    // optional reordering of triangles and vertices after deduplication
+    private VertexCacheOptimizer vertexCacheOptimizer;
+
+    // optional listener that is notified about the loading progress
+    private MeshLoadListener loadListener;
+
+    // loads that are currently in progress (can be cancelled)
+    private final Set<LoadState> activeLoads = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Defines the number of threads used for parsing. A value of {@code 1} disables
+     * parallel parsing.
+     *
+     * @param parallelism number of threads to use (must be positive)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads used for parsing.
+     *
+     * @return the number of threads used for parsing
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Defines the strategy used for deduplicating the triangle vertices.
+     *
+     * @param deduplicator deduplicator to use
+     */
+    public void setVertexDeduplicator(VertexDeduplicator deduplicator) {
+        this.deduplicator = Objects.requireNonNull(deduplicator);
+    }
+
+    /**
+     * Returns the strategy used for deduplicating the triangle vertices.
+     *
+     * @return the strategy used for deduplicating the triangle vertices
+     */
+    public VertexDeduplicator getVertexDeduplicator() {
+        return deduplicator;
+    }
+
+    /**
+     * Defines the optimizer that reorders the triangles and vertices of loaded meshes
+     * for the GPU vertex cache (after deduplication). Optimization is disabled by
+     * default.
+     *
+     * @param optimizer optimizer to use ({@code null} disables optimization)
+     */
+    public void setVertexCacheOptimizer(VertexCacheOptimizer optimizer) {
+        this.vertexCacheOptimizer = optimizer;
+    }
+
+    /**
+     * Returns the optimizer that reorders the triangles and vertices of loaded meshes.
+     *
+     * @return the optimizer ({@code null} if optimization is disabled)
+     */
+    public VertexCacheOptimizer getVertexCacheOptimizer() {
+        return vertexCacheOptimizer;
+    }
+
+    /**
+     * Defines the cache used for storing deduplicated meshes. If a cache is specified,
+     * unchanged files are only parsed once.
+     *
+     * @param meshCache mesh cache to use ({@code null} disables caching)
+     */
+    public void setMeshCache(MeshCache meshCache) {
+        this.meshCache = meshCache;
+    }
+
+    /**
+     * Returns the cache used for storing deduplicated meshes.
+     *
+     * @return the mesh cache (might be {@code null})
+     */
+    public MeshCache getMeshCache() {
+        return meshCache;
+    }
+
+    /**
+     * Defines the listener that is notified about the progress of subsequent loads.
+     *
+     * @param loadListener listener to use ({@code null} disables progress reporting)
+     */
+    public void setLoadListener(MeshLoadListener loadListener) {
+        this.loadListener = loadListener;
+    }
+
+    /**
+     * Returns the listener that is notified about the loading progress.
+     *
+     * @return the load listener (might be {@code null})
+     */
+    public MeshLoadListener getLoadListener() {
+        return loadListener;
+    }
+
+    /**
+     * Cancels all loads of this loader that are currently in progress. Cancelled loads
+     * throw an {@link InterruptedIOException}. Subsequent loads are not affected.
+     */
+    public void cancel() {
+        for (LoadState state : activeLoads) {
+            state.cancelled = true;
+        }
+    }
+
     /**
      * Loads a mesh from the specified STL file (binary & ASCII supported) and deduplicates
      * the vertices after loading.
@@ -20,152 +199,499 @@ public class STLLoader {
      * @param file mesh file
      * @return mesh object
      * @throws IOException if an i/o error occurs during loading
+     * @throws InterruptedIOException if loading has been cancelled
      */
     public Mesh loadMesh(File file) throws IOException {
+        LoadState state = new LoadState(file, loadListener);
+        activeLoads.add(state);
+        try {
+            return loadMesh(file, state);
+        } finally {
+            activeLoads.remove(state);
+        }
+    }
 
-        System.out.println("-> loading mesh " + file);
+    /**
+     * Loads a mesh from the specified STL file in the background.
+     *
+     * @param file mesh file
+     * @return future that is completed with the mesh (cancelling the future cancels
+     *         loading)
+     * @see #loadMesh(File)
+     */
+    public CompletableFuture<Mesh> loadMeshAsync(File file) {
+        return loadMeshAsync(file, LOAD_EXECUTOR);
+    }
 
-        // parse STL file (binary or ascii)
-        List<Vertex> vertexList = parse(file);
-        
-        return deduplicateTriangleVertices(vertexList);
+    /**
+     * Loads a mesh from the specified STL file via the specified executor.
+     *
+     * @param file mesh file
+     * @param executor executor that performs the loading
+     * @return future that is completed with the mesh (cancelling the future cancels
+     *         loading)
+     * @see #loadMesh(File)
+     */
+    public CompletableFuture<Mesh> loadMeshAsync(File file, Executor executor) {
+
+        LoadState state = new LoadState(file, loadListener);
+
+        CompletableFuture<Mesh> result = new CompletableFuture<Mesh>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                state.cancelled = true;
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+
+        executor.execute(() -> {
+            activeLoads.add(state);
+            try {
+                result.complete(loadMesh(file, state));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                activeLoads.remove(state);
+            }
+        });
+
+        return result;
     }
 
     /**
-     * Deduplicates the soecified triangle vertices.
+     * Loads a mesh from the specified STL file in the background and appends the
+     * triangles to the specified progressive mesh while they are parsed, i.e., the mesh
+     * can be displayed long before loading is complete (see
+     * {@link GLMeshCanvas#GLMeshCanvas(ProgressiveMesh)}).
      *
-     * @param vertexList vertices to deduplicate
-     * @return mesh containing the deduplicated vertices and index list
+     * For binary files a coarse sample of triangles that are spread over the whole file
+     * is appended first, the remaining triangles are appended as they are decoded. If the
+     * file has more triangles than the progressive mesh can hold, only every n-th
+     * triangle is appended. ASCII files are appended range by range. The progressive
+     * mesh is completed when loading is finished (also if loading fails). Cached meshes
+     * are not streamed.
+     *
+     * @param file mesh file
+     * @param progressive mesh that receives the triangles while they are parsed
+     * @return future that is completed with the (deduplicated) mesh (cancelling the
+     *         future cancels loading)
+     * @see #loadMesh(File)
      */
-    public Mesh deduplicateTriangleVertices(List<Vertex> vertexList) {
-        // init indices
-        for (int i = 0; i < vertexList.size(); i++) {
-            vertexList.get(i).index = i;
+    public CompletableFuture<Mesh> loadMeshAsync(File file, ProgressiveMesh progressive) {
+
+        LoadState state = new LoadState(file, loadListener, progressive);
+
+        CompletableFuture<Mesh> result = new CompletableFuture<Mesh>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                state.cancelled = true;
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+
+        LOAD_EXECUTOR.execute(() -> {
+            activeLoads.add(state);
+            try {
+                result.complete(loadMesh(file, state));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                activeLoads.remove(state);
+                progressive.complete();
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Creates a progressive mesh for loading the specified file via
+     * {@link #loadMeshAsync(File, ProgressiveMesh)}. The capacity is the number of
+     * triangles of the file (binary files: from the header, ASCII files: upper bound
+     * from the file size) but at most the specified number of triangles, i.e., small
+     * files do not allocate large buffers.
+     *
+     * @param file mesh file
+     * @param maxTriangles maximum number of triangles (larger files are subsampled)
+     * @return progressive mesh for loading the specified file
+     */
+    public ProgressiveMesh newProgressiveMesh(File file, int maxTriangles) {
+        if (maxTriangles < 0) {
+            throw new IllegalArgumentException("Number of triangles must not be negative: " + maxTriangles);
         }
 
-        // in case of an empty file we just return an empty mesh object
-        System.out.println("-> verts loaded " + vertexList.size());
-        if (vertexList.isEmpty()) {
-            System.out.println("-> empty mesh");
-            return Mesh.newInstance(new float[0], new int[0]);
+        long size = file.length();
+        long numTriangles = size / MIN_ASCII_FACET_SIZE;
+
+        try {
+            if (size >= 84) {
+                int binaryTriangles = getNumberOfTriangles(file);
+                if (binaryTriangles >= 0 && isBinarySTLFile(file, binaryTriangles)) {
+                    numTriangles = binaryTriangles;
+                }
+            }
+        } catch (IOException ex) {
+            // loading reports the error, the capacity is bounded by the file size
         }
 
-        // start deduplication
-        System.out.println("-> deduplicating verts");
-        Vertex[] sortedVerts = new Vertex[vertexList.size()];
-        sortedVerts = vertexList.toArray(sortedVerts);
+        return new ProgressiveMesh((int) Math.min(maxTriangles, numTriangles));
+    }
 
-        // sort vertices:
-        // - duplicate vertices will be adjacent to each other
-        //   if sortedVerts[i] != sortedVerts[i-1] then we know
-        //   that it is unique among all vertices in the list
-        // - parallel sort is done via fork-/join
-        Arrays.parallelSort(sortedVerts, Vertex::compareVerts);
+    /**
+     * Loads a mesh from the specified STL file and builds its octree (for region
+     * queries and view frustum culling, see {@link MeshOctree}). Octrees are stored in
+     * the mesh cache (if any) together with their meshes.
+     *
+     * @param file mesh file
+     * @return octree of the mesh (see {@link MeshOctree#getMesh()})
+     * @throws IOException if an i/o error occurs during loading
+     * @throws InterruptedIOException if loading has been cancelled
+     */
+    public MeshOctree loadOctree(File file) throws IOException {
+        LoadState state = new LoadState(file, loadListener);
+        activeLoads.add(state);
+        try {
+            return loadOctree(file, state);
+        } finally {
+            activeLoads.remove(state);
+        }
+    }
 
-        System.out.println("-> sorted verts");
+    /**
+     * Loads a mesh from the specified STL file and builds its octree in the
+     * background.
+     *
+     * @param file mesh file
+     * @return future that is completed with the octree (cancelling the future cancels
+     *         loading)
+     * @see #loadOctree(File)
+     */
+    public CompletableFuture<MeshOctree> loadOctreeAsync(File file) {
 
-        // we create the index array (will be filled with indices below)
-        int[] indices = new int[vertexList.size()];
+        LoadState state = new LoadState(file, loadListener);
 
-        // we add each vertex once and filter out the duplicates
-        // note: we use original vertex count as capacity to prevent
-        //       unnecessary allocations & copying
-        List<Vertex> newVerts = new ArrayList<>(vertexList.size());
-        for (Vertex v : sortedVerts) {
-            if (newVerts.isEmpty() // we can always add the first vertex (empty list)
-                    || !v.equals(newVerts.get(newVerts.size() - 1))) {
-                // or if the previous vertex is not equal to this one
-                // see 'sort vertices:' above
-                newVerts.add(v);
+        CompletableFuture<MeshOctree> result = new CompletableFuture<MeshOctree>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                state.cancelled = true;
+                return super.cancel(mayInterruptIfRunning);
             }
-            // set the index to the new location of vertex v
-            indices[v.index] = newVerts.size() - 1;
-        }
+        };
+
+        LOAD_EXECUTOR.execute(() -> {
+            activeLoads.add(state);
+            try {
+                result.complete(loadOctree(file, state));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                activeLoads.remove(state);
+            }
+        });
+
+        return result;
+    }
+
+    private MeshOctree loadOctree(File file, LoadState state) throws IOException {
 
-        // create final vertex array (flat float array)
-        float[] finalVertices = new float[newVerts.size() * 3];
-        for (int i = 0; i < newVerts.size(); i++) {
-            finalVertices[i * 3 + 0] = newVerts.get(i).x;
-            finalVertices[i * 3 + 1] = newVerts.get(i).y;
-            finalVertices[i * 3 + 2] = newVerts.get(i).z;
+        String cacheVariant = getCacheVariant() + "+octree";
+
+        if (meshCache != null) {
+            state.beginPhase(MeshLoadListener.Phase.CACHE_LOOKUP, 1);
+            MeshOctree cachedOctree = meshCache.getOctree(file, cacheVariant);
+            if (cachedOctree != null) {
+                // see loadMesh()
+                cachedOctree.getMesh().contentHash();
+            }
+            state.endPhase();
+            if (cachedOctree != null) {
+                return cachedOctree;
+            }
         }
 
-        System.out.println("-> deduplication finished");
-        System.out.println("   #removed-verts:   " + (vertexList.size() - finalVertices.length));
-        System.out.println("   #remaining-verts: " + newVerts.size());
+        // the mesh is stored together with the octree, i.e., not separately
+        Mesh mesh = loadMesh(file, state, false);
 
-        // finally return the mesh
-        return Mesh.newInstance(finalVertices, indices);
+        state.beginPhase(MeshLoadListener.Phase.INDEXING, 1);
+        MeshOctree octree = MeshOctree.build(mesh, parallelism);
+        octree.getMesh().contentHash();
+        state.endPhase();
+
+        if (meshCache != null) {
+            state.beginPhase(MeshLoadListener.Phase.CACHING, 1);
+            try {
+                meshCache.putOctree(file, cacheVariant, octree);
+            } catch (IOException ex) {
+                // caching is optional, loading succeeded anyway
+                System.err.println("-> cannot cache octree " + file + ": " + ex.getMessage());
+            }
+            state.endPhase();
+        }
+
+        return octree;
     }
 
     /**
-     * Simple vertex class. This class is only useful/tested
-     * in the context of this loader.
+     * Returns the cache variant of loaded meshes, i.e., how the vertices are merged
+     * and ordered.
      */
-    private final static class Vertex {
-        float x, y, z;
-        int index;
+    private String getCacheVariant() {
+        String cacheVariant = deduplicator.toString();
+        if (vertexCacheOptimizer != null) {
+            cacheVariant += "+" + vertexCacheOptimizer;
+        }
+        return cacheVariant;
+    }
 
-        /**
-         * Creates a new vertex.
-         * @param x x coord
-         * @param y y coord
-         * @param z z coord
-         */
-        public Vertex(float x, float y, float z) {
-            this.x = x;
-            this.y = y;
-            this.z = z;
+    private Mesh loadMesh(File file, LoadState state) throws IOException {
+        return loadMesh(file, state, true);
+    }
+
+    private Mesh loadMesh(File file, LoadState state, boolean storeInCache) throws IOException {
+
+        System.out.println("-> loading mesh " + file);
+
+        // the cache variant depends on how the vertices are merged and ordered
+        String cacheVariant = getCacheVariant();
+
+        if (meshCache != null) {
+            state.beginPhase(MeshLoadListener.Phase.CACHE_LOOKUP, 1);
+            Mesh cachedMesh = meshCache.get(file, cacheVariant);
+            if (cachedMesh != null) {
+                // the content hash identifies equal meshes in the GLMeshRegistry, it is
+                // computed in parallel here, i.e., not on the render thread
+                cachedMesh.contentHash();
+            }
+            state.endPhase();
+            if (cachedMesh != null) {
+                return cachedMesh;
+            }
         }
 
-        @Override
-        public boolean equals(Object obj) {
+        // parse STL file (binary or ascii)
+        float[] triangleVertices = parse(file, state);
+        state.endPhase();
 
-            if (!(obj instanceof Vertex)) return false;
+        if (state.progressive != null) {
+            // all triangles are available (the listeners are notified immediately)
+            state.progressive.complete();
+        }
 
-            Vertex other = (Vertex) obj;
+        state.beginPhase(MeshLoadListener.Phase.DEDUPLICATION, 1);
+        Mesh mesh = deduplicateTriangleVertices(triangleVertices);
+        // bounds are cached, i.e., they are not computed on the render thread
+        mesh.getBounds();
+        state.endPhase();
 
-            // we don't check for numerical equality because
-            // in STL files duplicate vertices are exact clones
-            return x == other.x && y == other.y && z == other.z;
+        if (vertexCacheOptimizer != null) {
+            state.beginPhase(MeshLoadListener.Phase.OPTIMIZATION, 1);
+            mesh = vertexCacheOptimizer.optimize(mesh);
+            state.endPhase();
         }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(x, y, z);
+        // see above (computed for the final vertex order)
+        mesh.contentHash();
+
+        if (meshCache != null && storeInCache) {
+            state.beginPhase(MeshLoadListener.Phase.CACHING, 1);
+            try {
+                meshCache.put(file, cacheVariant, mesh);
+            } catch (IOException ex) {
+                // caching is optional, loading succeeded anyway
+                System.err.println("-> cannot cache mesh " + file + ": " + ex.getMessage());
+            }
+            state.endPhase();
         }
 
-        @Override
-        public String toString() {
-            return "Vertex {" +
-                    "index=" + index +
-                    ", x=" + x +
-                    ", y=" + y +
-                    ", z=" + z +
-                    '}';
+        return mesh;
+    }
+
+    /**
+     * Streams the triangles of the specified STL file (binary & ASCII supported) to the
+     * given consumer. Triangles are passed in file order in batches of constant size,
+     * i.e., the memory consumption does not depend on the file size and files that are
+     * much larger than the heap can be processed. Parsing is sequential. Progress is
+     * reported to the load listener and streaming can be cancelled via
+     * {@link #cancel()}.
+     *
+     * @param file mesh file
+     * @param consumer consumer that receives the triangles
+     * @throws IOException if an i/o error occurs or if the consumer fails
+     * @throws InterruptedIOException if streaming has been cancelled
+     */
+    public void streamTriangles(File file, TriangleConsumer consumer) throws IOException {
+        LoadState state = new LoadState(file, loadListener);
+        activeLoads.add(state);
+        try {
+            System.out.println("-> streaming mesh " + file);
+
+            if (isASCIISTLFile(file)) {
+                System.out.println("-> ascii format detected");
+                streamAscii(file, consumer, state);
+            } else {
+                // the triangle count is an unsigned int
+                long numberOfTriangles = Integer.toUnsignedLong(getNumberOfTriangles(file));
+                if ((file.length() - BINARY_HEADER_SIZE) / BINARY_TRIANGLE_SIZE != numberOfTriangles) {
+                    throw new IOException("Unknown file format: " + file.getAbsolutePath());
+                }
+                System.out.println("-> binary format detected");
+                streamBinary(file, numberOfTriangles, consumer, state);
+            }
+
+            state.endPhase();
+        } finally {
+            activeLoads.remove(state);
         }
+    }
 
-        /**
-         * Compares the specified vertices.
-         * @param v1 first vertex
-         * @param v2 second vertex
-         * @return {@code -1} for {@code v1 < v2}, {@code 0} for {@code v1 == v2} and {@code +1} for {@code v1 > v2}
-         */
-        static int compareVerts(Vertex v1, Vertex v2) {
-            if (v1.x != v2.x) return Float.compare(v1.x, v2.x);
-            else if (v1.y != v2.y) return Float.compare(v1.y, v2.y);
-            else if (v1.z != v2.z) return Float.compare(v1.z, v2.z);
-            else return 0;
+    /**
+     * Streams the triangles of the specified binary STL file.
+     */
+    private static void streamBinary(File f, long numTriangles, TriangleConsumer consumer,
+                                     LoadState state) throws IOException {
+
+        state.beginPhase(MeshLoadListener.Phase.PARSING, numTriangles);
+
+        float[] positions = new float[TRIANGLES_PER_BATCH * 9];
+        float[] normals = new float[TRIANGLES_PER_BATCH * 3];
+        short[] attributes = new short[TRIANGLES_PER_BATCH];
+
+        consumer.start(numTriangles);
+
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long t = 0;
+            while (t < numTriangles) {
+                int count = (int) Math.min(numTriangles - t, MAX_TRIANGLES_PER_MAPPING);
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        BINARY_HEADER_SIZE + t * BINARY_TRIANGLE_SIZE,
+                        (long) count * BINARY_TRIANGLE_SIZE);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+                for (int batch = 0; batch < count; batch += TRIANGLES_PER_BATCH) {
+                    int n = Math.min(count - batch, TRIANGLES_PER_BATCH);
+                    for (int i = 0; i < n; i++) {
+                        int src = (batch + i) * BINARY_TRIANGLE_SIZE;
+                        for (int c = 0; c < 3; c++) {
+                            normals[i * 3 + c] = buffer.getFloat(src + c * 4);
+                        }
+                        for (int c = 0; c < 9; c++) {
+                            positions[i * 9 + c] = buffer.getFloat(src + 12 + c * 4);
+                        }
+                        attributes[i] = buffer.getShort(src + 48);
+                    }
+                    consumer.accept(positions, normals, attributes, n);
+                    state.advance(n);
+                }
+
+                t += count;
+            }
+        } catch (IOException e) {
+            throw e;
         }
+
+        consumer.finish();
+    }
+
+    /**
+     * Streams the triangles of the specified ASCII STL file. The file is parsed in
+     * ranges that start and end at facet boundaries.
+     */
+    private static void streamAscii(File f, TriangleConsumer consumer, LoadState state) throws IOException {
+
+        float[] positions = new float[TRIANGLES_PER_BATCH * 9];
+        float[] normals = new float[TRIANGLES_PER_BATCH * 3];
+        // ASCII STL has no attributes
+        short[] attributes = new short[TRIANGLES_PER_BATCH];
+
+        AsciiSTLParser.Coordinates rangeVertices = new AsciiSTLParser.Coordinates();
+        AsciiSTLParser.Coordinates rangeNormals = new AsciiSTLParser.Coordinates();
+
+        consumer.start(-1);
+
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+
+            long size = channel.size();
+
+            state.beginPhase(MeshLoadListener.Phase.PARSING, size);
+
+            long start = 0;
+            while (start < size) {
+                long end = AsciiSTLParser.findFacetBoundary(channel,
+                        Math.min(size, start + MIN_ASCII_BYTES_PER_TASK), size);
+
+                rangeVertices.clear();
+                rangeNormals.clear();
+                parseAsciiRange(channel, start, end, rangeVertices, rangeNormals);
+
+                int numTriangles = rangeVertices.size() / 9;
+
+                // normals are only used if each facet has exactly three vertices
+                boolean validNormals = rangeNormals.size() == numTriangles * 3;
+
+                for (int batch = 0; batch < numTriangles; batch += TRIANGLES_PER_BATCH) {
+                    int n = Math.min(numTriangles - batch, TRIANGLES_PER_BATCH);
+                    rangeVertices.copyTo(batch * 9, positions, 0, n * 9);
+                    if (validNormals) {
+                        rangeNormals.copyTo(batch * 3, normals, 0, n * 3);
+                    } else {
+                        Arrays.fill(normals, 0, n * 3, 0f);
+                    }
+                    consumer.accept(positions, normals, attributes, n);
+                }
+
+                state.advance(end - start);
+
+                start = end;
+            }
+        } catch (IOException e) {
+            throw e;
+        }
+
+        consumer.finish();
+    }
+
+    /**
+     * Deduplicates the specified triangle vertices.
+     *
+     * @param triangleVertices vertex coordinates to deduplicate ({@code x,y,z} per vertex,
+     *                         three consecutive vertices per triangle)
+     * @return mesh containing the deduplicated vertices and index list
+     */
+    public Mesh deduplicateTriangleVertices(float[] triangleVertices) {
+
+        int numVerts = triangleVertices.length / 3;
+
+        // in case of an empty file we just return an empty mesh object
+        System.out.println("-> verts loaded " + numVerts);
+        if (numVerts == 0) {
+            System.out.println("-> empty mesh");
+            return Mesh.newInstance(new float[0], new int[0]);
+        }
+
+        // start deduplication
+        System.out.println("-> deduplicating verts (" + deduplicator + ")");
+
+        Mesh mesh = deduplicator.deduplicate(triangleVertices);
+
+        int numRemaining = mesh.numVertices();
+
+        System.out.println("-> deduplication finished");
+        System.out.println("   #removed-verts:   " + (numVerts - numRemaining));
+        System.out.println("   #remaining-verts: " + numRemaining);
+
+        // finally return the mesh
+        return mesh;
     }
 
     /**
      * Parses the specified STL file (binary and ASCII STL is supported).
      * @param f file to parse
-     * @return list of vertices in this file
+     * @param state state of the current load
+     * @return vertex coordinates of all triangles in this file ({@code x,y,z} per vertex)
      * @throws IOException if an i/o error occurs during parsing
      */
-    private List<Vertex> parse(File f) throws IOException {
+    private float[] parse(File f, LoadState state) throws IOException {
 
         // determine if this is a binary or ASCII STL
         // and call either the binary or ascii parsing method
@@ -173,14 +699,14 @@ public class STLLoader {
         // check whether the file is an ASCII STL
         if (isASCIISTLFile(f)) {
             System.out.println("-> ascii format detected");
-            return parseAscii(f);
+            return parseAscii(f, state);
         }
 
         // the specified is no ASCII STL: we assume binary STL
         int numberOfTriangles = getNumberOfTriangles(f);
         if (isBinarySTLFile(f,numberOfTriangles)) {
             System.out.println("-> binary format detected");
-            return parseBinary(f, numberOfTriangles);
+            return parseBinary(f, numberOfTriangles, state);
         }
 
         throw new IOException("Unknown file format: " + f.getAbsolutePath());
@@ -247,88 +773,474 @@ public class STLLoader {
 
     /**
      * Parses the specified ASCII STL file.
+     *
+     * The file is memory mapped (in ranges that start and end at facet boundaries) and
+     * scanned byte by byte, i.e., no strings are created for lines, keywords or numbers.
+     * If parallel parsing is enabled the ranges are parsed concurrently and the results
+     * are concatenated in file order, i.e., the result does not depend on the number of
+     * threads.
+     *
      * @param f file to parse
-     * @return vertex list
+     * @param state state of the current load
+     * @return vertex coordinates ({@code x,y,z} per vertex)
      * @throws IOException if parsing fails
      */
-    private List<Vertex> parseAscii(File f) throws IOException {
-        List<Vertex> vertices = new ArrayList<>();
-        try (BufferedReader in = new BufferedReader(new FileReader(f))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                String[] numbers = line.trim().split("\\s+");
-                if (numbers[0].equals("vertex")) {
-                    float x = Float.parseFloat(numbers[1]);
-                    float y = Float.parseFloat(numbers[2]);
-                    float z = Float.parseFloat(numbers[3]);
-
-                    Vertex vector3f = new Vertex(x, y, z);
-                    vertices.add(vector3f);
-                } else if (numbers[0].equals("facet") && numbers[1].equals("normal")) {
-                    // for now we ignore the normals
-//                    normal.x = Float.parseFloat(numbers[2]);
-//                    normal.y = Float.parseFloat(numbers[3]);
-//                    normal.z = Float.parseFloat(numbers[4]);
+    private float[] parseAscii(File f, LoadState state) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+
+            long size = channel.size();
+
+            state.beginPhase(MeshLoadListener.Phase.PARSING, size);
+
+            // we need at least as many ranges as mappings
+            int numRanges = (int) ((size + MAX_ASCII_BYTES_PER_MAPPING - 1) / MAX_ASCII_BYTES_PER_MAPPING);
+
+            // ranges are the unit of progress reporting
+            numRanges = (int) Math.max(numRanges, Math.min(ASCII_PROGRESS_STEPS, size / MIN_ASCII_BYTES_PER_TASK));
+
+            boolean parallel = parallelism > 1 && size > MIN_ASCII_BYTES_PER_TASK;
+
+            if (parallel) {
+                numRanges = (int) Math.max(numRanges,
+                        Math.min(parallelism * 4L, size / MIN_ASCII_BYTES_PER_TASK));
+            }
+
+            long[] splits = computeAsciiSplits(channel, size, Math.max(1, numRanges));
+
+            if (state.progressive != null) {
+                // the number of facets is unknown, we estimate an upper bound
+                ProgressiveMesh progressive = state.progressive;
+                long capacity = Math.max(1, Math.min(progressive.maxVertices(), progressive.maxIndices()) / 3);
+                long estimate = size / MIN_ASCII_BYTES_PER_FACET;
+                state.progressiveStride = (int) Math.max(1, (estimate + capacity - 1) / capacity);
+            }
+
+            if (!parallel) {
+                AsciiSTLParser.Coordinates vertices = new AsciiSTLParser.Coordinates();
+                for (int i = 0; i < splits.length - 1; i++) {
+                    int first = vertices.size() / 9;
+                    parseAsciiRange(channel, splits[i], splits[i + 1], vertices);
+                    appendProgressive(vertices, first, state);
+                    state.advance(splits[i + 1] - splits[i]);
                 }
+                return vertices.toArray();
+            }
+
+            System.out.println("-> parallel parsing with " + parallelism + " threads");
+
+            List<Callable<AsciiSTLParser.Coordinates>> tasks = new ArrayList<>(splits.length - 1);
+            for (int i = 0; i < splits.length - 1; i++) {
+                final long start = splits[i];
+                final long end = splits[i + 1];
+                tasks.add(() -> {
+                    state.checkCancelled();
+                    // rough capacity estimate: a facet usually needs more than
+                    // 250 bytes for its 9 coordinates
+                    AsciiSTLParser.Coordinates vertices = new AsciiSTLParser.Coordinates(
+                            (int) Math.min(Integer.MAX_VALUE - 8, (end - start) / 28));
+                    parseAsciiRange(channel, start, end, vertices);
+                    appendProgressive(vertices, 0, state);
+                    state.advance(end - start);
+                    return vertices;
+                });
+            }
+
+            List<AsciiSTLParser.Coordinates> results = new ArrayList<>(tasks.size());
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (Future<AsciiSTLParser.Coordinates> result : pool.invokeAll(tasks)) {
+                    results.add(result.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Parsing interrupted: " + f.getAbsolutePath());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+
+            // stitch the ranges together in their original order
+            long totalSize = 0;
+            for (AsciiSTLParser.Coordinates r : results) {
+                totalSize += r.size();
+            }
+
+            if (totalSize > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too many vertices in file: " + f.getAbsolutePath());
+            }
+
+            float[] vertices = new float[(int) totalSize];
+            int offset = 0;
+            for (int i = 0; i < results.size(); i++) {
+                AsciiSTLParser.Coordinates r = results.get(i);
+                r.copyTo(vertices, offset);
+                offset += r.size();
+                // allow early gc of the range results
+                results.set(i, null);
             }
+
+            return vertices;
         } catch (IOException e) {
             throw e;
         }
+    }
 
-        return vertices;
+    /**
+     * Appends the parsed ASCII triangles starting at the specified triangle to the
+     * progressive mesh of the specified load (if any).
+     *
+     * @param vertices parsed vertex coordinates
+     * @param firstTriangle first triangle to append
+     * @param state state of the current load
+     */
+    private static void appendProgressive(AsciiSTLParser.Coordinates vertices, int firstTriangle,
+                                          LoadState state) {
+        int numTriangles = vertices.size() / 9 - firstTriangle;
+        if (state.progressive == null || numTriangles <= 0) {
+            return;
+        }
+        float[] range = new float[numTriangles * 9];
+        vertices.copyTo(firstTriangle * 9, range, 0, range.length);
+        state.appendProgressive(range, 0, numTriangles);
+    }
+
+    /**
+     * Splits the specified ASCII STL file into the requested number of ranges. Split
+     * points are moved forward to the next facet boundary, i.e., ranges might be empty.
+     *
+     * @param channel channel of the ASCII STL file
+     * @param size size of the file
+     * @param numRanges number of ranges
+     * @return split points (first is {@code 0}, last is {@code size})
+     * @throws IOException if an i/o error occurs
+     */
+    private static long[] computeAsciiSplits(FileChannel channel, long size, int numRanges) throws IOException {
+        long[] splits = new long[numRanges + 1];
+        splits[numRanges] = size;
+
+        for (int i = 1; i < numRanges; i++) {
+            long candidate = Math.max(splits[i - 1], size / numRanges * i);
+            splits[i] = AsciiSTLParser.findFacetBoundary(channel, candidate, size);
+        }
+
+        return splits;
+    }
+
+    /**
+     * Parses the specified range of an ASCII STL file.
+     *
+     * @param channel channel of the ASCII STL file
+     * @param start first byte of the range (facet boundary)
+     * @param end byte after the last byte of the range (facet boundary)
+     * @param vertices coordinate list to add the vertex coordinates to
+     * @throws IOException if an i/o error occurs
+     */
+    private static void parseAsciiRange(FileChannel channel, long start, long end,
+                                        AsciiSTLParser.Coordinates vertices) throws IOException {
+        parseAsciiRange(channel, start, end, vertices, null);
+    }
+
+    /**
+     * Parses the specified range of an ASCII STL file.
+     *
+     * @param channel channel of the ASCII STL file
+     * @param start first byte of the range (facet boundary)
+     * @param end byte after the last byte of the range (facet boundary)
+     * @param vertices coordinate list to add the vertex coordinates to
+     * @param normals coordinate list to add the facet normals to (might be {@code null})
+     * @throws IOException if an i/o error occurs
+     */
+    private static void parseAsciiRange(FileChannel channel, long start, long end,
+                                        AsciiSTLParser.Coordinates vertices,
+                                        AsciiSTLParser.Coordinates normals) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Facet too large (" + (end - start) + " bytes)");
+        }
+
+        if (end == start) return;
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        AsciiSTLParser.parse(buffer, 0, (int) (end - start), vertices, normals);
     }
 
     /**
      * Parses the specified binary STL file.
+     *
+     * The file is memory mapped and the little-endian floats are read directly
+     * from the mapped buffer into a flat coordinate array, i.e., no per-triangle
+     * objects are allocated.
+     *
      * @param f file to parse
      * @param numTriangles number of triangles to read
-     * @return vertex list
+     * @param state state of the current load
+     * @return vertex coordinates ({@code x,y,z} per vertex)
      * @throws IOException if parsing fails
      */
-    private List<Vertex> parseBinary(File f, int numTriangles) throws IOException {
-        // initialize vertex list with the exact number of entries to prevent
+    private float[] parseBinary(File f, int numTriangles, LoadState state) throws IOException {
+
+        if (numTriangles < 0 || (long) numTriangles * 9 > Integer.MAX_VALUE - 8) {
+            throw new IOException("Too many triangles (" + Integer.toUnsignedString(numTriangles)
+                    + ") in file: " + f.getAbsolutePath());
+        }
+
+        // initialize coordinate array with the exact number of entries to prevent
         // unnecessary allocations & copying
-        List<Vertex> vertices = new ArrayList<>(numTriangles*3);
-        try (BufferedInputStream fis = new BufferedInputStream(new FileInputStream(f))) {
+        float[] vertices = new float[numTriangles * 9];
+
+        state.beginPhase(MeshLoadListener.Phase.PARSING, numTriangles);
 
-            // the following code is based on ImageJ/Fuji STL loader
-            for (int h = 0; h < 84; h++) {
-                fis.read();// skip the header bytes
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            if (state.progressive != null) {
+                sampleBinaryTriangles(channel, numTriangles, state);
             }
 
-            // read triangles
-            for (int t = 0; t < numTriangles; t++) {
-                byte[] tri = new byte[50];
-                for (int tb = 0; tb < 50; tb++) {
-                    tri[tb] = (byte) fis.read();
-                }
-//                normal.x = leBytesToFloat(tri[0], tri[1], tri[2], tri[3]);
-//                normal.y = leBytesToFloat(tri[4], tri[5], tri[6], tri[7]);
-//                normal.z = leBytesToFloat(tri[8], tri[9], tri[10], tri[11]);
-
-                for (int i = 0; i < 3; i++) {
-                    final int j = i * 12 + 12;
-                    float x = leBytesToFloat(tri[j], tri[j + 1], tri[j + 2],
-                            tri[j + 3]);
-                    float y = leBytesToFloat(tri[j + 4], tri[j + 5],
-                            tri[j + 6], tri[j + 7]);
-                    float z = leBytesToFloat(tri[j + 8], tri[j + 9],
-                            tri[j + 10], tri[j + 11]);
-
-                    Vertex vector3f = new Vertex(x, y, z);
-                    vertices.add(vector3f);
+            if (parallelism == 1 || numTriangles <= MIN_TRIANGLES_PER_TASK) {
+                decodeBinaryTriangles(channel, 0, numTriangles, vertices, state);
+            } else {
+                System.out.println("-> parallel parsing with " + parallelism + " threads");
+
+                // each task decodes its own triangle range into its own slice of the
+                // shared coordinate array, i.e., no synchronization is necessary
+                int trianglesPerTask = Math.max(MIN_TRIANGLES_PER_TASK,
+                        numTriangles / (parallelism * 4));
+
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    pool.invoke(new BinaryDecodeTask(channel, 0, numTriangles, trianglesPerTask, vertices, state));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    pool.shutdown();
                 }
             }
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw e;
         }
 
         return vertices;
     }
 
-    private float leBytesToFloat(byte b0, byte b1, byte b2, byte b3) {
-        return Float.intBitsToFloat((((b3 & 0xff) << 24) | ((b2 & 0xff) << 16)
-                | ((b1 & 0xff) << 8) | (b0 & 0xff)));
+    /**
+     * Appends a coarse sample of triangles that are spread over the whole file to the
+     * progressive mesh of the specified load and defines the stride for the triangles
+     * that are appended while decoding (such that all of them fit into the progressive
+     * mesh). The sampled triangles are read with positional reads, i.e., only a few
+     * pages of the file are touched.
+     *
+     * @param channel channel of the binary STL file
+     * @param numTriangles number of triangles in the file
+     * @param state state of the current load
+     * @throws IOException if an i/o error occurs
+     */
+    private static void sampleBinaryTriangles(FileChannel channel, int numTriangles,
+                                              LoadState state) throws IOException {
+        ProgressiveMesh progressive = state.progressive;
+
+        int capacity = Math.min(progressive.maxVertices(), progressive.maxIndices())
+                - Math.max(progressive.numVertices(), progressive.numIndices());
+        capacity = Math.max(0, capacity / 3);
+
+        int numSamples = Math.min(numTriangles, Math.min(COARSE_TRIANGLES, capacity / 16));
+
+        if (numSamples > 0) {
+            float[] samples = new float[numSamples * 9];
+            ByteBuffer record = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
+            double step = numTriangles / (double) numSamples;
+            for (int i = 0; i < numSamples; i++) {
+                long t = (long) (i * step);
+                // skip the normal (12 bytes)
+                long position = BINARY_HEADER_SIZE + t * BINARY_TRIANGLE_SIZE + 12;
+                record.clear();
+                while (record.hasRemaining()) {
+                    if (channel.read(record, position + record.position()) < 0) {
+                        throw new EOFException("Unexpected end of file at triangle " + t);
+                    }
+                }
+                for (int c = 0; c < 9; c++) {
+                    samples[i * 9 + c] = record.getFloat(c * 4);
+                }
+            }
+            state.checkCancelled();
+            progressive.appendTriangles(samples, 0, numSamples, 1);
+        }
+
+        int remaining = Math.max(1, capacity - numSamples);
+        state.progressiveStride = (int) Math.max(1, ((long) numTriangles + remaining - 1) / remaining);
+    }
+
+    /**
+     * Fork/join task that decodes a range of binary STL triangles. The range is split
+     * in halves until it is small enough to be decoded directly.
+     */
+    private static final class BinaryDecodeTask extends RecursiveAction {
+        private final FileChannel channel;
+        private final int firstTriangle;
+        private final int endTriangle;
+        private final int trianglesPerTask;
+        private final float[] vertices;
+        private final LoadState state;
+
+        BinaryDecodeTask(FileChannel channel, int firstTriangle, int endTriangle,
+                         int trianglesPerTask, float[] vertices, LoadState state) {
+            this.channel = channel;
+            this.firstTriangle = firstTriangle;
+            this.endTriangle = endTriangle;
+            this.trianglesPerTask = trianglesPerTask;
+            this.vertices = vertices;
+            this.state = state;
+        }
+
+        @Override
+        protected void compute() {
+            int count = endTriangle - firstTriangle;
+            if (count <= trianglesPerTask) {
+                try {
+                    decodeBinaryTriangles(channel, firstTriangle, endTriangle, vertices, state);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                int middle = firstTriangle + count / 2;
+                invokeAll(
+                        new BinaryDecodeTask(channel, firstTriangle, middle, trianglesPerTask, vertices, state),
+                        new BinaryDecodeTask(channel, middle, endTriangle, trianglesPerTask, vertices, state));
+            }
+        }
     }
 
+    /**
+     * Decodes the specified range of triangles of a binary STL file.
+     *
+     * @param channel channel of the binary STL file
+     * @param firstTriangle index of the first triangle to decode
+     * @param endTriangle index after the last triangle to decode
+     * @param vertices array to write the coordinates to (triangle {@code t} is written
+     *                 to the range {@code [t*9, t*9+9)})
+     * @param state state of the current load
+     * @throws IOException if an i/o error occurs
+     */
+    private static void decodeBinaryTriangles(FileChannel channel, int firstTriangle, int endTriangle,
+                                              float[] vertices, LoadState state) throws IOException {
+
+        int t = firstTriangle;
+
+        while (t < endTriangle) {
+            int count = Math.min(endTriangle - t, MAX_TRIANGLES_PER_MAPPING);
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    BINARY_HEADER_SIZE + (long) t * BINARY_TRIANGLE_SIZE,
+                    (long) count * BINARY_TRIANGLE_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int block = 0; block < count; block += TRIANGLES_PER_PROGRESS_UPDATE) {
+                int blockEnd = Math.min(count, block + TRIANGLES_PER_PROGRESS_UPDATE);
+                for (int i = block; i < blockEnd; i++) {
+                    // the first 12 bytes contain the normal which we ignore for now
+                    int src = i * BINARY_TRIANGLE_SIZE + 12;
+                    int dst = (t + i) * 9;
+                    for (int c = 0; c < 9; c++) {
+                        vertices[dst + c] = buffer.getFloat(src + c * 4);
+                    }
+                }
+                state.appendProgressive(vertices, t + block, t + blockEnd);
+                state.advance(blockEnd - block);
+            }
+
+            t += count;
+        }
+    }
+
+    /**
+     * State of a single load (cancellation flag and progress of the current phase).
+     */
+    private static final class LoadState {
+        private final File file;
+        private final MeshLoadListener listener;
+        private final AtomicLong done = new AtomicLong();
+        private volatile MeshLoadListener.Phase phase;
+        private volatile long total;
+        private volatile boolean cancelled;
+        // optional mesh that receives the triangles while they are parsed
+        private final ProgressiveMesh progressive;
+        // every stride-th parsed triangle is appended to the progressive mesh
+        private volatile int progressiveStride = 1;
+
+        LoadState(File file, MeshLoadListener listener) {
+            this(file, listener, null);
+        }
+
+        LoadState(File file, MeshLoadListener listener, ProgressiveMesh progressive) {
+            this.file = file;
+            this.listener = listener;
+            this.progressive = progressive;
+        }
+
+        /**
+         * Appends every {@code progressiveStride}-th triangle of the specified range to
+         * the progressive mesh (if any).
+         *
+         * @param vertices triangle vertex coordinates
+         * @param firstTriangle first triangle of the range
+         * @param endTriangle triangle after the last triangle of the range
+         */
+        void appendProgressive(float[] vertices, int firstTriangle, int endTriangle) {
+            if (progressive != null) {
+                progressive.appendTriangles(vertices, firstTriangle, endTriangle, progressiveStride);
+            }
+        }
+
+        /**
+         * Starts the specified phase.
+         *
+         * @param phase phase to start
+         * @param total amount of work of this phase (e.g. number of bytes to parse)
+         * @throws InterruptedIOException if loading has been cancelled
+         */
+        void beginPhase(MeshLoadListener.Phase phase, long total) throws InterruptedIOException {
+            checkCancelled();
+            this.phase = phase;
+            this.total = Math.max(1, total);
+            done.set(0);
+            if (listener != null) {
+                listener.progressChanged(phase, 0);
+            }
+        }
+
+        /**
+         * Reports that the specified amount of work of the current phase is done.
+         *
+         * @param amount amount of work
+         * @throws InterruptedIOException if loading has been cancelled
+         */
+        void advance(long amount) throws InterruptedIOException {
+            checkCancelled();
+            long d = done.addAndGet(amount);
+            if (listener != null) {
+                listener.progressChanged(phase, Math.min(1.0, d / (double) total));
+            }
+        }
+
+        /**
+         * Ends the current phase.
+         *
+         * @throws InterruptedIOException if loading has been cancelled
+         */
+        void endPhase() throws InterruptedIOException {
+            checkCancelled();
+            if (listener != null) {
+                listener.progressChanged(phase, 1);
+            }
+        }
+
+        void checkCancelled() throws InterruptedIOException {
+            if (cancelled) {
+                throw new InterruptedIOException("Loading cancelled: " + file.getAbsolutePath());
+            }
+        }
+    }
 }
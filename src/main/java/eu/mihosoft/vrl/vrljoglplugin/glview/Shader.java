@@ -39,6 +39,21 @@ public class Shader implements GLObject {
             this.shaderHandle = 0;
             throw new RuntimeException(info);
         }
+
+        GLResources.created(gl, GLResources.Kind.SHADER, shaderHandle, this);
+    }
+
+    /**
+     * Deletes this shader. Shaders that are attached to a program are deleted when
+     * they are detached.
+     */
+    @Override
+    public void delete() {
+        if (isValid()) {
+            gl.glDeleteShader(shaderHandle);
+            GLResources.deleted(gl, GLResources.Kind.SHADER, shaderHandle);
+            shaderHandle = 0;
+        }
     }
 
     /**
@@ -0,0 +1,82 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel vertex deduplicator based on sorting primitive keys.
+ *
+ * Each vertex is packed into a {@code long} key (vertex hash in the upper, vertex index
+ * in the lower 32 bits). After sorting the keys by hash via a parallel LSD radix sort
+ * duplicate vertices are adjacent to each other. Only the (usually tiny) groups of
+ * vertices with equal hashes have to be compared.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class SortVertexDeduplicator extends AbstractVertexDeduplicator {
+
+
+    @Override
+    public Mesh deduplicate(float[] triangleVertices) {
+
+        int numVerts = triangleVertices.length / 3;
+
+        long[] keys = new long[numVerts];
+        Arrays.parallelSetAll(keys, i -> ((long) hash(triangleVertices, i) << 32) | i);
+
+        // sort vertices:
+        // - vertices with equal hashes will be adjacent to each other
+        //   (sorted by their index since radix sort is stable)
+        // - parallel sort is done via fork-/join
+        radixSortByHash(keys);
+
+        int[] representatives = new int[numVerts];
+
+        int numTasks = (numVerts + KEYS_PER_TASK - 1) / KEYS_PER_TASK;
+
+        IntStream.range(0, numTasks).parallel().forEach(task -> {
+            int start = groupStart(keys, task * KEYS_PER_TASK);
+            int end = task == numTasks - 1
+                    ? numVerts : groupStart(keys, (task + 1) * KEYS_PER_TASK);
+
+            int groupStart = start;
+            for (int k = start; k < end; k++) {
+                if (k > groupStart && (keys[k] >>> 32) != (keys[k - 1] >>> 32)) {
+                    groupStart = k;
+                }
+
+                int v = (int) keys[k];
+                representatives[v] = v;
+
+                // find the first representative among the vertices with equal
+                // hash (hash collisions are rare, usually the first one matches)
+                for (int j = groupStart; j < k; j++) {
+                    int candidate = (int) keys[j];
+                    if (representatives[candidate] == candidate
+                            && equal(triangleVertices, candidate, v)) {
+                        representatives[v] = candidate;
+                        break;
+                    }
+                }
+            }
+        });
+
+        return createMesh(triangleVertices, representatives);
+    }
+
+    /**
+     * Returns the start of the hash group that contains or follows the specified key.
+     */
+    private static int groupStart(long[] keys, int k) {
+        if (k >= keys.length) return keys.length;
+        while (k > 0 && (keys[k] >>> 32) == (keys[k - 1] >>> 32)) {
+            k--;
+        }
+        return k;
+    }
+
+    @Override
+    public String toString() {
+        return "SortVertexDeduplicator";
+    }
+}
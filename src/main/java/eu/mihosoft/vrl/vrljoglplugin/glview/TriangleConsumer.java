@@ -0,0 +1,48 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.io.IOException;
+
+/**
+ * Consumer for triangles that are streamed from a mesh file (see
+ * {@link STLLoader#streamTriangles(java.io.File, TriangleConsumer)}).
+ *
+ * Triangles are passed in fixed-size batches of primitive arrays. The arrays are reused
+ * for subsequent batches, i.e., consumers must copy the data they want to keep.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+@FunctionalInterface
+public interface TriangleConsumer {
+
+    /**
+     * Called before the first batch.
+     *
+     * @param numTriangles number of triangles in the file or {@code -1} if unknown
+     *                     (ASCII STL)
+     * @throws IOException if the consumer fails
+     */
+    default void start(long numTriangles) throws IOException {
+        //
+    }
+
+    /**
+     * Consumes a batch of triangles.
+     *
+     * @param positions  vertex coordinates ({@code 9} floats per triangle)
+     * @param normals    facet normals as stored in the file ({@code 3} floats per
+     *                   triangle, might be zero)
+     * @param attributes attribute words ({@code 0} for ASCII STL)
+     * @param count      number of triangles in this batch
+     * @throws IOException if the consumer fails
+     */
+    void accept(float[] positions, float[] normals, short[] attributes, int count) throws IOException;
+
+    /**
+     * Called after the last batch.
+     *
+     * @throws IOException if the consumer fails
+     */
+    default void finish() throws IOException {
+        //
+    }
+}
@@ -0,0 +1,476 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+/**
+ * Reorders the triangles of a mesh for the post-transform vertex cache of the GPU
+ * (Tipsify, Sander et al. 2007) and renumbers the vertices in the order of their first
+ * use, i.e., vertex fetches become mostly sequential.
+ *
+ * Triangles are first sorted along a space filling curve (Morton order of their
+ * centroids) and split into spatially compact clusters. Clusters are reordered
+ * independently, i.e., in parallel, and are concatenated in Morton order. The result
+ * does not depend on the number of threads.
+ *
+ * The quality is measured as average cache miss ratio (ACMR), i.e., the number of
+ * vertices that have to be transformed per triangle with a FIFO cache (see
+ * {@link #computeACMR(Mesh, int)}). Values range from {@code 0.5} (optimal for large
+ * regular meshes) to {@code 3}.
+ *
+ * Sample:
+ * <pre>
+ * Mesh optimized = new VertexCacheOptimizer().optimize(mesh);
+ * </pre>
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class VertexCacheOptimizer {
+
+    /**
+     * Default cache size (number of vertices) the triangle order is optimized for.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    // number of triangles per cluster (clusters are reordered independently)
+    private static final int TRIANGLES_PER_CLUSTER = 1 << 16;
+
+    // number of threads used for optimization (1 means sequential optimization)
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // cache size the triangle order is optimized for
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    /**
+     * Defines the number of threads used for optimization. A value of {@code 1}
+     * disables parallel optimization.
+     *
+     * @param parallelism number of threads to use (must be positive)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads used for optimization.
+     *
+     * @return the number of threads used for optimization
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Defines the cache size (number of vertices) the triangle order is optimized for
+     * (default: {@link #DEFAULT_CACHE_SIZE}).
+     *
+     * @param cacheSize cache size (must be at least {@code 3})
+     */
+    public void setCacheSize(int cacheSize) {
+        if (cacheSize < 3) {
+            throw new IllegalArgumentException("Cache size must be at least 3: " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Returns the cache size the triangle order is optimized for.
+     *
+     * @return the cache size (number of vertices)
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    @Override
+    public String toString() {
+        return "tipsify-" + cacheSize;
+    }
+
+    /**
+     * Reorders the triangles of the specified mesh and renumbers its vertices in the
+     * order of their first use. Unreferenced vertices are moved to the end.
+     *
+     * @param mesh mesh to optimize
+     * @return the optimized mesh (the specified mesh is not modified)
+     */
+    public Mesh optimize(Mesh mesh) {
+        int numIndices = mesh.numIndices();
+        int numTriangles = numIndices / 3;
+
+        if (numIndices % 3 != 0) {
+            throw new IllegalArgumentException("Number of indices must be a multiple of 3: " + numIndices);
+        }
+
+        int[] indices = new int[numIndices];
+        mesh.indices.duplicate().get(indices);
+
+        double acmrBefore = computeACMR(indices, mesh.numVertices(), cacheSize);
+
+        int[] reordered = reorderTriangles(mesh, indices, numTriangles);
+        Mesh result = renumberVertices(mesh, reordered);
+
+        double acmrAfter = computeACMR(reordered, result.numVertices(), cacheSize);
+
+        System.out.println("-> vertex cache optimization (" + this + ")");
+        System.out.println("   #acmr-before: " + (float) acmrBefore);
+        System.out.println("   #acmr-after:  " + (float) acmrAfter);
+
+        return result;
+    }
+
+    /**
+     * Sorts the triangles in Morton order and reorders them cluster by cluster
+     * (clusters are processed in parallel).
+     *
+     * @param mesh mesh that provides the vertex positions
+     * @param indices triangle indices
+     * @param numTriangles number of triangles
+     * @return the reordered triangle indices
+     */
+    private int[] reorderTriangles(Mesh mesh, int[] indices, int numTriangles) {
+        int numClusters = (numTriangles + TRIANGLES_PER_CLUSTER - 1) / TRIANGLES_PER_CLUSTER;
+
+        ForkJoinPool pool = parallelism > 1 && numClusters > 1 ? new ForkJoinPool(parallelism) : null;
+
+        try {
+            int[] sorted = numClusters > 1 ? sortSpatially(mesh, indices, numTriangles, pool) : indices;
+
+            int[] result = new int[indices.length];
+
+            if (pool == null) {
+                for (int c = 0; c < numClusters; c++) {
+                    int first = c * TRIANGLES_PER_CLUSTER;
+                    tipsify(sorted, first, Math.min(numTriangles, first + TRIANGLES_PER_CLUSTER),
+                            cacheSize, result);
+                }
+                return result;
+            }
+
+            // each task writes the triangles of its cluster to the range of the cluster,
+            // i.e., no synchronization is necessary
+            List<Callable<Void>> tasks = new ArrayList<>(numClusters);
+            for (int c = 0; c < numClusters; c++) {
+                final int first = c * TRIANGLES_PER_CLUSTER;
+                final int end = Math.min(numTriangles, first + TRIANGLES_PER_CLUSTER);
+                tasks.add(() -> {
+                    tipsify(sorted, first, end, cacheSize, result);
+                    return null;
+                });
+            }
+
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Vertex cache optimization interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Sorts the triangles in Morton order of their centroids (10 bits per axis).
+     *
+     * @param mesh mesh that provides the vertex positions
+     * @param indices triangle indices
+     * @param numTriangles number of triangles
+     * @param pool pool for parallel sorting (might be {@code null})
+     * @return the sorted triangle indices
+     */
+    static int[] sortSpatially(Mesh mesh, int[] indices, int numTriangles, ForkJoinPool pool) {
+        float[] min = {mesh.xmin(), mesh.ymin(), mesh.zmin()};
+        float[] max = {mesh.xmax(), mesh.ymax(), mesh.zmax()};
+        // the same scale for all axes, i.e., flat axes don't dominate the order
+        float extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+        float scale = extent > 0 ? 1023.f / extent : 0.f;
+
+        // (morton code, triangle) per triangle
+        long[] keys = new long[numTriangles];
+        for (int t = 0; t < numTriangles; t++) {
+            long code = 0;
+            for (int c = 0; c < 3; c++) {
+                float centroid = (mesh.vertices.get(indices[t * 3] * 3 + c)
+                        + mesh.vertices.get(indices[t * 3 + 1] * 3 + c)
+                        + mesh.vertices.get(indices[t * 3 + 2] * 3 + c)) / 3.f;
+                int q = Math.max(0, Math.min(1023, (int) ((centroid - min[c]) * scale)));
+                code |= spreadBits(q) << c;
+            }
+            keys[t] = code << 32 | t;
+        }
+
+        if (pool == null) {
+            Arrays.sort(keys);
+        } else {
+            // sorts with the threads of the pool
+            pool.invoke(ForkJoinTask.adapt(() -> Arrays.parallelSort(keys)));
+        }
+
+        int[] sorted = new int[indices.length];
+        for (int i = 0; i < numTriangles; i++) {
+            int t = (int) keys[i];
+            sorted[i * 3] = indices[t * 3];
+            sorted[i * 3 + 1] = indices[t * 3 + 1];
+            sorted[i * 3 + 2] = indices[t * 3 + 2];
+        }
+
+        return sorted;
+    }
+
+    /**
+     * Inserts two zero bits between the lowest 10 bits of the specified value (Morton
+     * code of one axis).
+     *
+     * @param v value to spread
+     * @return the spread bits
+     */
+    static long spreadBits(int v) {
+        long x = v & 0x3ff;
+        x = (x | x << 16) & 0x30000ffL;
+        x = (x | x << 8) & 0x300f00fL;
+        x = (x | x << 4) & 0x30c30c3L;
+        x = (x | x << 2) & 0x9249249L;
+        return x;
+    }
+
+    /**
+     * Reorders the specified range of triangles (Tipsify). Triangles are emitted in
+     * fans around the current vertex. The next fan vertex is the vertex of the last
+     * fan that is still in the cache and will stay in the cache while its remaining
+     * triangles are emitted. If there is no such vertex, the most recently used vertex
+     * with remaining triangles is taken (dead-end stack) or the next vertex in input
+     * order.
+     *
+     * @param indices triangle indices
+     * @param firstTriangle first triangle of the range
+     * @param endTriangle triangle after the last triangle of the range
+     * @param cacheSize cache size
+     * @param result array to write the reordered triangles to (the range of the input
+     *               triangles)
+     */
+    static void tipsify(int[] indices, int firstTriangle, int endTriangle, int cacheSize, int[] result) {
+        int numTriangles = endTriangle - firstTriangle;
+        int numIndices = numTriangles * 3;
+        int offset = firstTriangle * 3;
+
+        if (numTriangles == 0) {
+            return;
+        }
+
+        // local vertex ids (sorted global ids of the range)
+        int[] vertices = Arrays.copyOfRange(indices, offset, offset + numIndices);
+        Arrays.sort(vertices);
+        int numVertices = 0;
+        for (int i = 0; i < numIndices; i++) {
+            if (i == 0 || vertices[i] != vertices[i - 1]) {
+                vertices[numVertices++] = vertices[i];
+            }
+        }
+
+        int[] local = new int[numIndices];
+        for (int i = 0; i < numIndices; i++) {
+            local[i] = Arrays.binarySearch(vertices, 0, numVertices, indices[offset + i]);
+        }
+
+        // vertex -> triangle adjacency (compressed rows)
+        int[] adjacencyOffsets = new int[numVertices + 1];
+        for (int v : local) {
+            adjacencyOffsets[v + 1]++;
+        }
+        for (int v = 0; v < numVertices; v++) {
+            adjacencyOffsets[v + 1] += adjacencyOffsets[v];
+        }
+        int[] adjacency = new int[numIndices];
+        int[] fill = Arrays.copyOf(adjacencyOffsets, numVertices);
+        for (int i = 0; i < numIndices; i++) {
+            adjacency[fill[local[i]]++] = i / 3;
+        }
+
+        // number of triangles per vertex that have not been emitted yet
+        int[] live = new int[numVertices];
+        for (int v = 0; v < numVertices; v++) {
+            live[v] = adjacencyOffsets[v + 1] - adjacencyOffsets[v];
+        }
+
+        // time stamp of the cache insertion per vertex
+        int[] cacheTime = new int[numVertices];
+        boolean[] emitted = new boolean[numTriangles];
+
+        // vertices of emitted triangles (most recent on top)
+        int[] deadEnd = new int[numIndices];
+        int deadEndSize = 0;
+
+        // candidates for the next fan vertex (vertices of the current fan)
+        int[] candidates = new int[numIndices];
+
+        int time = cacheSize + 1;
+        int cursor = 0;
+        int out = offset;
+        int fan = 0;
+
+        while (fan >= 0) {
+            int numCandidates = 0;
+
+            for (int a = adjacencyOffsets[fan]; a < adjacencyOffsets[fan + 1]; a++) {
+                int t = adjacency[a];
+                if (emitted[t]) {
+                    continue;
+                }
+                emitted[t] = true;
+                for (int k = 0; k < 3; k++) {
+                    int v = local[t * 3 + k];
+                    result[out++] = vertices[v];
+                    deadEnd[deadEndSize++] = v;
+                    candidates[numCandidates++] = v;
+                    live[v]--;
+                    if (time - cacheTime[v] > cacheSize) {
+                        // cache miss
+                        cacheTime[v] = time++;
+                    }
+                }
+            }
+
+            // next fan vertex: the oldest candidate that is still in the cache after
+            // emitting its remaining triangles
+            int next = -1;
+            int priority = -1;
+            for (int i = 0; i < numCandidates; i++) {
+                int v = candidates[i];
+                if (live[v] > 0) {
+                    int p = 0;
+                    if (time - cacheTime[v] + 2 * live[v] <= cacheSize) {
+                        p = time - cacheTime[v];
+                    }
+                    if (p > priority) {
+                        priority = p;
+                        next = v;
+                    }
+                }
+            }
+
+            if (next < 0) {
+                // dead end: most recently used vertex with remaining triangles
+                while (deadEndSize > 0) {
+                    int v = deadEnd[--deadEndSize];
+                    if (live[v] > 0) {
+                        next = v;
+                        break;
+                    }
+                }
+            }
+
+            if (next < 0) {
+                // next vertex in input order
+                while (cursor < numVertices && live[cursor] == 0) {
+                    cursor++;
+                }
+                if (cursor < numVertices) {
+                    next = cursor;
+                }
+            }
+
+            fan = next;
+        }
+    }
+
+    /**
+     * Renumbers the vertices in the order of their first use.
+     *
+     * @param mesh mesh that provides the vertex data
+     * @param indices reordered triangle indices (renumbered in place)
+     * @return the renumbered mesh
+     */
+    private static Mesh renumberVertices(Mesh mesh, int[] indices) {
+        int numVertices = mesh.numVertices();
+
+        int[] newIndices = new int[numVertices];
+        Arrays.fill(newIndices, -1);
+
+        int n = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (newIndices[v] < 0) {
+                newIndices[v] = n++;
+            }
+            indices[i] = newIndices[v];
+        }
+
+        // unreferenced vertices are kept (at the end)
+        for (int v = 0; v < numVertices; v++) {
+            if (newIndices[v] < 0) {
+                newIndices[v] = n++;
+            }
+        }
+
+        float[] vertices = new float[numVertices * 3];
+        float[] colors = mesh.hasColors() ? new float[numVertices * 4] : null;
+        for (int v = 0; v < numVertices; v++) {
+            int i = newIndices[v];
+            for (int c = 0; c < 3; c++) {
+                vertices[i * 3 + c] = mesh.vertices.get(v * 3 + c);
+            }
+            if (colors != null) {
+                for (int c = 0; c < 4; c++) {
+                    colors[i * 4 + c] = mesh.colors.get(v * 4 + c);
+                }
+            }
+        }
+
+        Mesh result = Mesh.newInstance(vertices, indices, colors);
+        System.arraycopy(mesh.globalColor, 0, result.globalColor, 0, mesh.globalColor.length);
+        // bounds are cached, i.e., they are not computed on the render thread
+        result.getBounds();
+        return result;
+    }
+
+    /**
+     * Computes the average cache miss ratio (ACMR) of the specified mesh, i.e., the
+     * number of vertex cache misses per triangle of a FIFO cache with the specified
+     * size.
+     *
+     * @param mesh mesh to analyze
+     * @param cacheSize cache size (number of vertices)
+     * @return the average cache miss ratio ({@code 0} for empty meshes)
+     */
+    public static double computeACMR(Mesh mesh, int cacheSize) {
+        int[] indices = new int[mesh.numIndices()];
+        mesh.indices.duplicate().get(indices);
+        return computeACMR(indices, mesh.numVertices(), cacheSize);
+    }
+
+    private static double computeACMR(int[] indices, int numVertices, int cacheSize) {
+        if (indices.length < 3) {
+            return 0;
+        }
+
+        // number of misses when the vertex has been inserted (a vertex is cached if
+        // less than cacheSize vertices have been inserted since then)
+        int[] insertion = new int[numVertices];
+        Arrays.fill(insertion, -cacheSize - 1);
+
+        int misses = 0;
+        for (int v : indices) {
+            if (misses - insertion[v] > cacheSize) {
+                insertion[v] = misses++;
+            }
+        }
+
+        return misses / (double) (indices.length / 3);
+    }
+}
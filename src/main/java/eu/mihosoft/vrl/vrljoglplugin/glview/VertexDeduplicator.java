@@ -0,0 +1,18 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+/**
+ * Strategy for merging duplicate triangle vertices into an indexed {@link Mesh}.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public interface VertexDeduplicator {
+
+    /**
+     * Deduplicates the specified triangle vertices.
+     *
+     * @param triangleVertices vertex coordinates to deduplicate ({@code x,y,z} per vertex,
+     *                         three consecutive vertices per triangle)
+     * @return mesh containing the deduplicated vertices and index list
+     */
+    Mesh deduplicate(float[] triangleVertices);
+}
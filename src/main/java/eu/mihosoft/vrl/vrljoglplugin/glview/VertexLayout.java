@@ -0,0 +1,282 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Objects;
+
+import static com.jogamp.opengl.GL.*;
+
+/**
+ * Vertex layout of a {@link GLMesh}, i.e., the GPU formats of vertex positions and
+ * vertex colors.
+ *
+ * <table summary="vertex formats">
+ * <tr><th>format</th><th>bytes per vertex</th></tr>
+ * <tr><td>{@link PositionFormat#FLOAT}</td><td>12</td></tr>
+ * <tr><td>{@link PositionFormat#HALF_FLOAT}, {@link PositionFormat#SNORM16}</td><td>8</td></tr>
+ * <tr><td>{@link ColorFormat#NONE}</td><td>0 (global color)</td></tr>
+ * <tr><td>{@link ColorFormat#RGBA8}</td><td>4</td></tr>
+ * <tr><td>{@link ColorFormat#FLOAT}</td><td>16</td></tr>
+ * </table>
+ *
+ * 16 bit positions are stored relative to the mesh bounds (normalized to
+ * {@code [-1,1]}) and are decoded via {@link GLMesh#getPositionTransform()}.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class VertexLayout {
+
+    /**
+     * GPU format of vertex positions.
+     */
+    public enum PositionFormat {
+        /**
+         * 32 bit floats (exact).
+         */
+        FLOAT,
+        /**
+         * 16 bit floats relative to the mesh bounds (about 11 bit precision near the
+         * bounds, finer near the center).
+         */
+        HALF_FLOAT,
+        /**
+         * 16 bit normalized integers relative to the mesh bounds (error of about
+         * {@code extent / 65534} per axis).
+         */
+        SNORM16
+    }
+
+    /**
+     * GPU format of vertex colors.
+     */
+    public enum ColorFormat {
+        /**
+         * No color buffer, the global color of the mesh is used for all vertices.
+         */
+        NONE,
+        /**
+         * 8 bit normalized integers per channel.
+         */
+        RGBA8,
+        /**
+         * 32 bit floats per channel (exact).
+         */
+        FLOAT
+    }
+
+    /**
+     * Meshes with fewer vertices use exact positions (the memory savings are
+     * negligible).
+     */
+    public static final int COMPACT_POSITIONS_MIN_VERTICES = 1 << 16;
+
+    // 16 bit positions are padded to 4 components (4 byte aligned vertices)
+    private static final int COMPONENTS_PER_COMPACT_POSITION = 4;
+
+    private final PositionFormat positionFormat;
+    private final ColorFormat colorFormat;
+
+    /**
+     * Creates a vertex layout.
+     *
+     * @param positionFormat position format
+     * @param colorFormat color format
+     */
+    public VertexLayout(PositionFormat positionFormat, ColorFormat colorFormat) {
+        this.positionFormat = Objects.requireNonNull(positionFormat);
+        this.colorFormat = Objects.requireNonNull(colorFormat);
+    }
+
+    /**
+     * Selects the most compact layout for the specified mesh: meshes without colors
+     * use the global color instead of a color buffer, colors are stored as
+     * {@link ColorFormat#RGBA8} and positions of large meshes are stored as
+     * {@link PositionFormat#SNORM16}.
+     *
+     * @param mesh mesh
+     * @return the vertex layout for the specified mesh
+     */
+    public static VertexLayout select(Mesh mesh) {
+        PositionFormat positionFormat = mesh.numVertices() >= COMPACT_POSITIONS_MIN_VERTICES
+                && fitsInBuffer(mesh.numVertices(), COMPONENTS_PER_COMPACT_POSITION * Short.BYTES)
+                ? PositionFormat.SNORM16 : PositionFormat.FLOAT;
+        ColorFormat colorFormat = mesh.hasColors() ? ColorFormat.RGBA8 : ColorFormat.NONE;
+
+        return new VertexLayout(positionFormat, colorFormat);
+    }
+
+    /**
+     * Returns the position format.
+     *
+     * @return the position format
+     */
+    public PositionFormat getPositionFormat() {
+        return positionFormat;
+    }
+
+    /**
+     * Returns the color format.
+     *
+     * @return the color format
+     */
+    public ColorFormat getColorFormat() {
+        return colorFormat;
+    }
+
+    /**
+     * Returns the number of bytes per vertex (GPU memory).
+     *
+     * @return the number of bytes per vertex
+     */
+    public int bytesPerVertex() {
+        int positionBytes = positionFormat == PositionFormat.FLOAT
+                ? 3 * Float.BYTES : COMPONENTS_PER_COMPACT_POSITION * Short.BYTES;
+        int colorBytes = colorFormat == ColorFormat.NONE ? 0
+                : colorFormat == ColorFormat.RGBA8 ? 4 : 4 * Float.BYTES;
+        return positionBytes + colorBytes;
+    }
+
+    /**
+     * Indicates whether positions are stored relative to the mesh bounds.
+     *
+     * @return {@code true} if positions are stored relative to the mesh bounds;
+     * {@code false} otherwise
+     */
+    boolean isPositionNormalized() {
+        return positionFormat != PositionFormat.FLOAT;
+    }
+
+    /**
+     * Returns the GL type of the position attribute.
+     */
+    int positionType() {
+        switch (positionFormat) {
+            case HALF_FLOAT:
+                return GL_HALF_FLOAT;
+            case SNORM16:
+                return GL_SHORT;
+            default:
+                return GL_FLOAT;
+        }
+    }
+
+    /**
+     * Returns the stride of the position attribute in bytes.
+     */
+    int positionStride() {
+        return positionFormat == PositionFormat.FLOAT
+                ? 3 * Float.BYTES : COMPONENTS_PER_COMPACT_POSITION * Short.BYTES;
+    }
+
+    /**
+     * Returns the GL type of the color attribute.
+     */
+    int colorType() {
+        return colorFormat == ColorFormat.RGBA8 ? GL_UNSIGNED_BYTE : GL_FLOAT;
+    }
+
+    /**
+     * Returns the stride of the color attribute in bytes.
+     */
+    int colorStride() {
+        return colorFormat == ColorFormat.RGBA8 ? 4 : 4 * Float.BYTES;
+    }
+
+    /**
+     * Encodes the positions of the specified mesh in the 16 bit format of this layout.
+     *
+     * @param vertices vertex positions ({@code x,y,z} per vertex)
+     * @param center   center of the mesh bounds
+     * @param extent   half extent of the mesh bounds (per axis, must not be zero)
+     * @return encoded positions (native byte order)
+     */
+    ByteBuffer encodePositions(FloatBuffer vertices, float[] center, float[] extent) {
+        int numVertices = vertices.limit() / 3;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(
+                numVertices * COMPONENTS_PER_COMPACT_POSITION * Short.BYTES).order(ByteOrder.nativeOrder());
+
+        boolean half = positionFormat == PositionFormat.HALF_FLOAT;
+
+        for (int i = 0; i < numVertices; i++) {
+            int offset = i * COMPONENTS_PER_COMPACT_POSITION * Short.BYTES;
+            for (int c = 0; c < 3; c++) {
+                float v = (vertices.get(i * 3 + c) - center[c]) / extent[c];
+                v = Math.max(-1f, Math.min(1f, v));
+                short s = half ? toHalf(v) : (short) Math.round(v * Short.MAX_VALUE);
+                buffer.putShort(offset + c * Short.BYTES, s);
+            }
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Encodes the specified colors with 8 bit per channel.
+     *
+     * @param colors colors ({@code r,g,b,a} per vertex, range {@code [0,1]})
+     * @return encoded colors
+     */
+    static ByteBuffer encodeColors(FloatBuffer colors) {
+        int n = colors.limit();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(n);
+        for (int i = 0; i < n; i++) {
+            int v = Math.round(Math.max(0f, Math.min(1f, colors.get(i))) * 255f);
+            buffer.put(i, (byte) v);
+        }
+        return buffer;
+    }
+
+    /**
+     * Converts the specified float to a 16 bit float (round to nearest even).
+     *
+     * @param v value to convert
+     * @return the 16 bit float bits
+     */
+    static short toHalf(float v) {
+        int bits = Float.floatToRawIntBits(v);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent >= 0x1F) {
+            // overflow (our values are normalized, i.e., NaN/inf are not needed)
+            return (short) (sign | 0x7BFF);
+        }
+
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                // too small (signed zero)
+                return (short) sign;
+            }
+            // subnormal
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+
+        int half = (exponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            // might carry into the exponent which is the correct result
+            half++;
+        }
+        return (short) (sign | Math.min(half, 0x7BFF));
+    }
+
+    private static boolean fitsInBuffer(int numVertices, int bytesPerVertex) {
+        return (long) numVertices * bytesPerVertex <= Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "[positions=" + positionFormat + ", colors=" + colorFormat
+                + ", bytes-per-vertex=" + bytesPerVertex() + "]";
+    }
+}
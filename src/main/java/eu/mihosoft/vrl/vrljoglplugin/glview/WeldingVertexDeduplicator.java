@@ -0,0 +1,220 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Vertex deduplicator that welds vertices whose distance is less than or equal to a
+ * specified epsilon.
+ *
+ * Vertices are bucketed into a uniform spatial hash grid with cell size
+ * {@code 2 * epsilon}. Each vertex is only compared with the vertices of the 8 cells
+ * that overlap its epsilon neighborhood, i.e., the runtime stays close to linear.
+ * The grid is represented by keys (cell hash and vertex index) that are sorted by
+ * cell via parallel radix sort. The neighbor search runs in parallel over the sorted
+ * cells.
+ *
+ * Each vertex is merged with the vertex of lowest index within epsilon (and with its
+ * representative). Welded vertices keep the coordinates of their representative.
+ * Note that chains of vertices that are closer than epsilon are merged as well, i.e.,
+ * epsilon should be small compared to the edge lengths of the mesh.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public final class WeldingVertexDeduplicator extends AbstractVertexDeduplicator {
+
+    private final float epsilon;
+
+    /**
+     * Creates a new welding deduplicator.
+     *
+     * @param epsilon maximum distance of vertices that shall be merged (must be positive)
+     */
+    public WeldingVertexDeduplicator(float epsilon) {
+        if (!(epsilon > 0) || Float.isInfinite(epsilon)) {
+            throw new IllegalArgumentException("Epsilon must be positive and finite: " + epsilon);
+        }
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Returns the maximum distance of vertices that are merged.
+     *
+     * @return the maximum distance of vertices that are merged
+     */
+    public float getEpsilon() {
+        return epsilon;
+    }
+
+    @Override
+    public Mesh deduplicate(float[] triangleVertices) {
+
+        int numVerts = triangleVertices.length / 3;
+
+        // with this cell size the epsilon neighborhood of a vertex overlaps its own
+        // cell and at most one neighbor cell per axis
+        double cellSize = 2.0 * epsilon;
+        double epsilonSquared = (double) epsilon * epsilon;
+
+        // grid keys: cell hash (upper 32 bits) and vertex index (lower 32 bits)
+        long[] keys = new long[numVerts];
+        Arrays.parallelSetAll(keys, i -> ((long) cellHash(
+                cell(triangleVertices[i * 3 + 0], cellSize),
+                cell(triangleVertices[i * 3 + 1], cellSize),
+                cell(triangleVertices[i * 3 + 2], cellSize)) << 32) | i);
+
+        // vertices in the same cell are adjacent (sorted by their index)
+        radixSortByHash(keys);
+
+        // hash table that maps cell hashes to the first key of the cell
+        int[] cellTable = createCellTable(keys);
+        int cellMask = cellTable.length - 1;
+
+        // for each vertex: lowest vertex index within epsilon (might be the vertex itself)
+        int[] nearest = new int[numVerts];
+
+        int numTasks = (numVerts + KEYS_PER_TASK - 1) / KEYS_PER_TASK;
+
+        IntStream.range(0, numTasks).parallel().forEach(task -> {
+            int end = Math.min(numVerts, (task + 1) * KEYS_PER_TASK);
+            for (int k = task * KEYS_PER_TASK; k < end; k++) {
+                int v = (int) keys[k];
+
+                float x = triangleVertices[v * 3 + 0];
+                float y = triangleVertices[v * 3 + 1];
+                float z = triangleVertices[v * 3 + 2];
+
+                long cx = cell(x, cellSize);
+                long cy = cell(y, cellSize);
+                long cz = cell(z, cellSize);
+
+                // neighbor cell direction (the half of the cell the vertex is in)
+                int nx = x / cellSize - cx < 0.5 ? -1 : 1;
+                int ny = y / cellSize - cy < 0.5 ? -1 : 1;
+                int nz = z / cellSize - cz < 0.5 ? -1 : 1;
+
+                int best = v;
+
+                for (int dx = 0; dx <= 1; dx++) {
+                    for (int dy = 0; dy <= 1; dy++) {
+                        for (int dz = 0; dz <= 1; dz++) {
+                            int hash = cellHash(cx + dx * nx, cy + dy * ny, cz + dz * nz);
+
+                            // candidates are sorted by index, we only need
+                            // candidates with lower index than the current best
+                            for (int c = findFirst(keys, cellTable, cellMask, hash); c < numVerts
+                                    && (int) (keys[c] >>> 32) == hash; c++) {
+                                int candidate = (int) keys[c];
+                                if (candidate >= best) break;
+
+                                double ddx = triangleVertices[candidate * 3 + 0] - x;
+                                double ddy = triangleVertices[candidate * 3 + 1] - y;
+                                double ddz = triangleVertices[candidate * 3 + 2] - z;
+
+                                if (ddx * ddx + ddy * ddy + ddz * ddz <= epsilonSquared) {
+                                    best = candidate;
+                                }
+                            }
+                        }
+                    }
+                }
+
+                nearest[v] = best;
+            }
+        });
+
+        // resolve representatives (nearest vertices always have a lower index, thus,
+        // their representative is already known)
+        int[] representatives = nearest;
+        for (int i = 0; i < numVerts; i++) {
+            int n = representatives[i];
+            representatives[i] = n == i ? i : representatives[n];
+        }
+
+        return createMesh(triangleVertices, representatives);
+    }
+
+    /**
+     * Returns the grid cell coordinate of the specified value.
+     */
+    private static long cell(float value, double cellSize) {
+        return (long) Math.floor(value / cellSize);
+    }
+
+    /**
+     * Returns the hash of the specified grid cell.
+     */
+    private static int cellHash(long cx, long cy, long cz) {
+        long h = cx * 0x9E3779B97F4A7C15L;
+        h = (h ^ cy) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ cz) * 0x165667B19E3779F9L;
+        h ^= h >>> 29;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Creates an open-addressing hash table that stores the position of the first key
+     * of each cell (empty slots are {@code -1}).
+     *
+     * @param keys sorted grid keys
+     * @return hash table (power of two size)
+     */
+    private static int[] createCellTable(long[] keys) {
+
+        int numCells = 0;
+        for (int k = 0; k < keys.length; k++) {
+            if (k == 0 || (keys[k] >>> 32) != (keys[k - 1] >>> 32)) {
+                numCells++;
+            }
+        }
+
+        int capacity = (int) Math.min(1 << 30, Long.highestOneBit(2L * Math.max(1, numCells) - 1) << 1);
+        int mask = capacity - 1;
+
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+
+        for (int k = 0; k < keys.length; k++) {
+            if (k == 0 || (keys[k] >>> 32) != (keys[k - 1] >>> 32)) {
+                int slot = mix((int) (keys[k] >>> 32)) & mask;
+                while (table[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = k;
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Returns the position of the first key with the specified hash or
+     * {@code keys.length} if no such key exists.
+     */
+    private static int findFirst(long[] keys, int[] cellTable, int mask, int hash) {
+        int slot = mix(hash) & mask;
+        while (true) {
+            int k = cellTable[slot];
+            if (k < 0) {
+                return keys.length;
+            } else if ((int) (keys[k] >>> 32) == hash) {
+                return k;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Scrambles the bits of the specified cell hash (we use the upper bits for
+     * sorting and the lower bits for the table lookup).
+     */
+    private static int mix(int h) {
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "WeldingVertexDeduplicator[epsilon=" + epsilon + "]";
+    }
+}
@@ -0,0 +1,129 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that {@link FloatParser} produces results that are bit-identical to
+ * {@link Float#parseFloat(String)}.
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class FloatParserTest {
+
+    /**
+     * Parses the specified number with {@link FloatParser} (surrounded by other
+     * characters, i.e., only the range of the number is parsed) and compares the
+     * result with {@link Float#parseFloat(String)}.
+     */
+    private static void assertBitIdentical(String number) {
+        byte[] bytes = (" x" + number + "y ").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+
+        float expected = Float.parseFloat(number);
+        float actual = FloatParser.parseFloat(buffer, 2, 2 + number.length());
+
+        assertEquals(number, Float.floatToRawIntBits(expected), Float.floatToRawIntBits(actual));
+    }
+
+    @Test
+    public void commonNumbersAreBitIdentical() {
+        for (String number : new String[]{"0", "1", "0.5", "1.0", "-2.25", "3.1415927",
+                "1e10", "1.0E-5", "6.0221409e+23", "123456.789", "-9.999999E-3"}) {
+            assertBitIdentical(number);
+        }
+    }
+
+    @Test
+    public void longMantissasAreBitIdentical() {
+        for (String number : new String[]{
+                "1.2345678901234567890123",
+                "123456789012345678901234567890",
+                "0.30000001192092895507812500001",
+                "9999999999999999999",
+                "0.1000000000000000055511151231257827",
+                "-1.00000000000000000000000000000000001"}) {
+            assertBitIdentical(number);
+        }
+    }
+
+    @Test
+    public void largeExponentsAreBitIdentical() {
+        for (String number : new String[]{"1e23", "-1e23", "1.5e-23", "3e-24", "1e38",
+                "3.4028235e38", "3.4028236e38", "3.5e38", "1e39", "1e-50", "-1e-300",
+                "1e400", "12345e-30", "0.000001e-20"}) {
+            assertBitIdentical(number);
+        }
+    }
+
+    @Test
+    public void subnormalsAreBitIdentical() {
+        for (String number : new String[]{"1.4e-45", "1e-45", "7e-46", "7.1e-46", "2.8e-45",
+                "1.17549435E-38", "1.1754942E-38", "5.877472E-39", "-1.0e-40"}) {
+            assertBitIdentical(number);
+        }
+        Random rnd = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            float subnormal = Float.intBitsToFloat(rnd.nextInt(0x007fffff) + 1);
+            assertBitIdentical(Float.toString(subnormal));
+            assertBitIdentical(String.format(Locale.ROOT, "%.12e", subnormal));
+        }
+    }
+
+    @Test
+    public void halfwayCasesAreBitIdentical() {
+        // ties to even
+        for (String number : new String[]{"16777217", "16777219", "-16777217",
+                "1.000000059604644775390625", "1.0000000596046448", "1.00000005960464477539",
+                "1.00000005960464477539062500000000001"}) {
+            assertBitIdentical(number);
+        }
+
+        // exact midpoints of random neighbouring floats and values just above and below
+        Random rnd = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            float f = Float.intBitsToFloat(rnd.nextInt(0x7f000000));
+            BigDecimal lower = new BigDecimal(f);
+            BigDecimal upper = new BigDecimal(Math.nextUp(f));
+            BigDecimal midpoint = lower.add(upper).divide(BigDecimal.valueOf(2));
+            BigDecimal epsilon = upper.subtract(lower).movePointLeft(20);
+
+            assertBitIdentical(midpoint.toString());
+            assertBitIdentical(midpoint.add(epsilon).toString());
+            assertBitIdentical(midpoint.subtract(epsilon).toString());
+            // short representation that is close to the midpoint (double rounding)
+            assertBitIdentical(midpoint.round(new MathContext(17)).toString());
+        }
+    }
+
+    @Test
+    public void signsAndLeadingZerosAreBitIdentical() {
+        for (String number : new String[]{"-0", "+0", "-0.0", "+0.0", "+1.5", "-1.5e-3",
+                "+2E+2", "0000123.5", "-000.000123", "00e5", "0.0e-0", "007",
+                "0.000000000000000000000000000000001e30", "-00000000000000000000001.25"}) {
+            assertBitIdentical(number);
+        }
+    }
+
+    @Test
+    public void exportedNumbersAreBitIdentical() {
+        // numbers formatted the way common STL exporters write them
+        Random rnd = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            float v = (rnd.nextFloat() - 0.5f) * (float) Math.pow(10, rnd.nextInt(20) - 10);
+            assertBitIdentical(Float.toString(v));
+            assertBitIdentical(String.format(Locale.ROOT, "%e", v));
+            assertBitIdentical(String.format(Locale.ROOT, "%.9E", v));
+            assertBitIdentical(String.format(Locale.ROOT, "%f", v));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the splitting of triangle indices into 16 bit chunks (no gl context required).
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class GLIndexBufferTest {
+
+    @Test
+    public void smallMeshIsASingleChunk() {
+        int[] chunks = GLIndexBuffer.computeChunks(IntBuffer.wrap(new int[]{5, 6, 7, 7, 6, 8}), 16);
+        assertArrayEquals(new int[]{0, 6, 5}, chunks);
+    }
+
+    @Test
+    public void distantVerticesAreSplitIntoChunks() {
+        int[] indices = {0, 1, 2, 2, 1, 3, 100, 101, 102, 103, 102, 101, 4, 5, 6};
+        int[] chunks = GLIndexBuffer.computeChunks(IntBuffer.wrap(indices), 10);
+        assertArrayEquals(new int[]{0, 6, 0, 6, 6, 100, 12, 3, 4}, chunks);
+    }
+
+    @Test
+    public void chunksCoverAllTrianglesWithinTheVertexLimit() {
+        int maxVertices = 1000;
+        int numTriangles = 20000;
+        int[] indices = new int[numTriangles * 3];
+        Random random = new Random(1);
+        for (int t = 0; t < numTriangles; t++) {
+            // locally coherent indices that drift over the mesh
+            int base = t * 3 + random.nextInt(200);
+            for (int v = 0; v < 3; v++) {
+                indices[t * 3 + v] = base + random.nextInt(300);
+            }
+        }
+
+        int[] chunks = GLIndexBuffer.computeChunks(IntBuffer.wrap(indices), maxVertices);
+
+        int next = 0;
+        for (int c = 0; c < chunks.length; c += 3) {
+            assertEquals(next, chunks[c]);
+            assertEquals(0, chunks[c + 1] % 3);
+            for (int i = chunks[c]; i < chunks[c] + chunks[c + 1]; i++) {
+                int local = indices[i] - chunks[c + 2];
+                assertTrue(local >= 0 && local < maxVertices);
+            }
+            next += chunks[c + 1];
+        }
+        assertEquals(indices.length, next);
+        assertTrue(chunks.length / 3 > 1);
+    }
+
+    @Test
+    public void emptyIndicesHaveNoChunks() {
+        assertEquals(0, GLIndexBuffer.computeChunks(IntBuffer.allocate(0), 16).length);
+    }
+
+    @Test
+    public void invalidIndicesCannotBeChunked() {
+        // not a multiple of 3
+        assertNull(GLIndexBuffer.computeChunks(IntBuffer.wrap(new int[]{0, 1, 2, 3}), 16));
+        // a single triangle spans too many vertices
+        assertNull(GLIndexBuffer.computeChunks(IntBuffer.wrap(new int[]{0, 1, 2, 0, 1, 16}), 16));
+    }
+}
@@ -0,0 +1,137 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests deleting GL objects against a stub GL3 (no gl context required). The stub
+ * needs the gluegen natives of the test platform on the class path (see the test
+ * runtime dependencies in build.gradle).
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class GLObjectDeleteTest {
+
+    // number of calls per GL function
+    private final Map<String, Integer> calls = new HashMap<>();
+    private int nextHandle = 1;
+
+    private GL3 gl;
+
+    @Before
+    public void setUp() {
+        gl = (GL3) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{GL3.class},
+                (proxy, method, args) -> {
+                    calls.merge(method.getName(), 1, Integer::sum);
+                    switch (method.getName()) {
+                        case "glGenBuffers":
+                            int[] handles = (int[]) args[1];
+                            for (int i = 0; i < (int) args[0]; i++) {
+                                handles[(int) args[2] + i] = nextHandle++;
+                            }
+                            return null;
+                        case "glCreateShader":
+                        case "glCreateProgram":
+                            return nextHandle++;
+                        case "glGetShaderiv":
+                        case "glGetProgramiv":
+                            // successful compilation/linking without log
+                            int pname = (int) args[1];
+                            ((int[]) args[2])[(int) args[3]] = pname == GL3.GL_INFO_LOG_LENGTH ? 0 : GL.GL_TRUE;
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0.f;
+        } else if (type == double.class) {
+            return 0.0;
+        }
+        return null;
+    }
+
+    private int calls(String function) {
+        return calls.getOrDefault(function, 0);
+    }
+
+    private long liveBytes() {
+        return GLResources.getLiveBytes(GLResources.getShareGroup(gl));
+    }
+
+    @Test
+    public void vertexBufferIsDeletedOnce() {
+        long bytes = liveBytes();
+
+        GLVertexBuffer buffer = new GLVertexBuffer(gl);
+        buffer.create();
+        buffer.bind();
+        buffer.allocate(new float[]{1, 2, 3, 4, 5, 6});
+        assertEquals(bytes + 6 * 4, liveBytes());
+
+        buffer.delete();
+        buffer.delete();
+
+        assertEquals(1, calls("glDeleteBuffers"));
+        assertEquals(0, buffer.getGLHandle());
+        assertEquals(bytes, liveBytes());
+    }
+
+    @Test
+    public void compactIndexBufferIsAccountedAndDeletedOnce() {
+        long bytes = liveBytes();
+
+        GLIndexBuffer buffer = new GLIndexBuffer(gl);
+        buffer.create();
+        buffer.bind();
+        buffer.allocateCompact(IntBuffer.wrap(new int[]{0, 1, 2, 2, 1, 3}));
+        // 16 bit indices
+        assertEquals(bytes + 6 * 2, liveBytes());
+        assertEquals(1, buffer.numChunks());
+
+        buffer.delete();
+        buffer.delete();
+
+        assertEquals(1, calls("glDeleteBuffers"));
+        assertEquals(bytes, liveBytes());
+    }
+
+    @Test
+    public void shaderAndProgramAreDeletedOnce() {
+        Shader shader = Shader.newShaderFromString(gl, "void main() {}", Shader.Type.VERTEX);
+        Program program = new Program(gl);
+
+        shader.delete();
+        shader.delete();
+        program.delete();
+        program.delete();
+
+        assertEquals(1, calls("glDeleteShader"));
+        assertEquals(1, calls("glDeleteProgram"));
+        assertFalse(shader.isValid());
+        assertFalse(program.isValid());
+    }
+}
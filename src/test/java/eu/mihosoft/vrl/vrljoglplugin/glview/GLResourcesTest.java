@@ -0,0 +1,137 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the accounting of GL objects per share group (no gl context required, share
+ * groups are plain objects).
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class GLResourcesTest {
+
+    private final Object groupA = new Object();
+    private final Object groupB = new Object();
+
+    @After
+    public void tearDown() {
+        GLResources.setDebug(false);
+        for (Object group : new Object[]{groupA, groupB}) {
+            for (GLResources.Kind kind : GLResources.Kind.values()) {
+                for (int handle = 1; handle <= 8; handle++) {
+                    GLResources.deleted(group, kind, handle);
+                }
+            }
+        }
+    }
+
+    private static GLObject newObject(int handle) {
+        return new GLObject() {
+            @Override
+            public int getGLHandle() {
+                return handle;
+            }
+
+            @Override
+            public void delete() {
+                // nothing to delete
+            }
+        };
+    }
+
+    @Test
+    public void liveBytesAreAccountedPerShareGroup() {
+        GLResources.created(groupA, GLResources.Kind.BUFFER, 1, newObject(1));
+        GLResources.allocated(groupA, GLResources.Kind.BUFFER, 1, 1000);
+        GLResources.created(groupA, GLResources.Kind.BUFFER, 2, newObject(2));
+        GLResources.allocated(groupA, GLResources.Kind.BUFFER, 2, 24);
+        GLResources.created(groupB, GLResources.Kind.BUFFER, 1, newObject(1));
+        GLResources.allocated(groupB, GLResources.Kind.BUFFER, 1, 500);
+
+        assertEquals(1024, GLResources.getLiveBytes(groupA));
+        assertEquals(2, GLResources.getLiveObjects(groupA));
+        assertEquals(500, GLResources.getLiveBytes(groupB));
+        assertEquals(1, GLResources.getLiveObjects(groupB));
+
+        // reallocation replaces the previous size
+        GLResources.allocated(groupA, GLResources.Kind.BUFFER, 1, 10);
+        assertEquals(34, GLResources.getLiveBytes(groupA));
+
+        GLResources.deleted(groupA, GLResources.Kind.BUFFER, 1);
+        assertEquals(24, GLResources.getLiveBytes(groupA));
+        assertEquals(500, GLResources.getLiveBytes(groupB));
+    }
+
+    @Test
+    public void handlesOfDifferentKindsAreDistinct() {
+        GLResources.created(groupA, GLResources.Kind.BUFFER, 3, newObject(3));
+        GLResources.created(groupA, GLResources.Kind.PROGRAM, 3, newObject(3));
+        GLResources.created(groupA, GLResources.Kind.SHADER, 3, newObject(3));
+        assertEquals(3, GLResources.getLiveObjects(groupA));
+
+        GLResources.deleted(groupA, GLResources.Kind.PROGRAM, 3);
+        assertEquals(2, GLResources.getLiveObjects(groupA));
+    }
+
+    @Test
+    public void deletingTwiceHasNoEffect() {
+        GLResources.created(groupA, GLResources.Kind.BUFFER, 4, newObject(4));
+        GLResources.allocated(groupA, GLResources.Kind.BUFFER, 4, 64);
+        GLResources.created(groupA, GLResources.Kind.BUFFER, 5, newObject(5));
+        GLResources.allocated(groupA, GLResources.Kind.BUFFER, 5, 32);
+
+        GLResources.deleted(groupA, GLResources.Kind.BUFFER, 4);
+        GLResources.deleted(groupA, GLResources.Kind.BUFFER, 4);
+        assertEquals(32, GLResources.getLiveBytes(groupA));
+        assertEquals(1, GLResources.getLiveObjects(groupA));
+
+        // unknown objects and handle 0 are ignored
+        GLResources.deleted(groupB, GLResources.Kind.BUFFER, 5);
+        GLResources.allocated(groupB, GLResources.Kind.BUFFER, 5, 99);
+        GLResources.created(groupB, GLResources.Kind.BUFFER, 0, newObject(0));
+        assertEquals(32, GLResources.getLiveBytes(groupA));
+        assertEquals(0, GLResources.getLiveObjects(groupB));
+    }
+
+    @Test
+    public void collectedObjectsAreReportedAsLeaks() throws InterruptedException {
+        GLResources.setDebug(true);
+        GLResources.checkLeaks();
+
+        // deleted objects are not reported
+        GLResources.created(groupA, GLResources.Kind.BUFFER, 6, newObject(6));
+        GLResources.deleted(groupA, GLResources.Kind.BUFFER, 6);
+        // leaked object
+        GLResources.created(groupA, GLResources.Kind.BUFFER, 7, newObject(7));
+
+        PrintStream err = System.err;
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        int leaks = 0;
+        try {
+            System.setErr(new PrintStream(report, true));
+            for (int i = 0; i < 100 && leaks == 0; i++) {
+                System.gc();
+                Thread.sleep(20);
+                leaks += GLResources.checkLeaks();
+            }
+        } finally {
+            System.setErr(err);
+        }
+
+        assertEquals(1, leaks);
+        assertTrue(report.toString(), report.toString().contains("BUFFER 7"));
+        // the allocation site is reported
+        assertTrue(report.toString(), report.toString().contains("collectedObjectsAreReportedAsLeaks"));
+
+        // leaks are reported once, but they are still live
+        assertEquals(0, GLResources.checkLeaks());
+        assertEquals(1, GLResources.getLiveObjects(groupA));
+    }
+}
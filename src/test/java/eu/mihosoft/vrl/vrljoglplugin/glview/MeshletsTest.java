@@ -0,0 +1,200 @@
+package eu.mihosoft.vrl.vrljoglplugin.glview;
+
+import org.joml.Matrix4f;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the view frustum and back-face culling of {@link Meshlets} (no gl context
+ * required).
+ *
+ * @author Michael Hoffer <info@michaelhoffer.de>
+ */
+public class MeshletsTest {
+
+    // view from z = 5 towards the origin
+    private static Matrix4f perspectiveView() {
+        return new Matrix4f().perspective((float) Math.toRadians(45), 1.f, 0.1f, 100.f)
+                .lookAt(0, 0, 5, 0, 0, 0, 0, 1, 0);
+    }
+
+    // view from z = 5 towards the origin (view volume: [-2,2] x [-2,2])
+    private static Matrix4f orthographicView() {
+        return new Matrix4f().ortho(-2, 2, -2, 2, 0.1f, 100.f)
+                .lookAt(0, 0, 5, 0, 0, 0, 0, 1, 0);
+    }
+
+    /**
+     * Creates a mesh of unit quads in the xy plane (separate quads are separate
+     * meshlets).
+     *
+     * @param centers quad centers ({@code x,y,z} per quad)
+     * @param frontFacing defines per quad whether it faces towards {@code +z}
+     *                    (counter-clockwise seen from {@code +z})
+     */
+    private static Mesh quads(float[] centers, boolean[] frontFacing) {
+        int numQuads = frontFacing.length;
+        float[] vertices = new float[numQuads * 4 * 3];
+        int[] indices = new int[numQuads * 6];
+        float[][] corners = {{-.5f, -.5f}, {.5f, -.5f}, {.5f, .5f}, {-.5f, .5f}};
+        for (int q = 0; q < numQuads; q++) {
+            for (int c = 0; c < 4; c++) {
+                vertices[(q * 4 + c) * 3] = centers[q * 3] + corners[c][0];
+                vertices[(q * 4 + c) * 3 + 1] = centers[q * 3 + 1] + corners[c][1];
+                vertices[(q * 4 + c) * 3 + 2] = centers[q * 3 + 2];
+            }
+            int[] triangles = frontFacing[q] ? new int[]{0, 1, 2, 0, 2, 3} : new int[]{0, 2, 1, 0, 3, 2};
+            for (int i = 0; i < 6; i++) {
+                indices[q * 6 + i] = q * 4 + triangles[i];
+            }
+        }
+        return Mesh.newInstance(vertices, indices);
+    }
+
+    /**
+     * Returns the x coordinates of the meshlets in the specified ranges.
+     */
+    private static List<Float> visibleCenters(Meshlets meshlets, int[] ranges, int numRanges) {
+        List<Float> result = new ArrayList<>();
+        for (int m = 0; m < meshlets.numMeshlets(); m++) {
+            int first = meshlets.getFirstTriangle(m) * 3;
+            for (int r = 0; r < numRanges; r++) {
+                if (first >= ranges[r * 2] && first < ranges[r * 2] + ranges[r * 2 + 1]) {
+                    result.add(meshlets.getBoundingSphere(m)[0]);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void meshletOutsideOfFrustumIsRejected() {
+        Meshlets meshlets = Meshlets.build(quads(
+                new float[]{0, 0, 0, 100, 0, 0},
+                new boolean[]{true, true}), 1);
+        assertEquals(2, meshlets.numMeshlets());
+
+        int[] ranges = new int[meshlets.numMeshlets() * 2];
+        int numRanges = meshlets.cull(perspectiveView(), false, ranges);
+
+        assertEquals(1, numRanges);
+        assertEquals(6, ranges[1]);
+        List<Float> visible = visibleCenters(meshlets, ranges, numRanges);
+        assertEquals(1, visible.size());
+        assertEquals(0, visible.get(0), 1e-4f);
+    }
+
+    @Test
+    public void backFacingMeshletIsRejected() {
+        Meshlets meshlets = Meshlets.build(quads(
+                new float[]{-1, 0, 0, 1, 0, 0},
+                new boolean[]{true, false}), 1);
+        assertEquals(2, meshlets.numMeshlets());
+
+        int[] ranges = new int[meshlets.numMeshlets() * 2];
+
+        int numRanges = meshlets.cull(perspectiveView(), true, ranges);
+        List<Float> visible = visibleCenters(meshlets, ranges, numRanges);
+        assertEquals(1, visible.size());
+        assertEquals(-1, visible.get(0), 1e-4f);
+
+        // without back-face culling both are visible
+        numRanges = meshlets.cull(perspectiveView(), false, ranges);
+        assertEquals(2, visibleCenters(meshlets, ranges, numRanges).size());
+    }
+
+    @Test
+    public void coneThatStraddlesTheSilhouetteIsKept() {
+        // cone around -z with a half angle of 30 degrees
+        float cos30 = (float) Math.cos(Math.toRadians(30));
+        float[] viewAt50 = {0, (float) Math.sin(Math.toRadians(50)), (float) -Math.cos(Math.toRadians(50))};
+        float[] viewAt70 = {0, (float) Math.sin(Math.toRadians(70)), (float) -Math.cos(Math.toRadians(70))};
+
+        // 50 + 30 degrees: all normals face away from the viewer
+        assertTrue(Meshlets.isBackFacing(0, 0, 0, -1, cos30,
+                viewAt50[0], viewAt50[1], viewAt50[2], true));
+        // 70 + 30 degrees: some normals face the viewer
+        assertFalse(Meshlets.isBackFacing(0, 0, 0, -1, cos30,
+                viewAt70[0], viewAt70[1], viewAt70[2], true));
+
+        // the bounding sphere widens the range of view directions (perspective)
+        assertTrue(Meshlets.isBackFacing(0.1f, 0, 0, -1, cos30,
+                viewAt50[0] * 10, viewAt50[1] * 10, viewAt50[2] * 10, false));
+        assertFalse(Meshlets.isBackFacing(5, 0, 0, -1, cos30,
+                viewAt50[0] * 10, viewAt50[1] * 10, viewAt50[2] * 10, false));
+
+        // eye inside of the bounding sphere
+        assertFalse(Meshlets.isBackFacing(1, 0, 0, -1, 1,
+                0, 0, -0.5f, false));
+
+        // cones of 90 degrees or more are never back-facing
+        assertFalse(Meshlets.isBackFacing(0, 0, 0, -1, 0,
+                0, 0, -1, true));
+    }
+
+    @Test
+    public void orthographicViewIsCulled() {
+        Meshlets meshlets = Meshlets.build(quads(
+                new float[]{-1, 0, 0, 1, 0, 0, 10, 0, 0},
+                new boolean[]{true, false, true}), 1);
+        assertEquals(3, meshlets.numMeshlets());
+
+        int[] ranges = new int[meshlets.numMeshlets() * 2];
+
+        int numRanges = meshlets.cull(orthographicView(), false, ranges);
+        List<Float> visible = visibleCenters(meshlets, ranges, numRanges);
+        assertEquals(2, visible.size());
+        assertFalse(visible.contains(10.f));
+
+        numRanges = meshlets.cull(orthographicView(), true, ranges);
+        visible = visibleCenters(meshlets, ranges, numRanges);
+        assertEquals(1, visible.size());
+        assertEquals(-1, visible.get(0), 1e-4f);
+    }
+
+    @Test
+    public void adjacentVisibleRangesAreMerged() {
+        Meshlets meshlets = Meshlets.build(quads(
+                new float[]{-1.5f, 0, 0, 0, 0, 0, 1.5f, 0, 0, 0, 1.5f, 0},
+                new boolean[]{true, true, true, true}), 1);
+        assertEquals(4, meshlets.numMeshlets());
+
+        int[] ranges = new int[meshlets.numMeshlets() * 2];
+        int numRanges = meshlets.cull(perspectiveView(), false, ranges);
+
+        assertEquals(1, numRanges);
+        assertEquals(0, ranges[0]);
+        assertEquals(meshlets.getMesh().numIndices(), ranges[1]);
+    }
+
+    @Test
+    public void rangesAreNotAdjacentIfMeshletsAreCulled() {
+        // stacked quads, every other quad faces away
+        int numQuads = 8;
+        float[] centers = new float[numQuads * 3];
+        boolean[] frontFacing = new boolean[numQuads];
+        for (int q = 0; q < numQuads; q++) {
+            centers[q * 3 + 2] = q * 1.1f - 4;
+            frontFacing[q] = q % 2 == 0;
+        }
+        Meshlets meshlets = Meshlets.build(quads(centers, frontFacing), 1);
+
+        int[] ranges = new int[meshlets.numMeshlets() * 2];
+        int numRanges = meshlets.cull(perspectiveView(), true, ranges);
+
+        int numIndices = 0;
+        for (int r = 0; r < numRanges; r++) {
+            numIndices += ranges[r * 2 + 1];
+            if (r > 0) {
+                assertTrue(ranges[r * 2 - 2] + ranges[r * 2 - 1] < ranges[r * 2]);
+            }
+        }
+        assertEquals(numQuads / 2 * 6, numIndices);
+    }
+}